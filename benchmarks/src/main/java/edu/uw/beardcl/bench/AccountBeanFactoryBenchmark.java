@@ -0,0 +1,62 @@
+package edu.uw.beardcl.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.context.support.ClassPathXmlApplicationContext;
+
+import edu.uw.beardcl.account.AccountBeanFactory;
+import edu.uw.ext.framework.account.Account;
+import edu.uw.ext.framework.account.Address;
+import edu.uw.ext.framework.account.CreditCard;
+
+/**
+ * Measures the cost of obtaining the beans needed to materialize one account
+ * read, as DatabaseAccountDao.getAccount did before and does after the
+ * introduction of AccountBeanFactory: an application context per read versus
+ * the shared factory.
+ *
+ * @author Chester Beard
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AccountBeanFactoryBenchmark {
+    /**
+     * Loads "context.xml" and obtains the account beans, as every account
+     * read previously did.
+     *
+     * @param bh consumes the beans
+     */
+    @Benchmark
+    public void contextPerRead(final Blackhole bh) {
+        try (ClassPathXmlApplicationContext appContext =
+             new ClassPathXmlApplicationContext("context.xml")) {
+            bh.consume(appContext.getBean(Account.class));
+            bh.consume(appContext.getBean(Address.class));
+            bh.consume(appContext.getBean(CreditCard.class));
+        }
+    }
+
+    /**
+     * Obtains the account beans from the shared factory.
+     *
+     * @param bh consumes the beans
+     */
+    @Benchmark
+    public void sharedFactory(final Blackhole bh) {
+        final AccountBeanFactory beans = AccountBeanFactory.getInstance();
+        bh.consume(beans.newAccount());
+        bh.consume(beans.newAddress());
+        bh.consume(beans.newCreditCard());
+    }
+}
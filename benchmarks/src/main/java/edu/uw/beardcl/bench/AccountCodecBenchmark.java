@@ -0,0 +1,127 @@
+package edu.uw.beardcl.bench;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+
+import edu.uw.beardcl.account.AccountCodec;
+import edu.uw.beardcl.account.SimpleAccount;
+import edu.uw.beardcl.account.SimpleAddress;
+import edu.uw.beardcl.account.SimpleCreditCard;
+import edu.uw.ext.framework.account.Account;
+import edu.uw.ext.framework.account.Address;
+import edu.uw.ext.framework.account.CreditCard;
+
+/**
+ * Compares the throughput of the AccountCodec binary format with the Jackson
+ * JSON mapping used by JsonAccountDao, for encoding and decoding accounts held
+ * in memory, isolating the serialization cost from file I/O.  Run with
+ * "-prof gc" to compare allocation per operation.
+ *
+ * @author Chester Beard
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class AccountCodecBenchmark {
+    /** The account population */
+    @Param({"MINIMAL", "FULL"})
+    public AccountSize accountSize;
+
+    /** JSON mapper, configured as JsonAccountDao's */
+    private ObjectMapper mapper;
+
+    /** The account to encode */
+    private Account account;
+
+    /** The account in binary form */
+    private byte[] binary;
+
+    /** The account in JSON form */
+    private byte[] json;
+
+    /**
+     * Creates the account and its encoded forms, reporting their sizes.
+     *
+     * @throws IOException if the account can't be encoded
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        final SimpleModule module = new SimpleModule();
+        module.addAbstractTypeMapping(Account.class, SimpleAccount.class);
+        module.addAbstractTypeMapping(Address.class, SimpleAddress.class);
+        module.addAbstractTypeMapping(CreditCard.class, SimpleCreditCard.class);
+        mapper = new ObjectMapper();
+        mapper.registerModule(module);
+
+        account = BenchmarkAccounts.newAccount(1, accountSize);
+        binary = AccountCodec.encode(account);
+        json = mapper.writeValueAsBytes(account);
+        System.out.printf("%n%s account: binary %d bytes, JSON %d bytes%n",
+                          accountSize, binary.length, json.length);
+    }
+
+    /**
+     * Encode with the binary codec.
+     *
+     * @return the encoded account
+     */
+    @Benchmark
+    public byte[] encodeBinary() {
+        return AccountCodec.encode(account);
+    }
+
+    /**
+     * Decode with the binary codec.
+     *
+     * @return the account
+     *
+     * @throws IOException if decoding fails
+     */
+    @Benchmark
+    public Account decodeBinary() throws IOException {
+        return AccountCodec.decode(binary);
+    }
+
+    /**
+     * Encode as JSON.
+     *
+     * @return the encoded account
+     *
+     * @throws IOException if encoding fails
+     */
+    @Benchmark
+    public byte[] encodeJson() throws IOException {
+        return mapper.writeValueAsBytes(account);
+    }
+
+    /**
+     * Decode from JSON.
+     *
+     * @return the account
+     *
+     * @throws IOException if decoding fails
+     */
+    @Benchmark
+    public Account decodeJson() throws IOException {
+        return mapper.readValue(json, Account.class);
+    }
+}
@@ -0,0 +1,93 @@
+package edu.uw.beardcl.bench;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import edu.uw.ext.framework.account.Account;
+import edu.uw.ext.framework.account.AccountException;
+
+/**
+ * Measures the throughput of the AccountDao operations for each DAO and
+ * account size.  The DAOs are not required to be thread safe, these
+ * benchmarks are single threaded, see AccountManagerBenchmark for concurrent
+ * access.  Run with "-prof gc" to report the allocation rate.
+ *
+ * @author Chester Beard
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(1)
+@State(Scope.Thread)
+public class AccountDaoBenchmark {
+    /** Selects accounts */
+    private final Random random = new Random(42);
+
+    /** Number of the scratch account used for create/delete */
+    private int scratch = Integer.MAX_VALUE / 2;
+
+    /**
+     * Read a random existing account.
+     *
+     * @param fixture the DAO under test
+     *
+     * @return the account
+     */
+    @Benchmark
+    public Account getAccount(final AccountDaoFixture fixture) {
+        return fixture.dao.getAccount(randomName(fixture));
+    }
+
+    /**
+     * Update the balance of a random existing account.
+     *
+     * @param fixture the DAO under test
+     *
+     * @throws AccountException if the update fails
+     */
+    @Benchmark
+    public void setAccount(final AccountDaoFixture fixture) throws AccountException {
+        final Account acct = BenchmarkAccounts.newAccount(random.nextInt(fixture.accountCount),
+                                                          fixture.accountSize);
+        acct.setBalance(random.nextInt(BenchmarkAccounts.BALANCE));
+        fixture.dao.setAccount(acct);
+    }
+
+    /**
+     * Create and then delete a new account.
+     *
+     * @param fixture the DAO under test
+     *
+     * @throws AccountException if the create or delete fails
+     */
+    @Benchmark
+    public void createAndDeleteAccount(final AccountDaoFixture fixture) throws AccountException {
+        final Account acct = BenchmarkAccounts.newAccount(scratch++, fixture.accountSize);
+        fixture.dao.setAccount(acct);
+        fixture.dao.deleteAccount(acct.getName());
+    }
+
+    /**
+     * Selects a random existing account name.
+     *
+     * @param fixture the DAO under test
+     *
+     * @return the account name
+     */
+    private String randomName(final AccountDaoFixture fixture) {
+        return BenchmarkAccounts.name(random.nextInt(fixture.accountCount));
+    }
+}
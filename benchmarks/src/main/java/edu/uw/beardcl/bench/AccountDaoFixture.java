@@ -0,0 +1,120 @@
+package edu.uw.beardcl.bench;
+
+import java.io.File;
+import java.nio.file.Files;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import edu.uw.beardcl.dao.BinaryAccountDao;
+import edu.uw.beardcl.dao.DatabaseAccountDao;
+import edu.uw.beardcl.dao.JsonAccountDao;
+import edu.uw.beardcl.dao.KeyValueAccountDao;
+import edu.uw.beardcl.dao.MappedAccountDao;
+import edu.uw.beardcl.dao.SegmentAccountDao;
+import edu.uw.ext.framework.dao.AccountDao;
+
+/**
+ * Shared benchmark state, an AccountDao of the selected implementation
+ * populated with a number of accounts of the selected size.  The file based
+ * DAOs use a temporary directory, the database DAO an embedded in-memory
+ * Derby database.
+ *
+ * @author Chester Beard
+ */
+@State(Scope.Benchmark)
+public class AccountDaoFixture {
+    /** The AccountDao implementations under test */
+    public enum DaoType {
+        /** JsonAccountDao */
+        JSON,
+        /** BinaryAccountDao */
+        BINARY,
+        /** DatabaseAccountDao */
+        DATABASE,
+        /** SegmentAccountDao */
+        SEGMENT,
+        /** MappedAccountDao */
+        MAPPED,
+        /** KeyValueAccountDao */
+        KEY_VALUE
+    }
+
+    /** Segment size used by the segment DAO, in bytes */
+    private static final long SEGMENT_BYTES = 16L * 1024 * 1024;
+
+    /** The DAO implementation */
+    @Param({"JSON", "BINARY", "DATABASE", "SEGMENT", "MAPPED", "KEY_VALUE"})
+    public DaoType daoType;
+
+    /** The amount of detail in each account */
+    @Param({"MINIMAL", "FULL"})
+    public AccountSize accountSize;
+
+    /** Number of accounts stored */
+    @Param({"1000"})
+    public int accountCount;
+
+    /** The DAO under test */
+    AccountDao dao;
+
+    /**
+     * Creates and populates the DAO.
+     *
+     * @throws Exception if the DAO can't be created or populated
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        dao = createDao(daoType);
+        dao.reset();
+        for (int i = 0; i < accountCount; i++) {
+            dao.setAccount(BenchmarkAccounts.newAccount(i, accountSize));
+        }
+    }
+
+    /**
+     * Removes the accounts and closes the DAO.
+     *
+     * @throws Exception if the DAO can't be reset or closed
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        dao.reset();
+        dao.close();
+    }
+
+    /**
+     * Creates a DAO of the specified type.
+     *
+     * @param type the type of DAO
+     *
+     * @return the DAO
+     *
+     * @throws Exception if the DAO can't be created
+     */
+    static AccountDao createDao(final DaoType type) throws Exception {
+        switch (type) {
+        case DATABASE:
+            EmbeddedAccountDb.createSchema();
+            return new DatabaseAccountDao();
+        case BINARY:
+            return new BinaryAccountDao(Files.createTempDirectory("accounts").toFile());
+        case MAPPED:
+            return new MappedAccountDao(Files.createTempDirectory("accounts").toFile(),
+                                        MappedAccountDao.DEFAULT_SLOT_COUNT, false);
+        case KEY_VALUE:
+            return new KeyValueAccountDao(
+                new File(Files.createTempDirectory("accounts").toFile(), "accounts.mv.db"), 0L, false);
+        case SEGMENT:
+            return new SegmentAccountDao(Files.createTempDirectory("accounts").toFile(),
+                                         SEGMENT_BYTES, 0L, false);
+        default:
+            final File dir = Files.createTempDirectory("accounts").toFile();
+            return new JsonAccountDao(dir);
+        }
+    }
+}
@@ -0,0 +1,205 @@
+package edu.uw.beardcl.bench;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import edu.uw.beardcl.account.SimpleAccountManager;
+import edu.uw.ext.framework.account.Account;
+import edu.uw.ext.framework.account.AccountException;
+import edu.uw.ext.framework.account.AccountManager;
+import edu.uw.ext.framework.dao.AccountDao;
+
+/**
+ * Measures the trade hot path account operations, persist, getAccount and
+ * validateLogin, through SimpleAccountManager for each DAO and account size,
+ * with one and with four concurrent threads.  Run with "-prof gc" to report
+ * the allocation rate.
+ *
+ * @author Chester Beard
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AccountManagerBenchmark {
+
+    /**
+     * The account manager under test, populated with accounts.
+     */
+    @State(Scope.Benchmark)
+    public static class Manager {
+        /** The DAO implementation */
+        @Param({"JSON", "DATABASE"})
+        public AccountDaoFixture.DaoType daoType;
+
+        /** The amount of detail in each account */
+        @Param({"MINIMAL", "FULL"})
+        public AccountSize accountSize;
+
+        /** Number of accounts stored */
+        @Param({"1000"})
+        public int accountCount;
+
+        /** The account manager */
+        AccountManager manager;
+
+        /** The DAO used by the manager */
+        private AccountDao dao;
+
+        /**
+         * Creates and populates the account manager.
+         *
+         * @throws Exception if the manager can't be created or populated
+         */
+        @Setup(Level.Trial)
+        public void setUp() throws Exception {
+            dao = AccountDaoFixture.createDao(daoType);
+            dao.reset();
+            for (int i = 0; i < accountCount; i++) {
+                dao.setAccount(BenchmarkAccounts.newAccount(i, accountSize));
+            }
+            manager = new SimpleAccountManager(dao);
+        }
+
+        /**
+         * Removes the accounts and closes the manager.
+         *
+         * @throws Exception if the manager can't be closed
+         */
+        @TearDown(Level.Trial)
+        public void tearDown() throws Exception {
+            dao.reset();
+            manager.close();
+        }
+    }
+
+    /**
+     * Per thread state.
+     */
+    @State(Scope.Thread)
+    public static class Caller {
+        /** Selects accounts */
+        private final Random random = new Random();
+
+        /**
+         * Selects a random existing account name.
+         *
+         * @param m the manager state
+         *
+         * @return the account name
+         */
+        String randomName(final Manager m) {
+            return BenchmarkAccounts.name(random.nextInt(m.accountCount));
+        }
+    }
+
+    /**
+     * Look up an account.
+     *
+     * @param m the manager under test
+     * @param c the calling thread's state
+     *
+     * @return the account
+     *
+     * @throws AccountException if the lookup fails
+     */
+    @Benchmark
+    @Threads(1)
+    public Account getAccount(final Manager m, final Caller c) throws AccountException {
+        return m.manager.getAccount(c.randomName(m));
+    }
+
+    /**
+     * Look up an account, concurrently.
+     *
+     * @param m the manager under test
+     * @param c the calling thread's state
+     *
+     * @return the account
+     *
+     * @throws AccountException if the lookup fails
+     */
+    @Benchmark
+    @Threads(4)
+    public Account getAccountConcurrent(final Manager m, final Caller c) throws AccountException {
+        return m.manager.getAccount(c.randomName(m));
+    }
+
+    /**
+     * Validate a login.
+     *
+     * @param m the manager under test
+     * @param c the calling thread's state
+     *
+     * @return the validation result
+     *
+     * @throws AccountException if the validation fails
+     */
+    @Benchmark
+    @Threads(1)
+    public boolean validateLogin(final Manager m, final Caller c) throws AccountException {
+        return m.manager.validateLogin(c.randomName(m), BenchmarkAccounts.PASSWORD);
+    }
+
+    /**
+     * Validate a login, concurrently.
+     *
+     * @param m the manager under test
+     * @param c the calling thread's state
+     *
+     * @return the validation result
+     *
+     * @throws AccountException if the validation fails
+     */
+    @Benchmark
+    @Threads(4)
+    public boolean validateLoginConcurrent(final Manager m, final Caller c) throws AccountException {
+        return m.manager.validateLogin(c.randomName(m), BenchmarkAccounts.PASSWORD);
+    }
+
+    /**
+     * Persist an account, as after a fill.
+     *
+     * @param m the manager under test
+     * @param c the calling thread's state
+     *
+     * @throws AccountException if the persist fails
+     */
+    @Benchmark
+    @Threads(1)
+    public void persist(final Manager m, final Caller c) throws AccountException {
+        m.manager.persist(BenchmarkAccounts.newAccount(c.random.nextInt(m.accountCount),
+                                                       m.accountSize));
+    }
+
+    /**
+     * Persist an account, as after a fill, concurrently.
+     *
+     * @param m the manager under test
+     * @param c the calling thread's state
+     *
+     * @throws AccountException if the persist fails
+     */
+    @Benchmark
+    @Threads(4)
+    public void persistConcurrent(final Manager m, final Caller c) throws AccountException {
+        m.manager.persist(BenchmarkAccounts.newAccount(c.random.nextInt(m.accountCount),
+                                                       m.accountSize));
+    }
+}
@@ -0,0 +1,14 @@
+package edu.uw.beardcl.bench;
+
+/**
+ * The amount of detail populated in benchmark accounts.
+ *
+ * @author Chester Beard
+ */
+public enum AccountSize {
+    /** Name, password hash and balance only */
+    MINIMAL,
+
+    /** All contact details, address and credit card */
+    FULL
+}
@@ -0,0 +1,92 @@
+package edu.uw.beardcl.bench;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import edu.uw.beardcl.account.SimpleAccount;
+import edu.uw.beardcl.account.SimpleAddress;
+import edu.uw.beardcl.account.SimpleCreditCard;
+import edu.uw.ext.framework.account.Account;
+import edu.uw.ext.framework.account.AccountException;
+
+/**
+ * Creates the accounts used by the benchmarks.
+ *
+ * @author Chester Beard
+ */
+final class BenchmarkAccounts {
+    /** The password of all benchmark accounts */
+    static final String PASSWORD = "password";
+
+    /** The initial balance of all benchmark accounts */
+    static final int BALANCE = 1_000_000;
+
+    /**
+     * Not instantiable.
+     */
+    private BenchmarkAccounts() {
+    }
+
+    /**
+     * Gets the name of the n'th benchmark account.
+     *
+     * @param n the account number
+     *
+     * @return the account name
+     */
+    static String name(final int n) {
+        return String.format("account%06d", n);
+    }
+
+    /**
+     * Hashes the benchmark password in the same manner as SimpleAccountManager.
+     *
+     * @return the password hash
+     */
+    static byte[] passwordHash() {
+        try {
+            final MessageDigest md = MessageDigest.getInstance("SHA1");
+            return md.digest(PASSWORD.getBytes(StandardCharsets.ISO_8859_1));
+        } catch (final NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    /**
+     * Creates the n'th benchmark account.
+     *
+     * @param n the account number
+     * @param size the amount of detail to populate
+     *
+     * @return the account
+     */
+    static Account newAccount(final int n, final AccountSize size) {
+        try {
+            final SimpleAccount acct = new SimpleAccount(name(n), passwordHash(), BALANCE);
+            if (size == AccountSize.FULL) {
+                acct.setFullName("Benchmark Account Holder " + n);
+                acct.setPhone("(206) 555-0100");
+                acct.setEmail(name(n) + "@example.com");
+
+                final SimpleAddress addr = new SimpleAddress();
+                addr.setStreetAddress(n + " Fourth Avenue");
+                addr.setCity("Seattle");
+                addr.setState("WA");
+                addr.setZipCode("98101");
+                acct.setAddress(addr);
+
+                final SimpleCreditCard card = new SimpleCreditCard();
+                card.setAccountNumber("4111111111111111");
+                card.setIssuer("Benchmark Bank");
+                card.setType("VISA");
+                card.setHolder("Benchmark Account Holder " + n);
+                card.setExpirationDate("12/30");
+                acct.setCreditCard(card);
+            }
+            return acct;
+        } catch (final AccountException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package edu.uw.beardcl.bench;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import javax.naming.InitialContext;
+import javax.naming.NamingException;
+import javax.sql.DataSource;
+
+/**
+ * Creates the account schema in the embedded, in-memory Derby database bound
+ * to "jdbc/AccountDb" by the benchmark jndi.properties/namespace.xml.
+ *
+ * @author Chester Beard
+ */
+final class EmbeddedAccountDb {
+    /** The JNDI name used for the DataSource, as used by DatabaseAccountDao */
+    private static final String DATASOURCE_JNDI_NAME = "jdbc/AccountDb";
+
+    /** Derby SQL state indicating an object already exists */
+    private static final String ALREADY_EXISTS_STATE = "X0Y32";
+
+    /** The account schema */
+    private static final String[] DDL = {
+        "CREATE TABLE account ("
+      + "  accountid VARCHAR(64) NOT NULL PRIMARY KEY,"
+      + "  password_hash VARCHAR(64) FOR BIT DATA,"
+      + "  balance INTEGER,"
+      + "  fullname VARCHAR(128),"
+      + "  phone VARCHAR(32),"
+      + "  email VARCHAR(128))",
+        "CREATE TABLE address ("
+      + "  accountid VARCHAR(64) NOT NULL PRIMARY KEY"
+      + "    REFERENCES account (accountid) ON DELETE CASCADE,"
+      + "  street VARCHAR(128),"
+      + "  city VARCHAR(64),"
+      + "  state VARCHAR(32),"
+      + "  zip VARCHAR(16))",
+        "CREATE TABLE creditcard ("
+      + "  accountid VARCHAR(64) NOT NULL PRIMARY KEY"
+      + "    REFERENCES account (accountid) ON DELETE CASCADE,"
+      + "  card_number VARCHAR(32),"
+      + "  issuer VARCHAR(64),"
+      + "  cardtype VARCHAR(32),"
+      + "  holder VARCHAR(128),"
+      + "  expires VARCHAR(16))"
+    };
+
+    /**
+     * Not instantiable.
+     */
+    private EmbeddedAccountDb() {
+    }
+
+    /**
+     * Creates the account tables, if they do not already exist.
+     *
+     * @throws NamingException if the DataSource can't be located
+     * @throws SQLException if the schema can't be created
+     */
+    static void createSchema() throws NamingException, SQLException {
+        final InitialContext ctx = new InitialContext();
+        try {
+            final DataSource ds = (DataSource) ctx.lookup(DATASOURCE_JNDI_NAME);
+            try (Connection conn = ds.getConnection();
+                 Statement stmnt = conn.createStatement()) {
+                for (final String ddl : DDL) {
+                    try {
+                        stmnt.executeUpdate(ddl);
+                    } catch (final SQLException ex) {
+                        if (!ALREADY_EXISTS_STATE.equals(ex.getSQLState())) {
+                            throw ex;
+                        }
+                    }
+                }
+            }
+        } finally {
+            ctx.close();
+        }
+    }
+}
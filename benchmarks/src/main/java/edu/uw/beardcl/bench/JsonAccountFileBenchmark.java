@@ -0,0 +1,154 @@
+package edu.uw.beardcl.bench;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+
+import edu.uw.beardcl.account.SimpleAccount;
+import edu.uw.beardcl.account.SimpleAddress;
+import edu.uw.beardcl.account.SimpleCreditCard;
+import edu.uw.beardcl.dao.JsonAccountCodec;
+import edu.uw.ext.framework.account.Account;
+import edu.uw.ext.framework.account.Address;
+import edu.uw.ext.framework.account.CreditCard;
+
+/**
+ * Compares the throughput of reading and writing account files with the
+ * ObjectMapper file methods JsonAccountDao used formerly, and with the
+ * JsonAccountCodec it now uses, which reuses prebuilt readers and writers,
+ * per thread buffers and NIO channels.  Both write the same bytes to the
+ * same file, so the difference is the serialization and I/O path alone.
+ * Run with "-prof gc" to compare allocation per operation.
+ *
+ * @author Chester Beard
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class JsonAccountFileBenchmark {
+    /** The account population */
+    @Param({"MINIMAL", "FULL"})
+    public AccountSize accountSize;
+
+    /** JSON mapper, configured as JsonAccountDao's */
+    private ObjectMapper mapper;
+
+    /** The codec */
+    private JsonAccountCodec codec;
+
+    /** The account to write */
+    private Account account;
+
+    /** The directory holding the account files */
+    private Path dir;
+
+    /** The file read by the read benchmarks */
+    private Path readFile;
+
+    /** The file written by the write benchmarks */
+    private Path writeFile;
+
+    /**
+     * Creates the account and writes the file to be read.
+     *
+     * @throws IOException if the file can't be written
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        final SimpleModule module = new SimpleModule();
+        module.addAbstractTypeMapping(Account.class, SimpleAccount.class);
+        module.addAbstractTypeMapping(Address.class, SimpleAddress.class);
+        module.addAbstractTypeMapping(CreditCard.class, SimpleCreditCard.class);
+        mapper = new ObjectMapper();
+        mapper.registerModule(module);
+        codec = new JsonAccountCodec();
+
+        account = BenchmarkAccounts.newAccount(1, accountSize);
+        dir = Files.createTempDirectory("accounts");
+        readFile = dir.resolve("read.json");
+        writeFile = dir.resolve("write.json");
+        mapper.writeValue(readFile.toFile(), account);
+    }
+
+    /**
+     * Removes the account files.
+     *
+     * @throws IOException if the files can't be removed
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(readFile);
+        Files.deleteIfExists(writeFile);
+        Files.deleteIfExists(dir);
+    }
+
+    /**
+     * Read with the ObjectMapper.
+     *
+     * @return the account
+     *
+     * @throws IOException if the read fails
+     */
+    @Benchmark
+    public Account readMapper() throws IOException {
+        return mapper.readValue(readFile.toFile(), Account.class);
+    }
+
+    /**
+     * Read with the codec.
+     *
+     * @return the account
+     *
+     * @throws IOException if the read fails
+     */
+    @Benchmark
+    public Account readCodec() throws IOException {
+        return codec.read(readFile);
+    }
+
+    /**
+     * Write with the ObjectMapper.
+     *
+     * @throws IOException if the write fails
+     */
+    @Benchmark
+    public void writeMapper() throws IOException {
+        mapper.writeValue(writeFile.toFile(), account);
+    }
+
+    /**
+     * Write with the codec.
+     *
+     * @throws IOException if the write fails
+     */
+    @Benchmark
+    public void writeCodec() throws IOException {
+        try (FileChannel channel = FileChannel.open(writeFile, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            codec.write(channel, account);
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package edu.uw.beardcl.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures dispatch latency of each OrderQueue implementation: the time from
+ * enqueuing an immediately dispatchable order until the order processor
+ * receives it, sampled so percentiles are reported.  For the SIMPLE queue this
+ * is the synchronous dispatch cost, for the THREADED and EXECUTOR queues it
+ * includes the hand-off to the dispatching thread.
+ *
+ * @author Chester Beard
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(1)
+@State(Scope.Thread)
+public class OrderQueueDispatchBenchmark {
+    /** Varies order prices */
+    private int n;
+
+    /**
+     * Enqueue a dispatchable order and wait for it to be processed.
+     *
+     * @param fixture the queue under test
+     *
+     * @return the processed count, to defeat dead code elimination
+     */
+    @Benchmark
+    public long dispatchLatency(final OrderQueueFixture fixture) {
+        final long target = fixture.processor.processed() + 1;
+        fixture.enqueue(OrderQueueFixture.triggeringOrder(n++));
+        long processed;
+        while ((processed = fixture.processor.processed()) < target) {
+            Thread.yield();
+        }
+        return processed;
+    }
+}
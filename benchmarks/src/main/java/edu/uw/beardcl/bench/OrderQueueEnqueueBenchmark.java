@@ -0,0 +1,88 @@
+package edu.uw.beardcl.bench;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import edu.uw.ext.framework.order.StopBuyOrder;
+
+/**
+ * Measures enqueue throughput of each OrderQueue implementation, for a range
+ * of resting order counts and trigger ratios (the fraction of enqueued orders
+ * immediately dispatchable), with one and with four producer threads.  Run
+ * with "-prof gc" to report the allocation rate.
+ *
+ * @author Chester Beard
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OrderQueueEnqueueBenchmark {
+
+    /**
+     * Per producer thread state.
+     */
+    @State(Scope.Thread)
+    public static class Producer {
+        /** Fraction of enqueued orders that are immediately dispatchable */
+        @Param({"0.0", "0.1", "1.0"})
+        public double triggerRatio;
+
+        /** Source of the trigger decision */
+        private final Random random = new Random(42);
+
+        /** Varies order prices */
+        private int n;
+
+        /**
+         * Creates the next order to enqueue.
+         *
+         * @return the order
+         */
+        StopBuyOrder nextOrder() {
+            n++;
+            return (random.nextDouble() < triggerRatio)
+                   ? OrderQueueFixture.triggeringOrder(n)
+                   : OrderQueueFixture.restingOrder(n);
+        }
+    }
+
+    /**
+     * Enqueue from a single producer thread.
+     *
+     * @param fixture the queue under test
+     * @param producer the producer state
+     */
+    @Benchmark
+    @Threads(1)
+    public void enqueueSingleProducer(final OrderQueueFixture fixture,
+                                      final Producer producer) {
+        fixture.enqueue(producer.nextOrder());
+    }
+
+    /**
+     * Enqueue from four producer threads.
+     *
+     * @param fixture the queue under test
+     * @param producer the producer state
+     */
+    @Benchmark
+    @Threads(4)
+    public void enqueueFourProducers(final OrderQueueFixture fixture,
+                                     final Producer producer) {
+        fixture.enqueue(producer.nextOrder());
+    }
+}
@@ -0,0 +1,191 @@
+package edu.uw.beardcl.bench;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import edu.uw.beardcl.broker.SimpleOrderQueue;
+import edu.uw.beardcl.broker.StopBuyOrderComparator;
+import edu.uw.beardcl.broker.StopBuyOrderDispatchFilter;
+import edu.uw.beardcl.concurrentbroker.ExecutorOrderQueue;
+import edu.uw.beardcl.concurrentbroker.ThreadedOrderQueue;
+import edu.uw.ext.framework.broker.OrderProcessor;
+import edu.uw.ext.framework.broker.OrderQueue;
+import edu.uw.ext.framework.order.Order;
+import edu.uw.ext.framework.order.StopBuyOrder;
+
+/**
+ * Shared benchmark state, a stop buy order queue of the selected
+ * implementation pre-loaded with a number of resting (non-dispatchable)
+ * orders.  A fresh queue is created for each iteration so the resting order
+ * count does not drift too far from the configured value.
+ *
+ * @author Chester Beard
+ */
+@State(Scope.Benchmark)
+public class OrderQueueFixture {
+    /** The OrderQueue implementations under test */
+    public enum QueueType {
+        /** SimpleOrderQueue, dispatches on the enqueuing thread */
+        SIMPLE,
+        /** ThreadedOrderQueue, dispatches on a dedicated thread */
+        THREADED,
+        /** ExecutorOrderQueue, dispatches on a thread pool */
+        EXECUTOR
+    }
+
+    /** The market price used as the dispatch threshold */
+    static final int MARKET_PRICE = 10_000;
+
+    /** Account placing all orders */
+    static final String ACCOUNT = "benchmark";
+
+    /** Ticker for all orders */
+    static final String TICKER = "BA";
+
+    /** Shares per order */
+    static final int SHARES = 100;
+
+    /** Size of the executor's thread pool */
+    private static final int POOL_SIZE = 4;
+
+    /** The queue implementation */
+    @Param({"SIMPLE", "THREADED", "EXECUTOR"})
+    public QueueType queueType;
+
+    /** Number of non-dispatchable orders resting in the queue */
+    @Param({"0", "1000", "100000"})
+    public int restingOrders;
+
+    /** The queue under test */
+    OrderQueue<StopBuyOrder> queue;
+
+    /** Counts processed orders */
+    final CountingProcessor processor = new CountingProcessor();
+
+    /** Executor used by the EXECUTOR queue */
+    private ExecutorService executor;
+
+    /**
+     * Creates the executor.
+     */
+    @Setup(Level.Trial)
+    public void setUpTrial() {
+        executor = Executors.newFixedThreadPool(POOL_SIZE);
+    }
+
+    /**
+     * Creates and pre-loads a fresh queue.
+     */
+    @Setup(Level.Iteration)
+    public void setUpIteration() {
+        final StopBuyOrderDispatchFilter filter = new StopBuyOrderDispatchFilter(MARKET_PRICE);
+        final StopBuyOrderComparator cmp = new StopBuyOrderComparator();
+        switch (queueType) {
+        case THREADED:
+            queue = new ThreadedOrderQueue<StopBuyOrder>("Benchmark", cmp, filter);
+            break;
+        case EXECUTOR:
+            queue = new ExecutorOrderQueue<StopBuyOrder>(cmp, filter, executor);
+            break;
+        default:
+            queue = new SimpleOrderQueue<StopBuyOrder>(cmp, filter);
+            break;
+        }
+        queue.setOrderProcessor(processor);
+
+        for (int i = 0; i < restingOrders; i++) {
+            queue.enqueue(restingOrder(i));
+        }
+    }
+
+    /**
+     * Stops the iteration's queue, so dispatch threads don't accumulate over
+     * the trial.
+     */
+    @TearDown(Level.Iteration)
+    public void tearDownIteration() {
+        if (queue instanceof ThreadedOrderQueue) {
+            ((ThreadedOrderQueue<StopBuyOrder>) queue).shutdown();
+        }
+    }
+
+    /**
+     * Shuts down the executor.
+     *
+     * @throws InterruptedException if interrupted while awaiting shutdown
+     */
+    @TearDown(Level.Trial)
+    public void tearDownTrial() throws InterruptedException {
+        executor.shutdown();
+        executor.awaitTermination(1, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Enqueues an order.  The SimpleOrderQueue is not thread safe, as in
+     * SimpleBroker access to it is serialized.
+     *
+     * @param order the order to enqueue
+     */
+    void enqueue(final StopBuyOrder order) {
+        if (queueType == QueueType.SIMPLE) {
+            synchronized (queue) {
+                queue.enqueue(order);
+            }
+        } else {
+            queue.enqueue(order);
+        }
+    }
+
+    /**
+     * Creates an order that will not be dispatched at the market price.
+     *
+     * @param n varies the order price
+     *
+     * @return the order
+     */
+    static StopBuyOrder restingOrder(final int n) {
+        return new StopBuyOrder(ACCOUNT, SHARES, TICKER, MARKET_PRICE + 1 + (n % 100));
+    }
+
+    /**
+     * Creates an order that will be dispatched at the market price.
+     *
+     * @param n varies the order price
+     *
+     * @return the order
+     */
+    static StopBuyOrder triggeringOrder(final int n) {
+        return new StopBuyOrder(ACCOUNT, SHARES, TICKER, MARKET_PRICE - (n % 100));
+    }
+
+    /**
+     * Order processor that counts the orders it is given.
+     */
+    static final class CountingProcessor implements OrderProcessor {
+        /** Number of orders processed */
+        private final AtomicLong processed = new AtomicLong();
+
+        @Override
+        public void process(final Order order) {
+            processed.incrementAndGet();
+        }
+
+        /**
+         * Gets the number of orders processed.
+         *
+         * @return the number of orders processed
+         */
+        long processed() {
+            return processed.get();
+        }
+    }
+}
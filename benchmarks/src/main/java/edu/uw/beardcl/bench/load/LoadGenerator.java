@@ -0,0 +1,387 @@
+package edu.uw.beardcl.bench.load;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import edu.uw.beardcl.account.SimpleAccountManager;
+import edu.uw.beardcl.broker.SimpleBroker;
+import edu.uw.beardcl.concurrentbroker.ExecutorBroker;
+import edu.uw.beardcl.concurrentbroker.ThreadedBroker;
+import edu.uw.beardcl.dao.JsonAccountDao;
+import edu.uw.beardcl.metrics.LatencyHistogram;
+import edu.uw.beardcl.metrics.OrderTracer;
+import edu.uw.ext.framework.account.AccountManager;
+import edu.uw.ext.framework.broker.Broker;
+import edu.uw.ext.framework.broker.BrokerException;
+import edu.uw.ext.framework.order.MarketBuyOrder;
+import edu.uw.ext.framework.order.MarketSellOrder;
+import edu.uw.ext.framework.order.Order;
+import edu.uw.ext.framework.order.StopBuyOrder;
+import edu.uw.ext.framework.order.StopSellOrder;
+
+/**
+ * Drives a broker with synthetic order flow from many simulated accounts
+ * against a SimulatedExchange fed by Poisson or recorded ticks, and reports
+ * the sustained execution throughput and the order latency percentiles, from
+ * the intended placement time to execution by the exchange.
+ *
+ * Configuration is supplied as name=value arguments:
+ * <pre>
+ *   brokers=SIMPLE,THREADED,EXECUTOR  broker implementations to run, in turn
+ *   tickers=100                       size of the ticker universe
+ *   accounts=1000                     number of simulated accounts
+ *   producers=4                       order producing threads
+ *   orderRate=2000                    mean orders per second, all producers
+ *   stopRatio=0.5                     fraction of orders that are stop orders
+ *   tickRate=1000                     mean Poisson ticks per second
+ *   ticks=                            recorded tick file, replaces Poisson ticks
+ *   executeLatencyMicros=100          time taken by executeTrade
+ *   durationSeconds=30                length of each run
+ *   drainSeconds=10                   time allowed for queued orders to execute
+ * </pre>
+ *
+ * @author Chester Beard
+ */
+public final class LoadGenerator {
+    /** This class' logger */
+    private static final Logger logger = LoggerFactory.getLogger(LoadGenerator.class);
+
+    /** Initial price of every ticker */
+    private static final int INITIAL_PRICE = 10_000;
+
+    /** Largest distance of a stop order price from the current price */
+    private static final int STOP_PRICE_RANGE = 5;
+
+    /** Maximum shares per order */
+    private static final int MAX_SHARES = 100;
+
+    /** Password of all simulated accounts */
+    private static final String PASSWORD = "password";
+
+    /** Initial balance of all simulated accounts */
+    private static final int BALANCE = 1_000_000_000;
+
+    /** The broker implementations */
+    enum BrokerType {
+        /** SimpleBroker */
+        SIMPLE,
+        /** ThreadedBroker */
+        THREADED,
+        /** ExecutorBroker */
+        EXECUTOR
+    }
+
+    /** The configuration */
+    private final Properties config;
+
+    /** Intended placement time of each order awaiting execution, by order id */
+    private final ConcurrentMap<Integer, Long> placed = new ConcurrentHashMap<>();
+
+    /** Placement to execution latencies */
+    private final LatencyHistogram latency = new LatencyHistogram();
+
+    /** Number of orders placed */
+    private final AtomicLong placedCount = new AtomicLong();
+
+    /** Number of orders executed */
+    private final AtomicLong executedCount = new AtomicLong();
+
+    /** Number of orders rejected by the broker */
+    private final AtomicLong rejectedCount = new AtomicLong();
+
+    /** Cleared to stop the producer and tick threads */
+    private volatile boolean running;
+
+    /**
+     * Constructor.
+     *
+     * @param config the configuration
+     */
+    private LoadGenerator(final Properties config) {
+        this.config = config;
+    }
+
+    /**
+     * Runs the configured brokers in turn and prints a report for each.
+     *
+     * @param args name=value configuration arguments
+     *
+     * @throws Exception if a run fails
+     */
+    public static void main(final String[] args) throws Exception {
+        final Properties config = new Properties();
+        for (final String arg : args) {
+            final int eq = arg.indexOf('=');
+            if (eq < 0) {
+                throw new IllegalArgumentException("Expected name=value, got " + arg);
+            }
+            config.setProperty(arg.substring(0, eq).trim(), arg.substring(eq + 1).trim());
+        }
+
+        for (final String type : config.getProperty("brokers", "SIMPLE,THREADED,EXECUTOR").split(",")) {
+            OrderTracer.getInstance().reset();
+            final LoadGenerator generator = new LoadGenerator(config);
+            System.out.println(generator.run(BrokerType.valueOf(type.trim())));
+        }
+    }
+
+    /**
+     * Performs a run against a broker.
+     *
+     * @param type the broker implementation
+     *
+     * @return the report
+     *
+     * @throws Exception if the run fails
+     */
+    private String run(final BrokerType type) throws Exception {
+        final int tickerCount = intProperty("tickers", 100);
+        final int accountCount = intProperty("accounts", 1000);
+        final int producerCount = intProperty("producers", 4);
+        final double orderRate = doubleProperty("orderRate", 2000.0);
+        final double stopRatio = doubleProperty("stopRatio", 0.5);
+        final long durationNanos = TimeUnit.SECONDS.toNanos(intProperty("durationSeconds", 30));
+        final long drainNanos = TimeUnit.SECONDS.toNanos(intProperty("drainSeconds", 10));
+
+        final SimulatedExchange exchange =
+            new SimulatedExchange(tickerCount, INITIAL_PRICE, intProperty("executeLatencyMicros", 100),
+                                  new SimulatedExchange.TradeListener() {
+                                      @Override
+                                      public void tradeExecuted(final Order order, final int price) {
+                                          recordExecution(order);
+                                      }
+                                  });
+        final AccountManager acctMgr =
+            new SimpleAccountManager(new JsonAccountDao(Files.createTempDirectory("loadgen").toFile()));
+        final Broker broker = newBroker(type, acctMgr, exchange);
+
+        final String[] accounts = new String[accountCount];
+        for (int i = 0; i < accountCount; i++) {
+            accounts[i] = String.format("loadacct%06d", i);
+            broker.createAccount(accounts[i], PASSWORD, BALANCE);
+        }
+
+        exchange.open();
+        running = true;
+        final long start = System.nanoTime();
+        final List<Thread> threads = new ArrayList<>();
+        threads.add(startTickThread(exchange, start));
+        for (int i = 0; i < producerCount; i++) {
+            threads.add(startProducer(i, broker, exchange, accounts,
+                                      orderRate / producerCount, stopRatio, start));
+        }
+
+        LockSupport.parkNanos(durationNanos);
+        running = false;
+        for (final Thread t : threads) {
+            t.join();
+        }
+        final long placedAtEnd = placedCount.get();
+        final long executedAtEnd = executedCount.get();
+
+        // allow queued orders to drain, stop once no progress is being made
+        final long drainDeadline = System.nanoTime() + drainNanos;
+        long lastExecuted = -1;
+        while (System.nanoTime() < drainDeadline && executedCount.get() != lastExecuted) {
+            lastExecuted = executedCount.get();
+            TimeUnit.MILLISECONDS.sleep(200);
+        }
+
+        broker.close();
+        exchange.close();
+
+        final double seconds = (double) durationNanos / TimeUnit.SECONDS.toNanos(1);
+        return String.format("%s broker: placed=%d (%.0f/s) rejected=%d executed=%d (%.0f/s sustained)"
+                           + " executed-after-drain=%d resting=%d%n"
+                           + "  placement to execution %s%n%s",
+                             type, placedAtEnd, placedAtEnd / seconds, rejectedCount.get(),
+                             executedAtEnd, executedAtEnd / seconds,
+                             executedCount.get(), placed.size(),
+                             latency, OrderTracer.getInstance().dump());
+    }
+
+    /**
+     * Records the execution of an order.
+     *
+     * @param order the executed order
+     */
+    private void recordExecution(final Order order) {
+        final Long intended = placed.remove(order.getOrderId());
+        if (intended != null) {
+            latency.record(System.nanoTime() - intended);
+        }
+        executedCount.incrementAndGet();
+    }
+
+    /**
+     * Instantiates a broker.
+     *
+     * @param type the broker implementation
+     * @param acctMgr the account manager
+     * @param exchange the exchange
+     *
+     * @return the broker
+     */
+    private static Broker newBroker(final BrokerType type, final AccountManager acctMgr,
+                                    final SimulatedExchange exchange) {
+        final String name = "LoadGen-" + type;
+        switch (type) {
+        case THREADED:
+            return new ThreadedBroker(name, acctMgr, exchange);
+        case EXECUTOR:
+            return new ExecutorBroker(name, acctMgr, exchange);
+        default:
+            return new SimpleBroker(name, acctMgr, exchange);
+        }
+    }
+
+    /**
+     * Starts the thread feeding ticks to the exchange, at the tick offsets.
+     *
+     * @param exchange the exchange
+     * @param start the start of the run
+     *
+     * @return the started thread
+     *
+     * @throws IOException if the tick recording can't be opened
+     */
+    private Thread startTickThread(final SimulatedExchange exchange, final long start)
+        throws IOException {
+        final String recording = config.getProperty("ticks", "");
+        final TickSource source = recording.isEmpty()
+            ? new PoissonTickSource(exchange.getTickers(), INITIAL_PRICE,
+                                    doubleProperty("tickRate", 1000.0), 1L)
+            : new RecordedTickSource(Paths.get(recording));
+
+        final Thread t = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Tick tick;
+                    while (running && (tick = source.next()) != null) {
+                        awaitTime(start + tick.getOffsetNanos());
+                        exchange.tick(tick.getTicker(), tick.getPrice());
+                    }
+                } catch (final IOException ex) {
+                    logger.error("Unable to read ticks, ticking stopped.", ex);
+                }
+            }
+        }, "LoadGen-Ticks");
+        t.start();
+        return t;
+    }
+
+    /**
+     * Starts an order producing thread, orders are placed as a Poisson
+     * process at the specified rate.
+     *
+     * @param n the producer number
+     * @param broker the broker to place orders with
+     * @param exchange the exchange, for current prices
+     * @param accounts the simulated account names
+     * @param rate mean orders per second
+     * @param stopRatio fraction of orders that are stop orders
+     * @param start the start of the run
+     *
+     * @return the started thread
+     */
+    private Thread startProducer(final int n, final Broker broker,
+                                 final SimulatedExchange exchange, final String[] accounts,
+                                 final double rate, final double stopRatio, final long start) {
+        final double meanIntervalNanos = TimeUnit.SECONDS.toNanos(1) / rate;
+        final String[] tickers = exchange.getTickers();
+        final Thread t = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                final Random random = new Random(n);
+                long intended = start;
+                while (running) {
+                    intended += (long) (-Math.log(1.0 - random.nextDouble()) * meanIntervalNanos);
+                    awaitTime(intended);
+
+                    final String account = accounts[random.nextInt(accounts.length)];
+                    final String ticker = tickers[random.nextInt(tickers.length)];
+                    final int shares = 1 + random.nextInt(MAX_SHARES);
+                    final boolean buy = random.nextBoolean();
+                    final int price = exchange.priceOf(ticker)
+                                    + random.nextInt(2 * STOP_PRICE_RANGE + 1) - STOP_PRICE_RANGE;
+                    try {
+                        if (random.nextDouble() < stopRatio) {
+                            if (buy) {
+                                final StopBuyOrder order = new StopBuyOrder(account, shares, ticker, price);
+                                placed.put(order.getOrderId(), intended);
+                                broker.placeOrder(order);
+                            } else {
+                                final StopSellOrder order = new StopSellOrder(account, shares, ticker, price);
+                                placed.put(order.getOrderId(), intended);
+                                broker.placeOrder(order);
+                            }
+                        } else if (buy) {
+                            final MarketBuyOrder order = new MarketBuyOrder(account, shares, ticker);
+                            placed.put(order.getOrderId(), intended);
+                            broker.placeOrder(order);
+                        } else {
+                            final MarketSellOrder order = new MarketSellOrder(account, shares, ticker);
+                            placed.put(order.getOrderId(), intended);
+                            broker.placeOrder(order);
+                        }
+                        placedCount.incrementAndGet();
+                    } catch (final BrokerException ex) {
+                        rejectedCount.incrementAndGet();
+                    }
+                }
+            }
+        }, "LoadGen-Producer-" + n);
+        t.start();
+        return t;
+    }
+
+    /**
+     * Waits until the specified time, or the run is stopped.
+     *
+     * @param nanoTime the time to wait until, relative to System.nanoTime
+     */
+    private void awaitTime(final long nanoTime) {
+        long remaining;
+        while (running && (remaining = nanoTime - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(remaining);
+        }
+    }
+
+    /**
+     * Gets an integer configuration value.
+     *
+     * @param name the property name
+     * @param defaultValue the default value
+     *
+     * @return the value
+     */
+    private int intProperty(final String name, final int defaultValue) {
+        return Integer.parseInt(config.getProperty(name, Integer.toString(defaultValue)));
+    }
+
+    /**
+     * Gets a floating point configuration value.
+     *
+     * @param name the property name
+     * @param defaultValue the default value
+     *
+     * @return the value
+     */
+    private double doubleProperty(final String name, final double defaultValue) {
+        return Double.parseDouble(config.getProperty(name, Double.toString(defaultValue)));
+    }
+}
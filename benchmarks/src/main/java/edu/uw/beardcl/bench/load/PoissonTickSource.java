@@ -0,0 +1,57 @@
+package edu.uw.beardcl.bench.load;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Generates ticks as a Poisson process, exponentially distributed inter-tick
+ * times, each tick moving a random ticker's price one step up or down.
+ *
+ * @author Chester Beard
+ */
+public final class PoissonTickSource implements TickSource {
+    /** Lowest price a ticker may reach */
+    private static final int MIN_PRICE = 1;
+
+    /** The ticker symbols */
+    private final String[] tickers;
+
+    /** Current price of each ticker */
+    private final int[] prices;
+
+    /** Mean time between ticks, in nanoseconds */
+    private final double meanIntervalNanos;
+
+    /** Random source */
+    private final Random random;
+
+    /** Offset of the last tick */
+    private long offsetNanos;
+
+    /**
+     * Constructor.
+     *
+     * @param tickers the ticker symbols
+     * @param initialPrice the initial price of every ticker
+     * @param ticksPerSecond the mean tick rate
+     * @param seed the random seed
+     */
+    public PoissonTickSource(final String[] tickers, final int initialPrice,
+                             final double ticksPerSecond, final long seed) {
+        this.tickers = tickers.clone();
+        prices = new int[tickers.length];
+        for (int i = 0; i < prices.length; i++) {
+            prices[i] = initialPrice;
+        }
+        meanIntervalNanos = TimeUnit.SECONDS.toNanos(1) / ticksPerSecond;
+        random = new Random(seed);
+    }
+
+    @Override
+    public Tick next() {
+        offsetNanos += (long) (-Math.log(1.0 - random.nextDouble()) * meanIntervalNanos);
+        final int ndx = random.nextInt(tickers.length);
+        prices[ndx] = Math.max(MIN_PRICE, prices[ndx] + (random.nextBoolean() ? 1 : -1));
+        return new Tick(offsetNanos, tickers[ndx], prices[ndx]);
+    }
+}
@@ -0,0 +1,65 @@
+package edu.uw.beardcl.bench.load;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Replays recorded ticks from a CSV file, one tick per line in the form
+ * "offsetMillis,ticker,price".  Blank lines and lines starting with '#' are
+ * ignored.
+ *
+ * @author Chester Beard
+ */
+public final class RecordedTickSource implements TickSource, Closeable {
+    /** Field separator */
+    private static final String SEPARATOR = ",";
+
+    /** Number of fields per line */
+    private static final int FIELD_COUNT = 3;
+
+    /** The recording */
+    private final BufferedReader reader;
+
+    /**
+     * Constructor.
+     *
+     * @param recording the recorded tick file
+     *
+     * @throws IOException if the file can't be opened
+     */
+    public RecordedTickSource(final Path recording) throws IOException {
+        reader = Files.newBufferedReader(recording, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public Tick next() throws IOException {
+        String line;
+        while ((line = reader.readLine()) != null) {
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            final String[] fields = line.split(SEPARATOR);
+            if (fields.length != FIELD_COUNT) {
+                throw new IOException("Malformed tick: " + line);
+            }
+            try {
+                final long offset = TimeUnit.MILLISECONDS.toNanos(Long.parseLong(fields[0].trim()));
+                return new Tick(offset, fields[1].trim(), Integer.parseInt(fields[2].trim()));
+            } catch (final NumberFormatException ex) {
+                throw new IOException("Malformed tick: " + line, ex);
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+}
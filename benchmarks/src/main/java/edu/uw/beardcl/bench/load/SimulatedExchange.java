@@ -0,0 +1,187 @@
+package edu.uw.beardcl.bench.load;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import edu.uw.ext.framework.exchange.ExchangeEvent;
+import edu.uw.ext.framework.exchange.ExchangeListener;
+import edu.uw.ext.framework.exchange.StockExchange;
+import edu.uw.ext.framework.exchange.StockQuote;
+import edu.uw.ext.framework.order.Order;
+
+/**
+ * A StockExchange stand in for load testing.  Prices are driven externally
+ * through tick, and executeTrade takes a configurable amount of time to
+ * simulate the round trip to a real exchange.
+ *
+ * @author Chester Beard
+ */
+public final class SimulatedExchange implements StockExchange {
+    /**
+     * Notified of each executed trade.
+     */
+    public interface TradeListener {
+        /**
+         * Invoked when a trade has been executed.
+         *
+         * @param order the order executed
+         * @param price the execution price
+         */
+        void tradeExecuted(Order order, int price);
+    }
+
+    /** The ticker symbols */
+    private final String[] tickers;
+
+    /** Current price of each ticker */
+    private final ConcurrentMap<String, Integer> prices = new ConcurrentHashMap<>();
+
+    /** Registered exchange listeners */
+    private final List<ExchangeListener> listeners = new CopyOnWriteArrayList<>();
+
+    /** Time taken by executeTrade, in nanoseconds */
+    private final long executeLatencyNanos;
+
+    /** Notified of executed trades, may be null */
+    private final TradeListener tradeListener;
+
+    /** Exchange open flag */
+    private volatile boolean open;
+
+    /**
+     * Constructor.
+     *
+     * @param tickerCount the size of the ticker universe
+     * @param initialPrice the initial price of every ticker
+     * @param executeLatencyMicros time taken by executeTrade, in microseconds
+     * @param tradeListener notified of executed trades, may be null
+     */
+    public SimulatedExchange(final int tickerCount, final int initialPrice,
+                             final long executeLatencyMicros,
+                             final TradeListener tradeListener) {
+        tickers = new String[tickerCount];
+        for (int i = 0; i < tickerCount; i++) {
+            tickers[i] = tickerSymbol(i);
+            prices.put(tickers[i], initialPrice);
+        }
+        executeLatencyNanos = TimeUnit.MICROSECONDS.toNanos(executeLatencyMicros);
+        this.tradeListener = tradeListener;
+    }
+
+    /**
+     * Gets the ticker symbol of the n'th ticker.
+     *
+     * @param n the ticker number
+     *
+     * @return the ticker symbol
+     */
+    public static String tickerSymbol(final int n) {
+        return String.format("T%04d", n);
+    }
+
+    /**
+     * Opens the exchange, notifying listeners.
+     */
+    public void open() {
+        open = true;
+        final ExchangeEvent event = ExchangeEvent.newOpenedEvent(this);
+        for (final ExchangeListener l : listeners) {
+            l.exchangeOpened(event);
+        }
+    }
+
+    /**
+     * Closes the exchange, notifying listeners.
+     */
+    public void close() {
+        open = false;
+        final ExchangeEvent event = ExchangeEvent.newClosedEvent(this);
+        for (final ExchangeListener l : listeners) {
+            l.exchangeClosed(event);
+        }
+    }
+
+    /**
+     * Changes the price of a ticker, notifying listeners.
+     *
+     * @param ticker the ticker symbol
+     * @param price the new price
+     */
+    public void tick(final String ticker, final int price) {
+        if (prices.replace(ticker, price) != null) {
+            final ExchangeEvent event = ExchangeEvent.newPriceChangedEvent(this, ticker, price);
+            for (final ExchangeListener l : listeners) {
+                l.priceChanged(event);
+            }
+        }
+    }
+
+    /**
+     * Gets the current price of a ticker.
+     *
+     * @param ticker the ticker symbol
+     *
+     * @return the price, or -1 if the ticker is unknown
+     */
+    public int priceOf(final String ticker) {
+        final Integer price = prices.get(ticker);
+        return (price == null) ? -1 : price;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return open;
+    }
+
+    @Override
+    public String[] getTickers() {
+        return tickers.clone();
+    }
+
+    @Override
+    public StockQuote getQuote(final String ticker) {
+        final Integer price = prices.get(ticker);
+        return (price == null) ? null : new StockQuote(ticker, price);
+    }
+
+    @Override
+    public void addExchangeListener(final ExchangeListener l) {
+        listeners.add(l);
+    }
+
+    @Override
+    public void removeExchangeListener(final ExchangeListener l) {
+        listeners.remove(l);
+    }
+
+    /**
+     * Executes a trade at the current price, after the configured delay.
+     *
+     * @param order the order to execute
+     *
+     * @return the execution price, or -1 if the exchange is closed or the
+     *         ticker is unknown
+     */
+    @Override
+    public int executeTrade(final Order order) {
+        if (!open) {
+            return -1;
+        }
+        if (executeLatencyNanos > 0) {
+            final long deadline = System.nanoTime() + executeLatencyNanos;
+            long remaining;
+            while ((remaining = deadline - System.nanoTime()) > 0) {
+                LockSupport.parkNanos(remaining);
+            }
+        }
+        final int price = priceOf(order.getStockTicker());
+        if (tradeListener != null) {
+            tradeListener.tradeExecuted(order, price);
+        }
+        return price;
+    }
+}
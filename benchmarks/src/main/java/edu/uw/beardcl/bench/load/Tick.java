@@ -0,0 +1,57 @@
+package edu.uw.beardcl.bench.load;
+
+/**
+ * A price change, occurring at an offset from the start of a run.
+ *
+ * @author Chester Beard
+ */
+public final class Tick {
+    /** Offset from the start of the run, in nanoseconds */
+    private final long offsetNanos;
+
+    /** The ticker symbol */
+    private final String ticker;
+
+    /** The new price */
+    private final int price;
+
+    /**
+     * Constructor.
+     *
+     * @param offsetNanos offset from the start of the run, in nanoseconds
+     * @param ticker the ticker symbol
+     * @param price the new price
+     */
+    public Tick(final long offsetNanos, final String ticker, final int price) {
+        this.offsetNanos = offsetNanos;
+        this.ticker = ticker;
+        this.price = price;
+    }
+
+    /**
+     * Gets the offset from the start of the run.
+     *
+     * @return the offset in nanoseconds
+     */
+    public long getOffsetNanos() {
+        return offsetNanos;
+    }
+
+    /**
+     * Gets the ticker symbol.
+     *
+     * @return the ticker symbol
+     */
+    public String getTicker() {
+        return ticker;
+    }
+
+    /**
+     * Gets the new price.
+     *
+     * @return the price
+     */
+    public int getPrice() {
+        return price;
+    }
+}
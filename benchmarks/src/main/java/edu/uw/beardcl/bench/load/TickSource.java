@@ -0,0 +1,19 @@
+package edu.uw.beardcl.bench.load;
+
+import java.io.IOException;
+
+/**
+ * A source of price changes, in increasing offset order.
+ *
+ * @author Chester Beard
+ */
+public interface TickSource {
+    /**
+     * Gets the next tick.
+     *
+     * @return the next tick, or null if there are no more ticks
+     *
+     * @throws IOException if the ticks can't be read
+     */
+    Tick next() throws IOException;
+}
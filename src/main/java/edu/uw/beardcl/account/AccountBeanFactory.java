@@ -0,0 +1,107 @@
+package edu.uw.beardcl.account;
+
+import org.springframework.beans.BeansException;
+import org.springframework.context.support.ClassPathXmlApplicationContext;
+
+import edu.uw.ext.framework.account.Account;
+import edu.uw.ext.framework.account.AccountFactory;
+import edu.uw.ext.framework.account.Address;
+import edu.uw.ext.framework.account.CreditCard;
+
+/**
+ * Provides the account beans configured in "context.xml".  The application
+ * context is loaded once, on first use, and shared; the Spring bean factory
+ * is thread safe so the beans may be obtained concurrently.
+ *
+ * Prototype instances are not pooled, accounts are returned to, cached and
+ * retained by callers so there is no point at which an instance could safely
+ * be returned to a pool, and with the context shared creating a prototype is
+ * a small fraction of the cost of reading an account.
+ *
+ * @author Chester Beard
+ */
+public final class AccountBeanFactory {
+    /** The bean configuration resource */
+    private static final String CONTEXT_RESOURCE = "context.xml";
+
+    /** The shared instance, created on first use */
+    private static volatile AccountBeanFactory instance;
+
+    /** The application context */
+    private final ClassPathXmlApplicationContext appContext;
+
+    /**
+     * Constructor, loads the application context.
+     *
+     * @throws BeansException if the context can't be loaded
+     */
+    private AccountBeanFactory() throws BeansException {
+        appContext = new ClassPathXmlApplicationContext(CONTEXT_RESOURCE);
+        appContext.registerShutdownHook();
+    }
+
+    /**
+     * Gets the shared instance, loading the application context on first use.
+     *
+     * @return the account bean factory
+     *
+     * @throws BeansException if the context can't be loaded
+     */
+    public static AccountBeanFactory getInstance() throws BeansException {
+        AccountBeanFactory local = instance;
+        if (local == null) {
+            synchronized (AccountBeanFactory.class) {
+                local = instance;
+                if (local == null) {
+                    local = new AccountBeanFactory();
+                    instance = local;
+                }
+            }
+        }
+        return local;
+    }
+
+    /**
+     * Creates a new, empty, account.
+     *
+     * @return the account
+     *
+     * @throws BeansException if the account can't be created
+     */
+    public Account newAccount() throws BeansException {
+        return appContext.getBean(Account.class);
+    }
+
+    /**
+     * Creates a new, empty, address.
+     *
+     * @return the address
+     *
+     * @throws BeansException if the address can't be created
+     */
+    public Address newAddress() throws BeansException {
+        return appContext.getBean(Address.class);
+    }
+
+    /**
+     * Creates a new, empty, credit card.
+     *
+     * @return the credit card
+     *
+     * @throws BeansException if the credit card can't be created
+     */
+    public CreditCard newCreditCard() throws BeansException {
+        return appContext.getBean(CreditCard.class);
+    }
+
+    /**
+     * Gets the configured account factory.
+     *
+     * @return the account factory
+     *
+     * @throws BeansException if the account factory can't be obtained
+     */
+    public AccountFactory getAccountFactory() throws BeansException {
+        return appContext.getBean(AccountFactory.class);
+    }
+}
@@ -0,0 +1,62 @@
+package edu.uw.beardcl.account;
+
+/**
+ * JMX management interface for the account cache.
+ *
+ * @author Chester Beard
+ */
+public interface AccountCacheMBean {
+    /**
+     * Gets the number of lookups satisfied by the cache.
+     *
+     * @return the number of cache hits
+     */
+    long getHitCount();
+
+    /**
+     * Gets the number of lookups that required a DAO read.
+     *
+     * @return the number of cache misses
+     */
+    long getMissCount();
+
+    /**
+     * Gets the fraction of lookups satisfied by the cache.
+     *
+     * @return the hit ratio, 0.0 through 1.0
+     */
+    double getHitRatio();
+
+    /**
+     * Gets the number of accounts evicted as least recently used.
+     *
+     * @return the number of size evictions
+     */
+    long getEvictionCount();
+
+    /**
+     * Gets the number of accounts discarded because they had expired.
+     *
+     * @return the number of expirations
+     */
+    long getExpirationCount();
+
+    /**
+     * Gets the number of accounts currently cached.
+     *
+     * @return the cache size
+     */
+    int getSize();
+
+    /**
+     * Gets the maximum number of accounts cached.
+     *
+     * @return the cache capacity
+     */
+    int getCapacity();
+
+    /**
+     * Discards all cached accounts.
+     */
+    void invalidateAll();
+}
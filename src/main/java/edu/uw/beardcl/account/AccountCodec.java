@@ -0,0 +1,461 @@
+package edu.uw.beardcl.account;
+
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.StreamCorruptedException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import edu.uw.ext.framework.account.Account;
+import edu.uw.ext.framework.account.AccountException;
+import edu.uw.ext.framework.account.Address;
+import edu.uw.ext.framework.account.CreditCard;
+
+/**
+ * A compact, versioned, binary encoding of accounts, including their address
+ * and credit card.  Encoding and decoding access the fields directly through
+ * the Account, Address and CreditCard interfaces, no reflection is used.
+ *
+ * An encoded account is a two byte header, a magic byte and the format
+ * version, followed by the fields.  Integers are zig-zag varints.  Strings
+ * (UTF-8) and byte arrays are prefixed with a varint of their length plus
+ * one, a prefix of zero indicating null.  The address and credit card are
+ * each preceded by a presence byte.
+ *
+ * <pre>
+ *   version 1: name, passwordHash, balance, fullName, phone, email,
+ *              [address: street, city, state, zip],
+ *              [creditCard: accountNumber, issuer, type, holder, expires]
+ * </pre>
+ *
+ * @author Chester Beard
+ */
+public final class AccountCodec {
+    /** Identifies an encoded account */
+    private static final byte MAGIC = (byte) 0xAC;
+
+    /** The current format version */
+    public static final byte VERSION = 1;
+
+    /** Presence byte, the component is absent */
+    private static final byte ABSENT = 0;
+
+    /** Presence byte, the component is present */
+    private static final byte PRESENT = 1;
+
+    /** Length prefix representing null */
+    private static final int NULL_LENGTH = 0;
+
+    /** Typical size of an encoded account, the initial buffer size */
+    private static final int INITIAL_CAPACITY = 256;
+
+    /**
+     * Prevent instantiation.
+     */
+    private AccountCodec() {
+    }
+
+    /**
+     * Encodes an account.
+     *
+     * @param account the account
+     *
+     * @return the encoded account
+     */
+    public static byte[] encode(final Account account) {
+        final Encoder enc = new Encoder();
+        enc.writeByte(MAGIC);
+        enc.writeByte(VERSION);
+        enc.writeString(account.getName());
+        enc.writeBytes(account.getPasswordHash());
+        enc.writeInt(account.getBalance());
+        enc.writeString(account.getFullName());
+        enc.writeString(account.getPhone());
+        enc.writeString(account.getEmail());
+
+        final Address addr = account.getAddress();
+        if (addr == null) {
+            enc.writeByte(ABSENT);
+        } else {
+            enc.writeByte(PRESENT);
+            enc.writeString(addr.getStreetAddress());
+            enc.writeString(addr.getCity());
+            enc.writeString(addr.getState());
+            enc.writeString(addr.getZipCode());
+        }
+
+        final CreditCard cc = account.getCreditCard();
+        if (cc == null) {
+            enc.writeByte(ABSENT);
+        } else {
+            enc.writeByte(PRESENT);
+            enc.writeString(cc.getAccountNumber());
+            enc.writeString(cc.getIssuer());
+            enc.writeString(cc.getType());
+            enc.writeString(cc.getHolder());
+            enc.writeString(cc.getExpirationDate());
+        }
+        return enc.toByteArray();
+    }
+
+    /**
+     * Decodes an account.
+     *
+     * @param data the encoded account
+     *
+     * @return the account
+     *
+     * @throws IOException if the data is not a valid encoded account
+     */
+    public static Account decode(final byte[] data) throws IOException {
+        final Decoder dec = new Decoder(data);
+        readHeader(dec);
+
+        final SimpleAccount acct = new SimpleAccount();
+        try {
+            acct.setName(dec.readString());
+        } catch (final AccountException ex) {
+            final InvalidObjectException ioe = new InvalidObjectException("Invalid account name");
+            ioe.initCause(ex);
+            throw ioe;
+        }
+        acct.setPasswordHash(dec.readBytes());
+        acct.setBalance(dec.readInt());
+        acct.setFullName(dec.readString());
+        acct.setPhone(dec.readString());
+        acct.setEmail(dec.readString());
+
+        if (dec.readPresence()) {
+            final SimpleAddress addr = new SimpleAddress();
+            addr.setStreetAddress(dec.readString());
+            addr.setCity(dec.readString());
+            addr.setState(dec.readString());
+            addr.setZipCode(dec.readString());
+            acct.setAddress(addr);
+        }
+
+        if (dec.readPresence()) {
+            final SimpleCreditCard cc = new SimpleCreditCard();
+            cc.setAccountNumber(dec.readString());
+            cc.setIssuer(dec.readString());
+            cc.setType(dec.readString());
+            cc.setHolder(dec.readString());
+            cc.setExpirationDate(dec.readString());
+            acct.setCreditCard(cc);
+        }
+
+        if (dec.remaining() != 0) {
+            throw new StreamCorruptedException("Unexpected data following account");
+        }
+        return acct;
+    }
+
+    /**
+     * Copies an account, with its address and credit card, by encoding and
+     * decoding it.  The copy shares no state with the original and isn't
+     * registered with an account manager.
+     *
+     * @param account the account to copy
+     *
+     * @return the copy
+     */
+    public static Account copy(final Account account) {
+        try {
+            return decode(encode(account));
+        } catch (final IOException ex) {
+            throw new IllegalStateException("Unable to decode an encoded account.", ex);
+        }
+    }
+
+    /**
+     * Decodes only the password hash of an encoded account.
+     *
+     * @param data the encoded account
+     *
+     * @return the password hash
+     *
+     * @throws IOException if the data is not a valid encoded account
+     */
+    public static byte[] decodePasswordHash(final byte[] data) throws IOException {
+        final Decoder dec = new Decoder(data);
+        readHeader(dec);
+        dec.skipBytes();
+        return dec.readBytes();
+    }
+
+    /**
+     * Decodes only the balance of an encoded account.
+     *
+     * @param data the encoded account
+     *
+     * @return the balance
+     *
+     * @throws IOException if the data is not a valid encoded account
+     */
+    public static int decodeBalance(final byte[] data) throws IOException {
+        final Decoder dec = new Decoder(data);
+        readHeader(dec);
+        dec.skipBytes();
+        dec.skipBytes();
+        return dec.readInt();
+    }
+
+    /**
+     * Reads and validates the header.
+     *
+     * @param dec the decoder
+     *
+     * @throws IOException if the header is invalid or the version unsupported
+     */
+    private static void readHeader(final Decoder dec) throws IOException {
+        if (dec.readByte() != MAGIC) {
+            throw new StreamCorruptedException("Not an encoded account");
+        }
+        final byte version = dec.readByte();
+        if (version != VERSION) {
+            throw new StreamCorruptedException("Unsupported account format version " + version);
+        }
+    }
+
+    /**
+     * Accumulates the encoded fields.
+     */
+    private static final class Encoder {
+        /** The buffer */
+        private byte[] buf = new byte[INITIAL_CAPACITY];
+
+        /** Number of bytes written */
+        private int count;
+
+        /**
+         * Writes a byte.
+         *
+         * @param b the byte
+         */
+        void writeByte(final byte b) {
+            ensureCapacity(1);
+            buf[count++] = b;
+        }
+
+        /**
+         * Writes an unsigned varint, seven bits per byte, least significant
+         * first, the high bit set on all but the last byte.
+         *
+         * @param value the value, treated as unsigned
+         */
+        void writeVarint(final int value) {
+            ensureCapacity(5);
+            int v = value;
+            while ((v & ~0x7F) != 0) {
+                buf[count++] = (byte) ((v & 0x7F) | 0x80);
+                v >>>= 7;
+            }
+            buf[count++] = (byte) v;
+        }
+
+        /**
+         * Writes a signed int, zig-zag encoded so small negative values are
+         * also short.
+         *
+         * @param value the value
+         */
+        void writeInt(final int value) {
+            writeVarint((value << 1) ^ (value >> 31));
+        }
+
+        /**
+         * Writes a length prefixed byte array.
+         *
+         * @param bytes the bytes, may be null
+         */
+        void writeBytes(final byte[] bytes) {
+            if (bytes == null) {
+                writeVarint(NULL_LENGTH);
+            } else {
+                writeVarint(bytes.length + 1);
+                ensureCapacity(bytes.length);
+                System.arraycopy(bytes, 0, buf, count, bytes.length);
+                count += bytes.length;
+            }
+        }
+
+        /**
+         * Writes a length prefixed UTF-8 string.
+         *
+         * @param s the string, may be null
+         */
+        void writeString(final String s) {
+            writeBytes((s == null) ? null : s.getBytes(StandardCharsets.UTF_8));
+        }
+
+        /**
+         * Gets the encoded bytes.
+         *
+         * @return the encoded bytes
+         */
+        byte[] toByteArray() {
+            return Arrays.copyOf(buf, count);
+        }
+
+        /**
+         * Grows the buffer if needed.
+         *
+         * @param needed the number of bytes about to be written
+         */
+        private void ensureCapacity(final int needed) {
+            if (count + needed > buf.length) {
+                buf = Arrays.copyOf(buf, Math.max(buf.length * 2, count + needed));
+            }
+        }
+    }
+
+    /**
+     * Reads encoded fields.
+     */
+    private static final class Decoder {
+        /** The encoded data */
+        private final byte[] data;
+
+        /** The read position */
+        private int pos;
+
+        /**
+         * Constructor.
+         *
+         * @param data the encoded data
+         */
+        Decoder(final byte[] data) {
+            this.data = data;
+        }
+
+        /**
+         * Gets the number of unread bytes.
+         *
+         * @return the number of unread bytes
+         */
+        int remaining() {
+            return data.length - pos;
+        }
+
+        /**
+         * Reads a byte.
+         *
+         * @return the byte
+         *
+         * @throws IOException if the data is exhausted
+         */
+        byte readByte() throws IOException {
+            if (pos >= data.length) {
+                throw new StreamCorruptedException("Truncated account data");
+            }
+            return data[pos++];
+        }
+
+        /**
+         * Reads a presence byte.
+         *
+         * @return true if the component is present
+         *
+         * @throws IOException if the byte is invalid
+         */
+        boolean readPresence() throws IOException {
+            final byte b = readByte();
+            if (b != ABSENT && b != PRESENT) {
+                throw new StreamCorruptedException("Invalid presence byte " + b);
+            }
+            return b == PRESENT;
+        }
+
+        /**
+         * Reads an unsigned varint.
+         *
+         * @return the value
+         *
+         * @throws IOException if the varint is truncated or too long
+         */
+        int readVarint() throws IOException {
+            int value = 0;
+            for (int shift = 0; shift < 35; shift += 7) {
+                final byte b = readByte();
+                value |= (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new StreamCorruptedException("Malformed varint");
+        }
+
+        /**
+         * Reads a zig-zag encoded signed int.
+         *
+         * @return the value
+         *
+         * @throws IOException if the value is malformed
+         */
+        int readInt() throws IOException {
+            final int v = readVarint();
+            return (v >>> 1) ^ -(v & 1);
+        }
+
+        /**
+         * Reads a length prefixed byte array.
+         *
+         * @return the bytes, may be null
+         *
+         * @throws IOException if the array is truncated
+         */
+        byte[] readBytes() throws IOException {
+            final int len = readLength();
+            if (len < 0) {
+                return null;
+            }
+            final byte[] bytes = Arrays.copyOfRange(data, pos, pos + len);
+            pos += len;
+            return bytes;
+        }
+
+        /**
+         * Skips a length prefixed byte array or string.
+         *
+         * @throws IOException if the array is truncated
+         */
+        void skipBytes() throws IOException {
+            final int len = readLength();
+            if (len > 0) {
+                pos += len;
+            }
+        }
+
+        /**
+         * Reads a length prefixed UTF-8 string.
+         *
+         * @return the string, may be null
+         *
+         * @throws IOException if the string is truncated
+         */
+        String readString() throws IOException {
+            final int len = readLength();
+            if (len < 0) {
+                return null;
+            }
+            final String s = new String(data, pos, len, StandardCharsets.UTF_8);
+            pos += len;
+            return s;
+        }
+
+        /**
+         * Reads a length prefix.
+         *
+         * @return the length, -1 for null
+         *
+         * @throws IOException if the length is invalid or exceeds the data
+         */
+        private int readLength() throws IOException {
+            final int len = readVarint() - 1;
+            if (len < -1 || len > remaining()) {
+                throw new StreamCorruptedException("Invalid field length " + len);
+            }
+            return len;
+        }
+    }
+}
@@ -0,0 +1,339 @@
+package edu.uw.beardcl.account;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import edu.uw.beardcl.dao.AccountField;
+import edu.uw.beardcl.dao.AccountProjection;
+import edu.uw.beardcl.dao.ExtendedAccountDao;
+import edu.uw.ext.framework.account.Account;
+import edu.uw.ext.framework.account.AccountException;
+import edu.uw.ext.framework.dao.AccountDao;
+
+/**
+ * An asynchronous facade over an AccountDao.  Operations are queued to a
+ * bounded pool of I/O threads and return immediately with a future, so
+ * callers may have many operations in flight.
+ *
+ * Operations on the same account are performed in the order they were
+ * submitted, each starting only once the previous operation on the account
+ * has completed, so a read always observes the writes submitted before it.
+ * Operations on different accounts proceed concurrently.  The number of
+ * operations outstanding is bounded, once the bound is reached submitting
+ * an operation blocks until one completes, throttling callers to the rate
+ * the DAO sustains.  Operations are only ever performed by the I/O threads,
+ * an operation waiting on its account's previous operation is queued when
+ * that operation completes, never run by the completing thread, so long
+ * chains of operations on an account don't nest.  Operations must not be
+ * submitted from the completion of another operation's future.
+ *
+ * Futures of failed operations complete exceptionally with the
+ * AccountException thrown by the DAO.
+ *
+ * @author Chester Beard
+ */
+public final class AsyncAccountDao {
+    /** This class' logger. */
+    private static final Logger log = LoggerFactory.getLogger(AsyncAccountDao.class);
+
+    /** Time allowed for queued operations to complete on close, in seconds */
+    private static final int CLOSE_TIMEOUT_SECONDS = 30;
+
+    /** The DAO performing the operations */
+    private final ExtendedAccountDao dao;
+
+    /** The I/O threads */
+    private final ThreadPoolExecutor executor;
+
+    /** Permits for the operations that may be outstanding */
+    private final Semaphore outstanding;
+
+    /** The last operation submitted for each account with operations pending */
+    private final ConcurrentMap<String, CompletableFuture<?>> tails = new ConcurrentHashMap<>();
+
+    /**
+     * Constructor.
+     *
+     * @param dao the DAO performing the operations
+     * @param ioThreads the number of I/O threads
+     * @param queueCapacity the maximum number of operations waiting for an
+     *                      I/O thread, or for the previous operation on
+     *                      their account
+     */
+    public AsyncAccountDao(final AccountDao dao, final int ioThreads, final int queueCapacity) {
+        if (ioThreads <= 0 || queueCapacity <= 0) {
+            throw new IllegalArgumentException(String.format(
+                "I/O threads and queue capacity must be positive, %d, %d",
+                ioThreads, queueCapacity));
+        }
+        this.dao = ExtendedAccountDao.of(dao);
+        final AtomicInteger threadCount = new AtomicInteger();
+        executor = new ThreadPoolExecutor(ioThreads, ioThreads, 0L, TimeUnit.MILLISECONDS,
+            new LinkedBlockingQueue<Runnable>(),
+            r -> {
+                final Thread t = new Thread(r, "AccountIo-" + threadCount.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            });
+        outstanding = new Semaphore(ioThreads + queueCapacity);
+    }
+
+    /**
+     * Lookup an account based on username.
+     *
+     * @param accountName the name of the desired account
+     *
+     * @return the future account, completing with null if not located
+     */
+    public CompletableFuture<Account> getAccount(final String accountName) {
+        return submit(accountName, () -> dao.getAccount(accountName));
+    }
+
+    /**
+     * Lookup the password hash of an account.
+     *
+     * @param accountName the name of the account
+     *
+     * @return the future password hash, completing with null if the account
+     *         doesn't exist
+     */
+    public CompletableFuture<byte[]> getPasswordHash(final String accountName) {
+        return submit(accountName, () -> dao.getPasswordHash(accountName));
+    }
+
+    /**
+     * Lookup selected fields of an account.
+     *
+     * @param accountName the name of the account
+     * @param fields the fields to read
+     *
+     * @return the future fields read, completing with null if the account
+     *         doesn't exist
+     */
+    public CompletableFuture<AccountProjection> getProjection(final String accountName,
+                                                              final Set<AccountField> fields) {
+        return submit(accountName, () -> dao.getProjection(accountName, fields));
+    }
+
+    /**
+     * Lookup a number of accounts.  The lookup starts once the operations on
+     * the accounts submitted before it have completed, so it observes their
+     * writes; it isn't ordered before operations submitted after it.
+     *
+     * @param accountNames the names of the desired accounts
+     *
+     * @return the future accounts located, by account name
+     */
+    public CompletableFuture<Map<String, Account>> getAccounts(final Collection<String> accountNames) {
+        final CompletableFuture<Map<String, Account>> future = new CompletableFuture<>();
+        if (!acquire(future)) {
+            return future;
+        }
+        final List<CompletableFuture<?>> previous = new ArrayList<>();
+        for (final String accountName : accountNames) {
+            final CompletableFuture<?> tail = tails.get(accountName);
+            if (tail != null) {
+                previous.add(tail);
+            }
+        }
+
+        if (previous.isEmpty()) {
+            execute(future, () -> dao.getAccounts(accountNames));
+        } else {
+            CompletableFuture.allOf(previous.toArray(new CompletableFuture<?>[0]))
+                .whenComplete((result, failure) -> execute(future, () -> dao.getAccounts(accountNames)));
+        }
+        return future;
+    }
+
+    /**
+     * Adds or updates an account.
+     *
+     * @param account the account to add/update
+     *
+     * @return a future completing once the account is written
+     */
+    public CompletableFuture<Void> setAccount(final Account account) {
+        return submit(account.getName(), () -> {
+            dao.setAccount(account);
+            return null;
+        });
+    }
+
+    /**
+     * Remove an account.
+     *
+     * @param accountName the name of the account to remove
+     *
+     * @return a future completing once the account is removed
+     */
+    public CompletableFuture<Void> deleteAccount(final String accountName) {
+        return submit(accountName, () -> {
+            dao.deleteAccount(accountName);
+            return null;
+        });
+    }
+
+    /**
+     * Gets the number of operations waiting for an I/O thread.
+     *
+     * @return the number of queued operations
+     */
+    public int getQueuedCount() {
+        return executor.getQueue().size();
+    }
+
+    /**
+     * Waits for an operation to complete, unwrapping its failure.
+     *
+     * @param <T> the result type
+     * @param future the operation's future
+     *
+     * @return the result
+     *
+     * @throws AccountException if the operation failed or the wait was
+     *                          interrupted
+     */
+    public static <T> T await(final CompletableFuture<T> future) throws AccountException {
+        try {
+            return future.get();
+        } catch (final InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new AccountException("Interrupted waiting for account operation.", ex);
+        } catch (final ExecutionException ex) {
+            final Throwable cause = ex.getCause();
+            if (cause instanceof AccountException) {
+                throw (AccountException) cause;
+            }
+            throw new AccountException("Account operation failed.", cause);
+        }
+    }
+
+    /**
+     * Completes the queued operations and closes the underlying DAO.
+     *
+     * @exception AccountException if the DAO can't be closed
+     */
+    public void close() throws AccountException {
+        // operations waiting on an account's previous operation aren't yet
+        // queued, let them drain before refusing new work
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(CLOSE_TIMEOUT_SECONDS);
+        try {
+            while (!tails.isEmpty()) {
+                final CompletableFuture<?>[] pending = tails.values().toArray(new CompletableFuture<?>[0]);
+                try {
+                    CompletableFuture.allOf(pending).get(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                } catch (final ExecutionException ex) {
+                    // failures are reported to the operations' callers
+                }
+            }
+            executor.shutdown();
+            if (!executor.awaitTermination(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)) {
+                log.warn("Timed out waiting for account operations to complete.");
+            }
+        } catch (final TimeoutException ex) {
+            log.warn("Timed out waiting for account operations to complete.");
+            executor.shutdown();
+        } catch (final InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            executor.shutdown();
+        }
+        dao.close();
+    }
+
+    /**
+     * Submits an operation on an account, to run once the account's previous
+     * operation has completed.
+     *
+     * @param <T> the result type
+     * @param accountName the account operated on
+     * @param op the operation
+     *
+     * @return the operation's future
+     */
+    private <T> CompletableFuture<T> submit(final String accountName, final Callable<T> op) {
+        final CompletableFuture<T> future = new CompletableFuture<>();
+        if (!acquire(future)) {
+            return future;
+        }
+        final CompletableFuture<?> previous = tails.put(accountName, future);
+        future.whenComplete((result, failure) -> tails.remove(accountName, future));
+
+        if (previous == null) {
+            execute(future, op);
+        } else {
+            previous.whenComplete((result, failure) -> execute(future, op));
+        }
+        return future;
+    }
+
+    /**
+     * Acquires a permit for an operation, waiting for an outstanding
+     * operation to complete if necessary.
+     *
+     * @param future the operation's future, completed exceptionally if the
+     *               wait is interrupted
+     *
+     * @return true if the permit was acquired
+     */
+    private boolean acquire(final CompletableFuture<?> future) {
+        try {
+            outstanding.acquire();
+            return true;
+        } catch (final InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            future.completeExceptionally(
+                new AccountException("Interrupted waiting to submit account operation.", ex));
+            return false;
+        }
+    }
+
+    /**
+     * Queues an operation to the I/O threads, releasing its permit once it
+     * completes.
+     *
+     * @param <T> the result type
+     * @param future the future to complete with the operation's result
+     * @param op the operation
+     */
+    private <T> void execute(final CompletableFuture<T> future, final Callable<T> op) {
+        try {
+            executor.execute(() -> {
+                T result = null;
+                Exception failure = null;
+                try {
+                    result = op.call();
+                } catch (final Exception ex) {
+                    failure = ex;
+                }
+                outstanding.release();
+                if (failure == null) {
+                    future.complete(result);
+                } else {
+                    future.completeExceptionally(failure);
+                }
+            });
+        } catch (final RejectedExecutionException ex) {
+            outstanding.release();
+            future.completeExceptionally(new AccountException("Account DAO has been closed.", ex));
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package edu.uw.beardcl.account;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Holds the canonical balance of each account in use by an account manager.
+ * Every account instance registered with the manager shares a single
+ * balance cell per account name, so fills applied concurrently to different
+ * instances of the same account are never lost.  Balances are adjusted by
+ * compare-and-set on the cell, without locking.
+ * <p>
+ * The ledger references the cells weakly, the account instances hold them.
+ * Once no instance of an account remains reachable its entry is evicted, so
+ * the ledger is bounded by the accounts in use rather than growing with
+ * every account ever loaded.  An account is persisted through a reachable
+ * instance, so an evicted balance is the one last written to the DAO.
+ *
+ * @author Chester Beard
+ */
+public final class BalanceLedger {
+    /** The balance cells, by account name */
+    private final ConcurrentMap<String, BalanceRef> balances = new ConcurrentHashMap<>();
+
+    /** Receives the references to cells that have been collected */
+    private final ReferenceQueue<AtomicInteger> collected = new ReferenceQueue<>();
+
+    /**
+     * Weak reference to a balance cell, remembering the account it belongs to
+     * so the entry can be removed once the cell is collected.
+     */
+    private static final class BalanceRef extends WeakReference<AtomicInteger> {
+        /** The account name */
+        private final String accountName;
+
+        /**
+         * Constructor.
+         *
+         * @param accountName the account name
+         * @param cell the balance cell
+         * @param queue the queue to enqueue on once the cell is collected
+         */
+        BalanceRef(final String accountName, final AtomicInteger cell,
+                   final ReferenceQueue<AtomicInteger> queue) {
+            super(cell, queue);
+            this.accountName = accountName;
+        }
+    }
+
+    /**
+     * Registers an account instance's balance.  If the account is already in
+     * the ledger its existing cell is canonical and is returned, otherwise a
+     * cell holding the instance's balance is created.  The caller must hold
+     * the returned cell for as long as the instance is in use.
+     *
+     * @param accountName the account name
+     * @param balance the balance of the account instance being registered
+     *
+     * @return the canonical balance cell
+     */
+    public AtomicInteger register(final String accountName, final int balance) {
+        expungeCollected();
+        while (true) {
+            final BalanceRef ref = balances.get(accountName);
+            final AtomicInteger cell = (ref == null) ? null : ref.get();
+            if (cell != null) {
+                return cell;
+            }
+            final AtomicInteger newCell = new AtomicInteger(balance);
+            final BalanceRef newRef = new BalanceRef(accountName, newCell, collected);
+            if ((ref == null) ? balances.putIfAbsent(accountName, newRef) == null
+                              : balances.replace(accountName, ref, newRef)) {
+                return newCell;
+            }
+        }
+    }
+
+    /**
+     * Gets the balance of an account in use.
+     *
+     * @param accountName the account name
+     *
+     * @return the canonical balance, null if the account isn't in the ledger
+     */
+    public Integer getBalance(final String accountName) {
+        final BalanceRef ref = balances.get(accountName);
+        final AtomicInteger cell = (ref == null) ? null : ref.get();
+        return (cell == null) ? null : cell.get();
+    }
+
+    /**
+     * Removes an account from the ledger, instances already registered keep
+     * their cell but it is no longer canonical.
+     *
+     * @param accountName the account name
+     */
+    public void remove(final String accountName) {
+        balances.remove(accountName);
+    }
+
+    /**
+     * Gets the number of accounts in the ledger.
+     *
+     * @return the number of accounts whose balance is held
+     */
+    public int size() {
+        expungeCollected();
+        return balances.size();
+    }
+
+    /**
+     * Removes the entries whose cells have been collected.
+     */
+    private void expungeCollected() {
+        BalanceRef ref;
+        while ((ref = (BalanceRef) collected.poll()) != null) {
+            balances.remove(ref.accountName, ref);
+        }
+    }
+}
@@ -0,0 +1,368 @@
+package edu.uw.beardcl.account;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import edu.uw.beardcl.dao.AccountField;
+import edu.uw.beardcl.dao.AccountProjection;
+import edu.uw.beardcl.dao.ExtendedAccountDao;
+import edu.uw.ext.framework.account.Account;
+import edu.uw.ext.framework.account.AccountException;
+import edu.uw.ext.framework.dao.AccountDao;
+
+/**
+ * An AccountDao decorator providing a bounded read-through cache of accounts.
+ * Accounts are evicted when least recently used once the capacity is reached,
+ * and expire a fixed time after being loaded or stored.  Stored accounts are
+ * written through to the underlying DAO and replace the cached account;
+ * deleted accounts are invalidated.
+ *
+ * The cached account instance is returned to every caller, so all callers
+ * observe, and persist, the same account state.
+ *
+ * @author Chester Beard
+ */
+public final class CachingAccountDao implements ExtendedAccountDao, AccountCacheMBean {
+    /** The DAO being cached */
+    private final ExtendedAccountDao dao;
+
+    /** Maximum number of cached accounts */
+    private final int capacity;
+
+    /** Time an account remains cached, in nanoseconds */
+    private final long ttlNanos;
+
+    /** The cached accounts in access order, guarded by this */
+    private final LinkedHashMap<String, CachedAccount> cache;
+
+    /** Incremented on every invalidation, guarded by this; loads begun
+     *  before an invalidation are not cached */
+    private long generation;
+
+    /** Number of cache hits */
+    private final AtomicLong hits = new AtomicLong();
+
+    /** Number of cache misses */
+    private final AtomicLong misses = new AtomicLong();
+
+    /** Number of size evictions */
+    private final AtomicLong evictions = new AtomicLong();
+
+    /** Number of expirations */
+    private final AtomicLong expirations = new AtomicLong();
+
+    /**
+     * A cached account and its expiry time.
+     */
+    private static final class CachedAccount {
+        /** The account */
+        private final Account account;
+
+        /** The time the account expires, relative to System.nanoTime */
+        private final long expires;
+
+        /**
+         * Constructor.
+         *
+         * @param account the account
+         * @param expires the expiry time
+         */
+        CachedAccount(final Account account, final long expires) {
+            this.account = account;
+            this.expires = expires;
+        }
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param dao the DAO being cached
+     * @param capacity the maximum number of cached accounts
+     * @param ttlMillis the time an account remains cached, in milliseconds
+     */
+    public CachingAccountDao(final AccountDao dao, final int capacity, final long ttlMillis) {
+        if (capacity <= 0 || ttlMillis <= 0) {
+            throw new IllegalArgumentException(String.format(
+                "Cache capacity and time to live must be positive, %d, %d",
+                capacity, ttlMillis));
+        }
+        this.dao = ExtendedAccountDao.of(dao);
+        this.capacity = capacity;
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+        cache = new LinkedHashMap<String, CachedAccount>(capacity * 4 / 3 + 1, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<String, CachedAccount> eldest) {
+                final boolean evict = size() > CachingAccountDao.this.capacity;
+                if (evict) {
+                    evictions.incrementAndGet();
+                }
+                return evict;
+            }
+        };
+    }
+
+    /**
+     * Lookup an account based on username, reading from the underlying DAO
+     * only if the account isn't cached.
+     *
+     * @param accountName the name of the desired account
+     *
+     * @return the account if located otherwise null
+     */
+    @Override
+    public Account getAccount(final String accountName) {
+        final long loadGeneration;
+        synchronized (this) {
+            final CachedAccount entry = cache.get(accountName);
+            if (entry != null) {
+                if (entry.expires - System.nanoTime() > 0) {
+                    hits.incrementAndGet();
+                    return entry.account;
+                }
+                cache.remove(accountName);
+                expirations.incrementAndGet();
+            }
+            loadGeneration = generation;
+        }
+
+        misses.incrementAndGet();
+        final Account acct = dao.getAccount(accountName);
+        if (acct == null) {
+            return null;
+        }
+
+        synchronized (this) {
+            final CachedAccount current = cache.get(accountName);
+            if (current != null) {
+                // stored or loaded concurrently, use that instance
+                return current.account;
+            }
+            if (generation == loadGeneration) {
+                cache.put(accountName, new CachedAccount(acct, System.nanoTime() + ttlNanos));
+            }
+        }
+        return acct;
+    }
+
+    /**
+     * Lookup a number of accounts, reading those not cached from the
+     * underlying DAO together.
+     *
+     * @param accountNames the names of the desired accounts
+     *
+     * @return the accounts located, by account name
+     *
+     * @exception AccountException if the lookup fails
+     */
+    @Override
+    public Map<String, Account> getAccounts(final Collection<String> accountNames)
+        throws AccountException {
+        final Map<String, Account> accounts = new HashMap<>();
+        final List<String> uncached = new ArrayList<>();
+        final long loadGeneration;
+        synchronized (this) {
+            final long now = System.nanoTime();
+            for (final String accountName : accountNames) {
+                final CachedAccount entry = cache.get(accountName);
+                if (entry != null && entry.expires - now > 0) {
+                    accounts.put(accountName, entry.account);
+                } else {
+                    if (entry != null) {
+                        cache.remove(accountName);
+                        expirations.incrementAndGet();
+                    }
+                    uncached.add(accountName);
+                }
+            }
+            loadGeneration = generation;
+        }
+        hits.addAndGet(accounts.size());
+        if (uncached.isEmpty()) {
+            return accounts;
+        }
+
+        misses.addAndGet(uncached.size());
+        final Map<String, Account> loaded = dao.getAccounts(uncached);
+        synchronized (this) {
+            final long expires = System.nanoTime() + ttlNanos;
+            for (final Map.Entry<String, Account> e : loaded.entrySet()) {
+                final CachedAccount current = cache.get(e.getKey());
+                if (current != null) {
+                    // stored or loaded concurrently, use that instance
+                    accounts.put(e.getKey(), current.account);
+                } else {
+                    if (generation == loadGeneration) {
+                        cache.put(e.getKey(), new CachedAccount(e.getValue(), expires));
+                    }
+                    accounts.put(e.getKey(), e.getValue());
+                }
+            }
+        }
+        return accounts;
+    }
+
+    /**
+     * Lookup the password hash of an account, from the cached account if
+     * present.  Accounts aren't loaded into the cache by this lookup.
+     *
+     * @param accountName the name of the account
+     *
+     * @return the password hash, null if the account doesn't exist
+     *
+     * @exception AccountException if the lookup fails
+     */
+    @Override
+    public byte[] getPasswordHash(final String accountName) throws AccountException {
+        synchronized (this) {
+            final CachedAccount entry = cache.get(accountName);
+            if (entry != null && entry.expires - System.nanoTime() > 0) {
+                hits.incrementAndGet();
+                return entry.account.getPasswordHash();
+            }
+        }
+        misses.incrementAndGet();
+        return dao.getPasswordHash(accountName);
+    }
+
+    /**
+     * Lookup selected fields of an account, from the cache if present and
+     * unexpired, otherwise from the underlying DAO without caching.
+     *
+     * @param accountName the name of the account
+     * @param fields the fields to read
+     *
+     * @return the fields read, null if the account doesn't exist
+     *
+     * @exception AccountException if the lookup fails
+     */
+    @Override
+    public AccountProjection getProjection(final String accountName, final Set<AccountField> fields)
+        throws AccountException {
+        synchronized (this) {
+            final CachedAccount entry = cache.get(accountName);
+            if (entry != null && entry.expires - System.nanoTime() > 0) {
+                hits.incrementAndGet();
+                return AccountProjection.of(entry.account, fields);
+            }
+        }
+        misses.incrementAndGet();
+        return dao.getProjection(accountName, fields);
+    }
+
+    /**
+     * Adds or updates an account, writing through to the underlying DAO.
+     *
+     * @param account the account to add/update
+     *
+     * @exception AccountException if operation fails
+     */
+    @Override
+    public void setAccount(final Account account) throws AccountException {
+        try {
+            dao.setAccount(account);
+        } catch (final AccountException ex) {
+            invalidate(account.getName());
+            throw ex;
+        }
+        synchronized (this) {
+            cache.put(account.getName(), new CachedAccount(account, System.nanoTime() + ttlNanos));
+        }
+    }
+
+    /**
+     * Remove the account.
+     *
+     * @param accountName the name of the account to remove
+     *
+     * @exception AccountException if operation fails
+     */
+    @Override
+    public void deleteAccount(final String accountName) throws AccountException {
+        invalidate(accountName);
+        dao.deleteAccount(accountName);
+    }
+
+    /**
+     * Remove all accounts.
+     *
+     * @exception AccountException if operation fails
+     */
+    @Override
+    public void reset() throws AccountException {
+        invalidateAll();
+        dao.reset();
+    }
+
+    /**
+     * Discards all cached accounts and closes the underlying DAO.
+     *
+     * @exception AccountException if the DAO can't be closed
+     */
+    @Override
+    public void close() throws AccountException {
+        invalidateAll();
+        dao.close();
+    }
+
+    /**
+     * Discards a cached account.
+     *
+     * @param accountName the name of the account
+     */
+    public synchronized void invalidate(final String accountName) {
+        generation++;
+        cache.remove(accountName);
+    }
+
+    @Override
+    public synchronized void invalidateAll() {
+        generation++;
+        cache.clear();
+    }
+
+    @Override
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    @Override
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    @Override
+    public double getHitRatio() {
+        final long h = hits.get();
+        final long total = h + misses.get();
+        return (total == 0) ? 0.0 : (double) h / total;
+    }
+
+    @Override
+    public long getEvictionCount() {
+        return evictions.get();
+    }
+
+    @Override
+    public long getExpirationCount() {
+        return expirations.get();
+    }
+
+    @Override
+    public synchronized int getSize() {
+        return cache.size();
+    }
+
+    @Override
+    public int getCapacity() {
+        return capacity;
+    }
+}
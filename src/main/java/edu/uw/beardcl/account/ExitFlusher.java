@@ -0,0 +1,48 @@
+package edu.uw.beardcl.account;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Runs the flushes of account DAOs that buffer writes should the JVM exit
+ * before the DAOs are closed.  A single shutdown hook serves every DAO, a
+ * DAO registers its flush when created and unregisters it when closed.
+ *
+ * @author Chester Beard
+ */
+final class ExitFlusher {
+    /** The flushes to run at exit */
+    private static final Set<Runnable> FLUSHES = ConcurrentHashMap.newKeySet();
+
+    static {
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            for (final Runnable flush : FLUSHES) {
+                flush.run();
+            }
+        }, "AccountFlushOnExit"));
+    }
+
+    /**
+     * Not instantiable.
+     */
+    private ExitFlusher() {
+    }
+
+    /**
+     * Registers a flush to run at exit.
+     *
+     * @param flush the flush, must not propagate exceptions
+     */
+    static void register(final Runnable flush) {
+        FLUSHES.add(flush);
+    }
+
+    /**
+     * Unregisters a flush.
+     *
+     * @param flush the flush
+     */
+    static void unregister(final Runnable flush) {
+        FLUSHES.remove(flush);
+    }
+}
@@ -0,0 +1,47 @@
+package edu.uw.beardcl.account;
+
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectStreamException;
+import java.io.Serializable;
+
+/**
+ * Serialization proxy for SimpleAccount, accounts are serialized, for example
+ * when passed to or from a remote broker, in the AccountCodec binary format
+ * rather than by default Java serialization of the object graph.
+ *
+ * @author Chester Beard
+ */
+final class SerializedAccount implements Serializable {
+    /** Version id */
+    private static final long serialVersionUID = 3164470785243957522L;
+
+    /** The encoded account */
+    private final byte[] data;
+
+    /**
+     * Constructor.
+     *
+     * @param data the encoded account
+     */
+    SerializedAccount(final byte[] data) {
+        this.data = data;
+    }
+
+    /**
+     * Replaces this proxy with the decoded account on deserialization.
+     *
+     * @return the account
+     *
+     * @throws ObjectStreamException if the encoded account is invalid
+     */
+    private Object readResolve() throws ObjectStreamException {
+        try {
+            return AccountCodec.decode(data);
+        } catch (final IOException ex) {
+            final InvalidObjectException ioe = new InvalidObjectException("Invalid serialized account");
+            ioe.initCause(ex);
+            throw ioe;
+        }
+    }
+}
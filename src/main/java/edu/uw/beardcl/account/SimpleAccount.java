@@ -1,5 +1,8 @@
 package edu.uw.beardcl.account;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -57,6 +60,9 @@ public final class SimpleAccount implements Account {
     /** Account manager responsible for managing this account */
     private transient AccountManager acctMngr;
 
+    /** The canonical balance cell from the account manager's ledger, once registered */
+    private transient AtomicInteger balanceCell;
+
     /**
      * No parameter constructor, required by JavaBeans.
      */
@@ -156,7 +162,8 @@ public final class SimpleAccount implements Account {
      * @return the current balance of the account
      */
     public int getBalance() {
-        return balance;
+        final AtomicInteger cell = balanceCell;
+        return (cell != null) ? cell.get() : balance;
     }
 
     /**
@@ -166,6 +173,10 @@ public final class SimpleAccount implements Account {
      */
     public void setBalance(final int balance) {
         this.balance = balance;
+        final AtomicInteger cell = balanceCell;
+        if (cell != null) {
+            cell.set(balance);
+        }
     }
 
     /**
@@ -261,39 +272,91 @@ public final class SimpleAccount implements Account {
     /**
      * Sets the account manager responsible for persisting/managing this
      * account. This may be invoked exactly once on any given account, any
-     * subsequent invocations should be ignored.
+     * subsequent invocations should be ignored.  If the manager maintains a
+     * balance ledger the account's balance is thereafter held by the ledger.
      *
      * @param m the account manager
      */
     public void registerAccountManager(final AccountManager m) {
         if (acctMngr == null) {
             acctMngr = m;
-        } else {
+            if (m instanceof SimpleAccountManager && name != null) {
+                final AtomicInteger cell = ((SimpleAccountManager) m).getBalanceLedger()
+                                                                     .register(name, balance);
+                balance = cell.get();
+                balanceCell = cell;
+            }
+        } else if (acctMngr != m) {
             logger.info("Attempting to set the account manager, after it has been initialized.");
         }
     }
 
+    /**
+     * Serializes the account through a SerializedAccount proxy, in the
+     * compact AccountCodec format.
+     *
+     * @return the serialization proxy
+     */
+    private Object writeReplace() {
+        return new SerializedAccount(AccountCodec.encode(this));
+    }
+
     /**
      * Incorporates an the effect of an order in the balance.  Increments or
      * decrements the account balance by the execution price * number of shares
      * in the order and then persists the account, using the account manager.
+     * If the account manager persists asynchronously this returns once the
+     * write is requested, not once it completes; a failed write is logged.
+     * When registered with a ledger the adjustment is applied atomically to
+     * the canonical balance.
      *
      * @param order the order to be reflected in the account
      * @param executionPrice the price the order was executed at
      */
     public void reflectOrder(final Order order, final int executionPrice) {
-        try {
-            balance += order.valueOfOrder(executionPrice);
-            if (acctMngr != null) {
-                acctMngr.persist(this);
-            } else {
-                logger.error("Account manager has not been initialized.",
-                             new Exception());
+        reflectOrderAsync(order, executionPrice).whenComplete((v, ex) -> {
+            if (ex != null) {
+                logger.error(String.format("Failed to persist account %s after adjusting for order.",
+                                           name), ex);
             }
+        });
+    }
+
+    /**
+     * Incorporates the effect of an order in the balance, as reflectOrder,
+     * without waiting for the account to be persisted if the account manager
+     * persists asynchronously.
+     *
+     * @param order the order to be reflected in the account
+     * @param executionPrice the price the order was executed at
+     *
+     * @return a future completing once the account is persisted, completing
+     *         exceptionally with an AccountException if it can't be
+     */
+    public CompletableFuture<Void> reflectOrderAsync(final Order order, final int executionPrice) {
+        final int delta = order.valueOfOrder(executionPrice);
+        final AtomicInteger cell = balanceCell;
+        if (cell != null) {
+            balance = cell.addAndGet(delta);
+        } else {
+            balance += delta;
+        }
+
+        if (acctMngr instanceof SimpleAccountManager) {
+            return ((SimpleAccountManager) acctMngr).persistAsync(this);
+        }
+        final CompletableFuture<Void> persisted = new CompletableFuture<>();
+        if (acctMngr == null) {
+            persisted.completeExceptionally(new AccountException("Account manager has not been initialized."));
+            return persisted;
+        }
+        try {
+            acctMngr.persist(this);
+            persisted.complete(null);
         } catch (final AccountException ex) {
-            logger.error(String.format("Failed to persist account %s after adjusting for order.", name),
-                         ex);
+            persisted.completeExceptionally(ex);
         }
+        return persisted;
     }
 }
 
@@ -1,14 +1,26 @@
 package edu.uw.beardcl.account;
 
-import java.io.UnsupportedEncodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.locks.Lock;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import org.springframework.beans.BeansException;
-import org.springframework.context.support.ClassPathXmlApplicationContext;
 
+import edu.uw.beardcl.dao.AccountField;
+import edu.uw.beardcl.dao.AccountProjection;
+import edu.uw.beardcl.dao.ExtendedAccountDao;
 import edu.uw.ext.framework.account.Account;
 import edu.uw.ext.framework.account.AccountException;
 import edu.uw.ext.framework.account.AccountFactory;
@@ -18,6 +30,10 @@ import edu.uw.ext.framework.dao.AccountDao;
 
 /**
  * A simple account manager that has no persistence, and accepts every login.
+ * Operations are serialized per account name using striped locks, so
+ * operations on different accounts proceed concurrently, the DAO must
+ * therefore be thread safe.  Password hashes are cached, so logins need not
+ * reload the account.
  *
  * @author Chester Beard
  */
@@ -27,13 +43,51 @@ public final class SimpleAccountManager implements AccountManager {
                          LoggerFactory.getLogger(SimpleAccountManager.class);
 
     /** Character encoding to use when converting strings to/from bytes */
-    private static final String ENCODING = "ISO-8859-1";
+    private static final Charset ENCODING = StandardCharsets.ISO_8859_1;
 
     /** The hashing algorithm */
     private static final String ALGORITHM = "SHA1";
 
+    /** Number of lock stripes, bounds the number of concurrent operations */
+    private static final int LOCK_STRIPES = 64;
+
+    /** Maximum number of cached password hashes */
+    private static final int CREDENTIAL_CACHE_SIZE = 10_000;
+
+    /** The fields read by getBalance */
+    private static final Set<AccountField> BALANCE_ONLY =
+        Collections.unmodifiableSet(EnumSet.of(AccountField.BALANCE));
+
+    /** Per thread message digest, digests are costly to obtain and not thread safe */
+    private static final ThreadLocal<MessageDigest> DIGEST = new ThreadLocal<>();
+
     /** The account DAO to use */
-    private AccountDao dao;
+    private volatile ExtendedAccountDao dao;
+
+    /** Asynchronous facade over the DAO, null unless asynchronous I/O is
+     *  enabled, when all DAO operations are made through it */
+    private volatile AsyncAccountDao asyncDao;
+
+    /** Per account name locks */
+    private final StripedLock locks = new StripedLock(LOCK_STRIPES);
+
+    /** Canonical balances of the accounts managed */
+    private final BalanceLedger ledger = new BalanceLedger();
+
+    /** Least recently used cache of password hashes by account name, guarded by itself */
+    private final Map<String, byte[]> credentials =
+        new LinkedHashMap<String, byte[]>(CREDENTIAL_CACHE_SIZE * 4 / 3 + 1, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<String, byte[]> eldest) {
+                return size() > CREDENTIAL_CACHE_SIZE;
+            }
+        };
+
+    /** Incremented when accounts are deleted, credentials read before a
+     *  delete aren't cached after it; guarded by credentials */
+    private long credentialGeneration;
 
     /** The factory to use for creating accounts */
     private AccountFactory accountFactory;
@@ -45,17 +99,42 @@ public final class SimpleAccountManager implements AccountManager {
      * @param dao the DAO to use for persistence
      */
     public SimpleAccountManager(final AccountDao dao) {
-        this.dao = dao;
-        this.accountFactory = new SimpleAccountFactory();
-    	try (ClassPathXmlApplicationContext 
-        		
-        		appContext = new ClassPathXmlApplicationContext("context.xml")) {
-      //      accountFactory = appContext.getBean(AccountFactory.class);
+        this.dao = ExtendedAccountDao.of(dao);
+        try {
+            accountFactory = AccountBeanFactory.getInstance().getAccountFactory();
         } catch (final BeansException ex) {
-            log.error("Unable to create account manager.", ex);
+            log.error("Unable to obtain configured account factory, using SimpleAccountFactory.", ex);
+            accountFactory = new SimpleAccountFactory();
         }
     }
 
+    /**
+     * Creates a new Simple account manager that caches account updates in
+     * memory and writes them back to the specified AccountDao in the
+     * background, see WriteBehindAccountDao.
+     *
+     * @param dao the DAO to use for persistence
+     * @param flushIntervalMillis the interval between write backs, in milliseconds
+     * @param batchSize the number of modified accounts that triggers an early
+     *                  write back
+     */
+    public SimpleAccountManager(final AccountDao dao, final long flushIntervalMillis,
+                                final int batchSize) {
+        this(new WriteBehindAccountDao(dao, flushIntervalMillis, batchSize));
+    }
+
+    /**
+     * Enables asynchronous I/O, DAO operations are thereafter performed by an
+     * AsyncAccountDao.  Must be called before the manager is used.
+     *
+     * @param ioThreads the number of I/O threads
+     * @param queueCapacity the maximum number of operations waiting for an
+     *                      I/O thread
+     */
+    void enableAsyncIo(final int ioThreads, final int queueCapacity) {
+        asyncDao = new AsyncAccountDao(dao, ioThreads, queueCapacity);
+    }
+
     /**
      * Used to persist an account.
      *
@@ -63,8 +142,52 @@ public final class SimpleAccountManager implements AccountManager {
      *
      * @exception AccountException if operation fails
      */
-    public synchronized void persist(final Account account) throws AccountException {
-        dao.setAccount(account);
+    public void persist(final Account account) throws AccountException {
+        AsyncAccountDao.await(persistAsync(account));
+    }
+
+    /**
+     * Persists an account without waiting for the write to complete, if
+     * asynchronous I/O is enabled.  Writes of an account are performed in
+     * the order they are requested, each writing a copy of the account as
+     * of the request.  The account's credentials are cached once written.
+     *
+     * @param account the account to persist
+     *
+     * @return a future completing once the account is written, completed
+     *         already if asynchronous I/O isn't enabled
+     */
+    public CompletableFuture<Void> persistAsync(final Account account) {
+        final Lock lock = locks.get(account.getName());
+        lock.lock();
+        try {
+            final long generation;
+            synchronized (credentials) {
+                generation = credentialGeneration;
+            }
+            final AsyncAccountDao async = asyncDao;
+            final CompletableFuture<Void> written;
+            final Account persisted;
+            if (async != null) {
+                persisted = AccountCodec.copy(account);
+                written = async.setAccount(persisted);
+            } else {
+                persisted = account;
+                written = new CompletableFuture<>();
+                try {
+                    dao.setAccount(account);
+                    written.complete(null);
+                } catch (final AccountException ex) {
+                    written.completeExceptionally(ex);
+                }
+            }
+            // the account is referenced until written, holding its ledger balance
+            return written.thenRun(() -> cacheCredentials(account.getName(),
+                                                          persisted.getPasswordHash(),
+                                                          generation));
+        } finally {
+            lock.unlock();
+        }
     }
 
     /**
@@ -76,12 +199,73 @@ public final class SimpleAccountManager implements AccountManager {
      *
      * @exception AccountException if operation fails
      */
-    public synchronized Account getAccount(final String accountName) throws AccountException {
-        final Account acct = dao.getAccount(accountName);
-        if (acct != null) {
+    public Account getAccount(final String accountName) throws AccountException {
+        final Lock lock = locks.get(accountName);
+        lock.lock();
+        try {
+            final Account acct = loadAccount(accountName);
+            if (acct != null) {
+                acct.registerAccountManager(this);
+            }
+            return acct;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Lookup a number of accounts, using the DAO's bulk lookup if it has one.
+     * Unlike getAccount the lookup doesn't hold the accounts' locks, each
+     * account reflects its persisted state at some point during the call.
+     * With asynchronous I/O the lookup is made through the asynchronous
+     * facade, so it follows the writes of the accounts already requested.
+     *
+     * @param accountNames the names of the desired accounts
+     *
+     * @return the accounts located, by account name; accounts that don't
+     *         exist are absent
+     *
+     * @exception AccountException if operation fails
+     */
+    public Map<String, Account> getAccounts(final Collection<String> accountNames)
+        throws AccountException {
+        final AsyncAccountDao async = asyncDao;
+        final Map<String, Account> accounts = (async != null)
+            ? AsyncAccountDao.await(async.getAccounts(accountNames))
+            : dao.getAccounts(accountNames);
+        for (final Account acct : accounts.values()) {
             acct.registerAccountManager(this);
         }
-        return acct;
+        return accounts;
+    }
+
+    /**
+     * Gets the balance of an account.  The balance of an account in use is
+     * taken from the balance ledger, otherwise only the balance is read from
+     * the DAO, not the complete account.
+     *
+     * @param accountName the name of the account
+     *
+     * @return the balance, null if the account doesn't exist
+     *
+     * @exception AccountException if operation fails
+     */
+    public Integer getBalance(final String accountName) throws AccountException {
+        final Lock lock = locks.get(accountName);
+        lock.lock();
+        try {
+            final Integer held = ledger.getBalance(accountName);
+            if (held != null) {
+                return held;
+            }
+            final AsyncAccountDao async = asyncDao;
+            final AccountProjection projection = (async != null)
+                ? AsyncAccountDao.await(async.getProjection(accountName, BALANCE_ONLY))
+                : dao.getProjection(accountName, BALANCE_ONLY);
+            return (projection == null) ? null : projection.getBalance();
+        } finally {
+            lock.unlock();
+        }
     }
 
     /**
@@ -91,11 +275,27 @@ public final class SimpleAccountManager implements AccountManager {
      *
      * @exception AccountException if operation fails
      */
-    public synchronized void deleteAccount(final String accountName) throws AccountException {
-        final Account acct = dao.getAccount(accountName);
+    public void deleteAccount(final String accountName) throws AccountException {
+        final Lock lock = locks.get(accountName);
+        lock.lock();
+        try {
+            final Account acct = loadAccount(accountName);
 
-        if (acct != null) {
-            dao.deleteAccount(accountName);
+            if (acct != null) {
+                final AsyncAccountDao async = asyncDao;
+                if (async != null) {
+                    AsyncAccountDao.await(async.deleteAccount(accountName));
+                } else {
+                    dao.deleteAccount(accountName);
+                }
+            }
+            ledger.remove(accountName);
+            synchronized (credentials) {
+                credentials.remove(accountName);
+                credentialGeneration++;
+            }
+        } finally {
+            lock.unlock();
         }
     }
 
@@ -111,27 +311,34 @@ public final class SimpleAccountManager implements AccountManager {
      * @exception AccountException if the account already exists, or account
      *                             creation fails for any reason
      */
-    public synchronized Account createAccount(final String accountName,
-                                              final String password,
-                                              final int balance)
+    public Account createAccount(final String accountName,
+                                 final String password,
+                                 final int balance)
         throws AccountException {
-        if (dao.getAccount(accountName) == null) {
-            final byte[] passwordHash = hashPassword(password);
+        final Lock lock = locks.get(accountName);
+        lock.lock();
+        try {
+            if (loadAccount(accountName) == null) {
+                final byte[] passwordHash = hashPassword(password);
 
-            final Account acct = accountFactory.newAccount(accountName,
-                                 passwordHash, balance);
-            acct.registerAccountManager(this);
-            persist(acct);
+                final Account acct = accountFactory.newAccount(accountName,
+                                     passwordHash, balance);
+                ledger.remove(accountName);
+                acct.registerAccountManager(this);
+                persist(acct);
 
-            return acct;
-        } else {
-            throw new AccountException("Account name already in use.");
+                return acct;
+            } else {
+                throw new AccountException("Account name already in use.");
+            }
+        } finally {
+            lock.unlock();
         }
     }
 
     /**
      * Check whether a login is valid. Username must exist and password must
-     * match.
+     * match.  Only the password hash is read, from the cache if possible.
      *
      * @param accountName name of account the password is to be validated for
      * @param password password is to be validated
@@ -140,19 +347,47 @@ public final class SimpleAccountManager implements AccountManager {
      *
      * @exception AccountException if error occurs accessing accounts
      */
-    public synchronized boolean validateLogin(final String accountName,
+    public boolean validateLogin(final String accountName,
                                  final String password)
         throws AccountException {
-        boolean valid = false;
-        final Account account = getAccount(accountName);
+        byte[] storedHash;
+        synchronized (credentials) {
+            storedHash = credentials.get(accountName);
+        }
 
-        if (account != null) {
-            final byte[] passwordHash = hashPassword(password);
-            valid = MessageDigest.isEqual(account.getPasswordHash(),
-                                          passwordHash);
+        if (storedHash == null) {
+            final Lock lock = locks.get(accountName);
+            lock.lock();
+            try {
+                final AsyncAccountDao async = asyncDao;
+                storedHash = (async != null) ? AsyncAccountDao.await(async.getPasswordHash(accountName))
+                                             : dao.getPasswordHash(accountName);
+                if (storedHash != null) {
+                    cacheCredentials(accountName, storedHash);
+                }
+            } finally {
+                lock.unlock();
+            }
         }
 
-        return valid;
+        return storedHash != null
+            && MessageDigest.isEqual(storedHash, hashPassword(password));
+    }
+
+    /**
+     * Reads an account from the DAO, through the asynchronous facade if
+     * enabled so the read follows any pending writes of the account.
+     *
+     * @param accountName the name of the account
+     *
+     * @return the account, null if it doesn't exist
+     *
+     * @throws AccountException if the read fails
+     */
+    private Account loadAccount(final String accountName) throws AccountException {
+        final AsyncAccountDao async = asyncDao;
+        return (async != null) ? AsyncAccountDao.await(async.getAccount(accountName))
+                               : dao.getAccount(accountName);
     }
 
     /**
@@ -165,24 +400,84 @@ public final class SimpleAccountManager implements AccountManager {
      * @throws AccountException if the password hashing operation fails
      */
     private byte[] hashPassword(final String password) throws AccountException {
-        try {
-            final MessageDigest md = MessageDigest.getInstance(ALGORITHM);
-            md.update(password.getBytes(ENCODING));
-            return md.digest();
-        } catch (final NoSuchAlgorithmException e) {
-            throw new AccountException("Unable to find hash algorithm", e);
-        } catch (final UnsupportedEncodingException e) {
-            throw new AccountException(String.format("Unable to find character encoding: %s", ENCODING), e);
+        MessageDigest md = DIGEST.get();
+        if (md == null) {
+            try {
+                md = MessageDigest.getInstance(ALGORITHM);
+            } catch (final NoSuchAlgorithmException e) {
+                throw new AccountException("Unable to find hash algorithm", e);
+            }
+            DIGEST.set(md);
+        }
+        return md.digest(password.getBytes(ENCODING));
+    }
+
+    /**
+     * Caches the password hash of an account.
+     *
+     * @param accountName the account name
+     * @param passwordHash the password hash, a copy the cache may retain
+     */
+    private void cacheCredentials(final String accountName, final byte[] passwordHash) {
+        synchronized (credentials) {
+            cacheCredentials(accountName, passwordHash, credentialGeneration);
+        }
+    }
+
+    /**
+     * Caches the password hash of an account, unless an account has been
+     * deleted since the hash was read.
+     *
+     * @param accountName the account name
+     * @param passwordHash the password hash, a copy the cache may retain
+     * @param generation the credential generation when the hash was read
+     */
+    private void cacheCredentials(final String accountName, final byte[] passwordHash,
+                                  final long generation) {
+        synchronized (credentials) {
+            if (generation != credentialGeneration) {
+                return;
+            }
+            if (passwordHash == null) {
+                credentials.remove(accountName);
+            } else {
+                credentials.put(accountName, passwordHash);
+            }
         }
     }
 
+    /**
+     * Gets the ledger holding the canonical balances of managed accounts.
+     *
+     * @return the balance ledger
+     */
+    BalanceLedger getBalanceLedger() {
+        return ledger;
+    }
+
+    /**
+     * Gets the account cache, if the manager's DAO is a read-through cache.
+     *
+     * @return the account cache, null if accounts aren't cached
+     */
+    public AccountCacheMBean getAccountCache() {
+        final AccountDao localDao = dao;
+        return (localDao instanceof CachingAccountDao) ? (CachingAccountDao) localDao : null;
+    }
+
     /**
      * Closes the account manager.
      *
      * @exception AccountException if the DAO can't be closed
      */
     public void close() throws AccountException {
-        dao.close();
+        final AsyncAccountDao async = asyncDao;
+        if (async != null) {
+            async.close();
+            asyncDao = null;
+        } else {
+            dao.close();
+        }
         dao = null;
     }
 }
@@ -7,12 +7,101 @@ import edu.uw.ext.framework.dao.AccountDao;
 
 /**
  * A simple implementation of the AccountManagerFactory that instantiates the
- * SimpleAccountManager.
+ * SimpleAccountManager.  Write-behind caching of account updates is enabled
+ * by setting a positive flush interval, and read-through caching of accounts
+ * by setting a positive cache size.  Setting a positive number of I/O
+ * threads performs account writes asynchronously, see AsyncAccountDao.
  *
  * @author Chester Beard
  */
 public final class SimpleAccountManagerFactory implements AccountManagerFactory
 {
+    /** Default number of modified accounts that triggers an early write back */
+    private static final int DEFAULT_BATCH_SIZE = 100;
+
+    /** Default time an account remains in the read cache, in milliseconds */
+    private static final long DEFAULT_CACHE_TTL_MILLIS = 60_000L;
+
+    /** Default maximum number of account operations waiting for an I/O thread */
+    private static final int DEFAULT_IO_QUEUE_CAPACITY = 1_000;
+
+    /** Interval between write backs in milliseconds, zero writes through */
+    private long flushIntervalMillis;
+
+    /** Number of modified accounts that triggers an early write back */
+    private int batchSize = DEFAULT_BATCH_SIZE;
+
+    /** Maximum number of accounts in the read cache, zero disables the cache */
+    private int cacheSize;
+
+    /** Time an account remains in the read cache, in milliseconds */
+    private long cacheTtlMillis = DEFAULT_CACHE_TTL_MILLIS;
+
+    /** Number of asynchronous I/O threads, zero performs I/O on the caller */
+    private int ioThreads;
+
+    /** Maximum number of account operations waiting for an I/O thread */
+    private int ioQueueCapacity = DEFAULT_IO_QUEUE_CAPACITY;
+
+    /**
+     * Sets the write-behind flush interval.
+     *
+     * @param flushIntervalMillis the interval between write backs in
+     *                            milliseconds, zero disables write-behind
+     */
+    public void setFlushIntervalMillis(final long flushIntervalMillis) {
+        this.flushIntervalMillis = flushIntervalMillis;
+    }
+
+    /**
+     * Sets the write-behind batch size.
+     *
+     * @param batchSize the number of modified accounts that triggers an early
+     *                  write back
+     */
+    public void setBatchSize(final int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Sets the read cache size.
+     *
+     * @param cacheSize the maximum number of cached accounts, zero disables
+     *                  read caching
+     */
+    public void setCacheSize(final int cacheSize) {
+        this.cacheSize = cacheSize;
+    }
+
+    /**
+     * Sets the read cache time to live.
+     *
+     * @param cacheTtlMillis the time an account remains cached, in milliseconds
+     */
+    public void setCacheTtlMillis(final long cacheTtlMillis) {
+        this.cacheTtlMillis = cacheTtlMillis;
+    }
+
+    /**
+     * Sets the number of asynchronous I/O threads.
+     *
+     * @param ioThreads the number of I/O threads, zero disables
+     *                  asynchronous I/O
+     */
+    public void setIoThreads(final int ioThreads) {
+        this.ioThreads = ioThreads;
+    }
+
+    /**
+     * Sets the asynchronous I/O queue capacity.
+     *
+     * @param ioQueueCapacity the maximum number of account operations waiting
+     *                        for an I/O thread
+     */
+    public void setIoQueueCapacity(final int ioQueueCapacity) {
+        this.ioQueueCapacity = ioQueueCapacity;
+    }
+
     /**
      * Instantiates a new SimpleAccountManager instance.
      *
@@ -21,7 +110,17 @@ public final class SimpleAccountManagerFactory implements AccountManagerFactory
      * @return a newly instantiated SimpleAccountManager
      */
     public AccountManager newAccountManager(final AccountDao dao) {
-        return new SimpleAccountManager(dao);
+        AccountDao managerDao = dao;
+        if (flushIntervalMillis > 0) {
+            managerDao = new WriteBehindAccountDao(managerDao, flushIntervalMillis, batchSize);
+        }
+        if (cacheSize > 0) {
+            managerDao = new CachingAccountDao(managerDao, cacheSize, cacheTtlMillis);
+        }
+        final SimpleAccountManager manager = new SimpleAccountManager(managerDao);
+        if (ioThreads > 0) {
+            manager.enableAsyncIo(ioThreads, ioQueueCapacity);
+        }
+        return manager;
     }
 }
-
@@ -0,0 +1,52 @@
+package edu.uw.beardcl.account;
+
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A fixed set of reentrant locks, keys are mapped to a lock by hash.  Keys
+ * mapping to different stripes may be locked concurrently, while all
+ * operations on the same key are serialized.  The memory used is bounded by
+ * the number of stripes regardless of the number of keys.
+ *
+ * @author Chester Beard
+ */
+public final class StripedLock {
+    /** The locks */
+    private final Lock[] stripes;
+
+    /** Mask used to select a stripe, the stripe count is a power of two */
+    private final int mask;
+
+    /**
+     * Constructor.
+     *
+     * @param minStripes the minimum number of stripes, rounded up to a power
+     *                   of two
+     */
+    public StripedLock(final int minStripes) {
+        if (minStripes <= 0) {
+            throw new IllegalArgumentException("Stripe count must be positive, " + minStripes);
+        }
+        final int count = Integer.highestOneBit(minStripes - 1) << 1;
+        stripes = new Lock[Math.max(count, 1)];
+        for (int i = 0; i < stripes.length; i++) {
+            stripes[i] = new ReentrantLock();
+        }
+        mask = stripes.length - 1;
+    }
+
+    /**
+     * Gets the lock guarding a key.
+     *
+     * @param key the key
+     *
+     * @return the lock for the key
+     */
+    public Lock get(final Object key) {
+        int h = key.hashCode();
+        // spread the high bits down, as HashMap does, so similar keys differ
+        h ^= (h >>> 16);
+        return stripes[h & mask];
+    }
+}
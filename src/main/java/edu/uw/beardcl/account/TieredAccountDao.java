@@ -0,0 +1,588 @@
+package edu.uw.beardcl.account;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import edu.uw.beardcl.dao.AccountField;
+import edu.uw.beardcl.dao.AccountProjection;
+import edu.uw.beardcl.dao.ExtendedAccountDao;
+import edu.uw.ext.framework.account.Account;
+import edu.uw.ext.framework.account.AccountException;
+import edu.uw.ext.framework.dao.AccountDao;
+
+/**
+ * An AccountDao keeping recently active accounts in a bounded, in-memory hot
+ * tier over a cold tier, any other AccountDao.  Accounts are promoted to the
+ * hot tier when read from, or stored to, this DAO; lookups of only the
+ * password hash or selected fields are served from the hot tier when
+ * present but don't promote.
+ *
+ * Stored accounts are held dirty in the hot tier and written back to the
+ * cold tier by a background thread at the flush interval, repeated updates
+ * between flushes being coalesced into a single write.  Accounts leave the
+ * hot tier when least recently used once the tier is full, or once idle for
+ * the idle time, checked at the flush interval; a demoted dirty account is
+ * written back before it's dropped, and is read from memory until then.
+ *
+ * Dirty accounts are written back when the DAO is closed, and by a shutdown
+ * hook should the JVM exit without the DAO being closed.  Accounts whose
+ * write back fails are retried on the next flush.
+ *
+ * @author Chester Beard
+ */
+public final class TieredAccountDao implements ExtendedAccountDao {
+    /** This class' logger. */
+    private static final Logger log = LoggerFactory.getLogger(TieredAccountDao.class);
+
+    /** Time allowed for an in progress flush to complete on close, in seconds */
+    private static final int CLOSE_TIMEOUT_SECONDS = 30;
+
+    /** The cold tier */
+    private final ExtendedAccountDao cold;
+
+    /** Maximum number of accounts in the hot tier */
+    private final int maxHotAccounts;
+
+    /** Time after which an unused account is demoted, in nanoseconds */
+    private final long idleNanos;
+
+    /** The hot tier in access order, guarded by this */
+    private final LinkedHashMap<String, HotAccount> hot;
+
+    /** Incremented on every store, delete and reset, guarded by this; cold
+     *  reads begun before a modification aren't promoted */
+    private long generation;
+
+    /** Accounts awaiting write back to the cold tier, by account name */
+    private final ConcurrentMap<String, Account> pending = new ConcurrentHashMap<>();
+
+    /** Held while writing back, and while deleting accounts, orders the
+     *  writes to the cold tier */
+    private final Object writeLock = new Object();
+
+    /** Set while a write back is scheduled, avoids piling up write back tasks */
+    private final AtomicBoolean writeBackScheduled = new AtomicBoolean();
+
+    /** Runs the periodic flushes and the write back of demoted accounts */
+    private final ScheduledExecutorService flusher;
+
+    /** Writes back dirty accounts if the JVM exits before the DAO is closed */
+    private final Runnable exitFlush = new Runnable() {
+        @Override
+        public void run() {
+            flushQuietly();
+        }
+    };
+
+    /** Number of accounts promoted to the hot tier */
+    private final AtomicLong promotions = new AtomicLong();
+
+    /** Number of accounts demoted from the hot tier */
+    private final AtomicLong demotions = new AtomicLong();
+
+    /**
+     * An account in the hot tier.
+     */
+    private static final class HotAccount {
+        /** The account */
+        private final Account account;
+
+        /** If true the account hasn't been handed to the cold tier, guarded
+         *  by the enclosing DAO */
+        private boolean dirty;
+
+        /** Time of the last use, relative to System.nanoTime, guarded by
+         *  the enclosing DAO */
+        private long lastUsed;
+
+        /**
+         * Constructor.
+         *
+         * @param account the account
+         * @param dirty true if the account must be written back
+         * @param lastUsed the time of the last use
+         */
+        HotAccount(final Account account, final boolean dirty, final long lastUsed) {
+            this.account = account;
+            this.dirty = dirty;
+            this.lastUsed = lastUsed;
+        }
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param cold the cold tier
+     * @param maxHotAccounts the maximum number of accounts in the hot tier
+     * @param idleMillis the time after which an unused account is demoted,
+     *                   in milliseconds
+     * @param flushIntervalMillis the interval between flushes, in milliseconds
+     */
+    public TieredAccountDao(final AccountDao cold, final int maxHotAccounts,
+                            final long idleMillis, final long flushIntervalMillis) {
+        if (maxHotAccounts <= 0 || idleMillis <= 0 || flushIntervalMillis <= 0) {
+            throw new IllegalArgumentException(String.format(
+                "Hot tier size, idle time and flush interval must be positive, %d, %d, %d",
+                maxHotAccounts, idleMillis, flushIntervalMillis));
+        }
+        this.cold = ExtendedAccountDao.of(cold);
+        this.maxHotAccounts = maxHotAccounts;
+        this.idleNanos = TimeUnit.MILLISECONDS.toNanos(idleMillis);
+        hot = new LinkedHashMap<String, HotAccount>(maxHotAccounts * 4 / 3 + 1, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<String, HotAccount> eldest) {
+                final boolean demote = size() > TieredAccountDao.this.maxHotAccounts;
+                if (demote) {
+                    demote(eldest.getKey(), eldest.getValue());
+                }
+                return demote;
+            }
+        };
+
+        flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            final Thread t = new Thread(r, "AccountTierFlusher");
+            t.setDaemon(true);
+            return t;
+        });
+        flusher.scheduleWithFixedDelay(() -> {
+            demoteIdle();
+            flushQuietly();
+        }, flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+
+        ExitFlusher.register(exitFlush);
+    }
+
+    /**
+     * Lookup an account based on username, promoting it to the hot tier if
+     * read from the cold tier.
+     *
+     * @param accountName the name of the desired account
+     *
+     * @return the account if located otherwise null
+     */
+    @Override
+    public Account getAccount(final String accountName) {
+        final long loadGeneration;
+        synchronized (this) {
+            final HotAccount entry = hot.get(accountName);
+            if (entry != null) {
+                entry.lastUsed = System.nanoTime();
+                return entry.account;
+            }
+            loadGeneration = generation;
+        }
+
+        Account acct = pending.get(accountName);
+        if (acct == null) {
+            acct = cold.getAccount(accountName);
+            if (acct == null) {
+                return null;
+            }
+        }
+        synchronized (this) {
+            acct = promote(accountName, acct, loadGeneration, System.nanoTime());
+        }
+        scheduleWriteBack();
+        return acct;
+    }
+
+    /**
+     * Lookup a number of accounts, reading those not in the hot tier from
+     * the cold tier together and promoting them.
+     *
+     * @param accountNames the names of the desired accounts
+     *
+     * @return the accounts located, by account name
+     *
+     * @exception AccountException if the lookup fails
+     */
+    @Override
+    public Map<String, Account> getAccounts(final Collection<String> accountNames)
+        throws AccountException {
+        final Map<String, Account> accounts = new HashMap<>();
+        final List<String> coldNames = new ArrayList<>();
+        final long loadGeneration;
+        synchronized (this) {
+            final long now = System.nanoTime();
+            for (final String accountName : accountNames) {
+                final HotAccount entry = hot.get(accountName);
+                if (entry != null) {
+                    entry.lastUsed = now;
+                    accounts.put(accountName, entry.account);
+                } else {
+                    coldNames.add(accountName);
+                }
+            }
+            loadGeneration = generation;
+        }
+        if (coldNames.isEmpty()) {
+            return accounts;
+        }
+
+        final Map<String, Account> loaded = new HashMap<>();
+        final List<String> unbuffered = new ArrayList<>();
+        for (final String accountName : coldNames) {
+            final Account acct = pending.get(accountName);
+            if (acct != null) {
+                loaded.put(accountName, acct);
+            } else {
+                unbuffered.add(accountName);
+            }
+        }
+        if (!unbuffered.isEmpty()) {
+            loaded.putAll(cold.getAccounts(unbuffered));
+        }
+        synchronized (this) {
+            final long now = System.nanoTime();
+            for (final Map.Entry<String, Account> e : loaded.entrySet()) {
+                accounts.put(e.getKey(), promote(e.getKey(), e.getValue(), loadGeneration, now));
+            }
+        }
+        scheduleWriteBack();
+        return accounts;
+    }
+
+    /**
+     * Lookup the password hash of an account, from memory if the account is
+     * in the hot tier or awaiting write back.  Accounts aren't promoted by
+     * this lookup.
+     *
+     * @param accountName the name of the account
+     *
+     * @return the password hash, null if the account doesn't exist
+     *
+     * @exception AccountException if the lookup fails
+     */
+    @Override
+    public byte[] getPasswordHash(final String accountName) throws AccountException {
+        final Account acct = inMemory(accountName);
+        return (acct != null) ? acct.getPasswordHash() : cold.getPasswordHash(accountName);
+    }
+
+    /**
+     * Lookup selected fields of an account, from memory if the account is
+     * in the hot tier or awaiting write back.  Accounts aren't promoted by
+     * this lookup.
+     *
+     * @param accountName the name of the account
+     * @param fields the fields to read
+     *
+     * @return the fields read, null if the account doesn't exist
+     *
+     * @exception AccountException if the lookup fails
+     */
+    @Override
+    public AccountProjection getProjection(final String accountName, final Set<AccountField> fields)
+        throws AccountException {
+        final Account acct = inMemory(accountName);
+        return (acct != null) ? AccountProjection.of(acct, fields)
+                              : cold.getProjection(accountName, fields);
+    }
+
+    /**
+     * Stores an account in the hot tier, it will be written back to the cold
+     * tier by the next flush or when demoted.
+     *
+     * @param account the account to add/update
+     *
+     * @exception AccountException if the DAO has been closed
+     */
+    @Override
+    public void setAccount(final Account account) throws AccountException {
+        if (flusher.isShutdown()) {
+            throw new AccountException("Account DAO has been closed.");
+        }
+        synchronized (this) {
+            generation++;
+            hot.put(account.getName(), new HotAccount(account, true, System.nanoTime()));
+        }
+        scheduleWriteBack();
+    }
+
+    /**
+     * Remove the account from both tiers, discarding any unwritten changes.
+     *
+     * @param accountName the name of the account to remove
+     *
+     * @exception AccountException if operation fails
+     */
+    @Override
+    public void deleteAccount(final String accountName) throws AccountException {
+        synchronized (writeLock) {
+            synchronized (this) {
+                generation++;
+                hot.remove(accountName);
+            }
+            pending.remove(accountName);
+            cold.deleteAccount(accountName);
+        }
+    }
+
+    /**
+     * Remove all accounts from both tiers, discarding any unwritten changes.
+     *
+     * @exception AccountException if operation fails
+     */
+    @Override
+    public void reset() throws AccountException {
+        synchronized (writeLock) {
+            synchronized (this) {
+                generation++;
+                hot.clear();
+            }
+            pending.clear();
+            cold.reset();
+        }
+    }
+
+    /**
+     * Writes all dirty accounts back to the cold tier, they remain in the
+     * hot tier.
+     *
+     * @exception AccountException if any account could not be written, the
+     *                             accounts that failed are retried by the
+     *                             next flush
+     */
+    public void flush() throws AccountException {
+        synchronized (this) {
+            for (final Map.Entry<String, HotAccount> entry : hot.entrySet()) {
+                final HotAccount hotAccount = entry.getValue();
+                if (hotAccount.dirty) {
+                    hotAccount.dirty = false;
+                    pending.put(entry.getKey(), hotAccount.account);
+                }
+            }
+        }
+        writeBack();
+    }
+
+    /**
+     * Gets the number of accounts in the hot tier.
+     *
+     * @return the number of hot accounts
+     */
+    public synchronized int getHotCount() {
+        return hot.size();
+    }
+
+    /**
+     * Gets the number of accounts waiting to be written back.
+     *
+     * @return the number of dirty accounts
+     */
+    public synchronized int getDirtyCount() {
+        int count = pending.size();
+        for (final Map.Entry<String, HotAccount> entry : hot.entrySet()) {
+            if (entry.getValue().dirty && !pending.containsKey(entry.getKey())) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Gets the number of accounts promoted to the hot tier from the cold
+     * tier.
+     *
+     * @return the number of promotions
+     */
+    public long getPromotionCount() {
+        return promotions.get();
+    }
+
+    /**
+     * Gets the number of accounts demoted from the hot tier, whether least
+     * recently used or idle.
+     *
+     * @return the number of demotions
+     */
+    public long getDemotionCount() {
+        return demotions.get();
+    }
+
+    /**
+     * Writes back all dirty accounts and closes the cold tier.
+     *
+     * @exception AccountException if dirty accounts could not be written or
+     *                             the cold tier can't be closed
+     */
+    @Override
+    public void close() throws AccountException {
+        flusher.shutdown();
+        try {
+            if (!flusher.awaitTermination(CLOSE_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                log.warn("Timed out waiting for account flush to complete.");
+            }
+        } catch (final InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+
+        try {
+            flush();
+        } finally {
+            ExitFlusher.unregister(exitFlush);
+            synchronized (this) {
+                hot.clear();
+            }
+            cold.close();
+        }
+    }
+
+    /**
+     * Adds an account read from the cold tier, or awaiting write back, to
+     * the hot tier, unless it has been stored, deleted or promoted since the
+     * read began.  Must be called holding this.
+     *
+     * @param accountName the name of the account
+     * @param acct the account read
+     * @param loadGeneration the generation when the read began
+     * @param now the current time
+     *
+     * @return the hot account, the one read unless superseded
+     */
+    private Account promote(final String accountName, final Account acct,
+                            final long loadGeneration, final long now) {
+        final HotAccount current = hot.get(accountName);
+        if (current != null) {
+            // stored or promoted concurrently, use that instance
+            current.lastUsed = now;
+            return current.account;
+        }
+        if (generation == loadGeneration) {
+            hot.put(accountName, new HotAccount(acct, false, now));
+            promotions.incrementAndGet();
+        }
+        return acct;
+    }
+
+    /**
+     * Hands an account leaving the hot tier to the write back if dirty.  Must
+     * be called holding this.
+     *
+     * @param accountName the name of the account
+     * @param hotAccount the account being demoted
+     */
+    private void demote(final String accountName, final HotAccount hotAccount) {
+        if (hotAccount.dirty) {
+            pending.put(accountName, hotAccount.account);
+        }
+        demotions.incrementAndGet();
+    }
+
+    /**
+     * Demotes the accounts unused for the idle time.
+     */
+    private void demoteIdle() {
+        synchronized (this) {
+            final long now = System.nanoTime();
+            final Iterator<Map.Entry<String, HotAccount>> it = hot.entrySet().iterator();
+            while (it.hasNext()) {
+                final Map.Entry<String, HotAccount> entry = it.next();
+                if (now - entry.getValue().lastUsed < idleNanos) {
+                    // in access order, the remainder were used more recently
+                    break;
+                }
+                demote(entry.getKey(), entry.getValue());
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Returns an account from the hot tier, or awaiting write back, without
+     * promoting it.
+     *
+     * @param accountName the name of the account
+     *
+     * @return the account, null if it's in neither
+     */
+    private Account inMemory(final String accountName) {
+        synchronized (this) {
+            final HotAccount entry = hot.get(accountName);
+            if (entry != null) {
+                entry.lastUsed = System.nanoTime();
+                return entry.account;
+            }
+        }
+        return pending.get(accountName);
+    }
+
+    /**
+     * Writes the accounts awaiting write back to the cold tier.
+     *
+     * @exception AccountException if any account could not be written, the
+     *                             accounts that failed remain pending
+     */
+    private void writeBack() throws AccountException {
+        synchronized (writeLock) {
+            AccountException failure = null;
+            for (final Map.Entry<String, Account> entry : pending.entrySet()) {
+                try {
+                    cold.setAccount(entry.getValue());
+                    pending.remove(entry.getKey(), entry.getValue());
+                } catch (final AccountException ex) {
+                    failure = ex;
+                }
+            }
+            if (failure != null) {
+                throw failure;
+            }
+        }
+    }
+
+    /**
+     * Schedules a write back if accounts have been demoted, so the memory
+     * they hold is released ahead of the next flush.
+     */
+    private void scheduleWriteBack() {
+        if (!pending.isEmpty() && writeBackScheduled.compareAndSet(false, true)) {
+            try {
+                flusher.execute(() -> {
+                    writeBackScheduled.set(false);
+                    try {
+                        writeBack();
+                    } catch (final AccountException ex) {
+                        log.error(String.format("Failed to write back demoted accounts, %d remain.",
+                                                pending.size()), ex);
+                    }
+                });
+            } catch (final RejectedExecutionException ex) {
+                // closing, the pending accounts are written back by close
+                writeBackScheduled.set(false);
+            }
+        }
+    }
+
+    /**
+     * Flushes dirty accounts, logging rather than propagating failures.
+     */
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (final AccountException ex) {
+            log.error(String.format("Failed to write back accounts, %d remain dirty.",
+                                    pending.size()), ex);
+        } catch (final RuntimeException ex) {
+            log.error("Unexpected failure writing back accounts.", ex);
+        }
+    }
+}
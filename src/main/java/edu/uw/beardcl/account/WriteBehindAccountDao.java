@@ -0,0 +1,355 @@
+package edu.uw.beardcl.account;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import edu.uw.beardcl.dao.AccountField;
+import edu.uw.beardcl.dao.AccountProjection;
+import edu.uw.beardcl.dao.ExtendedAccountDao;
+import edu.uw.ext.framework.account.Account;
+import edu.uw.ext.framework.account.AccountException;
+import edu.uw.ext.framework.dao.AccountDao;
+
+/**
+ * An AccountDao decorator that defers writes to the underlying DAO.  Accounts
+ * passed to setAccount are held in memory, marked dirty, and written by a
+ * background flusher at a fixed interval, or sooner once a batch's worth of
+ * accounts are dirty.  Repeated updates to an account between flushes are
+ * coalesced into a single write.  Reads of a dirty account are served from
+ * memory so callers always see the latest state.
+ *
+ * Dirty accounts are flushed when the DAO is closed, and by a shutdown hook
+ * should the JVM exit without the DAO being closed.  Accounts whose write
+ * fails remain dirty and are retried on the next flush.
+ *
+ * @author Chester Beard
+ */
+public final class WriteBehindAccountDao implements ExtendedAccountDao {
+    /** This class' logger. */
+    private static final Logger log =
+                         LoggerFactory.getLogger(WriteBehindAccountDao.class);
+
+    /** Time allowed for an in progress flush to complete on close, in seconds */
+    private static final int CLOSE_TIMEOUT_SECONDS = 30;
+
+    /** The DAO accounts are ultimately written to */
+    private final ExtendedAccountDao dao;
+
+    /** Maximum number of dirty accounts before a flush is triggered */
+    private final int batchSize;
+
+    /** Dirty accounts, by account name */
+    private final ConcurrentMap<String, Account> dirty = new ConcurrentHashMap<>();
+
+    /** Accounts being written by the current flush, by account name */
+    private final ConcurrentMap<String, Account> inFlight = new ConcurrentHashMap<>();
+
+    /** Held for the duration of a flush, and while deleting accounts */
+    private final Object flushLock = new Object();
+
+    /** Set while an early flush is scheduled, avoids piling up flush tasks */
+    private final AtomicBoolean flushPending = new AtomicBoolean();
+
+    /** Runs the periodic and early flushes */
+    private final ScheduledExecutorService flusher;
+
+    /** Flushes dirty accounts if the JVM exits before the DAO is closed */
+    private final Runnable exitFlush = new Runnable() {
+        @Override
+        public void run() {
+            flushQuietly();
+        }
+    };
+
+    /** Set once the DAO is closing, writes are then refused */
+    private volatile boolean closed;
+
+    /**
+     * Constructor.
+     *
+     * @param dao the DAO accounts are written to
+     * @param flushIntervalMillis the interval between flushes, in milliseconds
+     * @param batchSize the number of dirty accounts that triggers an early flush
+     */
+    public WriteBehindAccountDao(final AccountDao dao, final long flushIntervalMillis,
+                                 final int batchSize) {
+        if (flushIntervalMillis <= 0 || batchSize <= 0) {
+            throw new IllegalArgumentException(String.format(
+                "Flush interval and batch size must be positive, %d, %d",
+                flushIntervalMillis, batchSize));
+        }
+        this.dao = ExtendedAccountDao.of(dao);
+        this.batchSize = batchSize;
+
+        flusher = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable r) {
+                final Thread t = new Thread(r, "AccountWriteBehind");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        flusher.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                flushQuietly();
+            }
+        }, flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+
+        ExitFlusher.register(exitFlush);
+    }
+
+    /**
+     * Lookup an account based on username, dirty accounts are returned from
+     * memory.
+     *
+     * @param accountName the name of the desired account
+     *
+     * @return the account if located otherwise null
+     */
+    @Override
+    public Account getAccount(final String accountName) {
+        Account acct = dirty.get(accountName);
+        if (acct == null) {
+            acct = inFlight.get(accountName);
+        }
+        return (acct != null) ? acct : dao.getAccount(accountName);
+    }
+
+    /**
+     * Lookup a number of accounts, dirty accounts are returned from memory
+     * and the remainder read from the underlying DAO together.
+     *
+     * @param accountNames the names of the desired accounts
+     *
+     * @return the accounts located, by account name
+     *
+     * @exception AccountException if the lookup fails
+     */
+    @Override
+    public Map<String, Account> getAccounts(final Collection<String> accountNames)
+        throws AccountException {
+        final Map<String, Account> accounts = new HashMap<>();
+        final List<String> unbuffered = new ArrayList<>();
+        for (final String accountName : accountNames) {
+            Account acct = dirty.get(accountName);
+            if (acct == null) {
+                acct = inFlight.get(accountName);
+            }
+            if (acct != null) {
+                accounts.put(accountName, acct);
+            } else {
+                unbuffered.add(accountName);
+            }
+        }
+        if (!unbuffered.isEmpty()) {
+            accounts.putAll(dao.getAccounts(unbuffered));
+        }
+        return accounts;
+    }
+
+    /**
+     * Lookup the password hash of an account, dirty accounts are read from
+     * memory.
+     *
+     * @param accountName the name of the account
+     *
+     * @return the password hash, null if the account doesn't exist
+     *
+     * @exception AccountException if the lookup fails
+     */
+    @Override
+    public byte[] getPasswordHash(final String accountName) throws AccountException {
+        Account acct = dirty.get(accountName);
+        if (acct == null) {
+            acct = inFlight.get(accountName);
+        }
+        return (acct != null) ? acct.getPasswordHash() : dao.getPasswordHash(accountName);
+    }
+
+    /**
+     * Lookup selected fields of an account, from the pending updates if the
+     * account has one.
+     *
+     * @param accountName the name of the account
+     * @param fields the fields to read
+     *
+     * @return the fields read, null if the account doesn't exist
+     *
+     * @exception AccountException if the lookup fails
+     */
+    @Override
+    public AccountProjection getProjection(final String accountName, final Set<AccountField> fields)
+        throws AccountException {
+        Account acct = dirty.get(accountName);
+        if (acct == null) {
+            acct = inFlight.get(accountName);
+        }
+        return (acct != null) ? AccountProjection.of(acct, fields)
+                              : dao.getProjection(accountName, fields);
+    }
+
+    /**
+     * Marks an account dirty, it will be written by the next flush.
+     *
+     * @param account the account to add/update
+     *
+     * @exception AccountException if the DAO has been closed
+     */
+    @Override
+    public void setAccount(final Account account) throws AccountException {
+        if (closed) {
+            throw new AccountException("Account DAO has been closed.");
+        }
+        dirty.put(account.getName(), account);
+        if (closed && dirty.remove(account.getName(), account)) {
+            // closed concurrently, and the final flush didn't take the account
+            throw new AccountException("Account DAO has been closed.");
+        }
+        if (dirty.size() >= batchSize && flushPending.compareAndSet(false, true)) {
+            try {
+                flusher.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        flushPending.set(false);
+                        flushQuietly();
+                    }
+                });
+            } catch (final RejectedExecutionException ex) {
+                // closing, the dirty accounts are flushed by close
+                flushPending.set(false);
+            }
+        }
+    }
+
+    /**
+     * Remove the account, discarding any unwritten changes.
+     *
+     * @param accountName the name of the account to remove
+     *
+     * @exception AccountException if operation fails
+     */
+    @Override
+    public void deleteAccount(final String accountName) throws AccountException {
+        synchronized (flushLock) {
+            dirty.remove(accountName);
+            dao.deleteAccount(accountName);
+        }
+    }
+
+    /**
+     * Remove all accounts, discarding any unwritten changes.
+     *
+     * @exception AccountException if operation fails
+     */
+    @Override
+    public void reset() throws AccountException {
+        synchronized (flushLock) {
+            dirty.clear();
+            dao.reset();
+        }
+    }
+
+    /**
+     * Writes all dirty accounts to the underlying DAO.
+     *
+     * @exception AccountException if any account could not be written, the
+     *                             accounts that failed remain dirty
+     */
+    public void flush() throws AccountException {
+        synchronized (flushLock) {
+            AccountException failure = null;
+            final List<Account> batch = new ArrayList<>(batchSize);
+            while (!dirty.isEmpty() && failure == null) {
+                batch.clear();
+                for (final Map.Entry<String, Account> entry : dirty.entrySet()) {
+                    inFlight.put(entry.getKey(), entry.getValue());
+                    dirty.remove(entry.getKey(), entry.getValue());
+                    batch.add(entry.getValue());
+                    if (batch.size() == batchSize) {
+                        break;
+                    }
+                }
+
+                for (final Account acct : batch) {
+                    try {
+                        dao.setAccount(acct);
+                    } catch (final AccountException ex) {
+                        dirty.putIfAbsent(acct.getName(), acct);
+                        failure = ex;
+                    } finally {
+                        inFlight.remove(acct.getName(), acct);
+                    }
+                }
+            }
+
+            if (failure != null) {
+                throw failure;
+            }
+        }
+    }
+
+    /**
+     * Gets the number of accounts waiting to be written.
+     *
+     * @return the number of dirty accounts
+     */
+    public int getDirtyCount() {
+        return dirty.size();
+    }
+
+    /**
+     * Flushes all dirty accounts and closes the underlying DAO.
+     *
+     * @exception AccountException if dirty accounts could not be written or
+     *                             the DAO can't be closed
+     */
+    @Override
+    public void close() throws AccountException {
+        closed = true;
+        flusher.shutdown();
+        try {
+            if (!flusher.awaitTermination(CLOSE_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                log.warn("Timed out waiting for account flush to complete.");
+            }
+        } catch (final InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+
+        try {
+            flush();
+        } finally {
+            ExitFlusher.unregister(exitFlush);
+            dao.close();
+        }
+    }
+
+    /**
+     * Flushes dirty accounts, logging rather than propagating failures.
+     */
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (final AccountException ex) {
+            log.error(String.format("Failed to write back accounts, %d remain dirty.",
+                                    dirty.size()), ex);
+        } catch (final RuntimeException ex) {
+            log.error("Unexpected failure writing back accounts.", ex);
+        }
+    }
+}
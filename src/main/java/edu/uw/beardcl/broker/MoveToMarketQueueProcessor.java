@@ -3,6 +3,8 @@ package edu.uw.beardcl.broker;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import edu.uw.beardcl.metrics.OrderStage;
+import edu.uw.beardcl.metrics.OrderTracer;
 import edu.uw.ext.framework.broker.OrderProcessor;
 import edu.uw.ext.framework.broker.OrderQueue;
 import edu.uw.ext.framework.order.Order;
@@ -36,6 +38,9 @@ public final class MoveToMarketQueueProcessor implements OrderProcessor {
      */
     public void process(final Order order) {
         log.info(String.format("### Moving order to market queue: %s", order));
+        final OrderTracer tracer = OrderTracer.getInstance();
+        tracer.mark(order, OrderStage.TRIGGERED);
+        tracer.mark(order, OrderStage.MARKET_QUEUED);
         marketQueue.enqueue(order);
     }
 }
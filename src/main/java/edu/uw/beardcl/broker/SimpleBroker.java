@@ -4,6 +4,11 @@ import java.util.HashMap;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import edu.uw.beardcl.account.AccountCacheMBean;
+import edu.uw.beardcl.account.SimpleAccountManager;
+import edu.uw.beardcl.metrics.BrokerMetrics;
+import edu.uw.beardcl.metrics.OrderStage;
+import edu.uw.beardcl.metrics.OrderTracer;
 import edu.uw.ext.framework.account.Account;
 import edu.uw.ext.framework.account.AccountException;
 import edu.uw.ext.framework.account.AccountManager;
@@ -51,6 +56,12 @@ public class SimpleBroker implements Broker, ExchangeListener {
     /** The market order queue's dispatch filter. */
     private MarketDispatchFilter marketDispatchFilter;
 
+    /** The metrics published for this broker. */
+    private final BrokerMetrics metrics;
+
+    /** The order latency tracer. */
+    private final OrderTracer tracer = OrderTracer.getInstance();
+
     /**
      * Constructor for sub classes
      *
@@ -63,6 +74,14 @@ public class SimpleBroker implements Broker, ExchangeListener {
         name = brokerName;
         accountManager = acctMgr;
         stockExchange = exchg;
+        metrics = new BrokerMetrics(brokerName);
+        metrics.register("OrderTracer", "orders", tracer);
+        if (acctMgr instanceof SimpleAccountManager) {
+            final AccountCacheMBean cache = ((SimpleAccountManager) acctMgr).getAccountCache();
+            if (cache != null) {
+                metrics.register("AccountCache", "accounts", cache, AccountCacheMBean.class);
+            }
+        }
     }
 
     /**
@@ -79,9 +98,11 @@ public class SimpleBroker implements Broker, ExchangeListener {
         // Create the market order queue, & order processor
         final MarketDispatchFilter localFilterRef = new MarketDispatchFilter(exchg.isOpen());
         setMarketDispatchFilter(localFilterRef);
-        final SimpleOrderQueue<Order> localMarketQueueRef = new SimpleOrderQueue<Order>(localFilterRef);
+        final OrderQueue<Order> localMarketQueueRef =
+              metrics.instrumentMarketQueue(new SimpleOrderQueue<Order>(localFilterRef));
         final OrderProcessor localTraderProcRef = new StockTraderOrderProcessor(acctMgr, exchg);
-        localMarketQueueRef.setOrderProcessor(localTraderProcRef);
+        localMarketQueueRef.setOrderProcessor(
+              metrics.instrumentOrderProcessor(StockTraderOrderProcessor.NAME, localTraderProcRef));
         setMarketOrderQueue(localMarketQueueRef);
 
         // Create the order managers
@@ -108,6 +129,16 @@ public class SimpleBroker implements Broker, ExchangeListener {
         this.marketDispatchFilter = marketDispatchFilter;
     }
 
+    /**
+     * Gets the metrics published for this broker, sub classes use this to
+     * instrument the market queue and its processor during construction.
+     *
+     * @return the broker's metrics
+     */
+    protected final BrokerMetrics getMetrics() {
+        return metrics;
+    }
+
     /**
      * Fetch the stock list from the exchange and initialize an order manager
      * for each stock.  Only to be used during construction.
@@ -117,7 +148,8 @@ public class SimpleBroker implements Broker, ExchangeListener {
         final OrderProcessor move2MarketProc = new MoveToMarketQueueProcessor(marketOrders);
         for (String ticker : stockExchange.getTickers()) {
             final int currPrice = stockExchange.getQuote(ticker).getPrice();
-            final OrderManager orderMgr = createOrderManager(ticker, currPrice);
+            final OrderManager orderMgr =
+                  metrics.instrumentOrderManager(createOrderManager(ticker, currPrice));
             orderMgr.setOrderProcessor(move2MarketProc);
             orderManagerMap.put(ticker, orderMgr);
             logger.info(String.format("Initialized order manager for '%s' @ %d",
@@ -263,6 +295,8 @@ public class SimpleBroker implements Broker, ExchangeListener {
      */
     public synchronized final void placeOrder(final MarketBuyOrder order) {
         checkInvariants();
+        tracer.mark(order, OrderStage.ACCEPTED);
+        tracer.mark(order, OrderStage.MARKET_QUEUED);
         marketOrders.enqueue(order);
     }
 
@@ -273,6 +307,8 @@ public class SimpleBroker implements Broker, ExchangeListener {
      */
     public synchronized final void placeOrder(final MarketSellOrder order) {
         checkInvariants();
+        tracer.mark(order, OrderStage.ACCEPTED);
+        tracer.mark(order, OrderStage.MARKET_QUEUED);
         marketOrders.enqueue(order);
     }
 
@@ -306,7 +342,15 @@ public class SimpleBroker implements Broker, ExchangeListener {
     public synchronized final void placeOrder(final StopBuyOrder order)
         throws BrokerException {
         checkInvariants();
-        orderManagerLookup(order.getStockTicker()).queueOrder(order);
+        tracer.mark(order, OrderStage.ACCEPTED);
+        final OrderManager orderMgr;
+        try {
+            orderMgr = orderManagerLookup(order.getStockTicker());
+        } catch (final BrokerException ex) {
+            tracer.abandon(order);
+            throw ex;
+        }
+        orderMgr.queueOrder(order);
     }
 
     /**
@@ -319,7 +363,15 @@ public class SimpleBroker implements Broker, ExchangeListener {
     public synchronized final void placeOrder(final StopSellOrder order)
         throws BrokerException {
         checkInvariants();
-        orderManagerLookup(order.getStockTicker()).queueOrder(order);
+        tracer.mark(order, OrderStage.ACCEPTED);
+        final OrderManager orderMgr;
+        try {
+            orderMgr = orderManagerLookup(order.getStockTicker());
+        } catch (final BrokerException ex) {
+            tracer.abandon(order);
+            throw ex;
+        }
+        orderMgr.queueOrder(order);
     }
 
     /**
@@ -356,6 +408,8 @@ public class SimpleBroker implements Broker, ExchangeListener {
         } catch (final AccountException ex) {
             throw new BrokerException(
                       "Attempt to close the broker failed.", ex);
+        } finally {
+            metrics.close();
         }
     }
     
@@ -2,6 +2,8 @@ package edu.uw.beardcl.broker;
 
 import java.util.Comparator;
 
+import edu.uw.beardcl.metrics.OrderStage;
+import edu.uw.beardcl.metrics.OrderTracer;
 import edu.uw.ext.framework.broker.OrderDispatchFilter;
 import edu.uw.ext.framework.broker.OrderManager;
 import edu.uw.ext.framework.broker.OrderProcessor;
@@ -143,6 +145,7 @@ public class SimpleOrderManager implements OrderManager {
      * @param order the order to be queued
      */
     public final void queueOrder(final StopBuyOrder order) {
+        OrderTracer.getInstance().mark(order, OrderStage.QUEUED);
         stopBuyOrderQueue.enqueue(order);
     }
 
@@ -152,6 +155,7 @@ public class SimpleOrderManager implements OrderManager {
      * @param order the order to be queued
      */
     public final void queueOrder(final StopSellOrder order) {
+        OrderTracer.getInstance().mark(order, OrderStage.QUEUED);
         stopSellOrderQueue.enqueue(order);
     }
 
@@ -3,6 +3,9 @@ package edu.uw.beardcl.broker;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import edu.uw.beardcl.account.SimpleAccount;
+import edu.uw.beardcl.metrics.OrderStage;
+import edu.uw.beardcl.metrics.OrderTracer;
 import edu.uw.ext.framework.account.Account;
 import edu.uw.ext.framework.account.AccountException;
 import edu.uw.ext.framework.account.AccountManager;
@@ -16,6 +19,9 @@ import edu.uw.ext.framework.exchange.StockExchange;
  * @author Chester Beard
  */
 public final class StockTraderOrderProcessor implements OrderProcessor {
+    /** The name this processor's metrics are published under */
+    public static final String NAME = "StockTrader";
+
     /** This class' logger */
     private static final Logger logger =
                          LoggerFactory.getLogger(StockTraderOrderProcessor.class);
@@ -38,19 +44,37 @@ public final class StockTraderOrderProcessor implements OrderProcessor {
     }
 
     /**
-     * Executes the order using the exchange.
+     * Executes the order using the exchange.  The order's trace completes
+     * once the account update is persisted, which may be after this method
+     * returns.
      *
      * @param order the order to process
      */
     public void process(final Order order) {
         logger.info(String.format("Executing - %s", order));
 
+        final OrderTracer tracer = OrderTracer.getInstance();
+        tracer.mark(order, OrderStage.SENT);
         final int sharePrice = exchange.executeTrade(order);
+        tracer.mark(order, OrderStage.EXECUTED);
 
         try {
             final Account acct = acctMgr.getAccount(order.getAccountId());
-            acct.reflectOrder(order, sharePrice);
+            if (acct instanceof SimpleAccount) {
+                ((SimpleAccount) acct).reflectOrderAsync(order, sharePrice).whenComplete((v, ex) -> {
+                    if (ex == null) {
+                        tracer.mark(order, OrderStage.PERSISTED);
+                    } else {
+                        tracer.abandon(order);
+                        logger.error(String.format("Unable to persist account, %s", order.getAccountId()), ex);
+                    }
+                });
+            } else {
+                acct.reflectOrder(order, sharePrice);
+                tracer.mark(order, OrderStage.PERSISTED);
+            }
         } catch (final AccountException ex) {
+            tracer.abandon(order);
             logger.error(String.format("Unable to update account, %s", order.getAccountId()), ex);
         }
     }
@@ -15,6 +15,7 @@ import edu.uw.ext.framework.account.AccountManager;
 import edu.uw.ext.framework.broker.BrokerException;
 import edu.uw.ext.framework.broker.OrderManager;
 import edu.uw.ext.framework.broker.OrderProcessor;
+import edu.uw.ext.framework.broker.OrderQueue;
 import edu.uw.ext.framework.exchange.StockExchange;
 
 /**
@@ -56,9 +57,11 @@ public final class ExecutorBroker extends SimpleBroker {
         //OrderQueue<Order> marketQueue = new ExecutorOrderQueue<Order>(filter, orderExecutor);
         final ThreadedOrderQueue<Order> marketQueue = new ThreadedOrderQueue<Order>("MARKET", filter);
         marketQueue.setPriority(Thread.MAX_PRIORITY);
+        final OrderQueue<Order> instrumentedQueue = getMetrics().instrumentMarketQueue(marketQueue);
         final OrderProcessor tradeProc = new StockTraderOrderProcessor(acctMgr, exchg);
-        marketQueue.setOrderProcessor(tradeProc);
-        setMarketOrderQueue(marketQueue);
+        instrumentedQueue.setOrderProcessor(
+            getMetrics().instrumentOrderProcessor(StockTraderOrderProcessor.NAME, tradeProc));
+        setMarketOrderQueue(instrumentedQueue);
 
         // Create the order managers
         initializeOrderManagers();
@@ -6,6 +6,7 @@ import edu.uw.beardcl.broker.StockTraderOrderProcessor;
 import edu.uw.ext.framework.account.AccountManager;
 import edu.uw.ext.framework.broker.OrderManager;
 import edu.uw.ext.framework.broker.OrderProcessor;
+import edu.uw.ext.framework.broker.OrderQueue;
 import edu.uw.ext.framework.exchange.StockExchange;
 import edu.uw.ext.framework.order.Order;
 
@@ -34,9 +35,11 @@ public final class ThreadedBroker extends SimpleBroker {
 
         final ThreadedOrderQueue<Order> marketQueue = new ThreadedOrderQueue<Order>("MARKET", filter);
         marketQueue.setPriority(Thread.MAX_PRIORITY);
+        final OrderQueue<Order> instrumentedQueue = getMetrics().instrumentMarketQueue(marketQueue);
         final OrderProcessor tradeProc = new StockTraderOrderProcessor(acctMgr, exchg);
-        marketQueue.setOrderProcessor(tradeProc);
-        setMarketOrderQueue(marketQueue);
+        instrumentedQueue.setOrderProcessor(
+            getMetrics().instrumentOrderProcessor(StockTraderOrderProcessor.NAME, tradeProc));
+        setMarketOrderQueue(instrumentedQueue);
 
         // Create the order managers
         initializeOrderManagers();
@@ -34,6 +34,9 @@ public final class ThreadedOrderQueue<T extends Order>
     /** Thread responsible for dispatching orders */
     private Thread dispatchThread;
 
+    /** Set once the dispatch thread is to stop */
+    private volatile boolean stopped;
+
     /** The lock used to control access to the queue */
     private final ReentrantLock queueLock = new ReentrantLock();
 
@@ -151,15 +154,28 @@ public final class ThreadedOrderQueue<T extends Order>
     }
 
     /**
-     * Dispatch orders as long as there are dispatchable orders available.
+     * Stops the dispatch thread, orders remaining in the queue are not
+     * dispatched.
+     */
+    public void shutdown() {
+        stopped = true;
+        dispatchThread.interrupt();
+    }
+
+    /**
+     * Dispatch orders as long as there are dispatchable orders available,
+     * until shut down.
      */
     public void run() {
-        while (true) {
+        while (!stopped) {
             T order;
 
             queueLock.lock();
             try {
                 while ((order = dequeue()) == null) {
+                    if (stopped) {
+                        return;
+                    }
                     try {
                         dispatchCondition.await();
                     } catch (final InterruptedException iex) {
@@ -0,0 +1,14 @@
+package edu.uw.beardcl.dao;
+
+/**
+ * The account fields that may be read by a projection, see ProjectionDao.
+ *
+ * @author Chester Beard
+ */
+public enum AccountField {
+    /** The account balance */
+    BALANCE,
+
+    /** The account password hash */
+    PASSWORD_HASH
+}
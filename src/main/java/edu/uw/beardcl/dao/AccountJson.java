@@ -0,0 +1,44 @@
+package edu.uw.beardcl.dao;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+
+import edu.uw.beardcl.account.SimpleAccount;
+import edu.uw.beardcl.account.SimpleAddress;
+import edu.uw.beardcl.account.SimpleCreditCard;
+import edu.uw.ext.framework.account.Account;
+import edu.uw.ext.framework.account.Address;
+import edu.uw.ext.framework.account.CreditCard;
+
+/**
+ * Creates the JSON mappers used by the DAOs that store accounts as JSON.
+ *
+ * @author Chester Beard
+ */
+final class AccountJson {
+    /**
+     * Prevent instantiation.
+     */
+    private AccountJson() {
+    }
+
+    /**
+     * Creates a mapper that maps the account interfaces to their
+     * implementation classes.
+     *
+     * @return the mapper
+     */
+    static ObjectMapper newMapper() {
+        // Map interfaces to implementation classes
+        final SimpleModule module = new SimpleModule();
+        module.addAbstractTypeMapping(Account.class, SimpleAccount.class);
+        module.addAbstractTypeMapping(Address.class, SimpleAddress.class);
+        module.addAbstractTypeMapping(CreditCard.class, SimpleCreditCard.class);
+        final ObjectMapper mapper = new ObjectMapper();
+        mapper.registerModule(module);
+
+        // An alternative approach that encodes class names in the output
+        //mapper.enableDefaultTyping(ObjectMapper.DefaultTyping.NON_FINAL);
+        return mapper;
+    }
+}
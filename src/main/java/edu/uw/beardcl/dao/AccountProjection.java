@@ -0,0 +1,97 @@
+package edu.uw.beardcl.dao;
+
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
+
+import edu.uw.ext.framework.account.Account;
+
+/**
+ * Selected fields of an account, as read by a ProjectionDao.  Accessing a
+ * field that wasn't read is an error.
+ *
+ * @author Chester Beard
+ */
+public final class AccountProjection {
+    /** The fields read */
+    private final Set<AccountField> fields;
+
+    /** The balance, if read */
+    private final int balance;
+
+    /** The password hash, if read */
+    private final byte[] passwordHash;
+
+    /**
+     * Constructor.
+     *
+     * @param fields the fields read
+     * @param balance the balance, ignored unless read
+     * @param passwordHash the password hash, ignored unless read
+     */
+    public AccountProjection(final Set<AccountField> fields, final int balance,
+                             final byte[] passwordHash) {
+        this.fields = Collections.unmodifiableSet(
+            fields.isEmpty() ? EnumSet.noneOf(AccountField.class) : EnumSet.copyOf(fields));
+        this.balance = fields.contains(AccountField.BALANCE) ? balance : 0;
+        this.passwordHash = fields.contains(AccountField.PASSWORD_HASH) ? passwordHash : null;
+    }
+
+    /**
+     * Creates a projection of a loaded account.
+     *
+     * @param account the account
+     * @param fields the fields to project
+     *
+     * @return the projection
+     */
+    public static AccountProjection of(final Account account, final Set<AccountField> fields) {
+        return new AccountProjection(fields, account.getBalance(), account.getPasswordHash());
+    }
+
+    /**
+     * Gets the fields read.
+     *
+     * @return the fields
+     */
+    public Set<AccountField> getFields() {
+        return fields;
+    }
+
+    /**
+     * Gets the balance.
+     *
+     * @return the balance
+     *
+     * @throws IllegalStateException if the balance wasn't read
+     */
+    public int getBalance() {
+        check(AccountField.BALANCE);
+        return balance;
+    }
+
+    /**
+     * Gets the password hash.
+     *
+     * @return the password hash, may be null
+     *
+     * @throws IllegalStateException if the password hash wasn't read
+     */
+    public byte[] getPasswordHash() {
+        check(AccountField.PASSWORD_HASH);
+        return passwordHash;
+    }
+
+    /**
+     * Checks a field was read.
+     *
+     * @param field the field
+     *
+     * @throws IllegalStateException if the field wasn't read
+     */
+    private void check(final AccountField field) {
+        if (!fields.contains(field)) {
+            throw new IllegalStateException("Field not projected, " + field);
+        }
+    }
+}
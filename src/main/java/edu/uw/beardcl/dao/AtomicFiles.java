@@ -0,0 +1,66 @@
+package edu.uw.beardcl.dao;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * File operations used to replace files atomically and durably.
+ *
+ * @author Chester Beard
+ */
+final class AtomicFiles {
+    /** The class' logger */
+    private static final Logger logger = LoggerFactory.getLogger(AtomicFiles.class);
+
+    /**
+     * Prevent instantiation.
+     */
+    private AtomicFiles() {
+    }
+
+    /**
+     * Renames a file over its target, atomically where the file system
+     * supports it.
+     *
+     * @param source the file
+     * @param target the target path
+     *
+     * @throws IOException if the file can't be renamed
+     */
+    static void move(final Path source, final Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE);
+        } catch (final AtomicMoveNotSupportedException ex) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Forces a directory's entries to storage, making renames within it
+     * durable.  Some platforms can't open a directory, there this is a no-op.
+     *
+     * @param dir the directory
+     *
+     * @throws IOException if the directory can't be forced
+     */
+    static void forceDirectory(final Path dir) throws IOException {
+        final FileChannel channel;
+        try {
+            channel = FileChannel.open(dir, StandardOpenOption.READ);
+        } catch (final IOException ex) {
+            logger.debug("Unable to open directory to force it, " + dir, ex);
+            return;
+        }
+        try (FileChannel c = channel) {
+            c.force(true);
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package edu.uw.beardcl.dao;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import edu.uw.beardcl.account.AccountCodec;
+import edu.uw.ext.framework.account.Account;
+import edu.uw.ext.framework.account.AccountException;
+
+/**
+ * An AccountDao that persists each account to a file in the compact
+ * AccountCodec binary format.
+ *
+ * @author Chester Beard
+ */
+public final class BinaryAccountDao implements CredentialDao {
+    /** This class' logger. */
+    private static final Logger log = LoggerFactory.getLogger(BinaryAccountDao.class);
+
+    /** The name of the default directory containing account data */
+    private static final String ACCOUNTS_DIR = "target/accounts-bin";
+
+    /** The name of the file holding the account data */
+    private static final String ACCOUNT_FILENAME_PAT = "%s.acct";
+
+    /** The accounts directory. */
+    private final File accountsDir;
+
+    /**
+     * Creates an instance of this class using the default accounts directory.
+     */
+    public BinaryAccountDao() {
+        this(new File(ACCOUNTS_DIR));
+    }
+
+    /**
+     * Creates an instance of this class that stores accounts in the
+     * specified directory.
+     *
+     * @param accountsDir the directory to store account files in
+     */
+    public BinaryAccountDao(final File accountsDir) {
+        this.accountsDir = accountsDir;
+    }
+
+    /**
+     * Lookup an account based on username.
+     *
+     * @param accountName the name of the desired account
+     *
+     * @return the account if located otherwise null
+     */
+    @Override
+    public Account getAccount(final String accountName) {
+        try {
+            return AccountCodec.decode(Files.readAllBytes(accountPath(accountName)));
+        } catch (final NoSuchFileException ex) {
+            return null;
+        } catch (final IOException ex) {
+            log.warn(String.format("Unable to access or read account data, '%s'", accountName), ex);
+            return null;
+        }
+    }
+
+    /**
+     * Lookup the password hash of an account, only the start of the account
+     * data is decoded.
+     *
+     * @param accountName the name of the account
+     *
+     * @return the password hash, null if the account doesn't exist
+     *
+     * @exception AccountException if the account data can't be read
+     */
+    @Override
+    public byte[] getPasswordHash(final String accountName) throws AccountException {
+        try {
+            return AccountCodec.decodePasswordHash(Files.readAllBytes(accountPath(accountName)));
+        } catch (final NoSuchFileException ex) {
+            return null;
+        } catch (final IOException ex) {
+            throw new AccountException(String.format("Unable to read account data, '%s'", accountName), ex);
+        }
+    }
+
+    /**
+     * Adds or updates an account.
+     *
+     * @param account the account to add/update
+     *
+     * @exception AccountException if operation fails
+     */
+    @Override
+    public void setAccount(final Account account) throws AccountException {
+        if (!accountsDir.isDirectory() && !accountsDir.mkdirs()) {
+            throw new AccountException("Unable to create account directory, "
+                                     + accountsDir.getAbsolutePath());
+        }
+        try {
+            Files.write(accountPath(account.getName()), AccountCodec.encode(account));
+        } catch (final IOException ex) {
+            throw new AccountException("Unable to store account.", ex);
+        }
+    }
+
+    /**
+     * Remove the account.
+     *
+     * @param accountName the name of the account to remove
+     *
+     * @exception AccountException if operation fails
+     */
+    @Override
+    public void deleteAccount(final String accountName) throws AccountException {
+        try {
+            Files.deleteIfExists(accountPath(accountName));
+        } catch (final IOException ex) {
+            throw new AccountException(String.format("Unable to delete account '%s'", accountName), ex);
+        }
+    }
+
+    /**
+     * Remove all accounts.  This is primarily available to facilitate testing.
+     *
+     * @exception AccountException if operation fails
+     */
+    @Override
+    public void reset() throws AccountException {
+        final File[] files = accountsDir.listFiles();
+        if (files != null) {
+            for (final File f : files) {
+                if (!f.delete()) {
+                    log.warn("File deletion failed, " + f.getAbsolutePath());
+                }
+            }
+        }
+    }
+
+    /**
+     * Close the DAO.
+     */
+    @Override
+    public void close() {
+        // no-op
+    }
+
+    /**
+     * Gets the path of an account's file.
+     *
+     * @param accountName the account name
+     *
+     * @return the path
+     */
+    private Path accountPath(final String accountName) {
+        return new File(accountsDir, String.format(ACCOUNT_FILENAME_PAT, accountName)).toPath();
+    }
+}
@@ -0,0 +1,25 @@
+package edu.uw.beardcl.dao;
+
+import edu.uw.ext.framework.dao.AccountDao;
+import edu.uw.ext.framework.dao.DaoFactory;
+import edu.uw.ext.framework.dao.DaoFactoryException;
+
+
+/**
+ * Implementation of DaoFactory that creates a BinaryAccountDao instance.
+ *
+ * @author Chester Beard
+ */
+public final class BinaryDaoFactory implements DaoFactory {
+    /**
+     * Instantiates an instance of BinaryAccountDao.
+     *
+     * @return a new instance of BinaryAccountDao
+     *
+     * @throws DaoFactoryException if instantiation fails
+     */
+    @Override
+    public AccountDao getAccountDao() throws DaoFactoryException {
+        return new BinaryAccountDao();
+    }
+}
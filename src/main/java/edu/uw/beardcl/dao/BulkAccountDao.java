@@ -0,0 +1,40 @@
+package edu.uw.beardcl.dao;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+import edu.uw.ext.framework.account.Account;
+import edu.uw.ext.framework.account.AccountException;
+import edu.uw.ext.framework.dao.AccountDao;
+
+/**
+ * An AccountDao able to retrieve many accounts more efficiently than one
+ * getAccount call per account.  The default implementation makes one
+ * getAccount call per account.
+ *
+ * @author Chester Beard
+ */
+public interface BulkAccountDao extends AccountDao {
+    /**
+     * Lookup a number of accounts.
+     *
+     * @param accountNames the names of the desired accounts
+     *
+     * @return the accounts located, by account name; accounts that don't
+     *         exist are absent
+     *
+     * @throws AccountException if the lookup fails
+     */
+    default Map<String, Account> getAccounts(final Collection<String> accountNames)
+        throws AccountException {
+        final Map<String, Account> accounts = new HashMap<>();
+        for (final String accountName : accountNames) {
+            final Account acct = getAccount(accountName);
+            if (acct != null) {
+                accounts.put(accountName, acct);
+            }
+        }
+        return accounts;
+    }
+}
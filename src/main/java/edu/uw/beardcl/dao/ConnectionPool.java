@@ -0,0 +1,202 @@
+package edu.uw.beardcl.dao;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import javax.sql.DataSource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A bounded pool of connections obtained from a DataSource.  Connections are
+ * opened on demand, up to the pool size, and each caches the prepared
+ * statements used on it.  A connection is used by one thread at a time,
+ * between borrow and release, so neither connections nor statements need be
+ * thread safe.
+ *
+ * @author Chester Beard
+ */
+final class ConnectionPool {
+    /** The class' logger */
+    private static final Logger logger = LoggerFactory.getLogger(ConnectionPool.class);
+
+    /** The source of connections */
+    private final DataSource dataSource;
+
+    /** Idle connections */
+    private final BlockingQueue<PooledConnection> idle;
+
+    /** Permits to borrow, one per connection the pool may hold */
+    private final Semaphore available;
+
+    /** Maximum time to wait to borrow a connection, in milliseconds */
+    private final long borrowTimeoutMillis;
+
+    /** Set once the pool is closed */
+    private volatile boolean closed;
+
+    /**
+     * A pooled connection and its prepared statement cache.
+     */
+    static final class PooledConnection {
+        /** The connection */
+        private final Connection connection;
+
+        /** Prepared statements by SQL */
+        private final Map<String, PreparedStatement> statements = new HashMap<>();
+
+        /** Set if the connection failed and must not be reused */
+        private boolean broken;
+
+        /**
+         * Constructor.
+         *
+         * @param connection the connection
+         */
+        PooledConnection(final Connection connection) {
+            this.connection = connection;
+        }
+
+        /**
+         * Gets the connection.
+         *
+         * @return the connection
+         */
+        Connection connection() {
+            return connection;
+        }
+
+        /**
+         * Gets a prepared statement for the SQL, preparing it on first use.
+         *
+         * @param sql the SQL
+         *
+         * @return the prepared statement
+         *
+         * @throws SQLException if the statement can't be prepared
+         */
+        PreparedStatement statement(final String sql) throws SQLException {
+            PreparedStatement ps = statements.get(sql);
+            if (ps == null) {
+                ps = connection.prepareStatement(sql);
+                statements.put(sql, ps);
+            }
+            return ps;
+        }
+
+        /**
+         * Marks the connection as failed, it will be closed rather than
+         * returned to the pool.
+         */
+        void markBroken() {
+            broken = true;
+        }
+
+        /**
+         * Closes the statements and the connection.
+         */
+        void close() {
+            for (final PreparedStatement ps : statements.values()) {
+                try {
+                    ps.close();
+                } catch (final SQLException ex) {
+                    logger.warn("Prepared statement close failed.", ex);
+                }
+            }
+            statements.clear();
+            try {
+                connection.close();
+            } catch (final SQLException ex) {
+                logger.warn("Db connection close failed.", ex);
+            }
+        }
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param dataSource the source of connections
+     * @param size the maximum number of connections
+     * @param borrowTimeoutMillis the maximum time to wait to borrow a
+     *                            connection, in milliseconds
+     */
+    ConnectionPool(final DataSource dataSource, final int size, final long borrowTimeoutMillis) {
+        if (size <= 0) {
+            throw new IllegalArgumentException("Pool size must be positive, " + size);
+        }
+        this.dataSource = dataSource;
+        this.borrowTimeoutMillis = borrowTimeoutMillis;
+        idle = new ArrayBlockingQueue<>(size);
+        available = new Semaphore(size, true);
+    }
+
+    /**
+     * Borrows a connection, opening a new connection if none are idle and the
+     * pool isn't full, otherwise waiting for one to be released.
+     *
+     * @return the connection
+     *
+     * @throws SQLException if the pool is closed, no connection became
+     *                      available in time or a connection can't be opened
+     */
+    PooledConnection borrow() throws SQLException {
+        if (closed) {
+            throw new SQLException("Connection pool is closed.");
+        }
+        try {
+            if (!available.tryAcquire(borrowTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                throw new SQLException("Timed out waiting for a database connection.");
+            }
+        } catch (final InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted waiting for a database connection.", ex);
+        }
+
+        final PooledConnection pc = idle.poll();
+        if (pc != null) {
+            return pc;
+        }
+        try {
+            return new PooledConnection(dataSource.getConnection());
+        } catch (final SQLException | RuntimeException ex) {
+            available.release();
+            throw ex;
+        }
+    }
+
+    /**
+     * Returns a borrowed connection to the pool, broken connections are
+     * closed and will be replaced on demand.
+     *
+     * @param pc the connection
+     */
+    void release(final PooledConnection pc) {
+        if (pc.broken || closed || !idle.offer(pc)) {
+            pc.close();
+        }
+        available.release();
+    }
+
+    /**
+     * Closes the pool and its idle connections, borrowed connections are
+     * closed as they are released.
+     */
+    void close() {
+        closed = true;
+        final List<PooledConnection> drained = new ArrayList<>();
+        idle.drainTo(drained);
+        for (final PooledConnection pc : drained) {
+            pc.close();
+        }
+    }
+}
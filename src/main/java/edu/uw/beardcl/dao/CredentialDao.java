@@ -0,0 +1,27 @@
+package edu.uw.beardcl.dao;
+
+import edu.uw.ext.framework.account.Account;
+import edu.uw.ext.framework.account.AccountException;
+import edu.uw.ext.framework.dao.AccountDao;
+
+/**
+ * An AccountDao able to retrieve an account's password hash without loading
+ * the complete account.  The default implementation loads the account.
+ *
+ * @author Chester Beard
+ */
+public interface CredentialDao extends AccountDao {
+    /**
+     * Lookup the password hash of an account.
+     *
+     * @param accountName the name of the account
+     *
+     * @return the password hash, null if the account doesn't exist
+     *
+     * @throws AccountException if the lookup fails
+     */
+    default byte[] getPasswordHash(final String accountName) throws AccountException {
+        final Account acct = getAccount(accountName);
+        return (acct == null) ? null : acct.getPasswordHash();
+    }
+}
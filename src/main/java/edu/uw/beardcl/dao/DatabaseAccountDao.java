@@ -5,6 +5,14 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import javax.naming.Context;
 import javax.naming.InitialContext;
@@ -14,27 +22,37 @@ import javax.sql.DataSource;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.BeansException;
-import org.springframework.context.support.ClassPathXmlApplicationContext;
 
+import edu.uw.beardcl.account.AccountBeanFactory;
+import edu.uw.beardcl.dao.ConnectionPool.PooledConnection;
 import edu.uw.ext.framework.account.Account;
 import edu.uw.ext.framework.account.AccountException;
 import edu.uw.ext.framework.account.Address;
 import edu.uw.ext.framework.account.CreditCard;
-import edu.uw.ext.framework.dao.AccountDao;
 import edu.uw.ext.framework.dao.DaoFactoryException;
 
 /**
  * Implementation of the AccountDao using relational database for persistence.
+ * Each operation borrows a connection from a bounded pool, with its own
+ * prepared statements, for the duration of the operation; operations
+ * proceed concurrently up to the pool size.  A pool size of one serializes
+ * all operations on a single connection.
  *
  * @author Chester Beard
  */
-public final class DatabaseAccountDao implements AccountDao {
+public final class DatabaseAccountDao implements ExtendedAccountDao {
     /** The class' logger */
     private static final Logger logger = LoggerFactory.getLogger(DatabaseAccountDao.class);
 
     /** The JNDI name used for the DataSource */
     private static final String DATASOURCE_JNDI_NAME = "jdbc/AccountDb";
 
+    /** Default number of pooled connections */
+    public static final int DEFAULT_POOL_SIZE = 1;
+
+    /** Maximum time to wait for a pooled connection, in milliseconds */
+    private static final long BORROW_TIMEOUT_MILLIS = 30_000L;
+
     /** SQL for determining if an account exists */
     private static final String ACCOUNT_EXISTS_QUERY =
             "SELECT accountid"
@@ -51,6 +69,38 @@ public final class DatabaseAccountDao implements AccountDao {
           + "  LEFT JOIN creditcard c ON a.accountid = c.accountid"
           + " WHERE a.accountid = ?";
 
+    /** SQL for obtaining a number of accounts, completed by an IN list of
+     *  account ids; the account id follows the account query columns */
+    private static final String ACCOUNTS_QUERY_PREFIX =
+            "SELECT a.password_hash, a.balance, a.fullname, a.phone, a.email,"
+          + "       b.street, b.city, b.state, b.zip,"
+          + "       c.card_number, c.issuer, c.cardtype, c.holder, c.expires,"
+          + "       a.accountid"
+          + "  FROM account a"
+          + "  LEFT JOIN address b ON a.accountid = b.accountid"
+          + "  LEFT JOIN creditcard c ON a.accountid = c.accountid"
+          + " WHERE a.accountid IN (";
+
+    /** Maximum number of account ids in the IN list of a bulk query; every
+     *  chunk is padded to this size so a single statement is prepared */
+    private static final int ACCOUNTS_QUERY_CHUNK = 100;
+
+    /** SQL for obtaining up to ACCOUNTS_QUERY_CHUNK accounts */
+    private static final String ACCOUNTS_QUERY = accountsQuery(ACCOUNTS_QUERY_CHUNK);
+
+    /** SQL for obtaining only the password hash of an account */
+    private static final String PASSWORD_HASH_QUERY =
+            "SELECT password_hash"
+          + "  FROM account"
+          + " WHERE accountid = ?";
+
+    /** SQL for obtaining the projectable fields of an account, the columns
+     *  are those of the account query */
+    private static final String PROJECTION_QUERY =
+            "SELECT password_hash, balance"
+          + "  FROM account"
+          + " WHERE accountid = ?";
+
     /* Column indices for account query result set */
     private static final int QUERY_PASSWD_COL_NDX = 1;
     private static final int QUERY_BALANCE_COL_NDX = 2;
@@ -66,6 +116,7 @@ public final class DatabaseAccountDao implements AccountDao {
     private static final int QUERY_CARDTYPE_COL_NDX = 12;
     private static final int QUERY_HOLDER_COL_NDX = 13;
     private static final int QUERY_EXPIRES_COL_NDX = 14;
+    private static final int QUERY_ACCOUNTID_COL_NDX = 15;
 
     /** SQL for inserting an account */
     private static final String ACCOUNT_INSERT =
@@ -165,89 +216,98 @@ public final class DatabaseAccountDao implements AccountDao {
     /** SQL for resetting the accounts */
     private static final String DELETE_ALL = "DELETE from account";
 
+    /** SQL for inserting or updating an account in one statement */
+    private static final String ACCOUNT_MERGE =
+            "MERGE INTO account t"
+          + " USING SYSIBM.SYSDUMMY1 ON t.accountid = ?"
+          + " WHEN MATCHED THEN UPDATE"
+          + "   SET password_hash = ?, balance = ?, fullname = ?, phone = ?, email = ?"
+          + " WHEN NOT MATCHED THEN INSERT"
+          + "   ( accountid, password_hash, balance, fullname, phone, email )"
+          + "   VALUES ( ?, ?, ?, ?, ?, ? )";
+
+    /** Number of values in the account merge update (or insert) clause */
+    private static final int ACCOUNT_MERGE_VALUES = 6;
+
+    /** SQL for inserting or updating an address in one statement */
+    private static final String ADDRESS_MERGE =
+            "MERGE INTO address t"
+          + " USING SYSIBM.SYSDUMMY1 ON t.accountid = ?"
+          + " WHEN MATCHED THEN UPDATE"
+          + "   SET street = ?, city = ?, state = ?, zip = ?"
+          + " WHEN NOT MATCHED THEN INSERT"
+          + "   ( accountid, street, city, state, zip )"
+          + "   VALUES ( ?, ?, ?, ?, ? )";
+
+    /** Number of values in the address merge update (or insert) clause */
+    private static final int ADDRESS_MERGE_VALUES = 5;
+
+    /** SQL for inserting or updating a credit card in one statement */
+    private static final String CREDITCARD_MERGE =
+            "MERGE INTO creditcard t"
+          + " USING SYSIBM.SYSDUMMY1 ON t.accountid = ?"
+          + " WHEN MATCHED THEN UPDATE"
+          + "   SET card_number = ?, issuer = ?, cardtype = ?, holder = ?, expires = ?"
+          + " WHEN NOT MATCHED THEN INSERT"
+          + "   ( accountid, card_number, issuer, cardtype, holder, expires )"
+          + "   VALUES ( ?, ?, ?, ?, ?, ? )";
+
+    /** Number of values in the credit card merge update (or insert) clause */
+    private static final int CREDITCARD_MERGE_VALUES = 6;
+
     /** Parameter index for account id in existence, delete and account queries */
     private static final int ACCOUNTID_PARAM_NDX = 1;
  
-    /** The connection. */
-    private Connection connection;
-
-    /** Account query prepared statement. */
-    private PreparedStatement accountQuery;
-    private PreparedStatement accountExistsQuery;
-    private PreparedStatement addressExistsQuery;
-    private PreparedStatement ccExistsQuery;
-
-    /** Account insert prepared statement. */
-    private PreparedStatement accountInsert;
-
-    /** Account update prepared statement. */
-    private PreparedStatement accountUpdate;
-
-    /** Address insert prepared statement. */
-    private PreparedStatement addressInsert;
-
-    /** Address update prepared statement. */
-    private PreparedStatement addressUpdate;
-
-    /** Credit card insert prepared statement. */
-    private PreparedStatement ccInsert;
-
-    /** Credit card update prepared statement. */
-    private PreparedStatement ccUpdate;
+    /** The connection pool. */
+    private final ConnectionPool pool;
 
-    /** Account delete prepared statement. */
-    private PreparedStatement accountDelete;
-    private PreparedStatement addressDelete;
-    private PreparedStatement ccDelete;
+    /** Whether the database accepts the MERGE statements, null until known */
+    private volatile Boolean mergeSupported;
 
     /**
-     * Constructor.  Connects to the database and initializes the prepared
-     * statements.
+     * Constructor.  Connects to the database using a single connection.
      *
-     * @throws DaoFactoryException if unable to connect to the database or
-     *         initialize the prepared statements
+     * @throws DaoFactoryException if unable to connect to the database
      */
     public DatabaseAccountDao() throws DaoFactoryException {
+        this(DEFAULT_POOL_SIZE);
+    }
+
+    /**
+     * Constructor.  Creates the connection pool and verifies the database
+     * can be connected to.
+     *
+     * @param poolSize the maximum number of connections
+     *
+     * @throws DaoFactoryException if unable to connect to the database
+     */
+    public DatabaseAccountDao(final int poolSize) throws DaoFactoryException {
         // Connect to the database using JNDI
-    	Context ctx = null;
-    	try {
+        Context ctx = null;
+        final DataSource ds;
+        try {
             ctx = new InitialContext();
-            final DataSource ds = (DataSource) ctx.lookup(DATASOURCE_JNDI_NAME);
-            connection = ds.getConnection();
+            ds = (DataSource) ctx.lookup(DATASOURCE_JNDI_NAME);
         } catch (final NamingException nex) {
             throw new DaoFactoryException(
                     String.format("Unable to resolve datasource name, '%s'", DATASOURCE_JNDI_NAME),
                     nex);
-        } catch (final SQLException ex) {
-            throw new DaoFactoryException("Unable to connect to database.", ex);
         } finally {
             if (ctx != null) {
-            	try {
-					ctx.close();
-				} catch (NamingException nex) {
-	                logger.warn(String.format("Unable to close context.", nex));
-					nex.printStackTrace();
-				}
+                try {
+                    ctx.close();
+                } catch (final NamingException nex) {
+                    logger.warn("Unable to close context.", nex);
+                }
             }
         }
 
-        // Prepare all the statements for future use
+        pool = new ConnectionPool(ds, poolSize, BORROW_TIMEOUT_MILLIS);
         try {
-            accountExistsQuery = connection.prepareStatement(ACCOUNT_EXISTS_QUERY);
-            addressExistsQuery = connection.prepareStatement(ADDRESS_EXISTS_QUERY);
-            ccExistsQuery = connection.prepareStatement(CREDITCARD_EXISTS_QUERY);
-            accountQuery = connection.prepareStatement(ACCOUNT_QUERY);
-            accountInsert = connection.prepareStatement(ACCOUNT_INSERT);
-            accountUpdate = connection.prepareStatement(ACCOUNT_UPDATE);
-            addressInsert = connection.prepareStatement(ADDRESS_INSERT);
-            addressUpdate = connection.prepareStatement(ADDRESS_UPDATE);
-            ccInsert = connection.prepareStatement(CREDITCARD_INSERT);
-            ccUpdate = connection.prepareStatement(CREDITCARD_UPDATE);
-            accountDelete = connection.prepareStatement(ACCOUNT_DELETE);
-            addressDelete = connection.prepareStatement(ADDRESS_DELETE);
-            ccDelete = connection.prepareStatement(CREDITCARD_DELETE);
+            pool.release(pool.borrow());
         } catch (final SQLException ex) {
-            throw new DaoFactoryException("Unable to initialize prepared statemnts.", ex);
+            pool.close();
+            throw new DaoFactoryException("Unable to connect to database.", ex);
         }
     }
 
@@ -260,82 +320,219 @@ public final class DatabaseAccountDao implements AccountDao {
      */
     public Account getAccount(final String accountName) {
         Account acct = null;
-        ResultSet rs = null;
-        try (ClassPathXmlApplicationContext appContext =
-        	 new ClassPathXmlApplicationContext("context.xml")) {
+        PooledConnection pc = null;
+        try {
+            pc = pool.borrow();
+            final AccountBeanFactory beans = AccountBeanFactory.getInstance();
+            final PreparedStatement accountQuery = pc.statement(ACCOUNT_QUERY);
             accountQuery.setString(ACCOUNTID_PARAM_NDX, accountName);
-       	    rs = accountQuery.executeQuery();
-
-            if (rs.next()) {
-                acct = appContext.getBean(Account.class);
-                acct.setName(accountName);
-                acct.setPasswordHash(rs.getBytes(QUERY_PASSWD_COL_NDX));
-                acct.setBalance(rs.getInt(QUERY_BALANCE_COL_NDX));
-
-                acct.setFullName(rs.getString(QUERY_FULLNAME_COL_NDX));
-                acct.setPhone(rs.getString(QUERY_PHONE_COL_NDX));
-                acct.setEmail(rs.getString(QUERY_EMAIL_COL_NDX));
-
-                Address addr;
-                final String streetAddress = rs.getString(QUERY_STREET_COL_NDX);
-                final String city = rs.getString(QUERY_CITY_COL_NDX);
-                final String state = rs.getString(QUERY_STATE_COL_NDX);
-                final String zipCode = rs.getString(QUERY_ZIP_COL_NDX);
-
-                if (streetAddress != null ||
-                    city != null ||
-                    state != null ||
-                    zipCode != null) {
-                    addr = appContext.getBean(Address.class);
-                    addr.setStreetAddress(streetAddress);
-                    addr.setCity(city);
-                    addr.setState(state);
-                    addr.setZipCode(zipCode);
-                    acct.setAddress(addr);
+            try (ResultSet rs = accountQuery.executeQuery()) {
+                if (rs.next()) {
+                    acct = toAccount(beans, accountName, rs);
+                } else {
+                    logger.info(String.format("Account '%s' not in DB", accountName));
                 }
-
-                final String accountNumber = rs.getString(QUERY_CARDNUM_COL_NDX);
-                final String issuer = rs.getString(QUERY_ISSUER_COL_NDX);
-                final String type = rs.getString(QUERY_CARDTYPE_COL_NDX);
-                final String holder = rs.getString(QUERY_HOLDER_COL_NDX);
-                final String expirationDate = rs.getString(QUERY_EXPIRES_COL_NDX);
-
-                if (accountNumber != null ||
-                    issuer != null ||
-                    type != null ||
-                    holder != null ||
-                    expirationDate != null) {
-                    CreditCard cc;
-                    cc = appContext.getBean(CreditCard.class);
-                    cc.setAccountNumber(accountNumber);
-                    cc.setIssuer(issuer);
-                    cc.setType(type);
-                    cc.setHolder(holder);
-                    cc.setExpirationDate(expirationDate);
-                    acct.setCreditCard(cc);
-                }
-            } else {
-                logger.info(String.format("Account '%s' not in DB", accountName));
             }
         } catch (final BeansException ex) {
             logger.error("Unable to instantiate required classes, null will be returned.", ex);
         } catch (final SQLException ex) {
+            markBroken(pc);
             logger.error("Unable to retrieve values for account.", ex);
         } catch (final AccountException ex) {
             logger.error("Unable to initialize account.", ex);
         } finally {
-        	if (rs != null) {
-        		try {
-					rs.close();
-				} catch (SQLException ex) {
-		            logger.warn("Attemp to close result set failed.", ex);
-				}
-        	}
+            release(pc);
+        }
+
+        return acct;
+    }
+
+    /**
+     * Lookup a number of accounts, using one query per ACCOUNTS_QUERY_CHUNK
+     * accounts rather than one query per account.
+     *
+     * @param accountNames the names of the desired accounts
+     *
+     * @return the accounts located, by account name
+     *
+     * @exception AccountException if the query fails
+     */
+    @Override
+    public Map<String, Account> getAccounts(final Collection<String> accountNames)
+        throws AccountException {
+        final Map<String, Account> accounts = new HashMap<>(accountNames.size() * 4 / 3 + 1);
+        if (accountNames.isEmpty()) {
+            return accounts;
+        }
+        final List<String> names = new ArrayList<>(new LinkedHashSet<>(accountNames));
+        PooledConnection pc = null;
+        try {
+            pc = pool.borrow();
+            final AccountBeanFactory beans = AccountBeanFactory.getInstance();
+            final PreparedStatement accountsQuery = pc.statement(ACCOUNTS_QUERY);
+            for (int start = 0; start < names.size(); start += ACCOUNTS_QUERY_CHUNK) {
+                final int end = Math.min(start + ACCOUNTS_QUERY_CHUNK, names.size());
+                for (int i = 0; i < ACCOUNTS_QUERY_CHUNK; i++) {
+                    // pad a short chunk by repeating its last name
+                    accountsQuery.setString(i + 1, names.get(Math.min(start + i, end - 1)));
+                }
+                try (ResultSet rs = accountsQuery.executeQuery()) {
+                    while (rs.next()) {
+                        final String accountName = rs.getString(QUERY_ACCOUNTID_COL_NDX);
+                        accounts.put(accountName, toAccount(beans, accountName, rs));
+                    }
+                }
+            }
+        } catch (final BeansException ex) {
+            throw new AccountException("Unable to instantiate required classes.", ex);
+        } catch (final SQLException ex) {
+            markBroken(pc);
+            throw new AccountException("Unable to retrieve values for accounts.", ex);
+        } finally {
+            release(pc);
+        }
+        return accounts;
+    }
+
+    /**
+     * Creates an account from the current row of an account query.
+     *
+     * @param beans the factory used to create the account and its components
+     * @param accountName the name of the account
+     * @param rs the result set, positioned on the account's row
+     *
+     * @return the account
+     *
+     * @throws SQLException if the row can't be read
+     * @throws AccountException if the account can't be initialized
+     */
+    private static Account toAccount(final AccountBeanFactory beans, final String accountName,
+                                     final ResultSet rs)
+        throws SQLException, AccountException {
+        final Account acct = beans.newAccount();
+        acct.setName(accountName);
+        acct.setPasswordHash(rs.getBytes(QUERY_PASSWD_COL_NDX));
+        acct.setBalance(rs.getInt(QUERY_BALANCE_COL_NDX));
+
+        acct.setFullName(rs.getString(QUERY_FULLNAME_COL_NDX));
+        acct.setPhone(rs.getString(QUERY_PHONE_COL_NDX));
+        acct.setEmail(rs.getString(QUERY_EMAIL_COL_NDX));
+
+        final String streetAddress = rs.getString(QUERY_STREET_COL_NDX);
+        final String city = rs.getString(QUERY_CITY_COL_NDX);
+        final String state = rs.getString(QUERY_STATE_COL_NDX);
+        final String zipCode = rs.getString(QUERY_ZIP_COL_NDX);
+
+        if (streetAddress != null ||
+            city != null ||
+            state != null ||
+            zipCode != null) {
+            final Address addr = beans.newAddress();
+            addr.setStreetAddress(streetAddress);
+            addr.setCity(city);
+            addr.setState(state);
+            addr.setZipCode(zipCode);
+            acct.setAddress(addr);
         }
 
+        final String accountNumber = rs.getString(QUERY_CARDNUM_COL_NDX);
+        final String issuer = rs.getString(QUERY_ISSUER_COL_NDX);
+        final String type = rs.getString(QUERY_CARDTYPE_COL_NDX);
+        final String holder = rs.getString(QUERY_HOLDER_COL_NDX);
+        final String expirationDate = rs.getString(QUERY_EXPIRES_COL_NDX);
+
+        if (accountNumber != null ||
+            issuer != null ||
+            type != null ||
+            holder != null ||
+            expirationDate != null) {
+            final CreditCard cc = beans.newCreditCard();
+            cc.setAccountNumber(accountNumber);
+            cc.setIssuer(issuer);
+            cc.setType(type);
+            cc.setHolder(holder);
+            cc.setExpirationDate(expirationDate);
+            acct.setCreditCard(cc);
+        }
         return acct;
     }
 
+    /**
+     * Builds the bulk account query for an IN list of the given size.
+     *
+     * @param size the number of account ids in the IN list
+     *
+     * @return the SQL
+     */
+    private static String accountsQuery(final int size) {
+        final StringBuilder sb = new StringBuilder(ACCOUNTS_QUERY_PREFIX);
+        for (int i = 0; i < size; i++) {
+            sb.append((i == 0) ? "?" : ", ?");
+        }
+        return sb.append(')').toString();
+    }
+
+    /**
+     * Lookup the password hash of an account, without the joins required to
+     * load the complete account.
+     *
+     * @param accountName the name of the account
+     *
+     * @return the password hash, null if the account doesn't exist
+     *
+     * @exception AccountException if the query fails
+     */
+    @Override
+    public byte[] getPasswordHash(final String accountName) throws AccountException {
+        PooledConnection pc = null;
+        try {
+            pc = pool.borrow();
+            final PreparedStatement passwordHashQuery = pc.statement(PASSWORD_HASH_QUERY);
+            passwordHashQuery.setString(ACCOUNTID_PARAM_NDX, accountName);
+            try (ResultSet rs = passwordHashQuery.executeQuery()) {
+                return rs.next() ? rs.getBytes(1) : null;
+            }
+        } catch (final SQLException ex) {
+            markBroken(pc);
+            throw new AccountException("Unable to retrieve password hash for account.", ex);
+        } finally {
+            release(pc);
+        }
+    }
+
+    /**
+     * Lookup selected fields of an account, reading only the account table.
+     *
+     * @param accountName the name of the account
+     * @param fields the fields to read
+     *
+     * @return the fields read, null if the account doesn't exist
+     *
+     * @exception AccountException if the query fails
+     */
+    @Override
+    public AccountProjection getProjection(final String accountName, final Set<AccountField> fields)
+        throws AccountException {
+        PooledConnection pc = null;
+        try {
+            pc = pool.borrow();
+            final PreparedStatement projectionQuery = pc.statement(PROJECTION_QUERY);
+            projectionQuery.setString(ACCOUNTID_PARAM_NDX, accountName);
+            try (ResultSet rs = projectionQuery.executeQuery()) {
+                if (!rs.next()) {
+                    return null;
+                }
+                return new AccountProjection(fields, rs.getInt(QUERY_BALANCE_COL_NDX),
+                                             rs.getBytes(QUERY_PASSWD_COL_NDX));
+            }
+        } catch (final SQLException ex) {
+            markBroken(pc);
+            throw new AccountException("Unable to retrieve account fields.", ex);
+        } finally {
+            release(pc);
+        }
+    }
+
     /**
      * Adds or updates an account.
      *
@@ -343,90 +540,264 @@ public final class DatabaseAccountDao implements AccountDao {
      *
      * @exception AccountException if operation fails
      */
-	public void setAccount(final Account account) throws AccountException {
+    public void setAccount(final Account account) throws AccountException {
+        setAccounts(Collections.singletonList(account));
+    }
+
+    /**
+     * Adds or updates a number of accounts in a single transaction.  Where
+     * the database supports MERGE each table is written with a single batch
+     * of upserts, otherwise each account is written using existence queries
+     * followed by inserts or updates.
+     *
+     * @param accounts the accounts to add/update
+     *
+     * @exception AccountException if operation fails, no account is written
+     */
+    public void setAccounts(final Collection<? extends Account> accounts) throws AccountException {
+        if (accounts.isEmpty()) {
+            return;
+        }
+        PooledConnection pc = null;
+        Connection connection = null;
         try {
-            String accountId = account.getName();
-            accountExistsQuery.setString(ACCOUNTID_PARAM_NDX, accountId);
-       	    ResultSet rs = accountExistsQuery.executeQuery();
-        	boolean acctExists = rs.next();
-            @SuppressWarnings("resource")
-			PreparedStatement ps = acctExists ? accountUpdate : accountInsert;
+            pc = pool.borrow();
+            final boolean merge = isMergeSupported(pc);
+            connection = pc.connection();
             connection.setAutoCommit(false);
-        	ps.setBytes(ACCOUNT_PASSWD_PARAM_NDX, account.getPasswordHash());
-        	ps.setInt(ACCOUNT_BALANCE_PARAM_NDX, account.getBalance());
-        	ps.setString(ACCOUNT_FULLNAME_PARAM_NDX, account.getFullName());
-        	ps.setString(ACCOUNT_PHONE_PARAM_NDX, account.getPhone());
-        	ps.setString(ACCOUNT_EMAIL_PARAM_NDX, account.getEmail());
-            ps.setString(ACCOUNT_ACCOUNTID_PARAM_NDX, accountId);
-            ps.executeUpdate();
-
-            insertUpdateAddress(accountId, account.getAddress());
-            insertUpdateCreditCard(accountId, account.getCreditCard());
-
+            if (merge) {
+                mergeAccounts(pc, accounts);
+            } else {
+                for (final Account account : accounts) {
+                    insertUpdateAccount(pc, account);
+                }
+            }
             connection.commit();
         } catch (final SQLException ex) {
-            try {
-				connection.rollback();
-			} catch (SQLException e) {
-				logger.error("Failed to rollback", e);
-			}
+            // a failed statement may keep the failing values, Derby's MERGE
+            // does, so the connection and its cached statements are discarded
+            markBroken(pc);
+            if (connection != null) {
+                try {
+                    connection.rollback();
+                } catch (final SQLException e) {
+                    logger.error("Failed to rollback", e);
+                }
+            }
             throw new AccountException("Insertion/update of account failed.", ex);
         } finally {
+            if (connection != null) {
+                try {
+                    connection.setAutoCommit(true);
+                } catch (final SQLException e) {
+                    markBroken(pc);
+                    logger.error("Failed to enable auto commit", e);
+                }
+            }
+            release(pc);
+        }
+    }
+
+    /**
+     * Determines, on first use, whether the database accepts the MERGE
+     * statements.  This must be called outside of a transaction, as some
+     * databases abort the transaction when a statement fails to prepare.
+     *
+     * @param pc the connection to use
+     *
+     * @return true if the MERGE statements may be used
+     */
+    private boolean isMergeSupported(final PooledConnection pc) {
+        Boolean supported = mergeSupported;
+        if (supported == null) {
             try {
-				connection.setAutoCommit(true);
-			} catch (SQLException e) {
-				logger.error("Failed to enable auto commit", e);
-			}
+                pc.statement(ACCOUNT_MERGE);
+                pc.statement(ADDRESS_MERGE);
+                pc.statement(CREDITCARD_MERGE);
+                supported = Boolean.TRUE;
+            } catch (final SQLException ex) {
+                logger.info("MERGE not supported, falling back to query and insert/update.", ex);
+                supported = Boolean.FALSE;
+            }
+            mergeSupported = supported;
         }
+        return supported;
     }
-	
+
     /**
-     * Inserts, updates or deletes a credit credit card record.
-     * 
+     * Writes accounts using one batch of MERGE statements per table, and a
+     * batch of deletes for each absent address and credit card.  The account
+     * batch is executed first as the other tables reference it.
+     *
+     * @param pc the connection to use
+     * @param accounts the accounts to write
+     *
+     * @throws SQLException if any occur
+     */
+    private void mergeAccounts(final PooledConnection pc,
+                               final Collection<? extends Account> accounts)
+        throws SQLException {
+        final PreparedStatement accountMerge = pc.statement(ACCOUNT_MERGE);
+        final PreparedStatement addressMerge = pc.statement(ADDRESS_MERGE);
+        final PreparedStatement addressDelete = pc.statement(ADDRESS_DELETE);
+        final PreparedStatement ccMerge = pc.statement(CREDITCARD_MERGE);
+        final PreparedStatement ccDelete = pc.statement(CREDITCARD_DELETE);
+        final PreparedStatement[] batches = {accountMerge, addressMerge, addressDelete, ccMerge, ccDelete};
+        final int[] batchSizes = new int[batches.length];
+
+        try {
+            for (final Account account : accounts) {
+                final String accountId = account.getName();
+                for (int offset = 0; offset <= ACCOUNT_MERGE_VALUES; offset += ACCOUNT_MERGE_VALUES) {
+                    accountMerge.setString(offset + ACCOUNTID_PARAM_NDX, accountId);
+                    accountMerge.setBytes(offset + 2, account.getPasswordHash());
+                    accountMerge.setInt(offset + 3, account.getBalance());
+                    accountMerge.setString(offset + 4, account.getFullName());
+                    accountMerge.setString(offset + 5, account.getPhone());
+                    accountMerge.setString(offset + 6, account.getEmail());
+                }
+                accountMerge.addBatch();
+                batchSizes[0]++;
+
+                final Address address = account.getAddress();
+                if (address != null) {
+                    for (int offset = 0; offset <= ADDRESS_MERGE_VALUES; offset += ADDRESS_MERGE_VALUES) {
+                        addressMerge.setString(offset + ACCOUNTID_PARAM_NDX, accountId);
+                        addressMerge.setString(offset + 2, address.getStreetAddress());
+                        addressMerge.setString(offset + 3, address.getCity());
+                        addressMerge.setString(offset + 4, address.getState());
+                        addressMerge.setString(offset + 5, address.getZipCode());
+                    }
+                    addressMerge.addBatch();
+                    batchSizes[1]++;
+                } else {
+                    addressDelete.setString(ACCOUNTID_PARAM_NDX, accountId);
+                    addressDelete.addBatch();
+                    batchSizes[2]++;
+                }
+
+                final CreditCard cc = account.getCreditCard();
+                if (cc != null) {
+                    for (int offset = 0; offset <= CREDITCARD_MERGE_VALUES; offset += CREDITCARD_MERGE_VALUES) {
+                        ccMerge.setString(offset + ACCOUNTID_PARAM_NDX, accountId);
+                        ccMerge.setString(offset + 2, cc.getAccountNumber());
+                        ccMerge.setString(offset + 3, cc.getIssuer());
+                        ccMerge.setString(offset + 4, cc.getType());
+                        ccMerge.setString(offset + 5, cc.getHolder());
+                        ccMerge.setString(offset + 6, cc.getExpirationDate());
+                    }
+                    ccMerge.addBatch();
+                    batchSizes[3]++;
+                } else {
+                    ccDelete.setString(ACCOUNTID_PARAM_NDX, accountId);
+                    ccDelete.addBatch();
+                    batchSizes[4]++;
+                }
+            }
+
+            for (int i = 0; i < batches.length; i++) {
+                if (batchSizes[i] > 0) {
+                    batches[i].executeBatch();
+                    batchSizes[i] = 0;
+                }
+            }
+        } finally {
+            // the statements are cached, don't leave a failed batch behind
+            for (int i = 0; i < batches.length; i++) {
+                if (batchSizes[i] > 0) {
+                    batches[i].clearBatch();
+                }
+            }
+        }
+    }
+
+    /**
+     * Inserts or updates an account, its address and credit card, querying
+     * for the existence of each record first.
+     *
+     * @param pc the connection to use
+     * @param account the account
+     *
+     * @throws SQLException if any occur
+     */
+    private void insertUpdateAccount(final PooledConnection pc, final Account account)
+        throws SQLException {
+        final String accountId = account.getName();
+        final PreparedStatement accountExistsQuery = pc.statement(ACCOUNT_EXISTS_QUERY);
+        accountExistsQuery.setString(ACCOUNTID_PARAM_NDX, accountId);
+        final boolean acctExists;
+        try (ResultSet rs = accountExistsQuery.executeQuery()) {
+            acctExists = rs.next();
+        }
+        final PreparedStatement ps = pc.statement(acctExists ? ACCOUNT_UPDATE : ACCOUNT_INSERT);
+        ps.setBytes(ACCOUNT_PASSWD_PARAM_NDX, account.getPasswordHash());
+        ps.setInt(ACCOUNT_BALANCE_PARAM_NDX, account.getBalance());
+        ps.setString(ACCOUNT_FULLNAME_PARAM_NDX, account.getFullName());
+        ps.setString(ACCOUNT_PHONE_PARAM_NDX, account.getPhone());
+        ps.setString(ACCOUNT_EMAIL_PARAM_NDX, account.getEmail());
+        ps.setString(ACCOUNT_ACCOUNTID_PARAM_NDX, accountId);
+        ps.executeUpdate();
+
+        insertUpdateAddress(pc, accountId, account.getAddress());
+        insertUpdateCreditCard(pc, accountId, account.getCreditCard());
+    }
+
+    /**
+     * Inserts, updates or deletes an address record.
+     *
+     * @param pc the connection to use
      * @param accountId the records account id
      * @param address the Address object, may be null
      * @throws SQLException if any occur
      */
-	private void insertUpdateAddress(final String accountId,
-	                                 final Address address)
-	throws SQLException {
-	    addressExistsQuery.setString(ACCOUNTID_PARAM_NDX, accountId);
-	    ResultSet rs = addressExistsQuery.executeQuery();
-	    boolean hasAddress = rs.next();
-
-	    if (address != null) {
-	        @SuppressWarnings("resource")
-	        PreparedStatement ps = hasAddress ? addressUpdate : addressInsert;
-	        ps.setString(ADDRESS_STREET_PARAM_NDX, address.getStreetAddress());
-	        ps.setString(ADDRESS_CITY_PARAM_NDX, address.getCity());
-	        ps.setString(ADDRESS_STATE_PARAM_NDX, address.getState());
-	        ps.setString(ADDRESS_ZIP_PARAM_NDX, address.getZipCode());
-	        ps.setString(ADDRESS_ACCOUNTID_PARAM_NDX, accountId);
+    private void insertUpdateAddress(final PooledConnection pc,
+                                     final String accountId,
+                                     final Address address)
+        throws SQLException {
+        final PreparedStatement addressExistsQuery = pc.statement(ADDRESS_EXISTS_QUERY);
+        addressExistsQuery.setString(ACCOUNTID_PARAM_NDX, accountId);
+        final boolean hasAddress;
+        try (ResultSet rs = addressExistsQuery.executeQuery()) {
+            hasAddress = rs.next();
+        }
+
+        if (address != null) {
+            final PreparedStatement ps = pc.statement(hasAddress ? ADDRESS_UPDATE : ADDRESS_INSERT);
+            ps.setString(ADDRESS_STREET_PARAM_NDX, address.getStreetAddress());
+            ps.setString(ADDRESS_CITY_PARAM_NDX, address.getCity());
+            ps.setString(ADDRESS_STATE_PARAM_NDX, address.getState());
+            ps.setString(ADDRESS_ZIP_PARAM_NDX, address.getZipCode());
+            ps.setString(ADDRESS_ACCOUNTID_PARAM_NDX, accountId);
             ps.executeUpdate();
 
-	    } else if (hasAddress) {
-	        addressDelete.setString(ACCOUNTID_PARAM_NDX, accountId);
-	        addressDelete.executeUpdate();
-	    }
-	}
-	
-	/**
-	 * Inserts, updates or deletes a credit credit card record.
-	 * 
-	 * @param accountId the records account id
-	 * @param cc the CreditCard object, may be null
-	 * @throws SQLException if any occur
-	 */
-	private void insertUpdateCreditCard(final String accountId,
-	                                    final CreditCard cc)
-    throws SQLException {
-	    ccExistsQuery.setString(ACCOUNTID_PARAM_NDX, accountId);
-	    ResultSet rs = ccExistsQuery.executeQuery();
-	    boolean hasCreditCard = rs.next();
-
-	    if (cc != null) {
-	        @SuppressWarnings("resource")
-	        PreparedStatement ps = hasCreditCard ? ccUpdate : ccInsert;
+        } else if (hasAddress) {
+            final PreparedStatement addressDelete = pc.statement(ADDRESS_DELETE);
+            addressDelete.setString(ACCOUNTID_PARAM_NDX, accountId);
+            addressDelete.executeUpdate();
+        }
+    }
+
+    /**
+     * Inserts, updates or deletes a credit credit card record.
+     *
+     * @param pc the connection to use
+     * @param accountId the records account id
+     * @param cc the CreditCard object, may be null
+     * @throws SQLException if any occur
+     */
+    private void insertUpdateCreditCard(final PooledConnection pc,
+                                        final String accountId,
+                                        final CreditCard cc)
+        throws SQLException {
+        final PreparedStatement ccExistsQuery = pc.statement(CREDITCARD_EXISTS_QUERY);
+        ccExistsQuery.setString(ACCOUNTID_PARAM_NDX, accountId);
+        final boolean hasCreditCard;
+        try (ResultSet rs = ccExistsQuery.executeQuery()) {
+            hasCreditCard = rs.next();
+        }
+
+        if (cc != null) {
+            final PreparedStatement ps = pc.statement(hasCreditCard ? CREDITCARD_UPDATE : CREDITCARD_INSERT);
             ps.setString(CREDITCARD_CARDNUM_PARAM_NDX, cc.getAccountNumber());
             ps.setString(CREDITCARD_ISSUER_PARAM_NDX, cc.getIssuer());
             ps.setString(CREDITCARD_CARDTYPE_PARAM_NDX, cc.getType());
@@ -435,11 +806,12 @@ public final class DatabaseAccountDao implements AccountDao {
             ps.setString(CREDITCARD_ACCOUNTID_PARAM_NDX, accountId);
             ps.executeUpdate();
 
-	    } else if (hasCreditCard) {
+        } else if (hasCreditCard) {
+            final PreparedStatement ccDelete = pc.statement(CREDITCARD_DELETE);
             ccDelete.setString(ACCOUNTID_PARAM_NDX, accountId);
             ccDelete.executeUpdate();
-	    }
-	}
+        }
+    }
 
     /**
      * Remove the account.
@@ -450,11 +822,17 @@ public final class DatabaseAccountDao implements AccountDao {
      */
     public void deleteAccount(final String accountName) throws AccountException
     {
+        PooledConnection pc = null;
         try {
+            pc = pool.borrow();
+            final PreparedStatement accountDelete = pc.statement(ACCOUNT_DELETE);
             accountDelete.setString(ACCOUNTID_PARAM_NDX, accountName);
             accountDelete.executeUpdate();
         } catch (final SQLException ex) {
+            markBroken(pc);
             throw new AccountException("Account deletion failed", ex);
+        } finally {
+            release(pc);
         }
     }
 
@@ -464,10 +842,17 @@ public final class DatabaseAccountDao implements AccountDao {
      * @exception AccountException if operation fails
      */
     public void reset() throws AccountException {
-        try (Statement stmnt = connection.createStatement();) {
-            stmnt.executeUpdate(DELETE_ALL);
+        PooledConnection pc = null;
+        try {
+            pc = pool.borrow();
+            try (Statement stmnt = pc.connection().createStatement()) {
+                stmnt.executeUpdate(DELETE_ALL);
+            }
         } catch (final SQLException ex) {
+            markBroken(pc);
             throw new AccountException("Database deletion failed", ex);
+        } finally {
+            release(pc);
         }
     }
 
@@ -475,16 +860,29 @@ public final class DatabaseAccountDao implements AccountDao {
      * Close the DAO.
      */
     public void close() {
-        if (connection != null) {
-            try {
-                connection.close();
-            } catch (final SQLException ex) {
-                logger.warn("Db connection close failed.", ex);
-            } finally {
-                connection = null;
-                logger.info("Db connection closed.");
-            }
+        pool.close();
+        logger.info("Db connections closed.");
+    }
+
+    /**
+     * Marks a connection as failed if it was borrowed.
+     *
+     * @param pc the connection, may be null
+     */
+    private static void markBroken(final PooledConnection pc) {
+        if (pc != null) {
+            pc.markBroken();
         }
     }
-}
 
+    /**
+     * Releases a connection to the pool if it was borrowed.
+     *
+     * @param pc the connection, may be null
+     */
+    private void release(final PooledConnection pc) {
+        if (pc != null) {
+            pool.release(pc);
+        }
+    }
+}
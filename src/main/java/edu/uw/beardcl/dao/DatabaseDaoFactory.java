@@ -11,6 +11,18 @@ import edu.uw.ext.framework.dao.DaoFactoryException;
  * @author Chester Beard
  */
 public final class DatabaseDaoFactory implements DaoFactory {
+    /** Number of pooled connections used by each DAO */
+    private int poolSize = DatabaseAccountDao.DEFAULT_POOL_SIZE;
+
+    /**
+     * Sets the number of pooled connections used by each DAO.
+     *
+     * @param poolSize the maximum number of connections
+     */
+    public void setPoolSize(final int poolSize) {
+        this.poolSize = poolSize;
+    }
+
     /**
      * Instantiates a new DatabaseAccountDao object.
      *
@@ -18,7 +30,6 @@ public final class DatabaseDaoFactory implements DaoFactory {
      * @throws DaoFactoryException if unable to initialize the DAO
      */
     public AccountDao getAccountDao() throws DaoFactoryException {
-        return new DatabaseAccountDao();
+        return new DatabaseAccountDao(poolSize);
     }
 }
-
@@ -0,0 +1,770 @@
+package edu.uw.beardcl.dao;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import edu.uw.ext.framework.account.Account;
+import edu.uw.ext.framework.account.AccountException;
+import edu.uw.ext.framework.account.Address;
+import edu.uw.ext.framework.account.CreditCard;
+import edu.uw.ext.framework.dao.AccountDao;
+
+/**
+ * An AccountDao that records account changes as events appended to a log,
+ * rather than rewriting the account record for every change.  Balance only
+ * changes, such as fills, are appended as a small balance delta; any other
+ * change appends the complete account as a profile event.  The first event
+ * for an account in each log segment is always a profile event, so every
+ * segment is self contained.
+ *
+ * Accounts are periodically compacted: the current segment is archived, the
+ * net effect of its events is written to the base DAO, and a new segment is
+ * started.  Archived segments are retained, allowing the balance of an
+ * account to be reconstructed as of any point in time.  The base DAO is
+ * written without holding the lock appends are made under, the accounts
+ * being compacted remain readable until they have been written.  A segment
+ * whose compaction failed is retried by the next compaction, or completed
+ * when the DAO is next opened.
+ *
+ * Each event is a line of tab separated fields: time (epoch milliseconds),
+ * type, account name and payload (the delta, or the account as JSON).
+ *
+ * @author Chester Beard
+ */
+public final class EventSourcedAccountDao implements CredentialDao {
+    /** This class' logger. */
+    private static final Logger logger = LoggerFactory.getLogger(EventSourcedAccountDao.class);
+
+    /** Name of the current log segment */
+    private static final String CURRENT_SEGMENT = "events.log";
+
+    /** Format of archived segment names */
+    private static final String ARCHIVE_FORMAT = "events-%08d.log";
+
+    /** Pattern matching archived segment names */
+    private static final Pattern ARCHIVE_PATTERN = Pattern.compile("events-(\\d{8})\\.log");
+
+    /** Suffix of an archived segment whose compaction has not completed */
+    private static final String COMPACTING_SUFFIX = ".compacting";
+
+    /** Event field separator */
+    private static final char SEPARATOR = '\t';
+
+    /** Profile event type, the payload is the complete account */
+    private static final String PROFILE = "PROFILE";
+
+    /** Delta event type, the payload is the change in balance */
+    private static final String DELTA = "DELTA";
+
+    /** Delete event type, there is no payload */
+    private static final String DELETE = "DELETE";
+
+    /** Number of fields in an event */
+    private static final int EVENT_FIELDS = 4;
+
+    /** The DAO holding the compacted account records */
+    private final ExtendedAccountDao baseDao;
+
+    /** Directory holding the log segments */
+    private final File logDir;
+
+    /** If true the log is forced to storage after every append */
+    private final boolean syncOnAppend;
+
+    /** JSON serializer */
+    private final ObjectMapper mapper = AccountJson.newMapper();
+
+    /** Net effect of the current segment's events, by account name */
+    private final Map<String, PendingState> pending = new HashMap<>();
+
+    /** Net effect of the events of the segment being compacted, by account
+     *  name, superseded by pending; accounts are removed when deleted */
+    private Map<String, PendingState> compacting = new ConcurrentHashMap<>();
+
+    /** The segment being compacted, null if no compaction is outstanding */
+    private File compactingSegment;
+
+    /** Serializes compactions */
+    private final Object compactionLock = new Object();
+
+    /** Serializes the compaction's writes to the base DAO with deletes and
+     *  resets, so a deleted account isn't rewritten */
+    private final Object baseLock = new Object();
+
+    /** Runs the periodic compaction, null if compaction is only explicit */
+    private final ScheduledExecutorService compactor;
+
+    /** The current segment */
+    private FileOutputStream logStream;
+
+    /** Writer for the current segment */
+    private Writer logWriter;
+
+    /** Sequence number of the most recently archived segment */
+    private int archiveSeq;
+
+    /**
+     * The net effect of an account's events in the current segment.
+     */
+    private static final class PendingState {
+        /** The account JSON from the most recent profile event */
+        private final String json;
+
+        /** Fingerprint of the non balance fields of the profile */
+        private final String profileKey;
+
+        /** The balance recorded in the profile */
+        private final int profileBalance;
+
+        /** Sum of the deltas since the profile event */
+        private int delta;
+
+        /**
+         * Constructor.
+         *
+         * @param json the account JSON
+         * @param profileKey the profile fingerprint
+         * @param profileBalance the balance recorded in the profile
+         */
+        PendingState(final String json, final String profileKey, final int profileBalance) {
+            this.json = json;
+            this.profileKey = profileKey;
+            this.profileBalance = profileBalance;
+        }
+
+        /**
+         * Gets the current balance.
+         *
+         * @return the balance
+         */
+        int balance() {
+            return profileBalance + delta;
+        }
+    }
+
+    /**
+     * Constructor.  Completes any interrupted compaction and replays the
+     * current segment.
+     *
+     * @param baseDao the DAO holding the compacted account records
+     * @param logDir the directory to hold the log segments
+     * @param compactionIntervalMillis interval between compactions in
+     *                                 milliseconds, zero for explicit
+     *                                 compaction only
+     * @param syncOnAppend if true the log is forced to storage on every append
+     *
+     * @throws AccountException if the log can't be recovered or opened
+     */
+    public EventSourcedAccountDao(final AccountDao baseDao, final File logDir,
+                                  final long compactionIntervalMillis,
+                                  final boolean syncOnAppend)
+        throws AccountException {
+        this.baseDao = ExtendedAccountDao.of(baseDao);
+        this.logDir = logDir;
+        this.syncOnAppend = syncOnAppend;
+
+        if (!logDir.isDirectory() && !logDir.mkdirs()) {
+            throw new AccountException("Unable to create event log directory, "
+                                     + logDir.getAbsolutePath());
+        }
+
+        recoverInterruptedCompaction();
+        for (final File segment : listArchives()) {
+            final Matcher m = ARCHIVE_PATTERN.matcher(segment.getName());
+            if (m.matches()) {
+                archiveSeq = Math.max(archiveSeq, Integer.parseInt(m.group(1)));
+            }
+        }
+        replay(new File(logDir, CURRENT_SEGMENT), pending);
+        openSegment();
+
+        if (compactionIntervalMillis > 0) {
+            compactor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(final Runnable r) {
+                    final Thread t = new Thread(r, "AccountEventCompactor");
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+            compactor.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        compact();
+                    } catch (final AccountException ex) {
+                        logger.error("Account event compaction failed.", ex);
+                    }
+                }
+            }, compactionIntervalMillis, compactionIntervalMillis, TimeUnit.MILLISECONDS);
+        } else {
+            compactor = null;
+        }
+    }
+
+    /**
+     * Lookup an account based on username, applying any events not yet
+     * compacted.
+     *
+     * @param accountName the name of the desired account
+     *
+     * @return the account if located otherwise null
+     */
+    @Override
+    public synchronized Account getAccount(final String accountName) {
+        final PendingState state = pendingState(accountName);
+        if (state == null) {
+            return baseDao.getAccount(accountName);
+        }
+
+        try {
+            return materialize(state);
+        } catch (final IOException ex) {
+            logger.warn(String.format("Unable to materialize account '%s'", accountName), ex);
+            return null;
+        }
+    }
+
+    /**
+     * Lookup the password hash of an account.
+     *
+     * @param accountName the name of the account
+     *
+     * @return the password hash, null if the account doesn't exist
+     *
+     * @exception AccountException if the lookup fails
+     */
+    @Override
+    public synchronized byte[] getPasswordHash(final String accountName) throws AccountException {
+        return (pendingState(accountName) != null) ? CredentialDao.super.getPasswordHash(accountName)
+                                                   : baseDao.getPasswordHash(accountName);
+    }
+
+    /**
+     * Records a change to an account.  If only the balance has changed a
+     * delta event is appended, otherwise a profile event.
+     *
+     * @param account the account to add/update
+     *
+     * @exception AccountException if the event can't be appended
+     */
+    @Override
+    public synchronized void setAccount(final Account account) throws AccountException {
+        final String name = account.getName();
+        final String profileKey = profileKey(account);
+        final PendingState state = pending.get(name);
+
+        if (state != null && state.profileKey.equals(profileKey)) {
+            final int delta = account.getBalance() - state.balance();
+            if (delta != 0) {
+                append(DELTA, name, Integer.toString(delta));
+                state.delta += delta;
+            }
+        } else {
+            final String json;
+            try {
+                json = mapper.writeValueAsString(account);
+            } catch (final IOException ex) {
+                throw new AccountException("Unable to serialize account.", ex);
+            }
+            append(PROFILE, name, json);
+            pending.put(name, new PendingState(json, profileKey, account.getBalance()));
+        }
+    }
+
+    /**
+     * Remove the account.
+     *
+     * @param accountName the name of the account to remove
+     *
+     * @exception AccountException if operation fails
+     */
+    @Override
+    public synchronized void deleteAccount(final String accountName) throws AccountException {
+        append(DELETE, accountName, "");
+        pending.remove(accountName);
+        synchronized (baseLock) {
+            compacting.remove(accountName);
+            baseDao.deleteAccount(accountName);
+        }
+    }
+
+    /**
+     * Remove all accounts and all event history.
+     *
+     * @exception AccountException if operation fails
+     */
+    @Override
+    public synchronized void reset() throws AccountException {
+        closeSegment();
+        pending.clear();
+        for (final File segment : listArchives()) {
+            deleteSegment(segment);
+        }
+        if (compactingSegment != null) {
+            deleteSegment(compactingSegment);
+            compactingSegment = null;
+        }
+        deleteSegment(new File(logDir, CURRENT_SEGMENT));
+        archiveSeq = 0;
+        synchronized (baseLock) {
+            compacting.clear();
+            baseDao.reset();
+        }
+        openSegment();
+    }
+
+    /**
+     * Compacts the current segment: the segment is archived, a new segment
+     * started, and the net effect of the archived segment's events written
+     * to the base DAO.  Appends continue while the base DAO is written.  A
+     * previously failed compaction is completed first.
+     *
+     * @exception AccountException if compaction fails, the events remain
+     *                             readable and compaction will be retried by
+     *                             the next compaction or completed when the
+     *                             DAO is next opened
+     */
+    public void compact() throws AccountException {
+        synchronized (compactionLock) {
+            boolean retried = true;
+            while (retried) {
+                final File segment;
+                final Map<String, PendingState> states;
+                synchronized (this) {
+                    retried = (compactingSegment != null);
+                    if (!retried) {
+                        if (pending.isEmpty()) {
+                            return;
+                        }
+                        archiveCurrentSegment();
+                    }
+                    segment = compactingSegment;
+                    states = compacting;
+                }
+
+                writeToBase(states);
+
+                synchronized (this) {
+                    if (compactingSegment == segment) {
+                        completeArchive(segment);
+                        compactingSegment = null;
+                        compacting = new ConcurrentHashMap<>();
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Reconstructs the balance of an account as of a point in time, from the
+     * archived and current log segments.
+     *
+     * @param accountName the name of the account
+     * @param epochMillis the point in time, in milliseconds since the epoch
+     *
+     * @return the balance, null if the account had no recorded history or
+     *         had been deleted at that time
+     *
+     * @exception AccountException if the log segments can't be read
+     */
+    public synchronized Integer balanceAsOf(final String accountName, final long epochMillis)
+        throws AccountException {
+        flushSegment();
+        final List<File> segments = listArchives();
+        if (compactingSegment != null) {
+            segments.add(compactingSegment);
+        }
+        segments.add(new File(logDir, CURRENT_SEGMENT));
+
+        Integer balance = null;
+        for (final File segment : segments) {
+            if (!segment.isFile()) {
+                continue;
+            }
+            try (BufferedReader in = Files.newBufferedReader(segment.toPath(), StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = in.readLine()) != null) {
+                    final String[] event = parseEvent(line);
+                    if (event == null || !accountName.equals(event[2])) {
+                        continue;
+                    }
+                    if (Long.parseLong(event[0]) > epochMillis) {
+                        return balance;
+                    }
+                    switch (event[1]) {
+                    case PROFILE:
+                        balance = mapper.readTree(event[3]).get("balance").asInt();
+                        break;
+                    case DELTA:
+                        balance = ((balance == null) ? 0 : balance) + Integer.parseInt(event[3]);
+                        break;
+                    default:
+                        balance = null;
+                        break;
+                    }
+                }
+            } catch (final IOException ex) {
+                throw new AccountException("Unable to read event log segment, "
+                                         + segment.getAbsolutePath(), ex);
+            }
+        }
+        return balance;
+    }
+
+    /**
+     * Compacts any outstanding events and closes the log and the base DAO.
+     *
+     * @exception AccountException if compaction or closing fails
+     */
+    @Override
+    public void close() throws AccountException {
+        if (compactor != null) {
+            compactor.shutdown();
+            try {
+                compactor.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (final InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        try {
+            compact();
+        } finally {
+            synchronized (this) {
+                closeSegment();
+                baseDao.close();
+            }
+        }
+    }
+
+    /**
+     * Appends an event to the current segment.
+     *
+     * @param type the event type
+     * @param accountName the account name
+     * @param payload the event payload
+     *
+     * @throws AccountException if the event can't be written
+     */
+    private void append(final String type, final String accountName, final String payload)
+        throws AccountException {
+        if (logWriter == null) {
+            throw new AccountException("Account event log has been closed.");
+        }
+        try {
+            logWriter.append(Long.toString(System.currentTimeMillis())).append(SEPARATOR)
+                     .append(type).append(SEPARATOR)
+                     .append(accountName).append(SEPARATOR)
+                     .append(payload).append('\n');
+            flushSegment();
+        } catch (final IOException ex) {
+            throw new AccountException("Unable to append account event.", ex);
+        }
+    }
+
+    /**
+     * Flushes the current segment, forcing it to storage if so configured.
+     *
+     * @throws AccountException if the segment can't be flushed
+     */
+    private void flushSegment() throws AccountException {
+        try {
+            logWriter.flush();
+            if (syncOnAppend) {
+                logStream.getChannel().force(false);
+            }
+        } catch (final IOException ex) {
+            throw new AccountException("Unable to flush account event log.", ex);
+        }
+    }
+
+    /**
+     * Opens the current segment for appending.
+     *
+     * @throws AccountException if the segment can't be opened
+     */
+    private void openSegment() throws AccountException {
+        try {
+            logStream = new FileOutputStream(new File(logDir, CURRENT_SEGMENT), true);
+            logWriter = new OutputStreamWriter(logStream, StandardCharsets.UTF_8);
+        } catch (final IOException ex) {
+            throw new AccountException("Unable to open account event log.", ex);
+        }
+    }
+
+    /**
+     * Closes the current segment.
+     */
+    private void closeSegment() {
+        if (logWriter != null) {
+            try {
+                logWriter.close();
+            } catch (final IOException ex) {
+                logger.warn("Unable to close account event log.", ex);
+            }
+            logWriter = null;
+            logStream = null;
+        }
+    }
+
+    /**
+     * Gets the net effect of an account's events not yet written to the base
+     * DAO.
+     *
+     * @param accountName the account name
+     *
+     * @return the net effect of the events, null if there are none
+     */
+    private PendingState pendingState(final String accountName) {
+        final PendingState state = pending.get(accountName);
+        return (state != null) ? state : compacting.get(accountName);
+    }
+
+    /**
+     * Archives the current segment for compaction and starts a new one, the
+     * net effect of the archived segment's events becomes the compacting
+     * state.
+     *
+     * @throws AccountException if the segment can't be archived
+     */
+    private void archiveCurrentSegment() throws AccountException {
+        closeSegment();
+        final File segment = new File(logDir,
+                             String.format(ARCHIVE_FORMAT, archiveSeq + 1) + COMPACTING_SUFFIX);
+        final File current = new File(logDir, CURRENT_SEGMENT);
+        if (!current.renameTo(segment)) {
+            openSegment();
+            throw new AccountException("Unable to archive event log segment, "
+                                     + current.getAbsolutePath());
+        }
+        archiveSeq++;
+        openSegment();
+
+        compacting = new ConcurrentHashMap<>(pending);
+        compactingSegment = segment;
+        pending.clear();
+    }
+
+    /**
+     * Writes the net effect of compacted events to the base DAO.  Accounts
+     * removed from the compacted state while it is written, being deleted,
+     * are skipped.
+     *
+     * @param compacted the net effect of the events, by account name
+     *
+     * @throws AccountException if an account can't be written
+     */
+    private void writeToBase(final Map<String, PendingState> compacted) throws AccountException {
+        for (final Map.Entry<String, PendingState> entry : compacted.entrySet()) {
+            final Account acct;
+            try {
+                acct = materialize(entry.getValue());
+            } catch (final IOException ex) {
+                throw new AccountException("Unable to materialize account for compaction.", ex);
+            }
+            synchronized (baseLock) {
+                if (compacted.get(entry.getKey()) == entry.getValue()) {
+                    baseDao.setAccount(acct);
+                }
+            }
+        }
+    }
+
+    /**
+     * Completes any compaction interrupted by a failure, by replaying the
+     * segment into the base DAO.
+     *
+     * @throws AccountException if the compaction can't be completed
+     */
+    private void recoverInterruptedCompaction() throws AccountException {
+        final File[] interrupted = logDir.listFiles();
+        if (interrupted == null) {
+            return;
+        }
+        Arrays.sort(interrupted);
+        for (final File segment : interrupted) {
+            if (segment.getName().endsWith(COMPACTING_SUFFIX)) {
+                logger.info("Completing interrupted compaction of " + segment.getName());
+                final Map<String, PendingState> compacted = new HashMap<>();
+                replay(segment, compacted);
+                writeToBase(compacted);
+                completeArchive(segment);
+            }
+        }
+    }
+
+    /**
+     * Marks a compacted segment complete.
+     *
+     * @param compacting the compacted segment
+     *
+     * @throws AccountException if the segment can't be renamed
+     */
+    private void completeArchive(final File compacting) throws AccountException {
+        final String name = compacting.getName();
+        final File archive = new File(logDir, name.substring(0, name.length() - COMPACTING_SUFFIX.length()));
+        if (!compacting.renameTo(archive)) {
+            throw new AccountException("Unable to complete archive of event log segment, "
+                                     + compacting.getAbsolutePath());
+        }
+    }
+
+    /**
+     * Replays a segment, accumulating the net effect of its events.
+     *
+     * @param segment the segment
+     * @param states receives the net effect of the events, by account name
+     *
+     * @throws AccountException if the segment can't be read
+     */
+    private void replay(final File segment, final Map<String, PendingState> states)
+        throws AccountException {
+        if (!segment.isFile()) {
+            return;
+        }
+        try (BufferedReader in = Files.newBufferedReader(segment.toPath(), StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                final String[] event = parseEvent(line);
+                if (event == null) {
+                    // a torn final append
+                    logger.warn("Ignoring malformed account event in " + segment.getName());
+                    continue;
+                }
+                final String name = event[2];
+                switch (event[1]) {
+                case PROFILE:
+                    final Account acct = mapper.readValue(event[3], Account.class);
+                    states.put(name, new PendingState(event[3], profileKey(acct), acct.getBalance()));
+                    break;
+                case DELTA:
+                    final PendingState state = states.get(name);
+                    if (state != null) {
+                        state.delta += Integer.parseInt(event[3]);
+                    }
+                    break;
+                default:
+                    states.remove(name);
+                    break;
+                }
+            }
+        } catch (final IOException ex) {
+            throw new AccountException("Unable to replay event log segment, "
+                                     + segment.getAbsolutePath(), ex);
+        }
+    }
+
+    /**
+     * Creates the account represented by the net effect of its events.
+     *
+     * @param state the net effect of the events
+     *
+     * @return the account
+     *
+     * @throws IOException if the account JSON can't be parsed
+     */
+    private Account materialize(final PendingState state) throws IOException {
+        final Account acct = mapper.readValue(state.json, Account.class);
+        acct.setBalance(state.balance());
+        return acct;
+    }
+
+    /**
+     * Lists the archived segments, in order.
+     *
+     * @return the archived segments
+     */
+    private List<File> listArchives() {
+        final List<File> archives = new ArrayList<>();
+        final File[] files = logDir.listFiles();
+        if (files != null) {
+            Arrays.sort(files);
+            for (final File f : files) {
+                if (ARCHIVE_PATTERN.matcher(f.getName()).matches()) {
+                    archives.add(f);
+                }
+            }
+        }
+        return archives;
+    }
+
+    /**
+     * Deletes a segment.
+     *
+     * @param segment the segment
+     */
+    private static void deleteSegment(final File segment) {
+        if (segment.exists() && !segment.delete()) {
+            logger.warn("Unable to delete event log segment, " + segment.getAbsolutePath());
+        }
+    }
+
+    /**
+     * Splits an event line into its fields.
+     *
+     * @param line the event line
+     *
+     * @return the fields, null if the line is malformed
+     */
+    private static String[] parseEvent(final String line) {
+        final String[] event = line.split(String.valueOf(SEPARATOR), EVENT_FIELDS);
+        return (event.length == EVENT_FIELDS) ? event : null;
+    }
+
+    /**
+     * Produces a fingerprint of all account fields other than the balance.
+     *
+     * @param acct the account
+     *
+     * @return the fingerprint
+     */
+    private static String profileKey(final Account acct) {
+        final StringBuilder sb = new StringBuilder(256);
+        sb.append(Arrays.toString(acct.getPasswordHash())).append(SEPARATOR)
+          .append(acct.getFullName()).append(SEPARATOR)
+          .append(acct.getPhone()).append(SEPARATOR)
+          .append(acct.getEmail());
+        final Address addr = acct.getAddress();
+        if (addr != null) {
+            sb.append(SEPARATOR).append('A')
+              .append(SEPARATOR).append(addr.getStreetAddress())
+              .append(SEPARATOR).append(addr.getCity())
+              .append(SEPARATOR).append(addr.getState())
+              .append(SEPARATOR).append(addr.getZipCode());
+        }
+        final CreditCard cc = acct.getCreditCard();
+        if (cc != null) {
+            sb.append(SEPARATOR).append('C')
+              .append(SEPARATOR).append(cc.getAccountNumber())
+              .append(SEPARATOR).append(cc.getIssuer())
+              .append(SEPARATOR).append(cc.getType())
+              .append(SEPARATOR).append(cc.getHolder())
+              .append(SEPARATOR).append(cc.getExpirationDate());
+        }
+        return sb.toString();
+    }
+}
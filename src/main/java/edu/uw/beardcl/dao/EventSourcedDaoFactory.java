@@ -0,0 +1,78 @@
+package edu.uw.beardcl.dao;
+
+import java.io.File;
+
+import edu.uw.ext.framework.account.AccountException;
+import edu.uw.ext.framework.dao.AccountDao;
+import edu.uw.ext.framework.dao.DaoFactory;
+import edu.uw.ext.framework.dao.DaoFactoryException;
+
+
+/**
+ * Implementation of DaoFactory that creates an EventSourcedAccountDao,
+ * compacting into a JsonAccountDao.
+ *
+ * @author Chester Beard
+ */
+public final class EventSourcedDaoFactory implements DaoFactory {
+    /** Default directory holding the event log */
+    private static final String DEFAULT_LOG_DIR = "target/account-events";
+
+    /** Default interval between compactions, in milliseconds */
+    private static final long DEFAULT_COMPACTION_INTERVAL_MILLIS = 60_000L;
+
+    /** Directory holding the event log */
+    private String logDirectory = DEFAULT_LOG_DIR;
+
+    /** Interval between compactions in milliseconds, zero for explicit only */
+    private long compactionIntervalMillis = DEFAULT_COMPACTION_INTERVAL_MILLIS;
+
+    /** If true the log is forced to storage on every append */
+    private boolean syncOnAppend;
+
+    /**
+     * Sets the directory holding the event log.
+     *
+     * @param logDirectory the directory
+     */
+    public void setLogDirectory(final String logDirectory) {
+        this.logDirectory = logDirectory;
+    }
+
+    /**
+     * Sets the interval between compactions.
+     *
+     * @param compactionIntervalMillis the interval in milliseconds, zero for
+     *                                 explicit compaction only
+     */
+    public void setCompactionIntervalMillis(final long compactionIntervalMillis) {
+        this.compactionIntervalMillis = compactionIntervalMillis;
+    }
+
+    /**
+     * Sets whether the log is forced to storage on every append.
+     *
+     * @param syncOnAppend if true every append is forced to storage
+     */
+    public void setSyncOnAppend(final boolean syncOnAppend) {
+        this.syncOnAppend = syncOnAppend;
+    }
+
+    /**
+     * Instantiates an instance of EventSourcedAccountDao.
+     *
+     * @return a new instance of EventSourcedAccountDao
+     *
+     * @throws DaoFactoryException if instantiation fails
+     */
+    @Override
+    public AccountDao getAccountDao() throws DaoFactoryException {
+        try {
+            return new EventSourcedAccountDao(new JsonAccountDao(), new File(logDirectory),
+                                              compactionIntervalMillis, syncOnAppend);
+        } catch (final AccountException ex) {
+            throw new DaoFactoryException(
+                  "Instantiation of EventSourcedAccountDao failed.", ex);
+        }
+    }
+}
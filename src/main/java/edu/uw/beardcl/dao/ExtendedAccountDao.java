@@ -0,0 +1,27 @@
+package edu.uw.beardcl.dao;
+
+import edu.uw.ext.framework.dao.AccountDao;
+
+/**
+ * An AccountDao offering every narrow lookup, projections, password hashes
+ * and bulk reads.  DAOs implement the lookups they can perform efficiently
+ * and inherit the default, getAccount based, implementation of the others.
+ *
+ * @author Chester Beard
+ */
+public interface ExtendedAccountDao extends ProjectionDao, BulkAccountDao {
+    /**
+     * Views any AccountDao as an ExtendedAccountDao.  The narrow lookups the
+     * DAO supports are used, the others fall back to the default
+     * implementations.
+     *
+     * @param dao the DAO
+     *
+     * @return the DAO itself if it is an ExtendedAccountDao, otherwise an
+     *         adapter over it
+     */
+    static ExtendedAccountDao of(final AccountDao dao) {
+        return (dao instanceof ExtendedAccountDao) ? (ExtendedAccountDao) dao
+                                                   : new ExtendedAccountDaoAdapter(dao);
+    }
+}
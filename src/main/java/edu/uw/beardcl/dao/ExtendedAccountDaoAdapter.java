@@ -0,0 +1,79 @@
+package edu.uw.beardcl.dao;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+
+import edu.uw.ext.framework.account.Account;
+import edu.uw.ext.framework.account.AccountException;
+import edu.uw.ext.framework.dao.AccountDao;
+
+/**
+ * Adapts an AccountDao to ExtendedAccountDao, forwarding the narrow lookups
+ * the DAO supports and falling back to the default implementations for the
+ * others.
+ *
+ * @author Chester Beard
+ */
+final class ExtendedAccountDaoAdapter implements ExtendedAccountDao {
+    /** The adapted DAO */
+    private final AccountDao dao;
+
+    /**
+     * Constructor.
+     *
+     * @param dao the DAO to adapt
+     */
+    ExtendedAccountDaoAdapter(final AccountDao dao) {
+        this.dao = dao;
+    }
+
+    @Override
+    public Account getAccount(final String accountName) {
+        return dao.getAccount(accountName);
+    }
+
+    @Override
+    public void setAccount(final Account account) throws AccountException {
+        dao.setAccount(account);
+    }
+
+    @Override
+    public void deleteAccount(final String accountName) throws AccountException {
+        dao.deleteAccount(accountName);
+    }
+
+    @Override
+    public void reset() throws AccountException {
+        dao.reset();
+    }
+
+    @Override
+    public void close() throws AccountException {
+        dao.close();
+    }
+
+    @Override
+    public byte[] getPasswordHash(final String accountName) throws AccountException {
+        return (dao instanceof CredentialDao)
+            ? ((CredentialDao) dao).getPasswordHash(accountName)
+            : ExtendedAccountDao.super.getPasswordHash(accountName);
+    }
+
+    @Override
+    public AccountProjection getProjection(final String accountName,
+                                           final Set<AccountField> fields)
+        throws AccountException {
+        return (dao instanceof ProjectionDao)
+            ? ((ProjectionDao) dao).getProjection(accountName, fields)
+            : ExtendedAccountDao.super.getProjection(accountName, fields);
+    }
+
+    @Override
+    public Map<String, Account> getAccounts(final Collection<String> accountNames)
+        throws AccountException {
+        return (dao instanceof BulkAccountDao)
+            ? ((BulkAccountDao) dao).getAccounts(accountNames)
+            : ExtendedAccountDao.super.getAccounts(accountNames);
+    }
+}
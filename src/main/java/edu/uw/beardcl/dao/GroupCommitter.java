@@ -0,0 +1,255 @@
+package edu.uw.beardcl.dao;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Durably installs files written to temporary paths, sharing the cost of
+ * forcing them to storage among concurrent writers.  A writer announces
+ * itself with begin before writing its file, then hands the open file over
+ * and waits; the commit thread collects the files handed over, forces them
+ * back to back, renames each into place and forces each directory renamed
+ * into once for the whole group.  The commit thread waits for further files
+ * only while announced writers have yet to hand theirs over, for at most the
+ * window and until the group is full, so a lone writer is committed at once.
+ * A writer returns only once its file is durable under its final name.
+ *
+ * @author Chester Beard
+ */
+final class GroupCommitter {
+    /** The class' logger */
+    private static final Logger logger = LoggerFactory.getLogger(GroupCommitter.class);
+
+    /** Number of files committed as a group, beyond which no writer is awaited */
+    private static final int MAX_GROUP_SIZE = 64;
+
+    /** Time the commit thread waits for further writers after the first */
+    private final long windowMillis;
+
+    /** Files awaiting commit, guarded by this */
+    private List<Pending> queue = new ArrayList<>();
+
+    /** Number of writers that have begun but not handed over their file,
+     *  guarded by this */
+    private int writing;
+
+    /** Set once closed, guarded by this */
+    private boolean closed;
+
+    /** The commit thread */
+    private final Thread committer;
+
+    /**
+     * A file awaiting commit.
+     */
+    private static final class Pending {
+        /** The temporary file, open for writing */
+        private final FileChannel channel;
+
+        /** The temporary path */
+        private final Path temp;
+
+        /** The final path */
+        private final Path target;
+
+        /** Set once committed, or failed, guarded by the committer */
+        private boolean done;
+
+        /** The failure, if the commit failed */
+        private IOException failure;
+
+        /**
+         * Constructor.
+         *
+         * @param channel the temporary file, open for writing
+         * @param temp the temporary path
+         * @param target the final path
+         */
+        Pending(final FileChannel channel, final Path temp, final Path target) {
+            this.channel = channel;
+            this.temp = temp;
+            this.target = target;
+        }
+    }
+
+    /**
+     * Constructor, starts the commit thread.
+     *
+     * @param windowMillis the time to wait for further writers after the
+     *                     first, in milliseconds
+     */
+    GroupCommitter(final long windowMillis) {
+        this.windowMillis = windowMillis;
+        committer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                commitLoop();
+            }
+        }, "AccountGroupCommit");
+        committer.setDaemon(true);
+        committer.start();
+    }
+
+    /**
+     * Announces a writer, the commit thread waits for its file while
+     * committing a group.  Must be followed by commit, or by abandon should
+     * the write fail.
+     */
+    synchronized void begin() {
+        writing++;
+    }
+
+    /**
+     * Withdraws a writer that won't hand over a file.
+     */
+    synchronized void abandon() {
+        writing--;
+        notifyAll();
+    }
+
+    /**
+     * Hands over a written temporary file and waits until it has been forced
+     * to storage, renamed to its final path and the rename forced to
+     * storage.  The file is closed whether or not the commit succeeds.
+     *
+     * @param channel the temporary file, open for writing
+     * @param temp the temporary path
+     * @param target the final path
+     *
+     * @throws IOException if the file could not be committed
+     */
+    void commit(final FileChannel channel, final Path temp, final Path target) throws IOException {
+        final Pending p = new Pending(channel, temp, target);
+        boolean interrupted = false;
+        synchronized (this) {
+            writing--;
+            if (closed) {
+                channel.close();
+                throw new IOException("Group committer is closed.");
+            }
+            queue.add(p);
+            notifyAll();
+            while (!p.done) {
+                try {
+                    wait();
+                } catch (final InterruptedException ex) {
+                    // the file has been handed over, the commit must be awaited
+                    interrupted = true;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        if (p.failure != null) {
+            throw p.failure;
+        }
+    }
+
+    /**
+     * Commits the files already handed over and stops the commit thread.
+     */
+    void close() {
+        synchronized (this) {
+            closed = true;
+            notifyAll();
+        }
+        try {
+            committer.join();
+        } catch (final InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * The commit thread's loop, commits groups until closed.
+     */
+    private void commitLoop() {
+        while (true) {
+            final List<Pending> group;
+            synchronized (this) {
+                try {
+                    while (queue.isEmpty() && !closed) {
+                        wait();
+                    }
+                    final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(windowMillis);
+                    long remaining;
+                    while (!closed && writing > 0 && queue.size() < MAX_GROUP_SIZE
+                           && (remaining = deadline - System.nanoTime()) > 0) {
+                        TimeUnit.NANOSECONDS.timedWait(this, remaining);
+                    }
+                } catch (final InterruptedException ex) {
+                    logger.warn("Group commit thread interrupted, committing outstanding files.");
+                    closed = true;
+                }
+                if (queue.isEmpty()) {
+                    return;
+                }
+                group = queue;
+                queue = new ArrayList<>();
+            }
+
+            commitGroup(group);
+
+            synchronized (this) {
+                for (final Pending p : group) {
+                    p.done = true;
+                }
+                notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Forces and closes each file in a group, renames those forced, then
+     * forces the directories renamed into, once each.
+     *
+     * @param group the files
+     */
+    private void commitGroup(final List<Pending> group) {
+        final List<Pending> renamed = new ArrayList<>(group.size());
+        for (final Pending p : group) {
+            try (FileChannel c = p.channel) {
+                c.force(true);
+            } catch (final IOException ex) {
+                p.failure = ex;
+            }
+        }
+        for (final Pending p : group) {
+            if (p.failure != null) {
+                continue;
+            }
+            try {
+                AtomicFiles.move(p.temp, p.target);
+                renamed.add(p);
+            } catch (final IOException ex) {
+                p.failure = ex;
+            }
+        }
+
+        final Set<Path> dirs = new HashSet<>();
+        for (final Pending p : renamed) {
+            dirs.add(p.target.getParent());
+        }
+        for (final Path dir : dirs) {
+            try {
+                AtomicFiles.forceDirectory(dir);
+            } catch (final IOException ex) {
+                for (final Pending p : renamed) {
+                    if (p.target.getParent().equals(dir)) {
+                        p.failure = ex;
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,196 @@
+package edu.uw.beardcl.dao;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+
+import edu.uw.beardcl.account.SimpleAccount;
+import edu.uw.ext.framework.account.Account;
+
+/**
+ * Reads and writes accounts as JSON files, in the format of JsonAccountDao,
+ * with the per call overhead of the ObjectMapper convenience methods
+ * removed.  The ObjectReader and ObjectWriter for the mapped account types
+ * are built once, files are read and written whole through NIO channels,
+ * and the JSON is parsed from, and generated into, per thread byte buffers
+ * that are reused from call to call.  Instances are thread safe.
+ *
+ * @author Chester Beard
+ */
+public final class JsonAccountCodec {
+    /** Buffers larger than this are not retained between calls */
+    private static final int MAX_RETAINED_BUFFER = 64 * 1024;
+
+    /** Initial buffer size, larger than a typical account */
+    private static final int INITIAL_BUFFER = 1024;
+
+    /** Per thread reusable buffers */
+    private static final ThreadLocal<Buffers> BUFFERS = new ThreadLocal<Buffers>() {
+        @Override
+        protected Buffers initialValue() {
+            return new Buffers();
+        }
+    };
+
+    /** Creates the parsers and generators */
+    private final JsonFactory factory;
+
+    /** Reads accounts, bound to the account implementation class */
+    private final ObjectReader reader;
+
+    /** Writes SimpleAccount instances */
+    private final ObjectWriter simpleAccountWriter;
+
+    /** Writes accounts of any other class */
+    private final ObjectWriter writer;
+
+    /**
+     * Reusable buffers.
+     */
+    private static final class Buffers {
+        /** The read buffer */
+        private ByteBuffer in = ByteBuffer.allocate(INITIAL_BUFFER);
+
+        /** The write buffer */
+        private final ExposedByteArrayOutputStream out = new ExposedByteArrayOutputStream(INITIAL_BUFFER);
+
+        /**
+         * Gets the read buffer, cleared and with room for the size given.
+         *
+         * @param size the number of bytes to be read
+         *
+         * @return the read buffer, limited to the size
+         */
+        ByteBuffer in(final int size) {
+            if (in.capacity() < size) {
+                final ByteBuffer grown = ByteBuffer.allocate(Math.max(size, in.capacity() * 2));
+                if (grown.capacity() > MAX_RETAINED_BUFFER) {
+                    return (ByteBuffer) ByteBuffer.allocate(size).limit(size);
+                }
+                in = grown;
+            }
+            in.clear();
+            in.limit(size);
+            return in;
+        }
+    }
+
+    /**
+     * A ByteArrayOutputStream whose buffer can be used without copying.
+     */
+    private static final class ExposedByteArrayOutputStream extends ByteArrayOutputStream {
+        /**
+         * Constructor.
+         *
+         * @param size the initial buffer size
+         */
+        ExposedByteArrayOutputStream(final int size) {
+            super(size);
+        }
+
+        /**
+         * Gets the written bytes, without copying, then resets the stream
+         * releasing an oversized buffer.
+         *
+         * @return the written bytes, valid until the stream is next written
+         */
+        ByteBuffer drain() {
+            final ByteBuffer bytes = ByteBuffer.wrap(buf, 0, count);
+            if (buf.length > MAX_RETAINED_BUFFER) {
+                buf = new byte[INITIAL_BUFFER];
+            }
+            count = 0;
+            return bytes;
+        }
+    }
+
+    /**
+     * Creates a codec using the mapping of JsonAccountDao.
+     */
+    public JsonAccountCodec() {
+        this(AccountJson.newMapper());
+    }
+
+    /**
+     * Creates a codec using the given mapper's configuration.
+     *
+     * @param mapper the configured mapper
+     */
+    JsonAccountCodec(final ObjectMapper mapper) {
+        factory = mapper.getFactory();
+        reader = mapper.reader(Account.class);
+        simpleAccountWriter = mapper.writerWithType(SimpleAccount.class);
+        writer = mapper.writer();
+    }
+
+    /**
+     * Reads an account file.
+     *
+     * @param file the account file
+     *
+     * @return the account
+     *
+     * @throws IOException if the file can't be read or parsed
+     */
+    public Account read(final Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            final long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("Account file too large, " + file);
+            }
+            final ByteBuffer buf = BUFFERS.get().in((int) size);
+            while (buf.hasRemaining() && channel.read(buf) >= 0) {
+                // keep reading until full or the end of file
+            }
+            try (JsonParser parser = factory.createParser(buf.array(), 0, buf.position())) {
+                return reader.readValue(parser);
+            }
+        }
+    }
+
+    /**
+     * Encodes an account as JSON.
+     *
+     * @param account the account
+     *
+     * @return the encoded account, a buffer owned by the calling thread and
+     *         valid until the thread's next call
+     *
+     * @throws IOException if the account can't be encoded
+     */
+    public ByteBuffer encode(final Account account) throws IOException {
+        final ExposedByteArrayOutputStream out = BUFFERS.get().out;
+        out.reset();
+        final ObjectWriter w = (account.getClass() == SimpleAccount.class) ? simpleAccountWriter : writer;
+        try (JsonGenerator generator = factory.createGenerator(out)) {
+            w.writeValue(generator, account);
+        }
+        return out.drain();
+    }
+
+    /**
+     * Writes an account to a channel.
+     *
+     * @param channel the channel, positioned where the account is to be
+     *                written
+     * @param account the account
+     *
+     * @throws IOException if the account can't be encoded or written
+     */
+    public void write(final FileChannel channel, final Account account) throws IOException {
+        final ByteBuffer data = encode(account);
+        while (data.hasRemaining()) {
+            channel.write(data);
+        }
+    }
+}
@@ -2,28 +2,88 @@ package edu.uw.beardcl.dao;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.module.SimpleModule;
 
-import edu.uw.beardcl.account.SimpleAccount;
-import edu.uw.beardcl.account.SimpleAddress;
-import edu.uw.beardcl.account.SimpleCreditCard;
 import edu.uw.ext.framework.account.Account;
 import edu.uw.ext.framework.account.AccountException;
-import edu.uw.ext.framework.account.Address;
-import edu.uw.ext.framework.account.CreditCard;
-import edu.uw.ext.framework.dao.AccountDao;
 
 /**
  * An AccountDao that persists the account information using JSON.
  *
+ * Accounts are written to a temporary file which is then renamed over the
+ * account's file, so a crash leaves either the old or the new account, never
+ * neither.  The durability of writes is selectable: NONE leaves flushing to
+ * the operating system, SYNC forces every write to storage, and GROUP hands
+ * the writes of concurrent writers to a single thread that forces them to
+ * storage together, along with the directories renamed into, once per group.
+ *
+ * A crash during a write may leave a temporary file behind.  Temporary files
+ * are removed only by an explicit recover, as other instances over the same
+ * directory may be writing them.
+ *
+ * Account files are either held directly in the accounts directory, the
+ * FLAT layout, or SHARDED across a two level tree of subdirectories named by
+ * a hash of the account name, so no directory grows beyond a few entries per
+ * 65536 accounts and per file operations stay constant time at scale.  When
+ * opened SHARDED, any files of the flat layout are migrated into the tree;
+ * opening lists only the accounts directory itself, never the tree, so it
+ * takes constant time however many accounts there are.  Reset and recover
+ * scan the tree in parallel.
+ *
  * @author Chester Beard
  */
-public final class JsonAccountDao implements AccountDao {
+public final class JsonAccountDao implements ExtendedAccountDao {
+    /** How account writes are made durable */
+    public enum Durability {
+        /** Writes are atomic but left to the operating system to flush */
+        NONE,
+        /** Every write is forced to storage before it returns */
+        SYNC,
+        /** Writes are forced to storage in groups before they return */
+        GROUP
+    }
+
+    /** How account files are arranged in the accounts directory */
+    public enum Layout {
+        /** All account files directly in the accounts directory */
+        FLAT,
+        /** Account files in a two level tree of hash named subdirectories */
+        SHARDED
+    }
+
     /** This class' logger. */
     private static final Log log = LogFactory.getLog(JsonAccountDao.class);
 
@@ -33,28 +93,121 @@ public final class JsonAccountDao implements AccountDao {
     /** The name of the file holding the account data */
     private static final String ACCOUNT_FILENAME_PAT = "%s.json";
 
+    /** Format of shard directory names, the shard number in hex */
+    private static final String SHARD_FORMAT = "%02x";
+
+    /** Pattern matching shard directory names */
+    private static final Pattern SHARD_PATTERN = Pattern.compile("[0-9a-f]{2}");
+
+    /** Number of threads reading account files for bulk lookups and scans */
+    private static final int READ_THREADS = Math.max(2, Runtime.getRuntime().availableProcessors());
+
+    /** Suffix of temporary account files */
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    /** Default time a group commit waits for further writers, in milliseconds */
+    public static final long DEFAULT_GROUP_COMMIT_WINDOW_MILLIS = 2L;
+
+    /** Name of the JSON field holding the password hash */
+    private static final String PASSWORD_HASH_FIELD = "passwordHash";
+
+    /** Name of the JSON field holding the balance */
+    private static final String BALANCE_FIELD = "balance";
+
+    /** The fields read by getPasswordHash */
+    private static final Set<AccountField> PASSWORD_HASH_ONLY =
+        Collections.unmodifiableSet(EnumSet.of(AccountField.PASSWORD_HASH));
+
     /** JSON serializer. */
     private final ObjectMapper mapper;
-    
+
+    /** Reads and writes the account files. */
+    private final JsonAccountCodec codec;
+
     /** The accounts directory. */
-    private final File accountsDir = new File(ACCOUNTS_DIR);
+    private final File accountsDir;
+
+    /** How writes are made durable */
+    private final Durability durability;
+
+    /** Commits grouped writes, null unless the durability is GROUP */
+    private final GroupCommitter groupCommitter;
+
+    /** How account files are arranged */
+    private final Layout layout;
+
+    /** Reads account files for bulk lookups and scans the accounts
+     *  directory, created on first use, guarded by this */
+    private ExecutorService readers;
 
     /**
-     * Creates an instance of this class and loads the account data.
+     * Creates an instance of this class using the default accounts directory.
      *
      * @throws AccountException if an error occurs during the load operation
      */
     public JsonAccountDao() throws AccountException {
-        // Map interfaces to implementation classes
-        final SimpleModule module = new SimpleModule();
-        module.addAbstractTypeMapping(Account.class, SimpleAccount.class);
-        module.addAbstractTypeMapping(Address.class, SimpleAddress.class);
-        module.addAbstractTypeMapping(CreditCard.class, SimpleCreditCard.class);
-        mapper = new ObjectMapper();
-        mapper.registerModule(module);
+        this(new File(ACCOUNTS_DIR));
+    }
+
+    /**
+     * Creates an instance of this class that stores accounts in the
+     * specified directory.
+     *
+     * @param accountsDir the directory to store account files in
+     *
+     * @throws AccountException if an error occurs during the load operation
+     */
+    public JsonAccountDao(final File accountsDir) throws AccountException {
+        this(accountsDir, Durability.NONE, DEFAULT_GROUP_COMMIT_WINDOW_MILLIS);
+    }
+
+    /**
+     * Creates an instance of this class that stores accounts in the
+     * specified directory, with the specified durability.
+     *
+     * @param accountsDir the directory to store account files in
+     * @param durability how writes are made durable
+     * @param groupCommitWindowMillis the time a group commit waits for
+     *                                further writers, in milliseconds
+     *
+     * @throws AccountException if an error occurs during the load operation
+     */
+    public JsonAccountDao(final File accountsDir, final Durability durability,
+                          final long groupCommitWindowMillis) throws AccountException {
+        this(accountsDir, durability, groupCommitWindowMillis, Layout.FLAT);
+    }
 
-        // An alternative approach that encodes class names in the output
-        //mapper.enableDefaultTyping(ObjectMapper.DefaultTyping.NON_FINAL);
+    /**
+     * Creates an instance of this class that stores accounts in the
+     * specified directory, with the specified durability and layout.  If
+     * the layout is SHARDED, account files of the flat layout are migrated.
+     *
+     * @param accountsDir the directory to store account files in
+     * @param durability how writes are made durable
+     * @param groupCommitWindowMillis the time a group commit waits for
+     *                                further writers, in milliseconds
+     * @param layout how account files are arranged
+     *
+     * @throws AccountException if an error occurs during the load operation
+     */
+    public JsonAccountDao(final File accountsDir, final Durability durability,
+                          final long groupCommitWindowMillis, final Layout layout)
+        throws AccountException {
+        this.accountsDir = accountsDir;
+        this.durability = durability;
+        this.layout = layout;
+        mapper = AccountJson.newMapper();
+        codec = new JsonAccountCodec(mapper);
+
+        if (layout == Layout.SHARDED) {
+            final int migrated = migrateFlatFiles();
+            if (migrated > 0) {
+                log.info("Migrated " + migrated + " account files to the sharded layout.");
+            }
+        }
+        groupCommitter = (durability == Durability.GROUP)
+                       ? new GroupCommitter(groupCommitWindowMillis)
+                       : null;
     }
 
     /**
@@ -67,12 +220,10 @@ public final class JsonAccountDao implements AccountDao {
     @Override
     public Account getAccount(final String accountName) {
         Account account = null;
-        String acctFileName = String.format(ACCOUNT_FILENAME_PAT, accountName);
 
         if (accountsDir.exists() && accountsDir.isDirectory()) {
             try {
-                final File inFile = new File(accountsDir, acctFileName);
-                account = mapper.readValue(inFile, Account.class);
+                account = codec.read(accountFile(accountName).toPath());
             } catch (final IOException ex) {
                 log.warn("Unable to access or read account data, '" + accountName + "'", ex);
             } 
@@ -80,6 +231,153 @@ public final class JsonAccountDao implements AccountDao {
         return account;
     }
 
+    /**
+     * Lookup a number of accounts, reading the account files in parallel.
+     *
+     * @param accountNames the names of the desired accounts
+     *
+     * @return the accounts located, by account name
+     *
+     * @exception AccountException if the lookup is interrupted
+     */
+    @Override
+    public Map<String, Account> getAccounts(final Collection<String> accountNames)
+        throws AccountException {
+        final List<String> names = new ArrayList<>(new LinkedHashSet<>(accountNames));
+        final Map<String, Account> accounts = new HashMap<>(names.size() * 4 / 3 + 1);
+        if (names.size() < 2) {
+            for (final String accountName : names) {
+                putIfFound(accounts, accountName);
+            }
+            return accounts;
+        }
+
+        final int chunk = (names.size() + READ_THREADS - 1) / READ_THREADS;
+        final List<Callable<Map<String, Account>>> tasks = new ArrayList<>();
+        for (int start = 0; start < names.size(); start += chunk) {
+            final List<String> part = names.subList(start, Math.min(start + chunk, names.size()));
+            tasks.add(new Callable<Map<String, Account>>() {
+                @Override
+                public Map<String, Account> call() {
+                    final Map<String, Account> found = new HashMap<>();
+                    for (final String accountName : part) {
+                        putIfFound(found, accountName);
+                    }
+                    return found;
+                }
+            });
+        }
+
+        try {
+            for (final Future<Map<String, Account>> result : readers().invokeAll(tasks)) {
+                accounts.putAll(result.get());
+            }
+        } catch (final InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new AccountException("Interrupted reading accounts.", ex);
+        } catch (final ExecutionException ex) {
+            throw new AccountException("Unable to read accounts.", ex.getCause());
+        }
+        return accounts;
+    }
+
+    /**
+     * Reads an account, adding it to a map if it exists.
+     *
+     * @param accounts the map to add the account to
+     * @param accountName the name of the account
+     */
+    private void putIfFound(final Map<String, Account> accounts, final String accountName) {
+        if (accountFile(accountName).isFile()) {
+            final Account account = getAccount(accountName);
+            if (account != null) {
+                accounts.put(accountName, account);
+            }
+        }
+    }
+
+    /**
+     * Gets the executor used for bulk reads, creating it on first use.
+     *
+     * @return the executor
+     */
+    private synchronized ExecutorService readers() {
+        if (readers == null) {
+            readers = Executors.newFixedThreadPool(READ_THREADS, new ThreadFactory() {
+                @Override
+                public Thread newThread(final Runnable r) {
+                    final Thread t = new Thread(r, "JsonAccountReader");
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+        }
+        return readers;
+    }
+
+    /**
+     * Lookup the password hash of an account.  The account file is streamed
+     * only as far as the password hash, no account objects are created.
+     *
+     * @param accountName the name of the account
+     *
+     * @return the password hash, null if the account doesn't exist
+     *
+     * @exception AccountException if the account file can't be read
+     */
+    @Override
+    public byte[] getPasswordHash(final String accountName) throws AccountException {
+        final AccountProjection projection = getProjection(accountName, PASSWORD_HASH_ONLY);
+        return (projection == null) ? null : projection.getPasswordHash();
+    }
+
+    /**
+     * Lookup selected fields of an account.  The account file is streamed
+     * only as far as the last of the fields, no account objects are created.
+     * Fields absent from the file read as zero or null.
+     *
+     * @param accountName the name of the account
+     * @param fields the fields to read
+     *
+     * @return the fields read, null if the account doesn't exist
+     *
+     * @exception AccountException if the account file can't be read
+     */
+    @Override
+    public AccountProjection getProjection(final String accountName, final Set<AccountField> fields)
+        throws AccountException {
+        final File inFile = accountFile(accountName);
+        if (!inFile.isFile()) {
+            return null;
+        }
+
+        int balance = 0;
+        byte[] passwordHash = null;
+        final Set<AccountField> remaining = EnumSet.noneOf(AccountField.class);
+        remaining.addAll(fields);
+        try (JsonParser parser = mapper.getFactory().createParser(inFile)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new AccountException("Malformed account file, " + inFile.getAbsolutePath());
+            }
+            while (!remaining.isEmpty() && parser.nextToken() == JsonToken.FIELD_NAME) {
+                final String field = parser.getCurrentName();
+                final JsonToken value = parser.nextToken();
+                if (PASSWORD_HASH_FIELD.equals(field)) {
+                    passwordHash = (value == JsonToken.VALUE_NULL) ? null : parser.getBinaryValue();
+                    remaining.remove(AccountField.PASSWORD_HASH);
+                } else if (BALANCE_FIELD.equals(field)) {
+                    balance = parser.getIntValue();
+                    remaining.remove(AccountField.BALANCE);
+                } else {
+                    parser.skipChildren();
+                }
+            }
+            return new AccountProjection(fields, balance, passwordHash);
+        } catch (final IOException ex) {
+            throw new AccountException("Unable to read account data, '" + accountName + "'", ex);
+        }
+    }
+
     /**
      * Adds or updates an account.
      *
@@ -89,29 +387,57 @@ public final class JsonAccountDao implements AccountDao {
      */
     @Override
     public void setAccount(final Account account) throws AccountException {
+        if (!accountsDir.isDirectory() && !accountsDir.mkdirs() && !accountsDir.isDirectory()) {
+            throw new AccountException("Unable to create account diretory, "
+                                     + accountsDir.getAbsolutePath());
+        }
+
+        final Path target = accountFile(account.getName()).toPath();
+        Path temp = null;
+        boolean handedOver = false;
+        if (groupCommitter != null) {
+            groupCommitter.begin();
+        }
         try {
-            String acctFileName = String.format(ACCOUNT_FILENAME_PAT, account.getName());
-            final File outFile = new File(accountsDir, acctFileName);
-            if (!accountsDir.exists()) {
-                final boolean success = accountsDir.mkdirs();
-                if (!success) {
-                    throw new AccountException("Unable to create account diretory, "
-                                             + accountsDir.getAbsolutePath());
+            final ByteBuffer data = codec.encode(account);
+            temp = createTempFile(target.getParent(), account.getName());
+            final FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE);
+            try {
+                while (data.hasRemaining()) {
+                    channel.write(data);
                 }
+            } catch (final IOException ex) {
+                channel.close();
+                throw ex;
             }
-            
-            if (outFile.exists()) {
-                boolean deleted = outFile.delete();
-                if (!deleted) {
-                    log.warn(String.format("Unable to delete account file, %s, overwriting.",
-                    		 accountsDir.getAbsolutePath()));
-                }
 
+            if (durability == Durability.GROUP) {
+                handedOver = true;
+                groupCommitter.commit(channel, temp, target);
+            } else {
+                try (FileChannel c = channel) {
+                    if (durability == Durability.SYNC) {
+                        c.force(true);
+                    }
+                }
+                AtomicFiles.move(temp, target);
+                if (durability == Durability.SYNC) {
+                    AtomicFiles.forceDirectory(target.getParent());
+                }
             }
-            mapper.writeValue(outFile, account);
-
         } catch (final IOException ex) {
+            if (temp != null) {
+                try {
+                    Files.deleteIfExists(temp);
+                } catch (final IOException e) {
+                    log.warn("Unable to delete temporary account file, " + temp, e);
+                }
+            }
             throw new AccountException("Unable to store account(s).", ex);
+        } finally {
+            if (groupCommitter != null && !handedOver) {
+                groupCommitter.abandon();
+            }
         }
     }
 
@@ -125,23 +451,235 @@ public final class JsonAccountDao implements AccountDao {
     @Override
     public void deleteAccount(final String accountName)
         throws AccountException {
-        String acctFileName = String.format(ACCOUNT_FILENAME_PAT, accountName);
-        File acctFile = new File(accountsDir, acctFileName);
+        final File acctFile = accountFile(accountName);
         if (acctFile.exists() && !acctFile.delete()) {
             log.warn("File deletion failed, " + acctFile.getAbsolutePath());
         }
     }
 
     /**
-     * Remove all accounts.  This is primarily available to facilitate testing.
+     * Remove all accounts, deleting the accounts directory's entries in
+     * parallel.  This is primarily available to facilitate testing.
      *
      * @exception AccountException if operation fails
      */
     @Override
     public void reset() throws AccountException {
+        final File[] files = accountsDir.listFiles();
+        if (files != null) {
+            forEachParallel(Arrays.asList(files), this::deleteFile);
+        }
         deleteFile(accountsDir);
     }
 
+    /**
+     * Moves account files of the flat layout, in the accounts directory
+     * itself, to their place in the sharded layout.  Moves are atomic, an
+     * interrupted migration is completed by the next.  Temporary files of the
+     * flat layout are removed, as no writer of the flat layout may use the
+     * directory once it is sharded.  Only the accounts directory itself is
+     * listed, the shards are never scanned.
+     *
+     * @return the number of account files moved
+     *
+     * @exception AccountException if the layout isn't SHARDED, or a file
+     *                             can't be moved
+     */
+    public int migrateFlatFiles() throws AccountException {
+        if (layout != Layout.SHARDED) {
+            throw new AccountException("Account files can only be migrated to the sharded layout.");
+        }
+        final File[] files = accountsDir.listFiles();
+        if (files == null) {
+            return 0;
+        }
+        final List<File> flat = new ArrayList<>();
+        final String suffix = String.format(ACCOUNT_FILENAME_PAT, "");
+        for (final File f : files) {
+            if (f.isFile() && f.getName().endsWith(suffix)) {
+                flat.add(f);
+            } else if (f.isFile()) {
+                // left by an interrupted write of the flat layout
+                removeIfTemporary(f);
+            }
+        }
+        forEachParallel(flat, f -> {
+            final String fileName = f.getName();
+            final Path target = accountFile(fileName.substring(0, fileName.length() - suffix.length())).toPath();
+            try {
+                Files.createDirectories(target.getParent());
+                AtomicFiles.move(f.toPath(), target);
+            } catch (final IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        });
+        if (!flat.isEmpty() && durability != Durability.NONE) {
+            try {
+                AtomicFiles.forceDirectory(accountsDir.toPath());
+            } catch (final IOException ex) {
+                throw new AccountException("Unable to force accounts directory.", ex);
+            }
+        }
+        return flat.size();
+    }
+
+    /**
+     * Removes temporary files left by writes interrupted by a crash,
+     * scanning the shards in parallel.  The scan visits every directory of
+     * the layout, and removes the temporary files of writes in progress, so
+     * it must only be made when no instance is writing to the accounts
+     * directory, typically once before the accounts are first opened
+     * after a crash.
+     *
+     * @exception AccountException if the scan is interrupted
+     */
+    public void recover() throws AccountException {
+        final File[] files = accountsDir.listFiles();
+        if (files == null) {
+            return;
+        }
+        final List<File> shards = new ArrayList<>();
+        for (final File f : files) {
+            if (f.isDirectory() && SHARD_PATTERN.matcher(f.getName()).matches()) {
+                shards.add(f);
+            } else {
+                removeIfTemporary(f);
+            }
+        }
+        forEachParallel(shards, shard -> {
+            final File[] subShards = shard.listFiles();
+            if (subShards != null) {
+                for (final File subShard : subShards) {
+                    final File[] shardFiles = subShard.listFiles();
+                    if (shardFiles != null) {
+                        for (final File f : shardFiles) {
+                            removeIfTemporary(f);
+                        }
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Deletes a file if it is a temporary account file.
+     *
+     * @param file the file
+     */
+    private void removeIfTemporary(final File file) {
+        if (file.getName().endsWith(TEMP_SUFFIX) && !file.delete()) {
+            log.warn("Unable to delete temporary account file, " + file.getAbsolutePath());
+        }
+    }
+
+    /**
+     * Applies an action to each of a number of files, dividing the files
+     * among the reader threads.
+     *
+     * @param files the files
+     * @param action the action
+     *
+     * @exception AccountException if the action fails, or is interrupted
+     */
+    private void forEachParallel(final List<File> files, final Consumer<File> action)
+        throws AccountException {
+        if (files.size() < 2) {
+            for (final File f : files) {
+                apply(action, f);
+            }
+            return;
+        }
+        final int chunk = (files.size() + READ_THREADS - 1) / READ_THREADS;
+        final List<Callable<Void>> tasks = new ArrayList<>();
+        for (int start = 0; start < files.size(); start += chunk) {
+            final List<File> part = files.subList(start, Math.min(start + chunk, files.size()));
+            tasks.add(() -> {
+                for (final File f : part) {
+                    action.accept(f);
+                }
+                return null;
+            });
+        }
+        try {
+            for (final Future<Void> result : readers().invokeAll(tasks)) {
+                result.get();
+            }
+        } catch (final InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new AccountException("Interrupted scanning accounts.", ex);
+        } catch (final ExecutionException ex) {
+            final Throwable cause = (ex.getCause() instanceof UncheckedIOException)
+                                  ? ex.getCause().getCause() : ex.getCause();
+            throw new AccountException("Unable to process account files.", cause);
+        }
+    }
+
+    /**
+     * Applies an action to a file on the calling thread.
+     *
+     * @param action the action
+     * @param file the file
+     *
+     * @exception AccountException if the action fails
+     */
+    private static void apply(final Consumer<File> action, final File file) throws AccountException {
+        try {
+            action.accept(file);
+        } catch (final UncheckedIOException ex) {
+            throw new AccountException("Unable to process account files.", ex.getCause());
+        }
+    }
+
+    /**
+     * Gets the file holding an account, in the directory given by the
+     * layout.  In the sharded layout the two levels of directory are
+     * selected by the low two bytes of the CRC-32 of the account name.
+     *
+     * @param accountName the account name
+     *
+     * @return the account file
+     */
+    private File accountFile(final String accountName) {
+        final String fileName = String.format(ACCOUNT_FILENAME_PAT, accountName);
+        if (layout == Layout.FLAT) {
+            return new File(accountsDir, fileName);
+        }
+        final byte[] name = accountName.getBytes(StandardCharsets.UTF_8);
+        final CRC32 crc = new CRC32();
+        crc.update(name, 0, name.length);
+        final int hash = (int) crc.getValue();
+        final File shard = new File(new File(accountsDir, String.format(SHARD_FORMAT, (hash >>> 8) & 0xFF)),
+                                    String.format(SHARD_FORMAT, hash & 0xFF));
+        return new File(shard, fileName);
+    }
+
+    /**
+     * Creates a temporary account file in a directory, creating the
+     * directory if it doesn't exist.  Created directories are forced to
+     * storage unless the durability is NONE.
+     *
+     * @param dir the directory
+     * @param accountName the account name
+     *
+     * @return the temporary file
+     *
+     * @throws IOException if the file can't be created
+     */
+    private Path createTempFile(final Path dir, final String accountName) throws IOException {
+        try {
+            return Files.createTempFile(dir, accountName + ".", TEMP_SUFFIX);
+        } catch (final NoSuchFileException ex) {
+            Files.createDirectories(dir);
+            if (durability != Durability.NONE) {
+                final Path root = accountsDir.toPath();
+                for (Path p = dir; !p.equals(root) && p.getParent() != null; p = p.getParent()) {
+                    AtomicFiles.forceDirectory(p.getParent());
+                }
+            }
+            return Files.createTempFile(dir, accountName + ".", TEMP_SUFFIX);
+        }
+    }
+
     /**
      * Utility method to delete a file or directory.  Recursively delete
      * directory contents and then the directory itself.
@@ -167,8 +705,14 @@ public final class JsonAccountDao implements AccountDao {
      * Close the DAO.
      */
     @Override
-    public void close() {
-        // no-op
+    public synchronized void close() {
+        if (readers != null) {
+            readers.shutdown();
+            readers = null;
+        }
+        if (groupCommitter != null) {
+            groupCommitter.close();
+        }
     }
 }
 
@@ -1,5 +1,7 @@
 package edu.uw.beardcl.dao;
 
+import java.io.File;
+
 import edu.uw.ext.framework.account.AccountException;
 import edu.uw.ext.framework.dao.AccountDao;
 import edu.uw.ext.framework.dao.DaoFactory;
@@ -12,6 +14,71 @@ import edu.uw.ext.framework.dao.DaoFactoryException;
  * @author Chester Beard
  */
 public final class JsonDaoFactory implements DaoFactory {
+    /** Default directory holding the account files */
+    private static final String DEFAULT_DIRECTORY = "target/accounts";
+
+    /** Directory holding the account files */
+    private String directory = DEFAULT_DIRECTORY;
+
+    /** How account writes are made durable */
+    private JsonAccountDao.Durability durability = JsonAccountDao.Durability.NONE;
+
+    /** Time a group commit waits for further writers, in milliseconds */
+    private long groupCommitWindowMillis = JsonAccountDao.DEFAULT_GROUP_COMMIT_WINDOW_MILLIS;
+
+    /** How account files are arranged */
+    private JsonAccountDao.Layout layout = JsonAccountDao.Layout.FLAT;
+
+    /** If true temporary files left by a crash are removed on creation */
+    private boolean recoverOnOpen;
+
+    /**
+     * Sets the directory holding the account files.
+     *
+     * @param directory the directory
+     */
+    public void setDirectory(final String directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Sets how account writes are made durable.
+     *
+     * @param durability the durability, NONE, SYNC or GROUP
+     */
+    public void setDurability(final JsonAccountDao.Durability durability) {
+        this.durability = durability;
+    }
+
+    /**
+     * Sets the time a group commit waits for further writers.
+     *
+     * @param groupCommitWindowMillis the window in milliseconds
+     */
+    public void setGroupCommitWindowMillis(final long groupCommitWindowMillis) {
+        this.groupCommitWindowMillis = groupCommitWindowMillis;
+    }
+
+    /**
+     * Sets how account files are arranged.
+     *
+     * @param layout the layout, FLAT or SHARDED
+     */
+    public void setLayout(final JsonAccountDao.Layout layout) {
+        this.layout = layout;
+    }
+
+    /**
+     * Sets whether temporary files left by a crash are removed when the DAO
+     * is created, see JsonAccountDao.recover.  Only to be enabled when no
+     * other instance writes to the directory.
+     *
+     * @param recoverOnOpen if true temporary files are removed on creation
+     */
+    public void setRecoverOnOpen(final boolean recoverOnOpen) {
+        this.recoverOnOpen = recoverOnOpen;
+    }
+
     /**
      * Instantiates an instance of FileAccountDao.
      *
@@ -22,11 +89,20 @@ public final class JsonDaoFactory implements DaoFactory {
     @Override
     public AccountDao getAccountDao() throws DaoFactoryException {
         try {
-            return new JsonAccountDao();
+            final JsonAccountDao dao = new JsonAccountDao(new File(directory), durability,
+                                                          groupCommitWindowMillis, layout);
+            if (recoverOnOpen) {
+                try {
+                    dao.recover();
+                } catch (final AccountException ex) {
+                    dao.close();
+                    throw ex;
+                }
+            }
+            return dao;
         } catch (final AccountException ex) {
             throw new DaoFactoryException(
                   "Instantiation of JsonDaoFactory failed.", ex);
         }
     }
 }
-
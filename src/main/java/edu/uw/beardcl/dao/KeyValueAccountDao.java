@@ -0,0 +1,350 @@
+package edu.uw.beardcl.dao;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.h2.mvstore.MVMap;
+import org.h2.mvstore.MVStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import edu.uw.beardcl.account.AccountCodec;
+import edu.uw.ext.framework.account.Account;
+import edu.uw.ext.framework.account.AccountException;
+
+/**
+ * An AccountDao backed by an embedded, single file, key-value store, the H2
+ * MVStore.  Accounts are held in the AccountCodec format in a B-tree map
+ * keyed by account name.  The store is copy-on-write: readers never block
+ * and see the latest writes, and opening the store reads only the latest
+ * chunk header, not the accounts, so startup is fast regardless of size.
+ *
+ * Writes are applied to the map and made persistent by committing the
+ * store, each commit atomically writing all changes since the previous one.
+ * With a commit interval of zero every write commits before it returns;
+ * otherwise writes return once applied and are committed together by a
+ * background thread at the interval, bounding the writes a crash may lose.
+ * A batch written by setAccounts is never split across commits.  Commits
+ * are forced to storage if syncOnCommit is set.
+ *
+ * @author Chester Beard
+ */
+public final class KeyValueAccountDao implements ExtendedAccountDao {
+    /** This class' logger. */
+    private static final Logger log = LoggerFactory.getLogger(KeyValueAccountDao.class);
+
+    /** Name of the map holding the accounts */
+    private static final String ACCOUNTS_MAP = "accounts";
+
+    /** Store read cache size, in megabytes */
+    private static final int CACHE_SIZE_MB = 16;
+
+    /** The store */
+    private final MVStore store;
+
+    /** The accounts, encoded, by account name */
+    private final MVMap<String, byte[]> accounts;
+
+    /** Commits at the commit interval, null if every write commits */
+    private final ScheduledExecutorService committer;
+
+    /** If true commits are forced to storage */
+    private final boolean syncOnCommit;
+
+    /** Writes to the map share, commits exclude, so a batch isn't split */
+    private final ReadWriteLock commitLock = new ReentrantReadWriteLock();
+
+    /**
+     * Constructor.  Opens the store, creating it if necessary.
+     *
+     * @param file the store file
+     * @param commitIntervalMillis interval between commits in milliseconds,
+     *                             zero to commit every write
+     * @param syncOnCommit if true commits are forced to storage
+     *
+     * @throws AccountException if the store can't be opened
+     */
+    public KeyValueAccountDao(final File file, final long commitIntervalMillis,
+                              final boolean syncOnCommit) throws AccountException {
+        if (commitIntervalMillis < 0) {
+            throw new IllegalArgumentException("Commit interval must not be negative, "
+                                             + commitIntervalMillis);
+        }
+        this.syncOnCommit = syncOnCommit;
+
+        final File dir = file.getAbsoluteFile().getParentFile();
+        if (dir != null && !dir.isDirectory() && !dir.mkdirs()) {
+            throw new AccountException("Unable to create account store directory, " + dir.getAbsolutePath());
+        }
+        try {
+            store = new MVStore.Builder()
+                .fileName(file.getPath())
+                .cacheSize(CACHE_SIZE_MB)
+                .autoCommitDisabled()
+                .open();
+        } catch (final IllegalStateException ex) {
+            throw new AccountException("Unable to open account store, " + file.getAbsolutePath(), ex);
+        }
+        if (syncOnCommit) {
+            // every commit is on storage before the next, so the chunks it
+            // supersedes may be reused at once rather than after the
+            // default retention time allowed for the operating system to
+            // write them back
+            store.setRetentionTime(0);
+        }
+        accounts = store.openMap(ACCOUNTS_MAP);
+
+        if (commitIntervalMillis > 0) {
+            committer = Executors.newSingleThreadScheduledExecutor(r -> {
+                final Thread t = new Thread(r, "AccountStoreCommitter");
+                t.setDaemon(true);
+                return t;
+            });
+            committer.scheduleWithFixedDelay(() -> {
+                try {
+                    commit();
+                } catch (final AccountException ex) {
+                    log.error("Account store commit failed.", ex);
+                }
+            }, commitIntervalMillis, commitIntervalMillis, TimeUnit.MILLISECONDS);
+        } else {
+            committer = null;
+        }
+    }
+
+    /**
+     * Lookup an account based on username.
+     *
+     * @param accountName the name of the desired account
+     *
+     * @return the account if located otherwise null
+     */
+    @Override
+    public Account getAccount(final String accountName) {
+        final byte[] data = accounts.get(accountName);
+        if (data == null) {
+            return null;
+        }
+        try {
+            return AccountCodec.decode(data);
+        } catch (final IOException ex) {
+            log.warn(String.format("Unable to read account data, '%s'", accountName), ex);
+            return null;
+        }
+    }
+
+    /**
+     * Lookup a number of accounts.
+     *
+     * @param accountNames the names of the desired accounts
+     *
+     * @return the accounts located, by account name
+     */
+    @Override
+    public Map<String, Account> getAccounts(final Collection<String> accountNames) {
+        final Map<String, Account> found = new HashMap<>(accountNames.size() * 4 / 3 + 1);
+        for (final String accountName : accountNames) {
+            final Account acct = getAccount(accountName);
+            if (acct != null) {
+                found.put(accountName, acct);
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Lookup the password hash of an account, only the start of the encoded
+     * account is decoded.
+     *
+     * @param accountName the name of the account
+     *
+     * @return the password hash, null if the account doesn't exist
+     *
+     * @exception AccountException if the account can't be decoded
+     */
+    @Override
+    public byte[] getPasswordHash(final String accountName) throws AccountException {
+        final byte[] data = accounts.get(accountName);
+        try {
+            return (data == null) ? null : AccountCodec.decodePasswordHash(data);
+        } catch (final IOException ex) {
+            throw new AccountException(String.format("Unable to read account data, '%s'", accountName), ex);
+        }
+    }
+
+    /**
+     * Lookup selected fields of an account, only the start of the encoded
+     * account is decoded.
+     *
+     * @param accountName the name of the account
+     * @param fields the fields to read
+     *
+     * @return the fields read, null if the account doesn't exist
+     *
+     * @exception AccountException if the account can't be decoded
+     */
+    @Override
+    public AccountProjection getProjection(final String accountName, final Set<AccountField> fields)
+        throws AccountException {
+        final byte[] data = accounts.get(accountName);
+        if (data == null) {
+            return null;
+        }
+        try {
+            return new AccountProjection(fields,
+                fields.contains(AccountField.BALANCE) ? AccountCodec.decodeBalance(data) : 0,
+                fields.contains(AccountField.PASSWORD_HASH) ? AccountCodec.decodePasswordHash(data) : null);
+        } catch (final IOException ex) {
+            throw new AccountException(String.format("Unable to read account data, '%s'", accountName), ex);
+        }
+    }
+
+    /**
+     * Adds or updates an account.
+     *
+     * @param account the account to add/update
+     *
+     * @exception AccountException if operation fails
+     */
+    @Override
+    public void setAccount(final Account account) throws AccountException {
+        final byte[] data = AccountCodec.encode(account);
+        commitLock.readLock().lock();
+        try {
+            accounts.put(account.getName(), data);
+        } catch (final IllegalStateException ex) {
+            throw new AccountException("Unable to store account.", ex);
+        } finally {
+            commitLock.readLock().unlock();
+        }
+        commitIfEager();
+    }
+
+    /**
+     * Adds or updates a number of accounts, committed together.
+     *
+     * @param batch the accounts to add/update
+     *
+     * @exception AccountException if operation fails
+     */
+    public void setAccounts(final Collection<? extends Account> batch) throws AccountException {
+        final Map<String, byte[]> encoded = new HashMap<>(batch.size() * 4 / 3 + 1);
+        for (final Account account : batch) {
+            encoded.put(account.getName(), AccountCodec.encode(account));
+        }
+        commitLock.readLock().lock();
+        try {
+            accounts.putAll(encoded);
+        } catch (final IllegalStateException ex) {
+            throw new AccountException("Unable to store accounts.", ex);
+        } finally {
+            commitLock.readLock().unlock();
+        }
+        commitIfEager();
+    }
+
+    /**
+     * Remove the account.
+     *
+     * @param accountName the name of the account to remove
+     *
+     * @exception AccountException if operation fails
+     */
+    @Override
+    public void deleteAccount(final String accountName) throws AccountException {
+        commitLock.readLock().lock();
+        try {
+            accounts.remove(accountName);
+        } catch (final IllegalStateException ex) {
+            throw new AccountException(String.format("Unable to delete account '%s'", accountName), ex);
+        } finally {
+            commitLock.readLock().unlock();
+        }
+        commitIfEager();
+    }
+
+    /**
+     * Remove all accounts.  This is primarily available to facilitate testing.
+     *
+     * @exception AccountException if operation fails
+     */
+    @Override
+    public void reset() throws AccountException {
+        commitLock.readLock().lock();
+        try {
+            accounts.clear();
+        } catch (final IllegalStateException ex) {
+            throw new AccountException("Unable to reset account store.", ex);
+        } finally {
+            commitLock.readLock().unlock();
+        }
+        commit();
+    }
+
+    /**
+     * Commits the writes applied since the last commit.
+     *
+     * @exception AccountException if the commit fails
+     */
+    public void commit() throws AccountException {
+        commitLock.writeLock().lock();
+        try {
+            if (store.hasUnsavedChanges()) {
+                store.commit();
+                if (syncOnCommit) {
+                    store.sync();
+                }
+            }
+        } catch (final IllegalStateException ex) {
+            throw new AccountException("Unable to commit account store.", ex);
+        } finally {
+            commitLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Stops the background commits, commits outstanding writes and closes
+     * the store.
+     */
+    @Override
+    public void close() {
+        if (committer != null) {
+            committer.shutdown();
+            try {
+                committer.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (final InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        commitLock.writeLock().lock();
+        try {
+            if (!store.isClosed()) {
+                store.close();
+            }
+        } catch (final IllegalStateException ex) {
+            log.warn("Unable to close account store cleanly.", ex);
+        } finally {
+            commitLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Commits if every write is to be committed.
+     *
+     * @exception AccountException if the commit fails
+     */
+    private void commitIfEager() throws AccountException {
+        if (committer == null) {
+            commit();
+        }
+    }
+}
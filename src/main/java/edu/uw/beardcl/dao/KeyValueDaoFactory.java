@@ -0,0 +1,73 @@
+package edu.uw.beardcl.dao;
+
+import java.io.File;
+
+import edu.uw.ext.framework.account.AccountException;
+import edu.uw.ext.framework.dao.AccountDao;
+import edu.uw.ext.framework.dao.DaoFactory;
+import edu.uw.ext.framework.dao.DaoFactoryException;
+
+
+/**
+ * Implementation of DaoFactory that creates a KeyValueAccountDao, backed by
+ * an embedded key-value store file.
+ *
+ * @author Chester Beard
+ */
+public final class KeyValueDaoFactory implements DaoFactory {
+    /** Default store file */
+    private static final String DEFAULT_FILE = "target/accounts.mv.db";
+
+    /** The store file */
+    private String file = DEFAULT_FILE;
+
+    /** Interval between commits in milliseconds, zero to commit every write */
+    private long commitIntervalMillis;
+
+    /** If true commits are forced to storage */
+    private boolean syncOnCommit;
+
+    /**
+     * Sets the store file.
+     *
+     * @param file the store file
+     */
+    public void setFile(final String file) {
+        this.file = file;
+    }
+
+    /**
+     * Sets the interval between commits.
+     *
+     * @param commitIntervalMillis the interval in milliseconds, zero to
+     *                             commit every write
+     */
+    public void setCommitIntervalMillis(final long commitIntervalMillis) {
+        this.commitIntervalMillis = commitIntervalMillis;
+    }
+
+    /**
+     * Sets whether commits are forced to storage.
+     *
+     * @param syncOnCommit if true commits are forced to storage
+     */
+    public void setSyncOnCommit(final boolean syncOnCommit) {
+        this.syncOnCommit = syncOnCommit;
+    }
+
+    /**
+     * Instantiates an instance of KeyValueAccountDao.
+     *
+     * @return a new instance of KeyValueAccountDao
+     *
+     * @throws DaoFactoryException if instantiation fails
+     */
+    @Override
+    public AccountDao getAccountDao() throws DaoFactoryException {
+        try {
+            return new KeyValueAccountDao(new File(file), commitIntervalMillis, syncOnCommit);
+        } catch (final AccountException ex) {
+            throw new DaoFactoryException("Instantiation of KeyValueAccountDao failed.", ex);
+        }
+    }
+}
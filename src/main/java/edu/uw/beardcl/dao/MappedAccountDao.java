@@ -0,0 +1,976 @@
+package edu.uw.beardcl.dao;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.Adler32;
+import java.util.zip.CRC32;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import edu.uw.beardcl.account.AccountCodec;
+import edu.uw.ext.framework.account.Account;
+import edu.uw.ext.framework.account.AccountException;
+import edu.uw.ext.framework.account.Address;
+import edu.uw.ext.framework.account.CreditCard;
+
+/**
+ * An AccountDao keeping the hot fields of each account, the name, password
+ * hash and balance, in fixed size slots of a memory-mapped file.  The slots
+ * form an open addressing hash table keyed by account name, probed linearly,
+ * so a lookup touches only mapped memory.  The profile, the remaining
+ * fields, address and credit card, is appended in the AccountCodec format to
+ * a side file and referenced from the slot along with a fingerprint of the
+ * profile fields.  An update leaving the profile unchanged, such as the
+ * balance change of a fill, is written in place to the slot; only a changed
+ * profile is appended to the side file.
+ *
+ * A slot is 128 bytes: the slot state, the name and password hash lengths,
+ * the name's hash, the balance, the profile length, offset and fingerprint,
+ * then the UTF-8 name (at most 64 bytes) and the password hash (at most 32
+ * bytes).  The slot file starts with a header holding the format and the
+ * number of slots, a power of two; the header is the size of a slot so no
+ * slot crosses a page boundary.
+ *
+ * When the occupied and deleted slots exceed the load factor, the table is
+ * rebuilt with twice the slots; superseded profiles are dropped from the side
+ * file by the same rebuild, see compact.  A rebuild writes a new generation
+ * of both files and then atomically replaces the CURRENT file naming the
+ * generation, so a crash leaves either the old or the new generation.  In
+ * place updates are left to the operating system to write back unless
+ * syncOnWrite is set.  As the operating system may write a slot back at any
+ * time, an appended profile is forced to storage before a slot references
+ * it, so a crash never leaves a slot referencing a missing profile.
+ *
+ * @author Chester Beard
+ */
+public final class MappedAccountDao implements ProjectionDao {
+    /** This class' logger. */
+    private static final Logger log = LoggerFactory.getLogger(MappedAccountDao.class);
+
+    /** Default number of slots of a new store */
+    public static final int DEFAULT_SLOT_COUNT = 1 << 14;
+
+    /** Name of the file naming the current generation */
+    private static final String CURRENT_FILE = "CURRENT";
+
+    /** Format of slot file names */
+    private static final String SLOT_FORMAT = "slots-%08d.dat";
+
+    /** Format of profile file names */
+    private static final String PROFILE_FORMAT = "profiles-%08d.dat";
+
+    /** Pattern matching the files of a generation, and temporary files */
+    private static final Pattern STORE_PATTERN =
+        Pattern.compile("(?:slots|profiles)-(\\d{8})\\.dat|CURRENT\\.tmp");
+
+    /** Identifies a slot file */
+    private static final int MAGIC = 0x41434D53;
+
+    /** The slot file format version */
+    private static final int FORMAT_VERSION = 1;
+
+    /** Size of the slot file header, that of a slot to keep slots aligned */
+    private static final int HEADER_BYTES = 128;
+
+    /** Header offset of the magic number */
+    private static final int HEADER_MAGIC_OFF = 0;
+
+    /** Header offset of the format version */
+    private static final int HEADER_VERSION_OFF = 4;
+
+    /** Header offset of the slot count */
+    private static final int HEADER_SLOT_COUNT_OFF = 8;
+
+    /** Header offset of the slot size */
+    private static final int HEADER_SLOT_BYTES_OFF = 12;
+
+    /** Size of a slot */
+    private static final int SLOT_BYTES = 128;
+
+    /** Maximum UTF-8 length of an account name */
+    private static final int MAX_NAME_BYTES = 64;
+
+    /** Maximum length of a password hash */
+    private static final int MAX_HASH_BYTES = 32;
+
+    /** Maximum number of slots, keeps slot offsets within an int */
+    private static final int MAX_SLOT_COUNT = 1 << 23;
+
+    /** Slot offset of the slot state */
+    private static final int STATE_OFF = 0;
+
+    /** Slot offset of the name length */
+    private static final int NAME_LEN_OFF = 1;
+
+    /** Slot offset of the password hash length plus one, zero for null */
+    private static final int HASH_LEN_OFF = 2;
+
+    /** Slot offset of the name's hash */
+    private static final int NAME_HASH_OFF = 4;
+
+    /** Slot offset of the balance */
+    private static final int BALANCE_OFF = 8;
+
+    /** Slot offset of the profile length */
+    private static final int PROFILE_LEN_OFF = 12;
+
+    /** Slot offset of the profile offset */
+    private static final int PROFILE_OFF = 16;
+
+    /** Slot offset of the profile fingerprint */
+    private static final int FINGERPRINT_OFF = 24;
+
+    /** Slot offset of the name */
+    private static final int NAME_OFF = 32;
+
+    /** Slot offset of the password hash */
+    private static final int HASH_OFF = NAME_OFF + MAX_NAME_BYTES;
+
+    /** Slot state, never used */
+    private static final byte EMPTY = 0;
+
+    /** Slot state, holds an account */
+    private static final byte USED = 1;
+
+    /** Slot state, held a deleted account, probing continues past it */
+    private static final byte DELETED = 2;
+
+    /** Occupied and deleted slots beyond this proportion trigger a rebuild */
+    private static final double MAX_LOAD_FACTOR = 0.75;
+
+    /** Profile files with less live data than this are not compacted on open */
+    private static final long MIN_COMPACTION_BYTES = 1024L * 1024;
+
+    /** The fields read by getPasswordHash */
+    private static final Set<AccountField> PASSWORD_HASH_ONLY =
+        Collections.unmodifiableSet(EnumSet.of(AccountField.PASSWORD_HASH));
+
+    /** The directory holding the store */
+    private final File dir;
+
+    /** Number of slots of a new or reset store */
+    private final int initialSlotCount;
+
+    /** If true every write is forced to storage */
+    private final boolean syncOnWrite;
+
+    /** Guards the store; reads share, writes exclude */
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /** The current generation of the store */
+    private Generation current;
+
+    /** Number of slots holding accounts */
+    private int usedSlots;
+
+    /** Number of slots of deleted accounts */
+    private int deletedSlots;
+
+    /** Bytes of the profile file referenced from slots */
+    private long liveProfileBytes;
+
+    /**
+     * The open files of a generation of the store.
+     */
+    private static final class Generation {
+        /** The generation */
+        private final int id;
+
+        /** The slot file */
+        private final File slotFile;
+
+        /** The profile file */
+        private final File profileFile;
+
+        /** The open slot file */
+        private final FileChannel slotChannel;
+
+        /** The mapped slot file */
+        private final MappedByteBuffer slots;
+
+        /** The number of slots */
+        private final int slotCount;
+
+        /** The open profile file */
+        private final FileChannel profiles;
+
+        /** Bytes of the profile file written */
+        private long profileEnd;
+
+        /**
+         * Constructor, opens the files of an existing generation or creates
+         * those of a new one.
+         *
+         * @param dir the directory holding the store
+         * @param id the generation
+         * @param newSlotCount the number of slots if the generation is to be
+         *                     created, zero to open an existing generation
+         *
+         * @throws IOException if the files can't be opened or created, or
+         *                     the slot file is invalid
+         */
+        Generation(final File dir, final int id, final int newSlotCount) throws IOException {
+            this.id = id;
+            slotFile = new File(dir, String.format(SLOT_FORMAT, id));
+            profileFile = new File(dir, String.format(PROFILE_FORMAT, id));
+            if (newSlotCount > 0) {
+                slotChannel = FileChannel.open(slotFile.toPath(), StandardOpenOption.CREATE,
+                                               StandardOpenOption.TRUNCATE_EXISTING,
+                                               StandardOpenOption.READ, StandardOpenOption.WRITE);
+                slotCount = newSlotCount;
+                slots = slotChannel.map(FileChannel.MapMode.READ_WRITE, 0,
+                                        HEADER_BYTES + (long) slotCount * SLOT_BYTES);
+                slots.putInt(HEADER_MAGIC_OFF, MAGIC);
+                slots.putInt(HEADER_VERSION_OFF, FORMAT_VERSION);
+                slots.putInt(HEADER_SLOT_COUNT_OFF, slotCount);
+                slots.putInt(HEADER_SLOT_BYTES_OFF, SLOT_BYTES);
+                profiles = FileChannel.open(profileFile.toPath(), StandardOpenOption.CREATE,
+                                            StandardOpenOption.TRUNCATE_EXISTING,
+                                            StandardOpenOption.READ, StandardOpenOption.WRITE);
+            } else {
+                slotChannel = FileChannel.open(slotFile.toPath(),
+                                               StandardOpenOption.READ, StandardOpenOption.WRITE);
+                slots = slotChannel.map(FileChannel.MapMode.READ_WRITE, 0, slotChannel.size());
+                if (slots.capacity() < HEADER_BYTES
+                    || slots.getInt(HEADER_MAGIC_OFF) != MAGIC
+                    || slots.getInt(HEADER_VERSION_OFF) != FORMAT_VERSION
+                    || slots.getInt(HEADER_SLOT_BYTES_OFF) != SLOT_BYTES) {
+                    slotChannel.close();
+                    throw new IOException("Not a valid slot file, " + slotFile.getAbsolutePath());
+                }
+                slotCount = slots.getInt(HEADER_SLOT_COUNT_OFF);
+                if (Integer.bitCount(slotCount) != 1
+                    || slots.capacity() != HEADER_BYTES + (long) slotCount * SLOT_BYTES) {
+                    slotChannel.close();
+                    throw new IOException("Truncated slot file, " + slotFile.getAbsolutePath());
+                }
+                profiles = FileChannel.open(profileFile.toPath(),
+                                            StandardOpenOption.READ, StandardOpenOption.WRITE);
+            }
+            profileEnd = profiles.size();
+        }
+
+        /**
+         * Gets the offset of a slot in the slot file.
+         *
+         * @param slot the slot number
+         *
+         * @return the slot's offset
+         */
+        int base(final int slot) {
+            return HEADER_BYTES + slot * SLOT_BYTES;
+        }
+
+        /**
+         * Forces the slots and profiles to storage.
+         *
+         * @throws IOException if the profiles can't be forced
+         */
+        void force() throws IOException {
+            profiles.force(false);
+            slots.force();
+        }
+
+        /**
+         * Closes the files.  The mapping remains until it is collected.
+         */
+        void close() {
+            closeQuietly(slotChannel);
+            closeQuietly(profiles);
+        }
+
+        /**
+         * Closes and deletes the files.
+         */
+        void delete() {
+            close();
+            for (final File f : new File[] {slotFile, profileFile}) {
+                if (f.exists() && !f.delete()) {
+                    log.warn("File deletion failed, " + f.getAbsolutePath());
+                }
+            }
+        }
+    }
+
+    /**
+     * Constructor.  Opens the store in the directory, creating it if
+     * necessary.
+     *
+     * @param dir the directory to hold the store
+     * @param initialSlotCount the number of slots of a new store, rounded up
+     *                         to a power of two
+     * @param syncOnWrite if true every write is forced to storage
+     *
+     * @throws AccountException if the store can't be opened or created
+     */
+    public MappedAccountDao(final File dir, final int initialSlotCount, final boolean syncOnWrite)
+        throws AccountException {
+        if (initialSlotCount <= 0 || initialSlotCount > MAX_SLOT_COUNT) {
+            throw new IllegalArgumentException("Slot count must be positive and at most "
+                                             + MAX_SLOT_COUNT + ", " + initialSlotCount);
+        }
+        this.dir = dir;
+        this.initialSlotCount = (initialSlotCount == 1) ? 1 : Integer.highestOneBit(initialSlotCount - 1) << 1;
+        this.syncOnWrite = syncOnWrite;
+
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new AccountException("Unable to create account store directory, " + dir.getAbsolutePath());
+        }
+        try {
+            open();
+        } catch (final IOException ex) {
+            if (current != null) {
+                current.close();
+            }
+            throw new AccountException("Unable to open account store, " + dir.getAbsolutePath(), ex);
+        }
+    }
+
+    /**
+     * Lookup an account based on username.
+     *
+     * @param accountName the name of the desired account
+     *
+     * @return the account if located otherwise null
+     */
+    @Override
+    public Account getAccount(final String accountName) {
+        lock.readLock().lock();
+        try {
+            final Generation gen = current;
+            final int slot = find(gen, encodeName(accountName));
+            if (slot < 0) {
+                return null;
+            }
+            final int base = gen.base(slot);
+            final ByteBuffer profile = ByteBuffer.allocate(gen.slots.getInt(base + PROFILE_LEN_OFF));
+            readFully(gen.profiles, profile, gen.slots.getLong(base + PROFILE_OFF));
+            final Account acct = AccountCodec.decode(profile.array());
+            acct.setPasswordHash(readPasswordHash(gen, base));
+            acct.setBalance(gen.slots.getInt(base + BALANCE_OFF));
+            return acct;
+        } catch (final IOException | AccountException ex) {
+            log.warn(String.format("Unable to read account data, '%s'", accountName), ex);
+            return null;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Lookup the password hash of an account, read from the slot alone.
+     *
+     * @param accountName the name of the account
+     *
+     * @return the password hash, null if the account doesn't exist
+     *
+     * @exception AccountException if the account name is invalid
+     */
+    @Override
+    public byte[] getPasswordHash(final String accountName) throws AccountException {
+        final AccountProjection projection = getProjection(accountName, PASSWORD_HASH_ONLY);
+        return (projection == null) ? null : projection.getPasswordHash();
+    }
+
+    /**
+     * Lookup selected fields of an account, read from the slot alone.
+     *
+     * @param accountName the name of the account
+     * @param fields the fields to read
+     *
+     * @return the fields read, null if the account doesn't exist
+     *
+     * @exception AccountException if the account name is invalid
+     */
+    @Override
+    public AccountProjection getProjection(final String accountName, final Set<AccountField> fields)
+        throws AccountException {
+        lock.readLock().lock();
+        try {
+            final Generation gen = current;
+            final int slot = find(gen, encodeName(accountName));
+            if (slot < 0) {
+                return null;
+            }
+            final int base = gen.base(slot);
+            return new AccountProjection(fields, gen.slots.getInt(base + BALANCE_OFF),
+                fields.contains(AccountField.PASSWORD_HASH) ? readPasswordHash(gen, base) : null);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Adds or updates an account.  If the account exists and its profile is
+     * unchanged only the slot is written.
+     *
+     * @param account the account to add/update
+     *
+     * @exception AccountException if the account doesn't fit a slot, or
+     *                             can't be written
+     */
+    @Override
+    public void setAccount(final Account account) throws AccountException {
+        final byte[] name = encodeName(account.getName());
+        final byte[] passwordHash = account.getPasswordHash();
+        if (passwordHash != null && passwordHash.length > MAX_HASH_BYTES) {
+            throw new AccountException(String.format("Password hash exceeds %d bytes, '%s'",
+                                                     MAX_HASH_BYTES, account.getName()));
+        }
+        final long fingerprint = fingerprint(account);
+
+        lock.writeLock().lock();
+        try {
+            Generation gen = current;
+            int slot = find(gen, name);
+            if (slot < 0 && usedSlots + deletedSlots + 1 > gen.slotCount * MAX_LOAD_FACTOR) {
+                if (gen.slotCount >= MAX_SLOT_COUNT) {
+                    throw new AccountException("Account store is full.");
+                }
+                rebuild(gen.slotCount * 2);
+                gen = current;
+                slot = find(gen, name);
+            }
+
+            final MappedByteBuffer slots = gen.slots;
+            if (slot >= 0) {
+                final int base = gen.base(slot);
+                if (slots.getLong(base + FINGERPRINT_OFF) != fingerprint) {
+                    liveProfileBytes -= slots.getInt(base + PROFILE_LEN_OFF);
+                    writeProfile(gen, base, account, fingerprint);
+                }
+                writePasswordHash(slots, base, passwordHash);
+                slots.putInt(base + BALANCE_OFF, account.getBalance());
+            } else {
+                final int free = -1 - slot;
+                final int base = gen.base(free);
+                if (slots.get(base + STATE_OFF) == DELETED) {
+                    deletedSlots--;
+                }
+                writeProfile(gen, base, account, fingerprint);
+                slots.put(base + NAME_LEN_OFF, (byte) name.length);
+                slots.putInt(base + NAME_HASH_OFF, hash(name));
+                for (int i = 0; i < name.length; i++) {
+                    slots.put(base + NAME_OFF + i, name[i]);
+                }
+                writePasswordHash(slots, base, passwordHash);
+                slots.putInt(base + BALANCE_OFF, account.getBalance());
+                slots.put(base + STATE_OFF, USED);
+                usedSlots++;
+            }
+            if (syncOnWrite) {
+                gen.force();
+            }
+        } catch (final IOException ex) {
+            throw new AccountException("Unable to store account.", ex);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Remove the account, marking its slot deleted.
+     *
+     * @param accountName the name of the account to remove
+     *
+     * @exception AccountException if the account name is invalid
+     */
+    @Override
+    public void deleteAccount(final String accountName) throws AccountException {
+        lock.writeLock().lock();
+        try {
+            final Generation gen = current;
+            final int slot = find(gen, encodeName(accountName));
+            if (slot >= 0) {
+                final int base = gen.base(slot);
+                gen.slots.put(base + STATE_OFF, DELETED);
+                liveProfileBytes -= gen.slots.getInt(base + PROFILE_LEN_OFF);
+                usedSlots--;
+                deletedSlots++;
+                if (syncOnWrite) {
+                    gen.slots.force();
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Remove all accounts, replacing the store with an empty one.  This is
+     * primarily available to facilitate testing.
+     *
+     * @exception AccountException if operation fails
+     */
+    @Override
+    public void reset() throws AccountException {
+        lock.writeLock().lock();
+        try {
+            final Generation old = current;
+            current = new Generation(dir, old.id + 1, initialSlotCount);
+            current.force();
+            writeCurrent(current.id);
+            old.delete();
+            usedSlots = 0;
+            deletedSlots = 0;
+            liveProfileBytes = 0;
+        } catch (final IOException ex) {
+            throw new AccountException("Unable to reset account store.", ex);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Rewrites the store without deleted slots and superseded profiles.
+     *
+     * @exception AccountException if the store can't be rewritten
+     */
+    public void compact() throws AccountException {
+        lock.writeLock().lock();
+        try {
+            rebuild(current.slotCount);
+        } catch (final IOException ex) {
+            throw new AccountException("Unable to compact account store.", ex);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Gets the number of slots.
+     *
+     * @return the number of slots
+     */
+    public int getSlotCount() {
+        lock.readLock().lock();
+        try {
+            return current.slotCount;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Closes the store, forcing it to storage.
+     */
+    @Override
+    public void close() {
+        lock.writeLock().lock();
+        try {
+            if (current != null) {
+                try {
+                    current.force();
+                } catch (final IOException ex) {
+                    log.warn("Unable to force account store to storage.", ex);
+                }
+                current.close();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Opens the current generation, or creates the first, and removes files
+     * left by an interrupted rebuild.  A store whose profile file is mostly
+     * superseded profiles is compacted.
+     *
+     * @throws IOException if the store can't be opened
+     */
+    private void open() throws IOException {
+        final File currentFile = new File(dir, CURRENT_FILE);
+        if (currentFile.isFile()) {
+            final String id = new String(Files.readAllBytes(currentFile.toPath()),
+                                         StandardCharsets.US_ASCII).trim();
+            try {
+                current = new Generation(dir, Integer.parseInt(id), 0);
+            } catch (final NumberFormatException ex) {
+                throw new IOException("Invalid generation in " + currentFile.getAbsolutePath(), ex);
+            }
+        } else {
+            current = new Generation(dir, 1, initialSlotCount);
+            current.force();
+            writeCurrent(current.id);
+        }
+
+        final File[] files = dir.listFiles();
+        if (files != null) {
+            for (final File f : files) {
+                final Matcher m = STORE_PATTERN.matcher(f.getName());
+                if (m.matches() && (m.group(1) == null || Integer.parseInt(m.group(1)) != current.id)
+                    && !f.delete()) {
+                    log.warn("Unable to delete stale account store file, " + f.getAbsolutePath());
+                }
+            }
+        }
+
+        for (int slot = 0; slot < current.slotCount; slot++) {
+            final int base = current.base(slot);
+            final byte state = current.slots.get(base + STATE_OFF);
+            if (state == USED) {
+                usedSlots++;
+                liveProfileBytes += current.slots.getInt(base + PROFILE_LEN_OFF);
+            } else if (state == DELETED) {
+                deletedSlots++;
+            }
+        }
+
+        if (current.profileEnd > MIN_COMPACTION_BYTES && current.profileEnd > 2 * liveProfileBytes) {
+            rebuild(current.slotCount);
+        }
+    }
+
+    /**
+     * Writes the accounts of the current generation to a new generation with
+     * the number of slots given, dropping deleted slots and superseded
+     * profiles, and makes it current.
+     *
+     * @param slotCount the number of slots of the new generation
+     *
+     * @throws IOException if the new generation can't be written
+     */
+    private void rebuild(final int slotCount) throws IOException {
+        final Generation old = current;
+        final Generation gen = new Generation(dir, old.id + 1, slotCount);
+        try {
+            long live = 0;
+            int used = 0;
+            final byte[] slotBytes = new byte[SLOT_BYTES];
+            for (int slot = 0; slot < old.slotCount; slot++) {
+                final int base = old.base(slot);
+                if (old.slots.get(base + STATE_OFF) != USED) {
+                    continue;
+                }
+                final int profileLength = old.slots.getInt(base + PROFILE_LEN_OFF);
+                final ByteBuffer profile = ByteBuffer.allocate(profileLength);
+                readFully(old.profiles, profile, old.slots.getLong(base + PROFILE_OFF));
+                profile.flip();
+                final long profileOffset = gen.profileEnd;
+                while (profile.hasRemaining()) {
+                    gen.profileEnd += gen.profiles.write(profile, gen.profileEnd);
+                }
+
+                final ByteBuffer src = old.slots.duplicate();
+                src.position(base);
+                src.get(slotBytes);
+                final int newBase = gen.base(-1 - probe(gen, old.slots.getInt(base + NAME_HASH_OFF), null));
+                final ByteBuffer dst = gen.slots.duplicate();
+                dst.position(newBase);
+                dst.put(slotBytes);
+                gen.slots.putLong(newBase + PROFILE_OFF, profileOffset);
+                live += profileLength;
+                used++;
+            }
+            gen.force();
+            writeCurrent(gen.id);
+            current = gen;
+            usedSlots = used;
+            deletedSlots = 0;
+            liveProfileBytes = live;
+        } catch (final IOException ex) {
+            gen.delete();
+            throw ex;
+        }
+        old.delete();
+        log.info(String.format("Rebuilt account store, %d accounts in %d slots", usedSlots, slotCount));
+    }
+
+    /**
+     * Atomically replaces the CURRENT file.
+     *
+     * @param id the generation to make current
+     *
+     * @throws IOException if the file can't be written
+     */
+    private void writeCurrent(final int id) throws IOException {
+        final File temp = new File(dir, CURRENT_FILE + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            final ByteBuffer data = ByteBuffer.wrap(
+                String.format("%08d%n", id).getBytes(StandardCharsets.US_ASCII));
+            while (data.hasRemaining()) {
+                channel.write(data);
+            }
+            channel.force(true);
+        }
+        AtomicFiles.move(temp.toPath(), new File(dir, CURRENT_FILE).toPath());
+        AtomicFiles.forceDirectory(dir.toPath());
+    }
+
+    /**
+     * Appends an account's profile to the profile file, forces it to
+     * storage, and only then references it from a slot.
+     *
+     * @param gen the generation
+     * @param base the slot's offset
+     * @param account the account
+     * @param fingerprint the fingerprint of the account's profile
+     *
+     * @throws IOException if the profile can't be written
+     */
+    private void writeProfile(final Generation gen, final int base, final Account account,
+                              final long fingerprint) throws IOException {
+        final byte[] profile = AccountCodec.encode(account);
+        final long offset = gen.profileEnd;
+        final ByteBuffer data = ByteBuffer.wrap(profile);
+        while (data.hasRemaining()) {
+            gen.profileEnd += gen.profiles.write(data, gen.profileEnd);
+        }
+        gen.profiles.force(false);
+        gen.slots.putInt(base + PROFILE_LEN_OFF, profile.length);
+        gen.slots.putLong(base + PROFILE_OFF, offset);
+        gen.slots.putLong(base + FINGERPRINT_OFF, fingerprint);
+        liveProfileBytes += profile.length;
+    }
+
+    /**
+     * Locates an account's slot.
+     *
+     * @param gen the generation
+     * @param name the UTF-8 account name
+     *
+     * @return the slot holding the account, or if absent -1 minus the slot
+     *         the account would be inserted in
+     */
+    private static int find(final Generation gen, final byte[] name) {
+        return probe(gen, hash(name), name);
+    }
+
+    /**
+     * Probes the slots for a name, starting at the slot selected by the
+     * name's hash.
+     *
+     * @param gen the generation
+     * @param nameHash the hash of the name
+     * @param name the UTF-8 account name, null to locate only a free slot
+     *
+     * @return the slot holding the account, or if absent -1 minus the first
+     *         free slot probed
+     */
+    private static int probe(final Generation gen, final int nameHash, final byte[] name) {
+        final MappedByteBuffer slots = gen.slots;
+        final int mask = gen.slotCount - 1;
+        int free = -1;
+        int slot = nameHash & mask;
+        for (int i = 0; i < gen.slotCount; i++, slot = (slot + 1) & mask) {
+            final int base = gen.base(slot);
+            final byte state = slots.get(base + STATE_OFF);
+            if (state == EMPTY) {
+                return -1 - ((free >= 0) ? free : slot);
+            }
+            if (state == DELETED) {
+                if (free < 0) {
+                    free = slot;
+                }
+            } else if (name != null && slots.getInt(base + NAME_HASH_OFF) == nameHash
+                       && nameEquals(slots, base, name)) {
+                return slot;
+            }
+        }
+        return -1 - free;
+    }
+
+    /**
+     * Compares the name in a slot.
+     *
+     * @param slots the slots
+     * @param base the slot's offset
+     * @param name the UTF-8 name
+     *
+     * @return true if the slot holds the name
+     */
+    private static boolean nameEquals(final MappedByteBuffer slots, final int base, final byte[] name) {
+        if (slots.get(base + NAME_LEN_OFF) != name.length) {
+            return false;
+        }
+        for (int i = 0; i < name.length; i++) {
+            if (slots.get(base + NAME_OFF + i) != name[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Reads the password hash from a slot.
+     *
+     * @param gen the generation
+     * @param base the slot's offset
+     *
+     * @return the password hash, may be null
+     */
+    private static byte[] readPasswordHash(final Generation gen, final int base) {
+        final int length = gen.slots.get(base + HASH_LEN_OFF) - 1;
+        if (length < 0) {
+            return null;
+        }
+        final byte[] hash = new byte[length];
+        for (int i = 0; i < length; i++) {
+            hash[i] = gen.slots.get(base + HASH_OFF + i);
+        }
+        return hash;
+    }
+
+    /**
+     * Writes the password hash to a slot.
+     *
+     * @param slots the slots
+     * @param base the slot's offset
+     * @param passwordHash the password hash, may be null
+     */
+    private static void writePasswordHash(final MappedByteBuffer slots, final int base,
+                                          final byte[] passwordHash) {
+        if (passwordHash == null) {
+            slots.put(base + HASH_LEN_OFF, (byte) 0);
+            return;
+        }
+        for (int i = 0; i < passwordHash.length; i++) {
+            slots.put(base + HASH_OFF + i, passwordHash[i]);
+        }
+        slots.put(base + HASH_LEN_OFF, (byte) (passwordHash.length + 1));
+    }
+
+    /**
+     * Encodes an account name, checking it fits a slot.
+     *
+     * @param accountName the account name
+     *
+     * @return the UTF-8 name
+     *
+     * @throws AccountException if the name is too long
+     */
+    private static byte[] encodeName(final String accountName) throws AccountException {
+        final byte[] name = accountName.getBytes(StandardCharsets.UTF_8);
+        if (name.length > MAX_NAME_BYTES) {
+            throw new AccountException(String.format("Account name exceeds %d bytes, '%s'",
+                                                     MAX_NAME_BYTES, accountName));
+        }
+        return name;
+    }
+
+    /**
+     * Hashes an account name.
+     *
+     * @param name the UTF-8 name
+     *
+     * @return the hash, with the high bits spread into the low bits
+     */
+    private static int hash(final byte[] name) {
+        final int h = Arrays.hashCode(name);
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Computes a fingerprint of an account's profile: every field except
+     * the name, password hash and balance.  Two independent checksums are
+     * combined so a changed profile is not mistaken for an unchanged one.
+     *
+     * @param account the account
+     *
+     * @return the fingerprint
+     */
+    private static long fingerprint(final Account account) {
+        final Address addr = account.getAddress();
+        final CreditCard cc = account.getCreditCard();
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            writeField(out, account.getFullName());
+            writeField(out, account.getPhone());
+            writeField(out, account.getEmail());
+            out.writeBoolean(addr != null);
+            if (addr != null) {
+                writeField(out, addr.getStreetAddress());
+                writeField(out, addr.getCity());
+                writeField(out, addr.getState());
+                writeField(out, addr.getZipCode());
+            }
+            out.writeBoolean(cc != null);
+            if (cc != null) {
+                writeField(out, cc.getAccountNumber());
+                writeField(out, cc.getIssuer());
+                writeField(out, cc.getType());
+                writeField(out, cc.getHolder());
+                writeField(out, cc.getExpirationDate());
+            }
+        } catch (final IOException ex) {
+            throw new IllegalStateException("Unexpected I/O error writing to memory", ex);
+        }
+        final byte[] data = bytes.toByteArray();
+        final CRC32 crc = new CRC32();
+        crc.update(data, 0, data.length);
+        final Adler32 adler = new Adler32();
+        adler.update(data, 0, data.length);
+        return (crc.getValue() << 32) | adler.getValue();
+    }
+
+    /**
+     * Writes a profile field for fingerprinting.
+     *
+     * @param out the output
+     * @param field the field, may be null
+     *
+     * @throws IOException if the field can't be written
+     */
+    private static void writeField(final DataOutputStream out, final String field) throws IOException {
+        if (field == null) {
+            out.writeInt(-1);
+        } else {
+            final byte[] data = field.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(data.length);
+            out.write(data);
+        }
+    }
+
+    /**
+     * Fills a buffer from a channel.
+     *
+     * @param channel the channel
+     * @param buf the buffer
+     * @param position the position to read from
+     *
+     * @throws IOException if the end of the channel is reached first
+     */
+    private static void readFully(final FileChannel channel, final ByteBuffer buf, final long position)
+        throws IOException {
+        long pos = position;
+        while (buf.hasRemaining()) {
+            final int n = channel.read(buf, pos);
+            if (n < 0) {
+                throw new EOFException("Profile extends beyond end of file at " + position);
+            }
+            pos += n;
+        }
+    }
+
+    /**
+     * Closes a channel, logging failure.
+     *
+     * @param channel the channel
+     */
+    private static void closeQuietly(final FileChannel channel) {
+        try {
+            channel.close();
+        } catch (final IOException ex) {
+            log.warn("Unable to close account store file.", ex);
+        }
+    }
+}
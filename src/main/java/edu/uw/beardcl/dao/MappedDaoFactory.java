@@ -0,0 +1,72 @@
+package edu.uw.beardcl.dao;
+
+import java.io.File;
+
+import edu.uw.ext.framework.account.AccountException;
+import edu.uw.ext.framework.dao.AccountDao;
+import edu.uw.ext.framework.dao.DaoFactory;
+import edu.uw.ext.framework.dao.DaoFactoryException;
+
+
+/**
+ * Implementation of DaoFactory that creates a memory-mapped
+ * MappedAccountDao.
+ *
+ * @author Chester Beard
+ */
+public final class MappedDaoFactory implements DaoFactory {
+    /** Default directory holding the store */
+    private static final String DEFAULT_DIRECTORY = "target/account-slots";
+
+    /** Directory holding the store */
+    private String directory = DEFAULT_DIRECTORY;
+
+    /** Number of slots of a new store */
+    private int slotCount = MappedAccountDao.DEFAULT_SLOT_COUNT;
+
+    /** If true every write is forced to storage */
+    private boolean syncOnWrite;
+
+    /**
+     * Sets the directory holding the store.
+     *
+     * @param directory the directory
+     */
+    public void setDirectory(final String directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Sets the number of slots of a new store, the store grows as required.
+     *
+     * @param slotCount the number of slots, rounded up to a power of two
+     */
+    public void setSlotCount(final int slotCount) {
+        this.slotCount = slotCount;
+    }
+
+    /**
+     * Sets whether every write is forced to storage.
+     *
+     * @param syncOnWrite if true every write is forced to storage
+     */
+    public void setSyncOnWrite(final boolean syncOnWrite) {
+        this.syncOnWrite = syncOnWrite;
+    }
+
+    /**
+     * Instantiates an instance of MappedAccountDao.
+     *
+     * @return a new instance of MappedAccountDao
+     *
+     * @throws DaoFactoryException if instantiation fails
+     */
+    @Override
+    public AccountDao getAccountDao() throws DaoFactoryException {
+        try {
+            return new MappedAccountDao(new File(directory), slotCount, syncOnWrite);
+        } catch (final AccountException ex) {
+            throw new DaoFactoryException("Instantiation of MappedAccountDao failed.", ex);
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package edu.uw.beardcl.dao;
+
+import java.util.Set;
+
+import edu.uw.ext.framework.account.Account;
+import edu.uw.ext.framework.account.AccountException;
+
+/**
+ * An AccountDao able to read selected fields of an account without loading
+ * the complete account, its address and credit card.  The default
+ * implementation loads the account.
+ *
+ * @author Chester Beard
+ */
+public interface ProjectionDao extends CredentialDao {
+    /**
+     * Lookup selected fields of an account.
+     *
+     * @param accountName the name of the account
+     * @param fields the fields to read
+     *
+     * @return the fields read, null if the account doesn't exist
+     *
+     * @throws AccountException if the lookup fails
+     */
+    default AccountProjection getProjection(final String accountName,
+                                            final Set<AccountField> fields)
+        throws AccountException {
+        final Account acct = getAccount(accountName);
+        return (acct == null) ? null : AccountProjection.of(acct, fields);
+    }
+}
@@ -0,0 +1,799 @@
+package edu.uw.beardcl.dao;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import edu.uw.beardcl.account.AccountCodec;
+import edu.uw.ext.framework.account.Account;
+import edu.uw.ext.framework.account.AccountException;
+
+/**
+ * A log-structured AccountDao.  Accounts are appended, in the AccountCodec
+ * format, to the active segment file, and an in-memory index maps each
+ * account name to the location of its latest record.  A persist is a single
+ * append to an open file, no files are created or deleted, and a lookup is a
+ * single positional read.  The index is rebuilt by scanning the segments
+ * when the DAO is opened.
+ *
+ * Once the active segment reaches the maximum segment size a new segment is
+ * started.  Sealed segments whose live records, those still referenced by
+ * the index, fall below a threshold are compacted in the background: the
+ * live records are copied to the active segment and the segment deleted.
+ * The sealed segment is read without locking and each record is copied
+ * under a brief exclusive lock, so reads and writes continue during
+ * compaction.
+ *
+ * Each record is an eight byte header, the body length and the CRC-32 of
+ * the body, followed by the body: the record type, the length of the account
+ * name (two bytes), the UTF-8 name and, for account records, the encoded
+ * account.  A delete is recorded as a tombstone record.  A torn record at
+ * the end of the last segment, following a crash, is truncated on open.
+ *
+ * @author Chester Beard
+ */
+public final class SegmentAccountDao implements CredentialDao {
+    /** This class' logger. */
+    private static final Logger log = LoggerFactory.getLogger(SegmentAccountDao.class);
+
+    /** Format of segment file names */
+    private static final String SEGMENT_FORMAT = "segment-%08d.dat";
+
+    /** Pattern matching segment file names */
+    private static final Pattern SEGMENT_PATTERN = Pattern.compile("segment-(\\d{8})\\.dat");
+
+    /** Record type of an account record */
+    private static final byte PUT = 1;
+
+    /** Record type of a tombstone */
+    private static final byte DELETE = 2;
+
+    /** Size of the record header */
+    private static final int HEADER_BYTES = 8;
+
+    /** Size of the fixed part of the record body, the type and name length */
+    private static final int BODY_PREFIX_BYTES = 3;
+
+    /** Sealed segments with a lower proportion of live bytes are compacted */
+    private static final double COMPACTION_THRESHOLD = 0.5;
+
+    /** The directory holding the segments */
+    private final File dir;
+
+    /** Size at which a new segment is started, in bytes */
+    private final long maxSegmentBytes;
+
+    /** If true every write is forced to storage */
+    private final boolean syncOnWrite;
+
+    /** Guards the index and segments; reads share, writes and compaction exclude */
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /** The segments, by id, in the order written */
+    private final TreeMap<Integer, Segment> segments = new TreeMap<>();
+
+    /** Location of the latest record of each account, by account name */
+    private final Map<String, Location> index = new HashMap<>();
+
+    /** Serializes compactions */
+    private final Object compactionLock = new Object();
+
+    /** Runs the periodic compaction, null if compaction is only explicit */
+    private final ScheduledExecutorService compactor;
+
+    /** The segment being appended to */
+    private Segment active;
+
+    /**
+     * An open segment file.
+     */
+    private static final class Segment {
+        /** The segment id */
+        private final int id;
+
+        /** The segment file */
+        private final File file;
+
+        /** The open file */
+        private final FileChannel channel;
+
+        /** Bytes written */
+        private long size;
+
+        /** Bytes of records referenced by the index */
+        private long liveBytes;
+
+        /** Names of the accounts with account records in the segment */
+        private final Set<String> putNames = new HashSet<>();
+
+        /**
+         * Constructor, opens or creates the segment file.
+         *
+         * @param id the segment id
+         * @param file the segment file
+         *
+         * @throws IOException if the file can't be opened
+         */
+        Segment(final int id, final File file) throws IOException {
+            this.id = id;
+            this.file = file;
+            channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                                       StandardOpenOption.READ, StandardOpenOption.WRITE);
+            size = channel.size();
+        }
+    }
+
+    /**
+     * The location of a record.
+     */
+    private static final class Location {
+        /** The segment holding the record */
+        private final Segment segment;
+
+        /** Offset of the record in the segment */
+        private final long offset;
+
+        /** Length of the record, including the header */
+        private final int length;
+
+        /**
+         * Constructor.
+         *
+         * @param segment the segment holding the record
+         * @param offset the offset of the record
+         * @param length the length of the record
+         */
+        Location(final Segment segment, final long offset, final int length) {
+            this.segment = segment;
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+
+    /**
+     * A record read from a segment.
+     */
+    private static final class Record {
+        /** The record type */
+        private final byte type;
+
+        /** The account name */
+        private final String name;
+
+        /** The complete record, header included */
+        private final ByteBuffer bytes;
+
+        /** Offset of the encoded account within bytes */
+        private final int payloadOffset;
+
+        /**
+         * Constructor.
+         *
+         * @param type the record type
+         * @param name the account name
+         * @param bytes the complete record
+         * @param payloadOffset offset of the encoded account
+         */
+        Record(final byte type, final String name, final ByteBuffer bytes, final int payloadOffset) {
+            this.type = type;
+            this.name = name;
+            this.bytes = bytes;
+            this.payloadOffset = payloadOffset;
+        }
+
+        /**
+         * Gets the encoded account.
+         *
+         * @return the encoded account
+         */
+        byte[] payload() {
+            return Arrays.copyOfRange(bytes.array(), payloadOffset, bytes.limit());
+        }
+    }
+
+    /**
+     * Constructor.  Opens the segments and rebuilds the index.
+     *
+     * @param dir the directory to hold the segments
+     * @param maxSegmentBytes the size at which a new segment is started
+     * @param compactionIntervalMillis interval between compactions in
+     *                                 milliseconds, zero for explicit
+     *                                 compaction only
+     * @param syncOnWrite if true every write is forced to storage
+     *
+     * @throws AccountException if the segments can't be opened or read
+     */
+    public SegmentAccountDao(final File dir, final long maxSegmentBytes,
+                             final long compactionIntervalMillis, final boolean syncOnWrite)
+        throws AccountException {
+        if (maxSegmentBytes <= 0) {
+            throw new IllegalArgumentException("Maximum segment size must be positive, "
+                                             + maxSegmentBytes);
+        }
+        this.dir = dir;
+        this.maxSegmentBytes = maxSegmentBytes;
+        this.syncOnWrite = syncOnWrite;
+
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new AccountException("Unable to create segment directory, " + dir.getAbsolutePath());
+        }
+        try {
+            openSegments();
+        } catch (final IOException ex) {
+            closeSegments();
+            throw new AccountException("Unable to open account segments, " + dir.getAbsolutePath(), ex);
+        }
+
+        if (compactionIntervalMillis > 0) {
+            compactor = Executors.newSingleThreadScheduledExecutor(r -> {
+                final Thread t = new Thread(r, "AccountSegmentCompactor");
+                t.setDaemon(true);
+                return t;
+            });
+            compactor.scheduleWithFixedDelay(() -> {
+                try {
+                    compact();
+                } catch (final AccountException ex) {
+                    log.error("Account segment compaction failed.", ex);
+                }
+            }, compactionIntervalMillis, compactionIntervalMillis, TimeUnit.MILLISECONDS);
+        } else {
+            compactor = null;
+        }
+    }
+
+    /**
+     * Lookup an account based on username.
+     *
+     * @param accountName the name of the desired account
+     *
+     * @return the account if located otherwise null
+     */
+    @Override
+    public Account getAccount(final String accountName) {
+        try {
+            final byte[] data = readPayload(accountName);
+            return (data == null) ? null : AccountCodec.decode(data);
+        } catch (final IOException ex) {
+            log.warn(String.format("Unable to read account data, '%s'", accountName), ex);
+            return null;
+        }
+    }
+
+    /**
+     * Lookup the password hash of an account, only the start of the account
+     * record is decoded.
+     *
+     * @param accountName the name of the account
+     *
+     * @return the password hash, null if the account doesn't exist
+     *
+     * @exception AccountException if the account record can't be read
+     */
+    @Override
+    public byte[] getPasswordHash(final String accountName) throws AccountException {
+        try {
+            final byte[] data = readPayload(accountName);
+            return (data == null) ? null : AccountCodec.decodePasswordHash(data);
+        } catch (final IOException ex) {
+            throw new AccountException(String.format("Unable to read account data, '%s'", accountName), ex);
+        }
+    }
+
+    /**
+     * Adds or updates an account, appending it to the active segment.
+     *
+     * @param account the account to add/update
+     *
+     * @exception AccountException if the account can't be written
+     */
+    @Override
+    public void setAccount(final Account account) throws AccountException {
+        final ByteBuffer record = encodeRecord(PUT, account.getName(), AccountCodec.encode(account));
+        lock.writeLock().lock();
+        try {
+            final Location loc = append(record);
+            loc.segment.liveBytes += loc.length;
+            loc.segment.putNames.add(account.getName());
+            final Location old = index.put(account.getName(), loc);
+            if (old != null) {
+                old.segment.liveBytes -= old.length;
+            }
+        } catch (final IOException ex) {
+            throw new AccountException("Unable to store account.", ex);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Remove the account, appending a tombstone to the active segment.
+     *
+     * @param accountName the name of the account to remove
+     *
+     * @exception AccountException if the tombstone can't be written
+     */
+    @Override
+    public void deleteAccount(final String accountName) throws AccountException {
+        lock.writeLock().lock();
+        try {
+            if (index.containsKey(accountName)) {
+                append(encodeRecord(DELETE, accountName, new byte[0]));
+                final Location old = index.remove(accountName);
+                old.segment.liveBytes -= old.length;
+            }
+        } catch (final IOException ex) {
+            throw new AccountException(String.format("Unable to delete account '%s'", accountName), ex);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Remove all accounts, deleting all segments.  This is primarily
+     * available to facilitate testing.
+     *
+     * @exception AccountException if operation fails
+     */
+    @Override
+    public void reset() throws AccountException {
+        lock.writeLock().lock();
+        try {
+            final List<Segment> all = new ArrayList<>(segments.values());
+            closeSegments();
+            for (final Segment seg : all) {
+                if (!seg.file.delete()) {
+                    log.warn("File deletion failed, " + seg.file.getAbsolutePath());
+                }
+            }
+            index.clear();
+            active = newSegment(1);
+        } catch (final IOException ex) {
+            throw new AccountException("Unable to reset account segments.", ex);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Compacts the sealed segments with a low proportion of live records.
+     * Live records are copied to the active segment, and tombstones that
+     * still shadow records in older segments are carried forward.  Reads and
+     * writes proceed while a segment is compacted.
+     *
+     * @exception AccountException if a segment can't be compacted
+     */
+    public void compact() throws AccountException {
+        synchronized (compactionLock) {
+            compactCandidates();
+        }
+    }
+
+    /**
+     * Compacts the sealed segments with a low proportion of live records.
+     * The caller must hold the compaction lock.
+     *
+     * @exception AccountException if a segment can't be compacted
+     */
+    private void compactCandidates() throws AccountException {
+        final List<Integer> candidates = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            for (final Segment seg : segments.values()) {
+                if (seg != active && seg.liveBytes < seg.size * COMPACTION_THRESHOLD) {
+                    candidates.add(seg.id);
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        for (final Integer id : candidates) {
+            final Segment seg;
+            lock.readLock().lock();
+            try {
+                seg = segments.get(id);
+            } finally {
+                lock.readLock().unlock();
+            }
+            if (seg != null) {
+                try {
+                    compactSegment(seg);
+                } catch (final IOException ex) {
+                    throw new AccountException("Unable to compact account segment " + id, ex);
+                }
+            }
+        }
+    }
+
+    /**
+     * Gets the number of segments.
+     *
+     * @return the number of segments
+     */
+    public int getSegmentCount() {
+        lock.readLock().lock();
+        try {
+            return segments.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Stops compaction and closes the segments.
+     */
+    @Override
+    public void close() {
+        if (compactor != null) {
+            compactor.shutdown();
+            try {
+                compactor.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (final InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        lock.writeLock().lock();
+        try {
+            closeSegments();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Reads the encoded account from an account's latest record.
+     *
+     * @param accountName the account name
+     *
+     * @return the encoded account, null if the account doesn't exist
+     *
+     * @throws IOException if the record can't be read
+     */
+    private byte[] readPayload(final String accountName) throws IOException {
+        lock.readLock().lock();
+        try {
+            final Location loc = index.get(accountName);
+            if (loc == null) {
+                return null;
+            }
+            final Record rec = readRecord(loc.segment, loc.offset);
+            if (rec == null || rec.type != PUT || !rec.name.equals(accountName)) {
+                throw new IOException(String.format("Corrupt record at %s:%d",
+                                                    loc.segment.file.getName(), loc.offset));
+            }
+            return rec.payload();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Opens the existing segments, rebuilding the index, and makes the last
+     * segment active.
+     *
+     * @throws IOException if a segment can't be opened or read
+     */
+    private void openSegments() throws IOException {
+        final File[] files = dir.listFiles();
+        if (files != null) {
+            for (final File f : files) {
+                final Matcher m = SEGMENT_PATTERN.matcher(f.getName());
+                if (m.matches()) {
+                    final int id = Integer.parseInt(m.group(1));
+                    segments.put(id, new Segment(id, f));
+                }
+            }
+        }
+
+        for (final Segment seg : segments.values()) {
+            long offset = 0;
+            Record rec;
+            while ((rec = readRecord(seg, offset)) != null) {
+                final int length = rec.bytes.limit();
+                if (rec.type == PUT) {
+                    seg.liveBytes += length;
+                    seg.putNames.add(rec.name);
+                    final Location old = index.put(rec.name, new Location(seg, offset, length));
+                    if (old != null) {
+                        old.segment.liveBytes -= old.length;
+                    }
+                } else {
+                    final Location old = index.remove(rec.name);
+                    if (old != null) {
+                        old.segment.liveBytes -= old.length;
+                    }
+                }
+                offset += length;
+            }
+
+            if (offset < seg.size) {
+                if (seg.id == segments.lastKey()) {
+                    log.warn(String.format("Truncating torn record at %s:%d", seg.file.getName(), offset));
+                    seg.channel.truncate(offset);
+                    seg.size = offset;
+                } else {
+                    throw new IOException(String.format("Corrupt record at %s:%d",
+                                                        seg.file.getName(), offset));
+                }
+            }
+        }
+
+        active = segments.isEmpty() ? newSegment(1) : segments.lastEntry().getValue();
+    }
+
+    /**
+     * Reads the record at an offset.
+     *
+     * @param seg the segment
+     * @param offset the record offset
+     *
+     * @return the record, null if there isn't a complete, valid record at
+     *         the offset
+     *
+     * @throws IOException if the segment can't be read
+     */
+    private static Record readRecord(final Segment seg, final long offset) throws IOException {
+        if (seg.size - offset < HEADER_BYTES) {
+            return null;
+        }
+        final ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        readFully(seg.channel, header, offset);
+        final int bodyLength = header.getInt(0);
+        final int crc = header.getInt(4);
+        if (bodyLength < BODY_PREFIX_BYTES || bodyLength > seg.size - offset - HEADER_BYTES) {
+            return null;
+        }
+
+        final ByteBuffer bytes = ByteBuffer.allocate(HEADER_BYTES + bodyLength);
+        bytes.put(header.array());
+        readFully(seg.channel, bytes, offset + HEADER_BYTES);
+        bytes.flip();
+        final CRC32 check = new CRC32();
+        check.update(bytes.array(), HEADER_BYTES, bodyLength);
+        if ((int) check.getValue() != crc) {
+            return null;
+        }
+
+        final byte type = bytes.get(HEADER_BYTES);
+        final int nameLength = bytes.getShort(HEADER_BYTES + 1) & 0xFFFF;
+        final int nameOffset = HEADER_BYTES + BODY_PREFIX_BYTES;
+        if ((type != PUT && type != DELETE) || nameOffset + nameLength > bytes.limit()) {
+            return null;
+        }
+        final String name = new String(bytes.array(), nameOffset, nameLength, StandardCharsets.UTF_8);
+        return new Record(type, name, bytes, nameOffset + nameLength);
+    }
+
+    /**
+     * Encodes a record.
+     *
+     * @param type the record type
+     * @param accountName the account name
+     * @param payload the encoded account, empty for a tombstone
+     *
+     * @return the record, ready to be written
+     */
+    private static ByteBuffer encodeRecord(final byte type, final String accountName,
+                                           final byte[] payload) {
+        final byte[] name = accountName.getBytes(StandardCharsets.UTF_8);
+        final int bodyLength = BODY_PREFIX_BYTES + name.length + payload.length;
+        final ByteBuffer buf = ByteBuffer.allocate(HEADER_BYTES + bodyLength);
+        buf.putInt(bodyLength).putInt(0)
+           .put(type).putShort((short) name.length).put(name).put(payload);
+        final CRC32 crc = new CRC32();
+        crc.update(buf.array(), HEADER_BYTES, bodyLength);
+        buf.putInt(4, (int) crc.getValue());
+        buf.flip();
+        return buf;
+    }
+
+    /**
+     * Appends a record to the active segment, starting a new segment if the
+     * active segment is full.  The caller must hold the write lock.
+     *
+     * @param record the record
+     *
+     * @return the location of the record
+     *
+     * @throws IOException if the record can't be written
+     */
+    private Location append(final ByteBuffer record) throws IOException {
+        final int length = record.remaining();
+        if (active.size > 0 && active.size + length > maxSegmentBytes) {
+            if (!syncOnWrite) {
+                active.channel.force(false);
+            }
+            active = newSegment(active.id + 1);
+        }
+        final long offset = active.size;
+        final ByteBuffer buf = record.duplicate();
+        long pos = offset;
+        while (buf.hasRemaining()) {
+            pos += active.channel.write(buf, pos);
+        }
+        if (syncOnWrite) {
+            active.channel.force(false);
+        }
+        active.size += length;
+        return new Location(active, offset, length);
+    }
+
+    /**
+     * Copies the live records and required tombstones of a sealed segment to
+     * the active segment and deletes it.  The sealed segment isn't written,
+     * it is read without locking; the write lock is held only to copy each
+     * record and to remove the segment.
+     *
+     * @param seg the segment
+     *
+     * @throws IOException if the segment can't be compacted
+     */
+    private void compactSegment(final Segment seg) throws IOException {
+        long offset = 0;
+        long copied = 0;
+        Record rec;
+        while ((rec = readSealedRecord(seg, offset)) != null) {
+            final int length = rec.bytes.limit();
+            lock.writeLock().lock();
+            try {
+                if (segments.get(seg.id) != seg) {
+                    return;  // reset or closed
+                }
+                if (rec.type == PUT) {
+                    final Location loc = index.get(rec.name);
+                    if (loc != null && loc.segment == seg && loc.offset == offset) {
+                        final Location moved = append(rec.bytes);
+                        moved.segment.liveBytes += length;
+                        moved.segment.putNames.add(rec.name);
+                        index.put(rec.name, moved);
+                        copied += length;
+                    }
+                } else if (!index.containsKey(rec.name) && shadowsOlderRecord(seg, rec.name)) {
+                    append(rec.bytes);
+                    copied += length;
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+            offset += length;
+        }
+
+        lock.writeLock().lock();
+        try {
+            if (segments.get(seg.id) != seg) {
+                return;
+            }
+            // the copies must be durable before the originals are deleted
+            active.channel.force(false);
+            segments.remove(seg.id);
+            seg.channel.close();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        if (!seg.file.delete()) {
+            log.warn("File deletion failed, " + seg.file.getAbsolutePath());
+        }
+        log.info(String.format("Compacted %s, %d of %d bytes retained",
+                               seg.file.getName(), copied, seg.size));
+    }
+
+    /**
+     * Reads a record from a sealed segment being compacted.
+     *
+     * @param seg the segment
+     * @param offset the record offset
+     *
+     * @return the record, null if there isn't a complete, valid record at
+     *         the offset or the segment has been closed by a reset or close
+     *
+     * @throws IOException if the segment can't be read
+     */
+    private Record readSealedRecord(final Segment seg, final long offset) throws IOException {
+        try {
+            return readRecord(seg, offset);
+        } catch (final ClosedChannelException ex) {
+            lock.readLock().lock();
+            try {
+                if (segments.get(seg.id) != seg) {
+                    return null;
+                }
+            } finally {
+                lock.readLock().unlock();
+            }
+            throw ex;
+        }
+    }
+
+    /**
+     * Determines if a tombstone in a segment still shadows an account record
+     * in an older segment, and so must be retained.  The caller must hold
+     * the write lock.
+     *
+     * @param seg the segment holding the tombstone
+     * @param accountName the account name
+     *
+     * @return true if an older segment has a record for the account
+     */
+    private boolean shadowsOlderRecord(final Segment seg, final String accountName) {
+        for (final Segment older : segments.headMap(seg.id).values()) {
+            if (older.putNames.contains(accountName)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Creates a new, empty, segment.
+     *
+     * @param id the segment id
+     *
+     * @return the segment
+     *
+     * @throws IOException if the segment can't be created
+     */
+    private Segment newSegment(final int id) throws IOException {
+        final Segment seg = new Segment(id, new File(dir, String.format(SEGMENT_FORMAT, id)));
+        segments.put(id, seg);
+        return seg;
+    }
+
+    /**
+     * Closes all segment files.
+     */
+    private void closeSegments() {
+        for (final Segment seg : segments.values()) {
+            try {
+                seg.channel.close();
+            } catch (final IOException ex) {
+                log.warn("Unable to close segment " + seg.file.getAbsolutePath(), ex);
+            }
+        }
+        segments.clear();
+    }
+
+    /**
+     * Reads from a file until the buffer is full.
+     *
+     * @param channel the file
+     * @param buf the buffer
+     * @param position the file position to read from
+     *
+     * @throws IOException if the file ends before the buffer is full
+     */
+    private static void readFully(final FileChannel channel, final ByteBuffer buf,
+                                  final long position) throws IOException {
+        long pos = position;
+        while (buf.hasRemaining()) {
+            final int n = channel.read(buf, pos);
+            if (n < 0) {
+                throw new IOException("Unexpected end of segment");
+            }
+            pos += n;
+        }
+    }
+}
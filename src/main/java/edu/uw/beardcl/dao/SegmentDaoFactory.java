@@ -0,0 +1,92 @@
+package edu.uw.beardcl.dao;
+
+import java.io.File;
+
+import edu.uw.ext.framework.account.AccountException;
+import edu.uw.ext.framework.dao.AccountDao;
+import edu.uw.ext.framework.dao.DaoFactory;
+import edu.uw.ext.framework.dao.DaoFactoryException;
+
+
+/**
+ * Implementation of DaoFactory that creates a log-structured
+ * SegmentAccountDao.
+ *
+ * @author Chester Beard
+ */
+public final class SegmentDaoFactory implements DaoFactory {
+    /** Default directory holding the segments */
+    private static final String DEFAULT_DIRECTORY = "target/account-segments";
+
+    /** Default size at which a new segment is started, in bytes */
+    private static final long DEFAULT_MAX_SEGMENT_BYTES = 64L * 1024 * 1024;
+
+    /** Default interval between compactions, in milliseconds */
+    private static final long DEFAULT_COMPACTION_INTERVAL_MILLIS = 60_000L;
+
+    /** Directory holding the segments */
+    private String directory = DEFAULT_DIRECTORY;
+
+    /** Size at which a new segment is started, in bytes */
+    private long maxSegmentBytes = DEFAULT_MAX_SEGMENT_BYTES;
+
+    /** Interval between compactions in milliseconds, zero for explicit only */
+    private long compactionIntervalMillis = DEFAULT_COMPACTION_INTERVAL_MILLIS;
+
+    /** If true every write is forced to storage */
+    private boolean syncOnWrite;
+
+    /**
+     * Sets the directory holding the segments.
+     *
+     * @param directory the directory
+     */
+    public void setDirectory(final String directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Sets the size at which a new segment is started.
+     *
+     * @param maxSegmentBytes the maximum segment size, in bytes
+     */
+    public void setMaxSegmentBytes(final long maxSegmentBytes) {
+        this.maxSegmentBytes = maxSegmentBytes;
+    }
+
+    /**
+     * Sets the interval between compactions.
+     *
+     * @param compactionIntervalMillis the interval in milliseconds, zero for
+     *                                 explicit compaction only
+     */
+    public void setCompactionIntervalMillis(final long compactionIntervalMillis) {
+        this.compactionIntervalMillis = compactionIntervalMillis;
+    }
+
+    /**
+     * Sets whether every write is forced to storage.
+     *
+     * @param syncOnWrite if true every write is forced to storage
+     */
+    public void setSyncOnWrite(final boolean syncOnWrite) {
+        this.syncOnWrite = syncOnWrite;
+    }
+
+    /**
+     * Instantiates an instance of SegmentAccountDao.
+     *
+     * @return a new instance of SegmentAccountDao
+     *
+     * @throws DaoFactoryException if instantiation fails
+     */
+    @Override
+    public AccountDao getAccountDao() throws DaoFactoryException {
+        try {
+            return new SegmentAccountDao(new File(directory), maxSegmentBytes,
+                                         compactionIntervalMillis, syncOnWrite);
+        } catch (final AccountException ex) {
+            throw new DaoFactoryException("Instantiation of SegmentAccountDao failed.", ex);
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package edu.uw.beardcl.dao;
+
+import edu.uw.beardcl.account.TieredAccountDao;
+import edu.uw.ext.framework.dao.AccountDao;
+import edu.uw.ext.framework.dao.DaoFactory;
+import edu.uw.ext.framework.dao.DaoFactoryException;
+
+
+/**
+ * Implementation of DaoFactory that creates a TieredAccountDao, a hot
+ * in-memory tier over the AccountDao created by the cold tier factory.
+ *
+ * @author Chester Beard
+ */
+public final class TieredDaoFactory implements DaoFactory {
+    /** Default maximum number of accounts in the hot tier */
+    private static final int DEFAULT_MAX_HOT_ACCOUNTS = 10000;
+
+    /** Default time after which an unused account is demoted, in milliseconds */
+    private static final long DEFAULT_IDLE_MILLIS = 60000L;
+
+    /** Default interval between flushes, in milliseconds */
+    private static final long DEFAULT_FLUSH_INTERVAL_MILLIS = 1000L;
+
+    /** Creates the cold tier */
+    private DaoFactory coldDaoFactory = new JsonDaoFactory();
+
+    /** Maximum number of accounts in the hot tier */
+    private int maxHotAccounts = DEFAULT_MAX_HOT_ACCOUNTS;
+
+    /** Time after which an unused account is demoted, in milliseconds */
+    private long idleMillis = DEFAULT_IDLE_MILLIS;
+
+    /** Interval between flushes, in milliseconds */
+    private long flushIntervalMillis = DEFAULT_FLUSH_INTERVAL_MILLIS;
+
+    /**
+     * Sets the factory creating the cold tier.
+     *
+     * @param coldDaoFactory the cold tier factory
+     */
+    public void setColdDaoFactory(final DaoFactory coldDaoFactory) {
+        this.coldDaoFactory = coldDaoFactory;
+    }
+
+    /**
+     * Sets the maximum number of accounts in the hot tier.
+     *
+     * @param maxHotAccounts the maximum number of hot accounts
+     */
+    public void setMaxHotAccounts(final int maxHotAccounts) {
+        this.maxHotAccounts = maxHotAccounts;
+    }
+
+    /**
+     * Sets the time after which an unused account is demoted.
+     *
+     * @param idleMillis the idle time in milliseconds
+     */
+    public void setIdleMillis(final long idleMillis) {
+        this.idleMillis = idleMillis;
+    }
+
+    /**
+     * Sets the interval between flushes to the cold tier.
+     *
+     * @param flushIntervalMillis the interval in milliseconds
+     */
+    public void setFlushIntervalMillis(final long flushIntervalMillis) {
+        this.flushIntervalMillis = flushIntervalMillis;
+    }
+
+    /**
+     * Instantiates an instance of TieredAccountDao over a new cold tier.
+     *
+     * @return a new instance of TieredAccountDao
+     *
+     * @throws DaoFactoryException if instantiation fails
+     */
+    @Override
+    public AccountDao getAccountDao() throws DaoFactoryException {
+        final AccountDao cold = coldDaoFactory.getAccountDao();
+        try {
+            return new TieredAccountDao(cold, maxHotAccounts, idleMillis, flushIntervalMillis);
+        } catch (final IllegalArgumentException ex) {
+            throw new DaoFactoryException("Instantiation of TieredAccountDao failed.", ex);
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package edu.uw.beardcl.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import edu.uw.ext.framework.broker.OrderManager;
+import edu.uw.ext.framework.broker.OrderProcessor;
+import edu.uw.ext.framework.broker.OrderQueue;
+import edu.uw.ext.framework.order.Order;
+
+/**
+ * Instruments a broker's order queues, order managers and order processors,
+ * and publishes the resulting metrics as MBeans on the platform MBean server.
+ * The MBeans are registered under the "edu.uw.beardcl" domain, keyed by
+ * broker name, and unregistered when the metrics are closed.
+ *
+ * @author Chester Beard
+ */
+public final class BrokerMetrics {
+    /** This class' logger */
+    private static final Logger logger =
+                         LoggerFactory.getLogger(BrokerMetrics.class);
+
+    /** The JMX domain for all MBeans */
+    public static final String DOMAIN = "edu.uw.beardcl";
+
+    /** Name given to the market order queue metrics */
+    private static final String MARKET_QUEUE_NAME = "MARKET";
+
+    /** The name of the broker being measured */
+    private final String brokerName;
+
+    /** The MBean server the metrics are published to */
+    private final MBeanServer mbeanServer;
+
+    /** The names of the registered MBeans */
+    private final List<ObjectName> registered = new ArrayList<>();
+
+    /**
+     * Constructor.
+     *
+     * @param brokerName the name of the broker being measured
+     */
+    public BrokerMetrics(final String brokerName) {
+        this.brokerName = brokerName;
+        mbeanServer = ManagementFactory.getPlatformMBeanServer();
+    }
+
+    /**
+     * Instruments the broker's market order queue.
+     *
+     * @param queue the market order queue
+     *
+     * @return the instrumented queue, to be used in place of the original
+     */
+    public OrderQueue<Order> instrumentMarketQueue(final OrderQueue<Order> queue) {
+        final OrderQueueMetrics metrics = new OrderQueueMetrics(MARKET_QUEUE_NAME);
+        register("OrderQueue", MARKET_QUEUE_NAME, metrics);
+        return new InstrumentedOrderQueue<Order>(queue, metrics);
+    }
+
+    /**
+     * Instruments the stop order queues of an order manager, metrics are
+     * published per ticker symbol.
+     *
+     * @param orderManager the order manager
+     *
+     * @return the instrumented order manager, to be used in place of the original
+     */
+    public OrderManager instrumentOrderManager(final OrderManager orderManager) {
+        final String ticker = orderManager.getSymbol();
+        final OrderQueueMetrics metrics = new OrderQueueMetrics(ticker);
+        register("OrderQueue", ticker, metrics);
+        return new InstrumentedOrderManager(orderManager, metrics);
+    }
+
+    /**
+     * Instruments an order processor.
+     *
+     * @param name the name to publish the processor's metrics under
+     * @param processor the order processor
+     *
+     * @return the instrumented processor, to be used in place of the original
+     */
+    public OrderProcessor instrumentOrderProcessor(final String name,
+                                                   final OrderProcessor processor) {
+        final OrderProcessorMetrics metrics = new OrderProcessorMetrics(name);
+        register("OrderProcessor", name, metrics);
+        return new InstrumentedOrderProcessor(processor, metrics);
+    }
+
+    /**
+     * Publishes an object as an MBean with the specified management
+     * interface, for objects whose class name doesn't follow the standard
+     * MBean naming convention.  Failure to register is logged, the broker
+     * continues to operate without the MBean.
+     *
+     * @param <T> the management interface type
+     * @param type the type key of the MBean name
+     * @param name the name key of the MBean name
+     * @param impl the object implementing the management interface
+     * @param mbeanInterface the management interface
+     */
+    public <T> void register(final String type, final String name,
+                             final T impl, final Class<T> mbeanInterface) {
+        try {
+            register(type, name, new StandardMBean(impl, mbeanInterface));
+        } catch (final JMException ex) {
+            logger.warn(String.format("Unable to register %s metrics for '%s'", type, name), ex);
+        }
+    }
+
+    /**
+     * Publishes an MBean for this broker, replacing any MBean previously
+     * registered under the same name.  Failure to register is logged, the
+     * broker continues to operate without the MBean.
+     *
+     * @param type the type key of the MBean name
+     * @param name the name key of the MBean name
+     * @param mbean the MBean
+     */
+    public synchronized void register(final String type, final String name,
+                                      final Object mbean) {
+        try {
+            final ObjectName objName = new ObjectName(String.format("%s:type=%s,broker=%s,name=%s",
+                                           DOMAIN, type, ObjectName.quote(brokerName),
+                                           ObjectName.quote(name)));
+            if (mbeanServer.isRegistered(objName)) {
+                mbeanServer.unregisterMBean(objName);
+            }
+            mbeanServer.registerMBean(mbean, objName);
+            registered.add(objName);
+        } catch (final JMException ex) {
+            logger.warn(String.format("Unable to register %s metrics for '%s'", type, name), ex);
+        }
+    }
+
+    /**
+     * Unregisters all of this broker's MBeans.
+     */
+    public synchronized void close() {
+        for (final ObjectName objName : registered) {
+            try {
+                if (mbeanServer.isRegistered(objName)) {
+                    mbeanServer.unregisterMBean(objName);
+                }
+            } catch (final JMException ex) {
+                logger.warn(String.format("Unable to unregister MBean '%s'", objName), ex);
+            }
+        }
+        registered.clear();
+    }
+}
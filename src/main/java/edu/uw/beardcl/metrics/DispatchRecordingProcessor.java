@@ -0,0 +1,42 @@
+package edu.uw.beardcl.metrics;
+
+import edu.uw.ext.framework.broker.OrderProcessor;
+import edu.uw.ext.framework.order.Order;
+
+/**
+ * An OrderProcessor decorator that records each order as dispatched before
+ * passing it on.
+ *
+ * @author Chester Beard
+ */
+final class DispatchRecordingProcessor implements OrderProcessor {
+    /** The processor being decorated, may be null */
+    private final OrderProcessor processor;
+
+    /** The metrics to be updated */
+    private final OrderQueueMetrics metrics;
+
+    /**
+     * Constructor.
+     *
+     * @param processor the processor to pass orders on to, may be null
+     * @param metrics the metrics to be updated
+     */
+    DispatchRecordingProcessor(final OrderProcessor processor,
+                               final OrderQueueMetrics metrics) {
+        this.processor = processor;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Records the dispatch and processes the order.
+     *
+     * @param order the order to process
+     */
+    public void process(final Order order) {
+        metrics.dispatched(order);
+        if (processor != null) {
+            processor.process(order);
+        }
+    }
+}
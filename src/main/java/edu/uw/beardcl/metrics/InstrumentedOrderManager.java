@@ -0,0 +1,80 @@
+package edu.uw.beardcl.metrics;
+
+import edu.uw.ext.framework.broker.OrderManager;
+import edu.uw.ext.framework.broker.OrderProcessor;
+import edu.uw.ext.framework.order.StopBuyOrder;
+import edu.uw.ext.framework.order.StopSellOrder;
+
+/**
+ * An OrderManager decorator that records enqueue and dispatch metrics for the
+ * stop order queues of the order manager it wraps.
+ *
+ * @author Chester Beard
+ */
+public final class InstrumentedOrderManager implements OrderManager {
+    /** The order manager being measured */
+    private final OrderManager orderManager;
+
+    /** The metrics to be updated */
+    private final OrderQueueMetrics metrics;
+
+    /**
+     * Constructor.
+     *
+     * @param orderManager the order manager to be measured
+     * @param metrics the metrics to be updated
+     */
+    public InstrumentedOrderManager(final OrderManager orderManager,
+                                    final OrderQueueMetrics metrics) {
+        this.orderManager = orderManager;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Gets the stock ticker symbol for the stock managed by this stock manager.
+     *
+     * @return the stock ticker symbol
+     */
+    public String getSymbol() {
+        return orderManager.getSymbol();
+    }
+
+    /**
+     * Respond to a stock price adjustment.
+     *
+     * @param price the new price
+     */
+    public void adjustPrice(final int price) {
+        orderManager.adjustPrice(price);
+    }
+
+    /**
+     * Records and queues a stop buy order.
+     *
+     * @param order the order to be queued
+     */
+    public void queueOrder(final StopBuyOrder order) {
+        metrics.enqueued(order);
+        orderManager.queueOrder(order);
+    }
+
+    /**
+     * Records and queues a stop sell order.
+     *
+     * @param order the order to be queued
+     */
+    public void queueOrder(final StopSellOrder order) {
+        metrics.enqueued(order);
+        orderManager.queueOrder(order);
+    }
+
+    /**
+     * Registers the processor to be used during order processing, the
+     * processor is wrapped so dispatches may be recorded.
+     *
+     * @param processor the callback to be registered
+     */
+    public void setOrderProcessor(final OrderProcessor processor) {
+        orderManager.setOrderProcessor(new DispatchRecordingProcessor(processor, metrics));
+    }
+}
@@ -0,0 +1,44 @@
+package edu.uw.beardcl.metrics;
+
+import edu.uw.ext.framework.broker.OrderProcessor;
+import edu.uw.ext.framework.order.Order;
+
+/**
+ * An OrderProcessor decorator that records the throughput and latency of the
+ * processor it wraps.
+ *
+ * @author Chester Beard
+ */
+public final class InstrumentedOrderProcessor implements OrderProcessor {
+    /** The processor being measured */
+    private final OrderProcessor processor;
+
+    /** The metrics to be updated */
+    private final OrderProcessorMetrics metrics;
+
+    /**
+     * Constructor.
+     *
+     * @param processor the processor to be measured
+     * @param metrics the metrics to be updated
+     */
+    public InstrumentedOrderProcessor(final OrderProcessor processor,
+                                      final OrderProcessorMetrics metrics) {
+        this.processor = processor;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Processes the order, recording the time taken.
+     *
+     * @param order the order to process
+     */
+    public void process(final Order order) {
+        final long start = System.nanoTime();
+        try {
+            processor.process(order);
+        } finally {
+            metrics.processed(System.nanoTime() - start);
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package edu.uw.beardcl.metrics;
+
+import edu.uw.ext.framework.broker.OrderProcessor;
+import edu.uw.ext.framework.broker.OrderQueue;
+import edu.uw.ext.framework.order.Order;
+
+/**
+ * An OrderQueue decorator that records enqueue and dispatch metrics for the
+ * queue it wraps.  Dispatches are observed by wrapping the registered order
+ * processor, so dispatches initiated by the queue's dispatch filter are
+ * captured as well.
+ *
+ * @param <E> the type of order contained in the queue
+ *
+ * @author Chester Beard
+ */
+public final class InstrumentedOrderQueue<E extends Order> implements OrderQueue<E> {
+    /** The queue being measured */
+    private final OrderQueue<E> queue;
+
+    /** The metrics to be updated */
+    private final OrderQueueMetrics metrics;
+
+    /**
+     * Constructor.
+     *
+     * @param queue the queue to be measured
+     * @param metrics the metrics to be updated
+     */
+    public InstrumentedOrderQueue(final OrderQueue<E> queue,
+                                  final OrderQueueMetrics metrics) {
+        this.queue = queue;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Records and adds the specified order to the queue.
+     *
+     * @param order the order to be added to the queue
+     */
+    public void enqueue(final E order) {
+        metrics.enqueued(order);
+        queue.enqueue(order);
+    }
+
+    /**
+     * Removes the highest dispatchable order in the queue.
+     *
+     * @return the first dispatchable order in the queue, or null if there are
+     *         no dispatchable orders in the queue
+     */
+    public E dequeue() {
+        final E order = queue.dequeue();
+        if (order != null) {
+            metrics.dispatched(order);
+        }
+        return order;
+    }
+
+    /**
+     * Dispatches any dispatchable orders.
+     */
+    public void dispatchOrders() {
+        queue.dispatchOrders();
+    }
+
+    /**
+     * Registers the callback to be used during order processing, the callback
+     * is wrapped so dispatches may be recorded.
+     *
+     * @param proc the callback to be registered
+     */
+    public void setOrderProcessor(final OrderProcessor proc) {
+        queue.setOrderProcessor(new DispatchRecordingProcessor(proc, metrics));
+    }
+}
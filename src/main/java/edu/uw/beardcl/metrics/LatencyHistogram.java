@@ -0,0 +1,207 @@
+package edu.uw.beardcl.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock free, fixed size latency histogram.  Values are recorded into
+ * logarithmic buckets, each split into linear sub-buckets (in the manner of
+ * HdrHistogram), keeping the footprint constant regardless of the range of
+ * values recorded.  Each power of two range above the first is split into 16
+ * sub-buckets, bounding the relative error of any reported value to 1/16,
+ * about 6%.
+ *
+ * @author Chester Beard
+ */
+public final class LatencyHistogram {
+    /** Number of bits used to resolve values within a power of two range */
+    private static final int SUB_BUCKET_BITS = 5;
+
+    /** Number of sub-buckets in the first (linear) range */
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+
+    /** Number of sub-buckets in each subsequent power of two range */
+    private static final int SUB_BUCKET_HALF_COUNT = SUB_BUCKET_COUNT / 2;
+
+    /** Total number of buckets, enough to hold Long.MAX_VALUE */
+    private static final int BUCKET_COUNT = indexFor(Long.MAX_VALUE) + 1;
+
+    /** Number of nanoseconds in a microsecond */
+    private static final double NANOS_PER_MICRO = 1000.0;
+
+    /** The bucket counts */
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+
+    /** Total number of values recorded */
+    private final AtomicLong totalCount = new AtomicLong();
+
+    /** Sum of all values recorded */
+    private final AtomicLong totalValue = new AtomicLong();
+
+    /** The largest value recorded */
+    private final AtomicLong maxValue = new AtomicLong();
+
+    /**
+     * Records a value.  Negative values are recorded as zero.
+     *
+     * @param value the value, typically a duration in nanoseconds
+     */
+    public void record(final long value) {
+        final long v = Math.max(0L, value);
+        counts.incrementAndGet(indexFor(v));
+        totalCount.incrementAndGet();
+        totalValue.addAndGet(v);
+
+        long currMax = maxValue.get();
+        while (v > currMax && !maxValue.compareAndSet(currMax, v)) {
+            currMax = maxValue.get();
+        }
+    }
+
+    /**
+     * Gets the number of values recorded.
+     *
+     * @return the number of values recorded
+     */
+    public long getCount() {
+        return totalCount.get();
+    }
+
+    /**
+     * Gets the largest value recorded.
+     *
+     * @return the largest value recorded, zero if none have been recorded
+     */
+    public long getMax() {
+        return maxValue.get();
+    }
+
+    /**
+     * Gets the mean of the recorded values.
+     *
+     * @return the mean value, zero if no values have been recorded
+     */
+    public double getMean() {
+        final long count = totalCount.get();
+        return (count == 0) ? 0.0 : (double) totalValue.get() / count;
+    }
+
+    /**
+     * Gets the value at the specified percentile.  The value returned is the
+     * highest value equivalent to the bucket containing the percentile,
+     * limited to the largest value recorded.
+     *
+     * @param percentile the percentile, 0.0 through 100.0
+     *
+     * @return the value at the percentile, zero if no values have been recorded
+     */
+    public long getValueAtPercentile(final double percentile) {
+        final long count = totalCount.get();
+        if (count == 0) {
+            return 0L;
+        }
+
+        final double p = Math.min(Math.max(percentile, 0.0), 100.0);
+        final long target = Math.max(1L, (long) Math.ceil(p / 100.0 * count));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += counts.get(i);
+            if (seen >= target) {
+                return Math.min(highestEquivalentValue(i), maxValue.get());
+            }
+        }
+
+        return maxValue.get();
+    }
+
+    /**
+     * Convenience method, reports a nanosecond valued percentile in
+     * microseconds.
+     *
+     * @param percentile the percentile, 0.0 through 100.0
+     *
+     * @return the value at the percentile in microseconds
+     */
+    public double getMicrosAtPercentile(final double percentile) {
+        return getValueAtPercentile(percentile) / NANOS_PER_MICRO;
+    }
+
+    /**
+     * Convenience method, reports the nanosecond valued mean in microseconds.
+     *
+     * @return the mean in microseconds
+     */
+    public double getMeanMicros() {
+        return getMean() / NANOS_PER_MICRO;
+    }
+
+    /**
+     * Convenience method, reports the nanosecond valued max in microseconds.
+     *
+     * @return the max in microseconds
+     */
+    public double getMaxMicros() {
+        return getMax() / NANOS_PER_MICRO;
+    }
+
+    /**
+     * Clears all recorded values.  Values recorded concurrently with a reset
+     * may or may not survive the reset.
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts.set(i, 0L);
+        }
+        totalCount.set(0L);
+        totalValue.set(0L);
+        maxValue.set(0L);
+    }
+
+    /**
+     * Produces a one line summary of the histogram in microseconds.
+     *
+     * @return the summary
+     */
+    @Override
+    public String toString() {
+        return String.format("count=%d mean=%.1fus p50=%.1fus p90=%.1fus p99=%.1fus p99.9=%.1fus max=%.1fus",
+                             getCount(), getMeanMicros(),
+                             getMicrosAtPercentile(50.0), getMicrosAtPercentile(90.0),
+                             getMicrosAtPercentile(99.0), getMicrosAtPercentile(99.9),
+                             getMaxMicros());
+    }
+
+    /**
+     * Determines the bucket a value belongs in.
+     *
+     * @param value a non-negative value
+     *
+     * @return the bucket index
+     */
+    private static int indexFor(final long value) {
+        if (value < SUB_BUCKET_COUNT) {
+            return (int) value;
+        }
+        final int msb = 63 - Long.numberOfLeadingZeros(value);
+        final int shift = msb - SUB_BUCKET_BITS + 1;
+        final int subBucket = (int) (value >>> shift);
+        return shift * SUB_BUCKET_HALF_COUNT + subBucket;
+    }
+
+    /**
+     * Determines the largest value that maps to a bucket.
+     *
+     * @param index the bucket index
+     *
+     * @return the largest value mapping to the bucket
+     */
+    private static long highestEquivalentValue(final int index) {
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+        final int shift = index / SUB_BUCKET_HALF_COUNT - 1;
+        final long subBucket = index - (long) shift * SUB_BUCKET_HALF_COUNT;
+        final long upper = ((subBucket + 1) << shift) - 1;
+        return (upper < 0) ? Long.MAX_VALUE : upper;
+    }
+}
@@ -0,0 +1,89 @@
+package edu.uw.beardcl.metrics;
+
+/**
+ * Collects the throughput and processing latencies of an order processor.
+ *
+ * @author Chester Beard
+ */
+public final class OrderProcessorMetrics implements OrderProcessorMetricsMBean {
+    /** The name of the processor being measured */
+    private final String name;
+
+    /** Processing rate, and count */
+    private final RateMeter processed = new RateMeter();
+
+    /** Processing latencies */
+    private final LatencyHistogram processingLatency = new LatencyHistogram();
+
+    /**
+     * Constructor.
+     *
+     * @param name the name of the processor being measured
+     */
+    public OrderProcessorMetrics(final String name) {
+        this.name = name;
+    }
+
+    /**
+     * Records the processing of an order.
+     *
+     * @param elapsedNanos the time taken to process the order
+     */
+    public void processed(final long elapsedNanos) {
+        processingLatency.record(elapsedNanos);
+        processed.mark();
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public long getProcessedCount() {
+        return processed.getCount();
+    }
+
+    @Override
+    public double getOrdersPerSecond() {
+        return processed.getRecentRate();
+    }
+
+    @Override
+    public double getMeanOrdersPerSecond() {
+        return processed.getMeanRate();
+    }
+
+    @Override
+    public double getMeanProcessingLatencyMicros() {
+        return processingLatency.getMeanMicros();
+    }
+
+    @Override
+    public double getMedianProcessingLatencyMicros() {
+        return processingLatency.getMicrosAtPercentile(50.0);
+    }
+
+    @Override
+    public double getP99ProcessingLatencyMicros() {
+        return processingLatency.getMicrosAtPercentile(99.0);
+    }
+
+    @Override
+    public double getMaxProcessingLatencyMicros() {
+        return processingLatency.getMaxMicros();
+    }
+
+    @Override
+    public void reset() {
+        processed.reset();
+        processingLatency.reset();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: processed=%d rate=%.1f/s latency[%s]",
+                             name, getProcessedCount(), getOrdersPerSecond(),
+                             processingLatency);
+    }
+}
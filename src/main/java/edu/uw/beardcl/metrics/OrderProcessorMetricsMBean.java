@@ -0,0 +1,71 @@
+package edu.uw.beardcl.metrics;
+
+/**
+ * JMX management interface for the metrics of an order processor.  Latencies
+ * are the time spent processing each order.
+ *
+ * @author Chester Beard
+ */
+public interface OrderProcessorMetricsMBean {
+    /**
+     * Gets the name of the processor being measured.
+     *
+     * @return the processor name
+     */
+    String getName();
+
+    /**
+     * Gets the number of orders processed.
+     *
+     * @return the number of orders processed
+     */
+    long getProcessedCount();
+
+    /**
+     * Gets the number of orders processed per second over the last ten seconds.
+     *
+     * @return the recent throughput
+     */
+    double getOrdersPerSecond();
+
+    /**
+     * Gets the number of orders processed per second since the metrics were
+     * created or last reset.
+     *
+     * @return the mean throughput
+     */
+    double getMeanOrdersPerSecond();
+
+    /**
+     * Gets the mean processing latency.
+     *
+     * @return the mean latency in microseconds
+     */
+    double getMeanProcessingLatencyMicros();
+
+    /**
+     * Gets the median processing latency.
+     *
+     * @return the median latency in microseconds
+     */
+    double getMedianProcessingLatencyMicros();
+
+    /**
+     * Gets the 99th percentile processing latency.
+     *
+     * @return the 99th percentile latency in microseconds
+     */
+    double getP99ProcessingLatencyMicros();
+
+    /**
+     * Gets the maximum processing latency.
+     *
+     * @return the maximum latency in microseconds
+     */
+    double getMaxProcessingLatencyMicros();
+
+    /**
+     * Clears the counters and latency histogram.
+     */
+    void reset();
+}
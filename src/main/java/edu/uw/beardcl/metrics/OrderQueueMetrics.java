@@ -0,0 +1,127 @@
+package edu.uw.beardcl.metrics;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import edu.uw.ext.framework.order.Order;
+
+/**
+ * Collects the counters and dispatch latencies for an order queue, or the
+ * queues of an order manager.  The time each order is enqueued is retained,
+ * by order id, until the order is dispatched.
+ *
+ * @author Chester Beard
+ */
+public final class OrderQueueMetrics implements OrderQueueMetricsMBean {
+    /** The name of the queue(s) being measured */
+    private final String name;
+
+    /** Enqueue time, in nanoseconds, of the orders resting in the queue */
+    private final ConcurrentMap<Integer, Long> enqueueTimes = new ConcurrentHashMap<>();
+
+    /** Number of orders enqueued */
+    private final AtomicLong enqueued = new AtomicLong();
+
+    /** Dispatch rate, and count */
+    private final RateMeter dispatched = new RateMeter();
+
+    /** Enqueue to dispatch latencies */
+    private final LatencyHistogram dispatchLatency = new LatencyHistogram();
+
+    /**
+     * Constructor.
+     *
+     * @param name the name of the queue(s) being measured
+     */
+    public OrderQueueMetrics(final String name) {
+        this.name = name;
+    }
+
+    /**
+     * Records an order being enqueued.
+     *
+     * @param order the order being enqueued
+     */
+    public void enqueued(final Order order) {
+        enqueueTimes.put(order.getOrderId(), System.nanoTime());
+        enqueued.incrementAndGet();
+    }
+
+    /**
+     * Records an order being dispatched.
+     *
+     * @param order the order being dispatched
+     */
+    public void dispatched(final Order order) {
+        final Long start = enqueueTimes.remove(order.getOrderId());
+        if (start != null) {
+            dispatchLatency.record(System.nanoTime() - start);
+        }
+        dispatched.mark();
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public long getEnqueuedCount() {
+        return enqueued.get();
+    }
+
+    @Override
+    public long getDispatchedCount() {
+        return dispatched.getCount();
+    }
+
+    @Override
+    public long getDepth() {
+        return enqueueTimes.size();
+    }
+
+    @Override
+    public double getDispatchRate() {
+        return dispatched.getRecentRate();
+    }
+
+    @Override
+    public double getMeanDispatchLatencyMicros() {
+        return dispatchLatency.getMeanMicros();
+    }
+
+    @Override
+    public double getMedianDispatchLatencyMicros() {
+        return dispatchLatency.getMicrosAtPercentile(50.0);
+    }
+
+    @Override
+    public double getP99DispatchLatencyMicros() {
+        return dispatchLatency.getMicrosAtPercentile(99.0);
+    }
+
+    @Override
+    public double getP999DispatchLatencyMicros() {
+        return dispatchLatency.getMicrosAtPercentile(99.9);
+    }
+
+    @Override
+    public double getMaxDispatchLatencyMicros() {
+        return dispatchLatency.getMaxMicros();
+    }
+
+    @Override
+    public void reset() {
+        enqueued.set(0L);
+        dispatched.reset();
+        dispatchLatency.reset();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: enqueued=%d dispatched=%d depth=%d latency[%s]",
+                             name, getEnqueuedCount(), getDispatchedCount(),
+                             getDepth(), dispatchLatency);
+    }
+}
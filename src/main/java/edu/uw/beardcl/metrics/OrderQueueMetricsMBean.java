@@ -0,0 +1,85 @@
+package edu.uw.beardcl.metrics;
+
+/**
+ * JMX management interface for the metrics of an order queue, or the queues
+ * of an order manager.  Latencies are the time from an order being enqueued
+ * until it is dispatched to the order processor.
+ *
+ * @author Chester Beard
+ */
+public interface OrderQueueMetricsMBean {
+    /**
+     * Gets the name of the queue(s) being measured.
+     *
+     * @return the queue name
+     */
+    String getName();
+
+    /**
+     * Gets the number of orders enqueued.
+     *
+     * @return the number of orders enqueued
+     */
+    long getEnqueuedCount();
+
+    /**
+     * Gets the number of orders dispatched.
+     *
+     * @return the number of orders dispatched
+     */
+    long getDispatchedCount();
+
+    /**
+     * Gets the number of orders currently resting in the queue.
+     *
+     * @return the queue depth
+     */
+    long getDepth();
+
+    /**
+     * Gets the dispatch rate over the last ten seconds.
+     *
+     * @return orders dispatched per second
+     */
+    double getDispatchRate();
+
+    /**
+     * Gets the mean dispatch latency.
+     *
+     * @return the mean latency in microseconds
+     */
+    double getMeanDispatchLatencyMicros();
+
+    /**
+     * Gets the median dispatch latency.
+     *
+     * @return the median latency in microseconds
+     */
+    double getMedianDispatchLatencyMicros();
+
+    /**
+     * Gets the 99th percentile dispatch latency.
+     *
+     * @return the 99th percentile latency in microseconds
+     */
+    double getP99DispatchLatencyMicros();
+
+    /**
+     * Gets the 99.9th percentile dispatch latency.
+     *
+     * @return the 99.9th percentile latency in microseconds
+     */
+    double getP999DispatchLatencyMicros();
+
+    /**
+     * Gets the maximum dispatch latency.
+     *
+     * @return the maximum latency in microseconds
+     */
+    double getMaxDispatchLatencyMicros();
+
+    /**
+     * Clears the counters and latency histogram, the depth is retained.
+     */
+    void reset();
+}
@@ -0,0 +1,31 @@
+package edu.uw.beardcl.metrics;
+
+/**
+ * The stages an order passes through between being placed with the broker
+ * and its effect being persisted to the account.  Market orders skip the
+ * stop order stages.
+ *
+ * @author Chester Beard
+ */
+public enum OrderStage {
+    /** The order has been accepted by the broker */
+    ACCEPTED,
+
+    /** The order has been queued in a stop order queue */
+    QUEUED,
+
+    /** The stop order's price condition has been met */
+    TRIGGERED,
+
+    /** The order has been moved to the market order queue */
+    MARKET_QUEUED,
+
+    /** The order has been sent to the exchange */
+    SENT,
+
+    /** The exchange has executed the order */
+    EXECUTED,
+
+    /** The account has been updated and persisted */
+    PERSISTED
+}
@@ -0,0 +1,61 @@
+package edu.uw.beardcl.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The nanosecond timestamps at which a single order reached each stage.  The
+ * first time recorded for a stage is retained.
+ *
+ * @author Chester Beard
+ */
+final class OrderTrace {
+    /** Value of an unrecorded timestamp */
+    static final long UNSET = 0L;
+
+    /** Timestamps indexed by stage ordinal */
+    private final AtomicLongArray times = new AtomicLongArray(OrderStage.values().length);
+
+    /** The time the trace began */
+    private final long startTime;
+
+    /**
+     * Constructor.
+     *
+     * @param startTime the time the trace began, relative to System.nanoTime
+     */
+    OrderTrace(final long startTime) {
+        this.startTime = startTime;
+    }
+
+    /**
+     * Gets the time the trace began.
+     *
+     * @return the start time, relative to System.nanoTime
+     */
+    long startTime() {
+        return startTime;
+    }
+
+    /**
+     * Records the time the order reached a stage, unless already recorded.
+     *
+     * @param stage the stage reached
+     * @param nanoTime the time the stage was reached
+     */
+    void mark(final OrderStage stage, final long nanoTime) {
+        // avoid colliding with the UNSET marker
+        final long t = (nanoTime == UNSET) ? 1L : nanoTime;
+        times.compareAndSet(stage.ordinal(), UNSET, t);
+    }
+
+    /**
+     * Gets the time the order reached a stage.
+     *
+     * @param stage the stage
+     *
+     * @return the time the stage was reached, or UNSET
+     */
+    long timeOf(final OrderStage stage) {
+        return times.get(stage.ordinal());
+    }
+}
@@ -0,0 +1,257 @@
+package edu.uw.beardcl.metrics;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import edu.uw.ext.framework.order.Order;
+
+/**
+ * Traces orders, by order id, from acceptance by the broker through to the
+ * account being persisted.  Each stage reached is timestamped, when the order
+ * completes the time spent reaching each stage from the previous recorded
+ * stage is aggregated into a per stage histogram, along with the end to end
+ * latency.
+ *
+ * A stop order may rest in its queue indefinitely, so its trace is split:
+ * the first part ends when the order is queued, the second begins when the
+ * order is triggered.  The end to end latency of a stop order is measured
+ * from its trigger.  Traces of orders that never complete expire once
+ * stale, when the tracer is full.
+ *
+ * There is a single tracer per process, obtained using getInstance.  Tracing
+ * is enabled unless the "edu.uw.beardcl.trace" system property is false.
+ *
+ * @author Chester Beard
+ */
+public final class OrderTracer implements OrderTracerMBean {
+    /** System property used to disable tracing */
+    public static final String ENABLED_PROPERTY = "edu.uw.beardcl.trace";
+
+    /** This class' logger */
+    private static final Logger logger = LoggerFactory.getLogger(OrderTracer.class);
+
+    /** The maximum number of orders traced at one time */
+    private static final int MAX_IN_FLIGHT = 100_000;
+
+    /** Age at which an incomplete trace is stale, in nanoseconds */
+    private static final long STALE_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+    /** Minimum time between expiry sweeps, in nanoseconds */
+    private static final long SWEEP_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    /** The stages */
+    private static final OrderStage[] STAGES = OrderStage.values();
+
+    /** The single instance, initialized after the constants it uses */
+    private static final OrderTracer INSTANCE =
+        new OrderTracer(Boolean.parseBoolean(System.getProperty(ENABLED_PROPERTY, "true")));
+
+    /** Traces of orders in flight, keyed by order id */
+    private final ConcurrentMap<Integer, OrderTrace> traces = new ConcurrentHashMap<>();
+
+    /** Time to reach each stage from the previous stage, indexed by stage ordinal */
+    private final LatencyHistogram[] stageLatencies = new LatencyHistogram[STAGES.length];
+
+    /** Time from the first to the last stage */
+    private final LatencyHistogram endToEnd = new LatencyHistogram();
+
+    /** Number of completed traces */
+    private final AtomicLong completed = new AtomicLong();
+
+    /** Number of orders not traced */
+    private final AtomicLong dropped = new AtomicLong();
+
+    /** Number of stale traces expired */
+    private final AtomicLong expired = new AtomicLong();
+
+    /** Time of the last expiry sweep, relative to System.nanoTime */
+    private final AtomicLong lastSweep = new AtomicLong(System.nanoTime() - SWEEP_INTERVAL_NANOS);
+
+    /** Tracing enabled flag */
+    private volatile boolean enabled;
+
+    /**
+     * Constructor.
+     *
+     * @param enabled the initial enabled state
+     */
+    private OrderTracer(final boolean enabled) {
+        this.enabled = enabled;
+        for (int i = 0; i < stageLatencies.length; i++) {
+            stageLatencies[i] = new LatencyHistogram();
+        }
+    }
+
+    /**
+     * Gets the tracer.
+     *
+     * @return the tracer
+     */
+    public static OrderTracer getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Records an order reaching a stage.  Reaching the final stage completes
+     * the order's trace, being queued as a stop order ends the first part of
+     * its trace.
+     *
+     * @param order the order, null is ignored
+     * @param stage the stage reached
+     */
+    public void mark(final Order order, final OrderStage stage) {
+        if (!enabled || order == null) {
+            return;
+        }
+        final long now = System.nanoTime();
+        final Integer orderId = order.getOrderId();
+        final boolean ending = (stage == OrderStage.QUEUED || stage == OrderStage.PERSISTED);
+
+        OrderTrace trace = traces.get(orderId);
+        if (trace == null) {
+            if (ending) {
+                // not traced, or dropped when begun
+                return;
+            }
+            if (traces.size() >= MAX_IN_FLIGHT && !expireStale(now)) {
+                dropped.incrementAndGet();
+                return;
+            }
+            final OrderTrace newTrace = new OrderTrace(now);
+            trace = traces.putIfAbsent(orderId, newTrace);
+            if (trace == null) {
+                trace = newTrace;
+            }
+        }
+        trace.mark(stage, now);
+
+        if (ending && traces.remove(orderId, trace)) {
+            complete(trace, stage == OrderStage.PERSISTED);
+        }
+    }
+
+    /**
+     * Abandons the trace of an order that will not complete.
+     *
+     * @param order the order, null is ignored
+     */
+    public void abandon(final Order order) {
+        if (order != null) {
+            traces.remove(order.getOrderId());
+        }
+    }
+
+    /**
+     * Expires stale traces, at most once per sweep interval, so traces of
+     * orders that will never complete don't prevent new orders being traced.
+     *
+     * @param now the current time
+     *
+     * @return true if there's room for a new trace
+     */
+    private boolean expireStale(final long now) {
+        final long last = lastSweep.get();
+        if (now - last >= SWEEP_INTERVAL_NANOS && lastSweep.compareAndSet(last, now)) {
+            final int before = traces.size();
+            traces.values().removeIf(trace -> now - trace.startTime() > STALE_NANOS);
+            expired.addAndGet(Math.max(0, before - traces.size()));
+            if (traces.size() >= MAX_IN_FLIGHT) {
+                logger.warn(String.format("Order tracer full, %d orders in flight, new orders aren't traced.",
+                                          traces.size()));
+            }
+        }
+        return traces.size() < MAX_IN_FLIGHT;
+    }
+
+    /**
+     * Aggregates a completed trace, or the completed first part of a stop
+     * order's trace.
+     *
+     * @param trace the trace
+     * @param finished true if the order completed, the end to end latency is
+     *                 recorded only for completed orders
+     */
+    private void complete(final OrderTrace trace, final boolean finished) {
+        long first = OrderTrace.UNSET;
+        long prev = OrderTrace.UNSET;
+        for (final OrderStage stage : STAGES) {
+            final long t = trace.timeOf(stage);
+            if (t == OrderTrace.UNSET) {
+                continue;
+            }
+            if (prev == OrderTrace.UNSET) {
+                first = t;
+            } else {
+                stageLatencies[stage.ordinal()].record(t - prev);
+            }
+            prev = t;
+        }
+        if (finished) {
+            endToEnd.record(prev - first);
+            completed.incrementAndGet();
+        }
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @Override
+    public void setEnabled(final boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    @Override
+    public long getInFlightCount() {
+        return traces.size();
+    }
+
+    @Override
+    public long getCompletedCount() {
+        return completed.get();
+    }
+
+    @Override
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    @Override
+    public long getExpiredCount() {
+        return expired.get();
+    }
+
+    @Override
+    public String dump() {
+        final StringBuilder sb = new StringBuilder();
+        sb.append(String.format("Order trace: completed=%d in-flight=%d dropped=%d expired=%d%n",
+                                getCompletedCount(), getInFlightCount(), getDroppedCount(),
+                                getExpiredCount()));
+        for (final OrderStage stage : STAGES) {
+            final LatencyHistogram h = stageLatencies[stage.ordinal()];
+            if (h.getCount() > 0) {
+                sb.append(String.format("  %-14s %s%n", stage, h));
+            }
+        }
+        sb.append(String.format("  %-14s %s%n", "END_TO_END", endToEnd));
+        return sb.toString();
+    }
+
+    @Override
+    public void reset() {
+        traces.clear();
+        for (final LatencyHistogram h : stageLatencies) {
+            h.reset();
+        }
+        endToEnd.reset();
+        completed.set(0L);
+        dropped.set(0L);
+        expired.set(0L);
+    }
+}
@@ -0,0 +1,62 @@
+package edu.uw.beardcl.metrics;
+
+/**
+ * JMX management interface for the order latency tracer.
+ *
+ * @author Chester Beard
+ */
+public interface OrderTracerMBean {
+    /**
+     * Indicates if tracing is enabled.
+     *
+     * @return true if orders are being traced
+     */
+    boolean isEnabled();
+
+    /**
+     * Enables or disables tracing.
+     *
+     * @param enabled true to enable tracing
+     */
+    void setEnabled(boolean enabled);
+
+    /**
+     * Gets the number of orders currently being traced.
+     *
+     * @return the number of orders in flight
+     */
+    long getInFlightCount();
+
+    /**
+     * Gets the number of orders whose traces have completed.
+     *
+     * @return the number of completed traces
+     */
+    long getCompletedCount();
+
+    /**
+     * Gets the number of orders not traced because too many were in flight.
+     *
+     * @return the number of dropped traces
+     */
+    long getDroppedCount();
+
+    /**
+     * Gets the number of incomplete traces expired as stale.
+     *
+     * @return the number of expired traces
+     */
+    long getExpiredCount();
+
+    /**
+     * Produces a report of the per stage latency percentiles.
+     *
+     * @return the report
+     */
+    String dump();
+
+    /**
+     * Clears the aggregated latencies and in flight traces.
+     */
+    void reset();
+}
@@ -0,0 +1,103 @@
+package edu.uw.beardcl.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Measures the rate of events over a short sliding window of one second
+ * buckets, as well as the total number of events.
+ *
+ * @author Chester Beard
+ */
+public final class RateMeter {
+    /** Number of one second buckets retained, the current second is partial */
+    private static final int WINDOW_SECONDS = 11;
+
+    /** Number of nanoseconds per second */
+    private static final long NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    /** Event count for each bucket */
+    private final AtomicLongArray counts = new AtomicLongArray(WINDOW_SECONDS);
+
+    /** The second each bucket currently holds counts for */
+    private final AtomicLongArray seconds = new AtomicLongArray(WINDOW_SECONDS);
+
+    /** Total number of events */
+    private final AtomicLong total = new AtomicLong();
+
+    /** Time, in nanoseconds, at which measurement started */
+    private volatile long startNanos = System.nanoTime();
+
+    /**
+     * Records the occurrence of an event.
+     */
+    public void mark() {
+        final long now = currentSecond();
+        final int ndx = (int) (((now % WINDOW_SECONDS) + WINDOW_SECONDS) % WINDOW_SECONDS);
+        final long bucketSecond = seconds.get(ndx);
+        if (bucketSecond != now && seconds.compareAndSet(ndx, bucketSecond, now)) {
+            counts.set(ndx, 0L);
+        }
+        counts.incrementAndGet(ndx);
+        total.incrementAndGet();
+    }
+
+    /**
+     * Gets the total number of events recorded.
+     *
+     * @return the total number of events
+     */
+    public long getCount() {
+        return total.get();
+    }
+
+    /**
+     * Gets the rate of events per second over the last ten complete seconds.
+     *
+     * @return the recent event rate per second
+     */
+    public double getRecentRate() {
+        final long now = currentSecond();
+        long sum = 0;
+        for (int i = 0; i < WINDOW_SECONDS; i++) {
+            final long age = now - seconds.get(i);
+            if (age > 0 && age < WINDOW_SECONDS) {
+                sum += counts.get(i);
+            }
+        }
+        return (double) sum / (WINDOW_SECONDS - 1);
+    }
+
+    /**
+     * Gets the average rate of events per second since creation or the last
+     * reset.
+     *
+     * @return the mean event rate per second
+     */
+    public double getMeanRate() {
+        final long elapsed = System.nanoTime() - startNanos;
+        return (elapsed <= 0) ? 0.0 : (double) total.get() * NANOS_PER_SECOND / elapsed;
+    }
+
+    /**
+     * Clears all recorded events.
+     */
+    public void reset() {
+        for (int i = 0; i < WINDOW_SECONDS; i++) {
+            counts.set(i, 0L);
+            seconds.set(i, 0L);
+        }
+        total.set(0L);
+        startNanos = System.nanoTime();
+    }
+
+    /**
+     * Gets the current second, relative to the nanosecond clock.
+     *
+     * @return the current second
+     */
+    private static long currentSecond() {
+        return System.nanoTime() / NANOS_PER_SECOND;
+    }
+}
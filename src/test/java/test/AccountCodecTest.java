@@ -0,0 +1,280 @@
+package test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.StreamCorruptedException;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import edu.uw.beardcl.account.AccountCodec;
+import edu.uw.beardcl.account.SimpleAccount;
+import edu.uw.beardcl.account.SimpleAddress;
+import edu.uw.beardcl.account.SimpleCreditCard;
+import edu.uw.ext.framework.account.Account;
+import edu.uw.ext.framework.account.AccountException;
+import edu.uw.ext.framework.account.Address;
+import edu.uw.ext.framework.account.CreditCard;
+
+/**
+ * Round trip and compatibility tests for AccountCodec.
+ */
+public class AccountCodecTest {
+    /** A password hash */
+    private static final byte[] HASH = {0, 1, 2, -1, -128, 127, 42, 99, 100, 7};
+
+    /**
+     * Creates an account with all fields populated.
+     *
+     * @return the account
+     *
+     * @throws AccountException if the account can't be created
+     */
+    private static Account fullAccount() throws AccountException {
+        final SimpleAccount acct = new SimpleAccount("fullaccount", HASH, 1_000_000);
+        acct.setFullName("Full Account Holder");
+        acct.setPhone("(206) 555-1234");
+        acct.setEmail("holder@example.com");
+
+        final SimpleAddress addr = new SimpleAddress();
+        addr.setStreetAddress("1313 Mockingbird Lane");
+        addr.setCity("Seattle");
+        addr.setState("WA");
+        addr.setZipCode("98105");
+        acct.setAddress(addr);
+
+        final SimpleCreditCard cc = new SimpleCreditCard();
+        cc.setAccountNumber("4111111111111111");
+        cc.setIssuer("Big Bank");
+        cc.setType("Visa");
+        cc.setHolder("Full Account Holder");
+        cc.setExpirationDate("03/29");
+        acct.setCreditCard(cc);
+        return acct;
+    }
+
+    /**
+     * Asserts two accounts have equal field values.
+     *
+     * @param expected the expected account
+     * @param actual the actual account
+     */
+    private static void assertAccountEquals(final Account expected, final Account actual) {
+        assertEquals(expected.getName(), actual.getName());
+        assertArrayEquals(expected.getPasswordHash(), actual.getPasswordHash());
+        assertEquals(expected.getBalance(), actual.getBalance());
+        assertEquals(expected.getFullName(), actual.getFullName());
+        assertEquals(expected.getPhone(), actual.getPhone());
+        assertEquals(expected.getEmail(), actual.getEmail());
+
+        final Address ea = expected.getAddress();
+        final Address aa = actual.getAddress();
+        if (ea == null) {
+            assertNull(aa);
+        } else {
+            assertNotNull(aa);
+            assertEquals(ea.getStreetAddress(), aa.getStreetAddress());
+            assertEquals(ea.getCity(), aa.getCity());
+            assertEquals(ea.getState(), aa.getState());
+            assertEquals(ea.getZipCode(), aa.getZipCode());
+        }
+
+        final CreditCard ec = expected.getCreditCard();
+        final CreditCard ac = actual.getCreditCard();
+        if (ec == null) {
+            assertNull(ac);
+        } else {
+            assertNotNull(ac);
+            assertEquals(ec.getAccountNumber(), ac.getAccountNumber());
+            assertEquals(ec.getIssuer(), ac.getIssuer());
+            assertEquals(ec.getType(), ac.getType());
+            assertEquals(ec.getHolder(), ac.getHolder());
+            assertEquals(ec.getExpirationDate(), ac.getExpirationDate());
+        }
+    }
+
+    /**
+     * A fully populated account survives a round trip.
+     *
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void testFullAccountRoundTrip() throws Exception {
+        final Account acct = fullAccount();
+        assertAccountEquals(acct, AccountCodec.decode(AccountCodec.encode(acct)));
+    }
+
+    /**
+     * Absent optional fields and components remain absent.
+     *
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void testMinimalAccountRoundTrip() throws Exception {
+        final Account acct = new SimpleAccount("minimalacct", HASH, 100_000);
+        final Account decoded = AccountCodec.decode(AccountCodec.encode(acct));
+        assertAccountEquals(acct, decoded);
+        assertNull(decoded.getFullName());
+        assertNull(decoded.getAddress());
+        assertNull(decoded.getCreditCard());
+    }
+
+    /**
+     * Empty strings are distinguished from null, and non-ASCII text survives.
+     *
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void testEmptyAndUnicodeStrings() throws Exception {
+        final Account acct = fullAccount();
+        acct.setPhone("");
+        acct.setFullName("Zo\u00EB \u00C5str\u00F6m \u65E5\u672C \uD83D\uDE00");
+        acct.getAddress().setCity(null);
+        final Account decoded = AccountCodec.decode(AccountCodec.encode(acct));
+        assertAccountEquals(acct, decoded);
+        assertEquals("", decoded.getPhone());
+        assertNull(decoded.getAddress().getCity());
+    }
+
+    /**
+     * Balances across the int range, including the varint length boundaries,
+     * survive a round trip.
+     *
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void testBalanceRange() throws Exception {
+        final int[] balances = {0, 1, -1, 63, -64, 64, -65, 8191, 8192, 1 << 20, -(1 << 27),
+                                Integer.MAX_VALUE, Integer.MIN_VALUE};
+        final Account acct = fullAccount();
+        for (final int balance : balances) {
+            acct.setBalance(balance);
+            assertEquals(balance, AccountCodec.decode(AccountCodec.encode(acct)).getBalance());
+        }
+    }
+
+    /**
+     * Long fields require multi-byte length prefixes.
+     *
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void testLongFields() throws Exception {
+        final char[] chars = new char[100_000];
+        Arrays.fill(chars, 'x');
+        final Account acct = fullAccount();
+        acct.setEmail(new String(chars));
+        acct.setPasswordHash(new byte[300]);
+        assertAccountEquals(acct, AccountCodec.decode(AccountCodec.encode(acct)));
+    }
+
+    /**
+     * The password hash can be decoded alone.
+     *
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void testDecodePasswordHash() throws Exception {
+        assertArrayEquals(HASH, AccountCodec.decodePasswordHash(AccountCodec.encode(fullAccount())));
+    }
+
+    /**
+     * A copy is equal to the original and unaffected by later changes to it.
+     *
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void testCopyIsIndependent() throws Exception {
+        final Account acct = fullAccount();
+        final Account copy = AccountCodec.copy(acct);
+        assertAccountEquals(acct, copy);
+
+        final int balance = acct.getBalance();
+        acct.setBalance(balance + 1);
+        acct.getAddress().setCity("Elsewhere");
+        assertEquals(balance, copy.getBalance());
+        assertAccountEquals(fullAccount(), copy);
+    }
+
+    /**
+     * The encoding of version 1 is stable, data written by earlier releases
+     * must remain readable.
+     *
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void testVersion1Layout() throws Exception {
+        final byte[] expected = {
+            (byte) 0xAC, 1,                                   // magic, version
+            12, 'm', 'i', 'n', 'i', 'm', 'a', 'l', 'a', 'c', 'c', 't',  // name
+            4, 9, 8, 7,                                       // password hash
+            (byte) 0xC0, (byte) 0x9A, 0x0C,                   // balance 100000
+            0, 0, 0,                                          // fullName, phone, email
+            0, 0                                              // no address, no card
+        };
+        final Account acct = new SimpleAccount("minimalacct", new byte[] {9, 8, 7}, 100_000);
+        assertArrayEquals(expected, AccountCodec.encode(acct));
+        assertAccountEquals(acct, AccountCodec.decode(expected));
+    }
+
+    /**
+     * Unknown versions are rejected.
+     *
+     * @throws Exception if the test fails
+     */
+    @Test(expected = StreamCorruptedException.class)
+    public void testUnknownVersionRejected() throws Exception {
+        final byte[] data = AccountCodec.encode(fullAccount());
+        data[1] = (byte) (AccountCodec.VERSION + 1);
+        AccountCodec.decode(data);
+    }
+
+    /**
+     * Truncated data is rejected.
+     *
+     * @throws Exception if the test fails
+     */
+    @Test(expected = StreamCorruptedException.class)
+    public void testTruncatedRejected() throws Exception {
+        final byte[] data = AccountCodec.encode(fullAccount());
+        AccountCodec.decode(Arrays.copyOf(data, data.length - 3));
+    }
+
+    /**
+     * Java serialization uses the codec, through the serialization proxy.
+     *
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void testJavaSerializationRoundTrip() throws Exception {
+        final Account acct = fullAccount();
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(acct);
+        }
+        final Object copy;
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            copy = in.readObject();
+        }
+        assertEquals(SimpleAccount.class, copy.getClass());
+        assertAccountEquals(acct, (Account) copy);
+    }
+
+    /**
+     * Decoding garbage fails cleanly.
+     *
+     * @throws IOException expected
+     */
+    @Test(expected = StreamCorruptedException.class)
+    public void testNotAnAccount() throws IOException {
+        AccountCodec.decode("{\"name\":\"json\"}".getBytes("UTF-8"));
+    }
+}
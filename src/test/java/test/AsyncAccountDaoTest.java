@@ -0,0 +1,178 @@
+package test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static test.TestAccounts.account;
+import static test.TestAccounts.name;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import edu.uw.beardcl.account.AsyncAccountDao;
+import edu.uw.ext.framework.account.Account;
+import edu.uw.ext.framework.account.AccountException;
+
+/**
+ * Tests of AsyncAccountDao's per account ordering, throttling and closing.
+ */
+public class AsyncAccountDaoTest {
+    /** Number of I/O threads */
+    private static final int IO_THREADS = 4;
+
+    /** Capacity of the operation queue */
+    private static final int QUEUE_CAPACITY = 8;
+
+    /** Starting balance of the accounts written */
+    private static final int BALANCE = 100_000;
+
+    /** The underlying DAO */
+    private MemoryAccountDao memory;
+
+    /** The DAO under test */
+    private AsyncAccountDao dao;
+
+    /**
+     * Creates the DAO under test.
+     */
+    @Before
+    public void setUp() {
+        memory = new MemoryAccountDao();
+        dao = new AsyncAccountDao(memory, IO_THREADS, QUEUE_CAPACITY);
+    }
+
+    /**
+     * Closes the DAO under test.
+     *
+     * @throws AccountException if the close fails
+     */
+    @After
+    public void tearDown() throws AccountException {
+        dao.close();
+    }
+
+    /**
+     * Operations on an account are performed in the order submitted, each
+     * read observing the writes submitted before it.
+     *
+     * @throws Exception if the DAO fails
+     */
+    @Test
+    public void operationsOnAnAccountAreOrdered() throws Exception {
+        memory.setWriteDelayMillis(1L);
+        final List<CompletableFuture<Account>> reads = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            dao.setAccount(account(1, BALANCE + i));
+            dao.setAccount(account(2, 2 * BALANCE - i));
+            reads.add(dao.getAccount("account0001"));
+        }
+
+        for (int i = 0; i < reads.size(); i++) {
+            assertEquals(BALANCE + i, reads.get(i).get().getBalance());
+        }
+        AsyncAccountDao.await(dao.getAccount("account0002"));
+        assertEquals(2 * BALANCE - 99, memory.stored("account0002").getBalance());
+    }
+
+    /**
+     * A bulk lookup observes the writes of its accounts submitted before it.
+     *
+     * @throws Exception if the DAO fails
+     */
+    @Test
+    public void bulkLookupFollowsQueuedWrites() throws Exception {
+        memory.setWriteDelayMillis(20L);
+        for (int i = 0; i < 3; i++) {
+            dao.setAccount(account(1, BALANCE + i));
+            dao.setAccount(account(2, BALANCE + 10 + i));
+        }
+
+        final Map<String, Account> accounts =
+            AsyncAccountDao.await(dao.getAccounts(Arrays.asList(name(1), name(2), name(3))));
+        assertEquals(2, accounts.size());
+        assertEquals(BALANCE + 2, accounts.get(name(1)).getBalance());
+        assertEquals(BALANCE + 12, accounts.get(name(2)).getBalance());
+    }
+
+    /**
+     * A long chain of operations on one account, throttled by a small queue,
+     * completes without the operations nesting.
+     *
+     * @throws Exception if the DAO fails
+     */
+    @Test
+    public void longChainsDoNotNest() throws Exception {
+        dao.close();
+        dao = new AsyncAccountDao(memory, 1, 1);
+        CompletableFuture<Void> last = null;
+        for (int i = 0; i < 20_000; i++) {
+            last = dao.setAccount(account(1, BALANCE + i));
+        }
+        last.get();
+        assertEquals(BALANCE + 19_999, memory.stored("account0001").getBalance());
+        assertEquals(20_000, memory.getWriteCount());
+    }
+
+    /**
+     * Closing completes the submitted operations, including those waiting on
+     * their account's previous operation, then closes the underlying DAO.
+     *
+     * @throws Exception if the DAO fails
+     */
+    @Test
+    public void closeDrainsOperations() throws Exception {
+        memory.setWriteDelayMillis(2L);
+        final List<CompletableFuture<Void>> writes = new ArrayList<>();
+        for (int round = 0; round < 5; round++) {
+            for (int n = 0; n < 10; n++) {
+                writes.add(dao.setAccount(account(n, BALANCE + round)));
+            }
+        }
+        dao.close();
+
+        for (final CompletableFuture<Void> write : writes) {
+            assertTrue(write.isDone());
+            write.get();
+        }
+        for (int n = 0; n < 10; n++) {
+            assertEquals(BALANCE + 4, memory.stored(account(n, BALANCE).getName()).getBalance());
+        }
+        assertTrue(memory.isClosed());
+
+        try {
+            dao.setAccount(account(1, BALANCE)).get();
+            fail("Expected the write to be refused");
+        } catch (final ExecutionException ex) {
+            assertTrue(ex.getCause() instanceof AccountException);
+        }
+    }
+
+    /**
+     * A failed operation fails its future without affecting later
+     * operations on the account.
+     *
+     * @throws Exception if the DAO fails
+     */
+    @Test
+    public void failuresAreReportedPerOperation() throws Exception {
+        memory.setFailWrites(true);
+        final CompletableFuture<Void> failed = dao.setAccount(account(1, BALANCE));
+        try {
+            AsyncAccountDao.await(failed);
+            fail("Expected the write to fail");
+        } catch (final AccountException ex) {
+            // expected
+        }
+        memory.setFailWrites(false);
+        AsyncAccountDao.await(dao.setAccount(account(1, BALANCE + 1)));
+        assertEquals(BALANCE + 1, AsyncAccountDao.await(dao.getAccount("account0001")).getBalance());
+    }
+}
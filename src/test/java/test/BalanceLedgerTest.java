@@ -0,0 +1,103 @@
+package test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import edu.uw.beardcl.account.BalanceLedger;
+
+/**
+ * Tests of BalanceLedger's concurrent updates and eviction.
+ */
+public class BalanceLedgerTest {
+    /** Number of concurrent updaters */
+    private static final int THREADS = 8;
+
+    /** Number of updates made by each updater */
+    private static final int UPDATES = 10_000;
+
+    /**
+     * Concurrent registrations of an account share one cell and concurrent
+     * adjustments through it are never lost.
+     *
+     * @throws Exception if an updater fails
+     */
+    @Test
+    public void concurrentUpdatesAreNotLost() throws Exception {
+        final BalanceLedger ledger = new BalanceLedger();
+        final ExecutorService exec = Executors.newFixedThreadPool(THREADS);
+        try {
+            final List<Future<AtomicInteger>> results = new ArrayList<>();
+            for (int t = 0; t < THREADS; t++) {
+                final int delta = (t % 2 == 0) ? 3 : -1;
+                results.add(exec.submit((Callable<AtomicInteger>) () -> {
+                    final AtomicInteger cell = ledger.register("account0001", 100_000);
+                    for (int i = 0; i < UPDATES; i++) {
+                        cell.addAndGet(delta);
+                    }
+                    return cell;
+                }));
+            }
+            final AtomicInteger cell = results.get(0).get();
+            for (final Future<AtomicInteger> result : results) {
+                assertSame(cell, result.get());
+            }
+            assertEquals(100_000 + (THREADS / 2) * UPDATES * 3 - (THREADS / 2) * UPDATES,
+                         cell.get());
+            assertEquals(Integer.valueOf(cell.get()), ledger.getBalance("account0001"));
+        } finally {
+            exec.shutdownNow();
+        }
+    }
+
+    /**
+     * A registered balance is canonical, the balance of later registrations
+     * is ignored.
+     */
+    @Test
+    public void firstRegistrationIsCanonical() {
+        final BalanceLedger ledger = new BalanceLedger();
+        final AtomicInteger cell = ledger.register("account0001", 100);
+        assertEquals(100, ledger.register("account0001", 200).get());
+        cell.set(300);
+        assertEquals(Integer.valueOf(300), ledger.getBalance("account0001"));
+
+        ledger.remove("account0001");
+        assertNull(ledger.getBalance("account0001"));
+        assertEquals(400, ledger.register("account0001", 400).get());
+    }
+
+    /**
+     * An account's entry is evicted once no holder of its cell remains.
+     *
+     * @throws InterruptedException if the wait is interrupted
+     */
+    @Test
+    public void unreferencedBalancesAreEvicted() throws InterruptedException {
+        final BalanceLedger ledger = new BalanceLedger();
+        final AtomicInteger held = ledger.register("held", 1);
+        for (int i = 0; i < 1000; i++) {
+            ledger.register(String.format("account%04d", i), i);
+        }
+
+        for (int attempt = 0; attempt < 50 && ledger.size() > 1; attempt++) {
+            System.gc();
+            Thread.sleep(20);
+        }
+        assertEquals(1, ledger.size());
+        assertEquals(Integer.valueOf(1), ledger.getBalance("held"));
+        assertNull(ledger.getBalance("account0000"));
+        held.incrementAndGet();
+        assertEquals(Integer.valueOf(2), ledger.getBalance("held"));
+    }
+}
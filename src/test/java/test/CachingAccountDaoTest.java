@@ -0,0 +1,82 @@
+package test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import edu.uw.beardcl.account.AccountCacheMBean;
+import edu.uw.beardcl.account.CachingAccountDao;
+import edu.uw.beardcl.account.SimpleAccount;
+import edu.uw.beardcl.metrics.BrokerMetrics;
+
+/**
+ * Tests of CachingAccountDao's caching and its management interface.
+ */
+public class CachingAccountDaoTest {
+    /** Name of the broker the cache is registered for */
+    private static final String BROKER_NAME = "CachingAccountDaoTest";
+
+    /** The underlying DAO */
+    private MemoryAccountDao memory;
+
+    /** The DAO under test */
+    private CachingAccountDao cache;
+
+    /** Publishes the cache MBean */
+    private BrokerMetrics metrics;
+
+    /**
+     * Creates the DAO under test.
+     */
+    @Before
+    public void setUp() {
+        memory = new MemoryAccountDao();
+        cache = new CachingAccountDao(memory, 100, TimeUnit.MINUTES.toMillis(1));
+        metrics = new BrokerMetrics(BROKER_NAME);
+    }
+
+    /**
+     * Unregisters the MBean and closes the DAO under test.
+     *
+     * @throws Exception if the close fails
+     */
+    @After
+    public void tearDown() throws Exception {
+        metrics.close();
+        cache.close();
+    }
+
+    /**
+     * The cache registers as an MBean and its counters are readable through
+     * the MBean server.
+     *
+     * @throws Exception if the DAO or the MBean server fails
+     */
+    @Test
+    public void hitCountReadableThroughMBeanServer() throws Exception {
+        memory.setAccount(new SimpleAccount("account0001", new byte[] {1, 2, 3}, 100_000));
+        metrics.register("AccountCache", "accounts", cache, AccountCacheMBean.class);
+
+        assertNotNull(cache.getAccount("account0001"));
+        assertNotNull(cache.getAccount("account0001"));
+        assertEquals(1, memory.getReadCount());
+
+        final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        final ObjectName name = new ObjectName(String.format("%s:type=AccountCache,broker=%s,name=%s",
+                                                             BrokerMetrics.DOMAIN,
+                                                             ObjectName.quote(BROKER_NAME),
+                                                             ObjectName.quote("accounts")));
+        assertEquals(1L, server.getAttribute(name, "HitCount"));
+        assertEquals(1L, server.getAttribute(name, "MissCount"));
+        assertEquals(1, server.getAttribute(name, "Size"));
+    }
+}
@@ -0,0 +1,143 @@
+package test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import edu.uw.beardcl.account.SimpleAccount;
+import edu.uw.beardcl.account.SimpleAccountManager;
+import edu.uw.beardcl.dao.CredentialDao;
+import edu.uw.beardcl.dao.ExtendedAccountDao;
+import edu.uw.ext.framework.account.Account;
+import edu.uw.ext.framework.account.AccountException;
+
+/**
+ * Tests that password hashes are read through the narrow CredentialDao
+ * lookup when the DAO supports it, and through getAccount otherwise.
+ */
+public class CredentialLookupTest {
+    /** Holds the accounts */
+    private MemoryAccountDao memory;
+
+    /** Credential DAO over the accounts */
+    private CountingCredentialDao credentialDao;
+
+    /**
+     * A CredentialDao over a MemoryAccountDao that counts the password hash
+     * lookups it receives.
+     */
+    private static final class CountingCredentialDao implements CredentialDao {
+        /** The underlying DAO */
+        private final MemoryAccountDao memory;
+
+        /** Number of getPasswordHash calls */
+        private final AtomicInteger hashReads = new AtomicInteger();
+
+        /**
+         * Constructor.
+         *
+         * @param memory the underlying DAO
+         */
+        CountingCredentialDao(final MemoryAccountDao memory) {
+            this.memory = memory;
+        }
+
+        @Override
+        public byte[] getPasswordHash(final String accountName) {
+            hashReads.incrementAndGet();
+            final Account acct = memory.stored(accountName);
+            return (acct == null) ? null : acct.getPasswordHash();
+        }
+
+        @Override
+        public Account getAccount(final String accountName) {
+            return memory.getAccount(accountName);
+        }
+
+        @Override
+        public void setAccount(final Account account) throws AccountException {
+            memory.setAccount(account);
+        }
+
+        @Override
+        public void deleteAccount(final String accountName) {
+            memory.deleteAccount(accountName);
+        }
+
+        @Override
+        public void reset() {
+            memory.reset();
+        }
+
+        @Override
+        public void close() {
+            memory.close();
+        }
+    }
+
+    /**
+     * Creates the DAOs.
+     */
+    @Before
+    public void setUp() {
+        memory = new MemoryAccountDao();
+        credentialDao = new CountingCredentialDao(memory);
+    }
+
+    /**
+     * The adapter uses the DAO's credential lookup rather than loading the
+     * account.
+     *
+     * @throws AccountException if the lookup fails
+     */
+    @Test
+    public void adapterUsesCredentialLookup() throws AccountException {
+        final byte[] hash = {1, 2, 3};
+        memory.setAccount(new SimpleAccount("account0001", hash, 100_000));
+
+        final ExtendedAccountDao dao = ExtendedAccountDao.of(credentialDao);
+        assertArrayEquals(hash, dao.getPasswordHash("account0001"));
+        assertNull(dao.getPasswordHash("missing"));
+        assertEquals(2, credentialDao.hashReads.get());
+        assertEquals(0, memory.getReadCount());
+    }
+
+    /**
+     * Without a credential lookup the adapter falls back to loading the
+     * account.
+     *
+     * @throws AccountException if the lookup fails
+     */
+    @Test
+    public void adapterFallsBackToGetAccount() throws AccountException {
+        final byte[] hash = {1, 2, 3};
+        memory.setAccount(new SimpleAccount("account0001", hash, 100_000));
+
+        assertArrayEquals(hash, ExtendedAccountDao.of(memory).getPasswordHash("account0001"));
+        assertEquals(1, memory.getReadCount());
+    }
+
+    /**
+     * Login validation reads only the password hash, never the account.
+     *
+     * @throws AccountException if the manager fails
+     */
+    @Test
+    public void validateLoginReadsOnlyPasswordHash() throws AccountException {
+        new SimpleAccountManager(credentialDao).createAccount("account0001", "secret", 100_000);
+        final int readsBefore = memory.getReadCount();
+
+        final SimpleAccountManager manager = new SimpleAccountManager(credentialDao);
+        assertTrue(manager.validateLogin("account0001", "secret"));
+        assertFalse(manager.validateLogin("account0001", "wrong"));
+        assertEquals(readsBefore, memory.getReadCount());
+        assertEquals(1, credentialDao.hashReads.get());
+    }
+}
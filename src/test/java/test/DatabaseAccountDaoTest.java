@@ -0,0 +1,454 @@
+package test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static test.TestAccounts.account;
+import static test.TestAccounts.name;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Hashtable;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.naming.Context;
+import javax.naming.InitialContext;
+import javax.naming.NameNotFoundException;
+import javax.naming.NamingException;
+import javax.naming.spi.InitialContextFactory;
+import javax.sql.DataSource;
+
+import org.apache.derby.jdbc.EmbeddedDataSource;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import edu.uw.beardcl.account.SimpleAddress;
+import edu.uw.beardcl.account.SimpleCreditCard;
+import edu.uw.beardcl.dao.DatabaseAccountDao;
+import edu.uw.ext.framework.account.Account;
+import edu.uw.ext.framework.account.AccountException;
+
+/**
+ * Tests of DatabaseAccountDao over an embedded, in-memory Derby database:
+ * upserts, batches, bulk lookups, connection pooling and the per connection
+ * statement cache.
+ */
+public class DatabaseAccountDaoTest {
+    /** The JNDI name used for the DataSource, as used by DatabaseAccountDao */
+    private static final String DATASOURCE_JNDI_NAME = "jdbc/AccountDb";
+
+    /** The account schema */
+    private static final String[] DDL = {
+        "CREATE TABLE account ("
+      + "  accountid VARCHAR(64) NOT NULL PRIMARY KEY,"
+      + "  password_hash VARCHAR(64) FOR BIT DATA,"
+      + "  balance INTEGER,"
+      + "  fullname VARCHAR(128),"
+      + "  phone VARCHAR(32),"
+      + "  email VARCHAR(128))",
+        "CREATE TABLE address ("
+      + "  accountid VARCHAR(64) NOT NULL PRIMARY KEY"
+      + "    REFERENCES account (accountid) ON DELETE CASCADE,"
+      + "  street VARCHAR(128),"
+      + "  city VARCHAR(64),"
+      + "  state VARCHAR(32),"
+      + "  zip VARCHAR(16))",
+        "CREATE TABLE creditcard ("
+      + "  accountid VARCHAR(64) NOT NULL PRIMARY KEY"
+      + "    REFERENCES account (accountid) ON DELETE CASCADE,"
+      + "  card_number VARCHAR(32),"
+      + "  issuer VARCHAR(64),"
+      + "  cardtype VARCHAR(32),"
+      + "  holder VARCHAR(128),"
+      + "  expires VARCHAR(16))"
+    };
+
+    /** Number of pooled connections */
+    private static final int POOL_SIZE = 2;
+
+    /** Number of threads reading concurrently */
+    private static final int THREADS = 8;
+
+    /** Number of operations repeated */
+    private static final int REPEATS = 50;
+
+    /** Starting balance of the accounts written */
+    private static final int BALANCE = 100_000;
+
+    /** Number of accounts in a batch */
+    private static final int BATCH_SIZE = 10;
+
+    /** Numbers of accounts looked up in bulk, either side of the 100 name
+     *  chunks a bulk lookup is padded to */
+    private static final int[] LOOKUP_SIZES = {1, 99, 100, 101, 199, 200, 201, 250};
+
+    /** An account name too long for the accountid column */
+    private static final String OVERLONG_NAME = String.format("%065d", 0);
+
+    /** Connections opened through the DataSource */
+    private static final AtomicInteger connectionsOpened = new AtomicInteger();
+
+    /** Connections closed */
+    private static final AtomicInteger connectionsClosed = new AtomicInteger();
+
+    /** Statements prepared */
+    private static final AtomicInteger statementsPrepared = new AtomicInteger();
+
+    /** The DataSource bound to the JNDI name, counts its use */
+    private static DataSource dataSource;
+
+    /** The initial context factory in effect before the tests */
+    private static String savedContextFactory;
+
+    /** The DAO under test */
+    private DatabaseAccountDao dao;
+
+    /**
+     * Supplies the embedded DataSource, in place of the network DataSource
+     * of namespace.xml.
+     */
+    public static final class EmbeddedContextFactory implements InitialContextFactory {
+        @Override
+        public Context getInitialContext(final Hashtable<?, ?> environment) throws NamingException {
+            return new InitialContext(true) {
+                @Override
+                public Object lookup(final String name) throws NamingException {
+                    if (!DATASOURCE_JNDI_NAME.equals(name)) {
+                        throw new NameNotFoundException(name);
+                    }
+                    return dataSource;
+                }
+            };
+        }
+    }
+
+    /**
+     * Creates the database and binds it to the JNDI name.
+     *
+     * @throws SQLException if the schema can't be created
+     */
+    @BeforeClass
+    public static void setUpClass() throws SQLException {
+        final EmbeddedDataSource embedded = new EmbeddedDataSource();
+        embedded.setDatabaseName("memory:DatabaseAccountDaoTest");
+        embedded.setCreateDatabase("create");
+        try (Connection conn = embedded.getConnection();
+             Statement stmnt = conn.createStatement()) {
+            for (final String ddl : DDL) {
+                stmnt.executeUpdate(ddl);
+            }
+        }
+        dataSource = counting(DataSource.class, embedded);
+
+        savedContextFactory = System.getProperty(Context.INITIAL_CONTEXT_FACTORY);
+        System.setProperty(Context.INITIAL_CONTEXT_FACTORY, EmbeddedContextFactory.class.getName());
+    }
+
+    /**
+     * Restores the initial context factory.
+     */
+    @AfterClass
+    public static void tearDownClass() {
+        if (savedContextFactory == null) {
+            System.clearProperty(Context.INITIAL_CONTEXT_FACTORY);
+        } else {
+            System.setProperty(Context.INITIAL_CONTEXT_FACTORY, savedContextFactory);
+        }
+    }
+
+    /**
+     * Creates the DAO under test over an empty database.
+     *
+     * @throws Exception if the DAO can't be created
+     */
+    @Before
+    public void setUp() throws Exception {
+        connectionsOpened.set(0);
+        connectionsClosed.set(0);
+        statementsPrepared.set(0);
+        dao = new DatabaseAccountDao(POOL_SIZE);
+        dao.reset();
+    }
+
+    /**
+     * Closes the DAO under test.
+     */
+    @After
+    public void tearDown() {
+        dao.close();
+    }
+
+    /**
+     * An account is inserted, then updated in place, including its address
+     * and credit card, which are removed once absent.
+     *
+     * @throws AccountException if the DAO fails
+     */
+    @Test
+    public void mergeInsertThenUpdate() throws AccountException {
+        dao.setAccount(profiledAccount(1, BALANCE, "Seattle"));
+        Account acct = dao.getAccount(name(1));
+        assertEquals(BALANCE, acct.getBalance());
+        assertArrayEquals(TestAccounts.PASSWORD_HASH, acct.getPasswordHash());
+        assertEquals("Holder 1", acct.getFullName());
+        assertEquals("Seattle", acct.getAddress().getCity());
+        assertEquals("Bank", acct.getCreditCard().getIssuer());
+
+        final Account updated = profiledAccount(1, BALANCE + 1, "Tacoma");
+        updated.setCreditCard(null);
+        dao.setAccount(updated);
+        acct = dao.getAccount(name(1));
+        assertEquals(BALANCE + 1, acct.getBalance());
+        assertEquals("Tacoma", acct.getAddress().getCity());
+        assertNull(acct.getCreditCard());
+
+        updated.setAddress(null);
+        dao.setAccount(updated);
+        assertNull(dao.getAccount(name(1)).getAddress());
+    }
+
+    /**
+     * A batch of new and existing accounts inserts the new and updates the
+     * existing accounts.
+     *
+     * @throws AccountException if the DAO fails
+     */
+    @Test
+    public void batchMixesNewAndExistingAccounts() throws AccountException {
+        final List<Account> existing = new ArrayList<>();
+        for (int i = 0; i < BATCH_SIZE; i += 2) {
+            existing.add(profiledAccount(i, BALANCE, "Seattle"));
+        }
+        dao.setAccounts(existing);
+
+        final List<Account> batch = new ArrayList<>();
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            final Account acct = (i % 4 == 0) ? account(i, BALANCE + i) : profiledAccount(i, BALANCE + i, "Tacoma");
+            batch.add(acct);
+        }
+        dao.setAccounts(batch);
+
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            final Account acct = dao.getAccount(name(i));
+            assertEquals(BALANCE + i, acct.getBalance());
+            if (i % 4 == 0) {
+                assertNull(acct.getAddress());
+                assertNull(acct.getCreditCard());
+            } else {
+                assertEquals("Tacoma", acct.getAddress().getCity());
+            }
+        }
+    }
+
+    /**
+     * A batch that fails writes none of its accounts.
+     *
+     * @throws AccountException if the DAO fails other than as expected
+     */
+    @Test
+    public void failedBatchWritesNothing() throws AccountException {
+        dao.setAccount(account(1, BALANCE));
+        try {
+            dao.setAccounts(Arrays.asList(account(1, BALANCE + 1), account(2, BALANCE),
+                                          account(OVERLONG_NAME, BALANCE)));
+            fail("Expected AccountException");
+        } catch (final AccountException ex) {
+            // expected
+        }
+        assertEquals(BALANCE, dao.getAccount(name(1)).getBalance());
+        assertNull(dao.getAccount(name(2)));
+
+        dao.setAccount(account(2, BALANCE));
+        assertEquals(BALANCE, dao.getAccount(name(2)).getBalance());
+    }
+
+    /**
+     * Bulk lookups of any number of names, existing or not, find each
+     * existing account once, using a single prepared statement.
+     *
+     * @throws AccountException if the DAO fails
+     */
+    @Test
+    public void bulkLookupAcrossChunks() throws AccountException {
+        // only the even numbered accounts exist
+        final int count = LOOKUP_SIZES[LOOKUP_SIZES.length - 1];
+        final List<Account> accounts = new ArrayList<>();
+        for (int i = 0; i < count; i += 2) {
+            accounts.add(account(i, BALANCE + i));
+        }
+        dao.setAccounts(accounts);
+        assertEquals(Collections.emptyMap(), dao.getAccounts(Collections.<String>emptyList()));
+        dao.getAccounts(Arrays.asList(name(0)));
+        final int prepared = statementsPrepared.get();
+
+        for (final int size : LOOKUP_SIZES) {
+            final List<String> names = new ArrayList<>();
+            for (int i = 0; i < size; i++) {
+                names.add(name(i));
+            }
+            final Map<String, Account> found = dao.getAccounts(names);
+            assertEquals((size + 1) / 2, found.size());
+            for (int i = 0; i < size; i += 2) {
+                assertEquals(BALANCE + i, found.get(name(i)).getBalance());
+            }
+        }
+
+        final Map<String, Account> found = dao.getAccounts(Arrays.asList(name(2), name(1), name(2)));
+        assertEquals(1, found.size());
+        assertEquals(BALANCE + 2, found.get(name(2)).getBalance());
+        assertEquals(prepared, statementsPrepared.get());
+    }
+
+    /**
+     * Sequential operations reuse one connection, concurrent operations open
+     * no more than the pool size, and closing closes them all.
+     *
+     * @throws Exception if the DAO fails
+     */
+    @Test
+    public void poolReusesConnections() throws Exception {
+        dao.setAccount(account(1, BALANCE));
+        for (int i = 0; i < REPEATS; i++) {
+            assertEquals(BALANCE, dao.getAccount(name(1)).getBalance());
+        }
+        assertEquals(1, connectionsOpened.get());
+
+        final ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            final List<Future<?>> reads = new ArrayList<>();
+            for (int t = 0; t < THREADS; t++) {
+                reads.add(executor.submit(() -> {
+                    for (int i = 0; i < REPEATS; i++) {
+                        assertEquals(BALANCE, dao.getAccount(name(1)).getBalance());
+                    }
+                    return null;
+                }));
+            }
+            for (final Future<?> read : reads) {
+                read.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertTrue(connectionsOpened.get() <= POOL_SIZE);
+
+        dao.close();
+        assertEquals(connectionsOpened.get(), connectionsClosed.get());
+    }
+
+    /**
+     * Repeating operations on a connection prepares no further statements.
+     *
+     * @throws AccountException if the DAO fails
+     */
+    @Test
+    public void statementsCachedPerConnection() throws AccountException {
+        dao.setAccount(account(1, BALANCE));
+        dao.getAccount(name(1));
+        dao.getAccount(name(2));
+        dao.deleteAccount(name(1));
+        final int prepared = statementsPrepared.get();
+
+        for (int i = 0; i < REPEATS; i++) {
+            dao.setAccount(account(1, BALANCE + i));
+            assertEquals(BALANCE + i, dao.getAccount(name(1)).getBalance());
+            dao.getAccount(name(2));
+            dao.deleteAccount(name(1));
+        }
+        assertEquals(1, connectionsOpened.get());
+        assertEquals(prepared, statementsPrepared.get());
+    }
+
+    /**
+     * Creates a numbered account with a full name, an address and a credit
+     * card.
+     *
+     * @param n the account number
+     * @param balance the balance
+     * @param city the city of the address
+     *
+     * @return the account
+     *
+     * @throws AccountException if the account can't be created
+     */
+    private static Account profiledAccount(final int n, final int balance, final String city)
+        throws AccountException {
+        final Account acct = account(n, balance);
+        acct.setFullName("Holder " + n);
+        final SimpleAddress addr = new SimpleAddress();
+        addr.setCity(city);
+        acct.setAddress(addr);
+        final SimpleCreditCard card = new SimpleCreditCard();
+        card.setIssuer("Bank");
+        acct.setCreditCard(card);
+        return acct;
+    }
+
+    /**
+     * Wraps a DataSource, or a connection, to count the connections opened
+     * and closed and the statements prepared through it.
+     *
+     * @param type the interface to wrap
+     * @param target the object wrapped
+     * @param <T> the interface type
+     *
+     * @return the counting wrapper
+     */
+    private static <T> T counting(final Class<T> type, final T target) {
+        return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] {type},
+            (proxy, method, args) -> {
+                final Object result = invoke(target, method, args);
+                switch (method.getName()) {
+                case "getConnection":
+                    connectionsOpened.incrementAndGet();
+                    return counting(Connection.class, (Connection) result);
+                case "close":
+                    connectionsClosed.incrementAndGet();
+                    break;
+                case "prepareStatement":
+                    statementsPrepared.incrementAndGet();
+                    break;
+                default:
+                    break;
+                }
+                return result;
+            }));
+    }
+
+    /**
+     * Invokes a method, throwing whatever it throws.
+     *
+     * @param target the object invoked
+     * @param method the method
+     * @param args the arguments
+     *
+     * @return the result
+     *
+     * @throws Throwable if the method throws
+     */
+    private static Object invoke(final Object target, final Method method, final Object[] args)
+        throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (final InvocationTargetException ex) {
+            throw ex.getCause();
+        }
+    }
+}
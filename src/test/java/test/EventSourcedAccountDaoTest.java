@@ -0,0 +1,260 @@
+package test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static test.TestAccounts.account;
+
+import java.io.File;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import edu.uw.beardcl.dao.EventSourcedAccountDao;
+import edu.uw.ext.framework.account.Account;
+import edu.uw.ext.framework.account.AccountException;
+
+/**
+ * Tests of EventSourcedAccountDao's compaction, recovery and point in time
+ * balances.
+ */
+public class EventSourcedAccountDaoTest {
+    /** Name of the first archived segment */
+    private static final String FIRST_ARCHIVE = "events-00000001.log";
+
+    /** Time each base DAO write takes when compaction is slowed, in milliseconds */
+    private static final long SLOW_WRITE_MILLIS = 300L;
+
+    /** Holds the event log */
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    /** The base DAO */
+    private MemoryAccountDao base;
+
+    /** The event log directory */
+    private File logDir;
+
+    /** The DAO under test */
+    private EventSourcedAccountDao dao;
+
+    /** Runs compactions concurrently with the test */
+    private ExecutorService exec;
+
+    /**
+     * Creates the DAO under test.
+     *
+     * @throws Exception if the DAO can't be created
+     */
+    @Before
+    public void setUp() throws Exception {
+        base = new MemoryAccountDao();
+        logDir = folder.newFolder("events");
+        dao = new EventSourcedAccountDao(base, logDir, 0L, false);
+        exec = Executors.newSingleThreadExecutor();
+    }
+
+    /**
+     * Closes the DAO under test.
+     *
+     * @throws AccountException if the close fails
+     */
+    @After
+    public void tearDown() throws AccountException {
+        exec.shutdownNow();
+        base.setFailWrites(false);
+        base.setWriteDelayMillis(0L);
+        dao.close();
+    }
+
+    /**
+     * Compaction writes the net effect of the events to the base DAO and
+     * archives the segment.
+     *
+     * @throws AccountException if the DAO fails
+     */
+    @Test
+    public void compactionWritesNetEffect() throws AccountException {
+        dao.setAccount(account("account0001", 100_000));
+        dao.setAccount(account("account0001", 150_000));
+        dao.setAccount(account("account0001", 120_000));
+        assertEquals(0, base.getWriteCount());
+
+        dao.compact();
+        assertEquals(1, base.getWriteCount());
+        assertEquals(120_000, base.stored("account0001").getBalance());
+        assertEquals(120_000, dao.getAccount("account0001").getBalance());
+        assertTrue(new File(logDir, FIRST_ARCHIVE).isFile());
+    }
+
+    /**
+     * Accounts being compacted remain readable, and appends aren't blocked,
+     * while the base DAO is written.
+     *
+     * @throws Exception if the DAO fails
+     */
+    @Test
+    public void appendsContinueDuringCompaction() throws Exception {
+        dao.setAccount(account("account0001", 100_000));
+        dao.setAccount(account("account0002", 200_000));
+        base.setWriteDelayMillis(SLOW_WRITE_MILLIS);
+
+        final Future<?> compaction = exec.submit(() -> {
+            dao.compact();
+            return null;
+        });
+        while (base.getWriteCount() == 0) {
+            Thread.sleep(5);
+        }
+
+        final long start = System.nanoTime();
+        assertEquals(200_000, dao.getAccount("account0002").getBalance());
+        dao.setAccount(account("account0001", 110_000));
+        assertTrue((System.nanoTime() - start) / 1_000_000 < SLOW_WRITE_MILLIS);
+        assertFalse(compaction.isDone());
+
+        compaction.get();
+        assertEquals(110_000, dao.getAccount("account0001").getBalance());
+        dao.compact();
+        assertEquals(110_000, base.stored("account0001").getBalance());
+    }
+
+    /**
+     * An account deleted while it is being compacted isn't rewritten.
+     *
+     * @throws Exception if the DAO fails
+     */
+    @Test
+    public void deleteDuringCompactionIsNotUndone() throws Exception {
+        dao.setAccount(account("account0001", 100_000));
+        dao.setAccount(account("account0002", 200_000));
+        base.setWriteDelayMillis(SLOW_WRITE_MILLIS);
+
+        final Future<?> compaction = exec.submit(() -> {
+            dao.compact();
+            return null;
+        });
+        while (base.getWriteCount() == 0) {
+            Thread.sleep(5);
+        }
+        dao.deleteAccount("account0001");
+        dao.deleteAccount("account0002");
+        compaction.get();
+
+        assertNull(dao.getAccount("account0001"));
+        assertNull(dao.getAccount("account0002"));
+        assertEquals(0, base.size());
+    }
+
+    /**
+     * A failed compaction leaves the accounts readable and is retried by the
+     * next compaction.
+     *
+     * @throws AccountException if the DAO fails
+     */
+    @Test
+    public void failedCompactionIsRetried() throws AccountException {
+        dao.setAccount(account("account0001", 100_000));
+        base.setFailWrites(true);
+        try {
+            dao.compact();
+            fail("Expected the compaction to fail");
+        } catch (final AccountException ex) {
+            // expected
+        }
+        assertEquals(100_000, dao.getAccount("account0001").getBalance());
+        assertTrue(new File(logDir, FIRST_ARCHIVE + ".compacting").isFile());
+
+        base.setFailWrites(false);
+        dao.setAccount(account("account0002", 200_000));
+        dao.compact();
+        assertEquals(100_000, base.stored("account0001").getBalance());
+        assertEquals(200_000, base.stored("account0002").getBalance());
+        assertTrue(new File(logDir, FIRST_ARCHIVE).isFile());
+        assertTrue(new File(logDir, "events-00000002.log").isFile());
+    }
+
+    /**
+     * A segment whose compaction was interrupted is completed when the DAO
+     * is next opened, and uncompacted events are replayed.
+     *
+     * @throws AccountException if the DAO fails
+     */
+    @Test
+    public void interruptedCompactionIsRecovered() throws AccountException {
+        dao.setAccount(account("account0001", 100_000));
+        base.setFailWrites(true);
+        try {
+            dao.compact();
+            fail("Expected the compaction to fail");
+        } catch (final AccountException ex) {
+            // expected
+        }
+        base.setFailWrites(false);
+        dao.setAccount(account("account0002", 200_000));
+        abandon();
+
+        final MemoryAccountDao reopenedBase = new MemoryAccountDao();
+        dao = new EventSourcedAccountDao(reopenedBase, logDir, 0L, false);
+        assertEquals(100_000, reopenedBase.stored("account0001").getBalance());
+        assertNull(reopenedBase.stored("account0002"));
+        assertEquals(200_000, dao.getAccount("account0002").getBalance());
+        assertTrue(new File(logDir, FIRST_ARCHIVE).isFile());
+    }
+
+    /**
+     * Balances are reconstructed as of a point in time from the archived
+     * and current segments.
+     *
+     * @throws Exception if the DAO fails
+     */
+    @Test
+    public void balanceAsOf() throws Exception {
+        final long before = System.currentTimeMillis() - 1;
+        dao.setAccount(account("account0001", 100_000));
+        final long afterCreate = tick();
+        dao.setAccount(account("account0001", 150_000));
+        dao.compact();
+        final long afterFill = tick();
+        dao.setAccount(account("account0001", 120_000));
+        final long afterSecondFill = tick();
+        dao.deleteAccount("account0001");
+
+        assertNull(dao.balanceAsOf("account0001", before));
+        assertEquals(Integer.valueOf(100_000), dao.balanceAsOf("account0001", afterCreate));
+        assertEquals(Integer.valueOf(150_000), dao.balanceAsOf("account0001", afterFill));
+        assertEquals(Integer.valueOf(120_000), dao.balanceAsOf("account0001", afterSecondFill));
+        assertNull(dao.balanceAsOf("account0001", Long.MAX_VALUE));
+    }
+
+    /**
+     * Gets a time strictly after the events recorded so far and strictly
+     * before those recorded next.
+     *
+     * @return the time, in milliseconds since the epoch
+     *
+     * @throws InterruptedException if the wait is interrupted
+     */
+    private static long tick() throws InterruptedException {
+        Thread.sleep(3);
+        final long now = System.currentTimeMillis();
+        Thread.sleep(3);
+        return now;
+    }
+
+    /**
+     * Simulates a crash of the DAO under test, it is dropped without being
+     * closed so outstanding compactions aren't completed.
+     */
+    private void abandon() {
+        dao = null;
+    }
+}
@@ -0,0 +1,171 @@
+package test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import edu.uw.beardcl.account.SimpleAccount;
+import edu.uw.beardcl.dao.JsonAccountDao;
+import edu.uw.beardcl.dao.JsonAccountDao.Durability;
+import edu.uw.beardcl.dao.JsonAccountDao.Layout;
+
+/**
+ * Tests of JsonAccountDao's group commit, migration and recovery of
+ * temporary files.
+ */
+public class JsonAccountDaoTest {
+    /** Number of concurrent writers */
+    private static final int WRITERS = 8;
+
+    /** Starting balance of the accounts written */
+    private static final int BALANCE = 100_000;
+
+    /** Holds the accounts */
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    /** The accounts directory */
+    private File dir;
+
+    /** The DAO under test */
+    private JsonAccountDao dao;
+
+    /**
+     * Creates the accounts directory.
+     *
+     * @throws Exception if the directory can't be created
+     */
+    @Before
+    public void setUp() throws Exception {
+        dir = folder.newFolder("accounts");
+    }
+
+    /**
+     * Closes the DAO under test.
+     */
+    @After
+    public void tearDown() {
+        if (dao != null) {
+            dao.close();
+        }
+    }
+
+    /**
+     * Concurrent writes committed as a group are all installed.
+     *
+     * @throws Exception if the DAO fails
+     */
+    @Test
+    public void groupCommitInstallsConcurrentWrites() throws Exception {
+        dao = new JsonAccountDao(dir, Durability.GROUP, 5L, Layout.SHARDED);
+        final ExecutorService exec = Executors.newFixedThreadPool(WRITERS);
+        try {
+            final List<Future<Void>> writes = new ArrayList<>();
+            for (int i = 0; i < 4 * WRITERS; i++) {
+                final int n = i;
+                writes.add(exec.submit((Callable<Void>) () -> {
+                    dao.setAccount(new SimpleAccount(name(n), new byte[] {1, 2, 3}, BALANCE + n));
+                    return null;
+                }));
+            }
+            for (final Future<Void> write : writes) {
+                write.get();
+            }
+        } finally {
+            exec.shutdownNow();
+        }
+        for (int i = 0; i < 4 * WRITERS; i++) {
+            assertEquals(BALANCE + i, dao.getAccount(name(i)).getBalance());
+        }
+    }
+
+    /**
+     * A lone writer is committed at once rather than waiting out the group
+     * commit window.
+     *
+     * @throws Exception if the DAO fails
+     */
+    @Test(timeout = 5000L)
+    public void loneWriterNotDelayed() throws Exception {
+        dao = new JsonAccountDao(dir, Durability.GROUP, TimeUnit.MINUTES.toMillis(1), Layout.SHARDED);
+        for (int i = 0; i < 3; i++) {
+            dao.setAccount(new SimpleAccount(name(i), new byte[] {1, 2, 3}, BALANCE + i));
+        }
+        assertEquals(BALANCE + 2, dao.getAccount(name(2)).getBalance());
+    }
+
+    /**
+     * Opening a DAO leaves temporary files alone, as another instance may be
+     * writing them; an explicit recover removes them.
+     *
+     * @throws Exception if the DAO fails
+     */
+    @Test
+    public void temporaryFilesRemovedOnlyByRecover() throws Exception {
+        final File temp = new File(dir, name(1) + ".12345.tmp");
+        assertTrue(temp.createNewFile());
+
+        dao = new JsonAccountDao(dir, Durability.NONE, 0L, Layout.FLAT);
+        assertTrue(temp.exists());
+
+        dao.setAccount(new SimpleAccount(name(2), new byte[] {1, 2, 3}, BALANCE));
+        dao.recover();
+        assertFalse(temp.exists());
+        assertEquals(BALANCE, dao.getAccount(name(2)).getBalance());
+    }
+
+    /**
+     * Opening the sharded layout migrates flat account files and removes flat
+     * temporary files, but doesn't scan the shards, leaving their temporary
+     * files to recover.
+     *
+     * @throws Exception if the DAO fails
+     */
+    @Test
+    public void openMigratesWithoutScanningShards() throws Exception {
+        dao = new JsonAccountDao(dir, Durability.NONE, 0L, Layout.FLAT);
+        dao.setAccount(new SimpleAccount(name(1), new byte[] {1, 2, 3}, BALANCE));
+        dao.close();
+        final File flatTemp = new File(dir, name(2) + ".12345.tmp");
+        assertTrue(flatTemp.createNewFile());
+        final File shard = new File(new File(dir, "ab"), "cd");
+        assertTrue(shard.mkdirs());
+        final File shardTemp = new File(shard, name(3) + ".12345.tmp");
+        assertTrue(shardTemp.createNewFile());
+
+        dao = new JsonAccountDao(dir, Durability.NONE, 0L, Layout.SHARDED);
+        assertEquals(BALANCE, dao.getAccount(name(1)).getBalance());
+        assertFalse(new File(dir, name(1) + ".json").exists());
+        assertFalse(flatTemp.exists());
+        assertTrue(shardTemp.exists());
+
+        dao.recover();
+        assertFalse(shardTemp.exists());
+    }
+
+    /**
+     * Gets the name of a numbered account.
+     *
+     * @param n the account number
+     *
+     * @return the account name
+     */
+    private static String name(final int n) {
+        return String.format("account%04d", n);
+    }
+}
@@ -0,0 +1,285 @@
+package test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static test.TestAccounts.account;
+import static test.TestAccounts.name;
+
+import java.io.File;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.h2.mvstore.MVStore;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import edu.uw.beardcl.account.SimpleAddress;
+import edu.uw.beardcl.dao.AccountField;
+import edu.uw.beardcl.dao.AccountProjection;
+import edu.uw.beardcl.dao.KeyValueAccountDao;
+import edu.uw.ext.framework.account.Account;
+import edu.uw.ext.framework.account.AccountException;
+
+/**
+ * Tests of KeyValueAccountDao's reads, commits and reopening.
+ */
+public class KeyValueAccountDaoTest {
+    /** Interval long enough that background commits don't occur */
+    private static final long NEVER_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+    /** Number of accounts in a batch */
+    private static final int BATCH_SIZE = 20;
+
+    /** Number of commits made while batches are written, per crash */
+    private static final int COMMITS = 5;
+
+    /** Number of crashes while batches are written */
+    private static final int CRASHES = 20;
+
+    /** Starting balance of the accounts written */
+    private static final int BALANCE = 100_000;
+
+    /** Time allowed for a background commit, in milliseconds */
+    private static final long TIMEOUT_MILLIS = 5000L;
+
+    /** Holds the store */
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    /** The store file */
+    private File file;
+
+    /** The DAO under test */
+    private KeyValueAccountDao dao;
+
+    /**
+     * Locates the store file.
+     *
+     * @throws Exception if the directory can't be created
+     */
+    @Before
+    public void setUp() throws Exception {
+        file = new File(folder.newFolder("accounts"), "accounts.mv");
+    }
+
+    /**
+     * Closes the DAO under test.
+     */
+    @After
+    public void tearDown() {
+        if (dao != null) {
+            dao.close();
+        }
+    }
+
+    /**
+     * Accounts read back as written, singly and in bulk, and are gone once
+     * deleted.
+     *
+     * @throws AccountException if the DAO fails
+     */
+    @Test
+    public void roundTrip() throws AccountException {
+        dao = new KeyValueAccountDao(file, 0L, false);
+        dao.setAccount(profiledAccount(1, BALANCE + 1));
+        dao.setAccount(profiledAccount(2, BALANCE + 2));
+
+        final Account acct = dao.getAccount(name(1));
+        assertEquals(name(1), acct.getName());
+        assertEquals(BALANCE + 1, acct.getBalance());
+        assertArrayEquals(TestAccounts.PASSWORD_HASH, acct.getPasswordHash());
+        assertEquals("Holder 1", acct.getFullName());
+        assertEquals("Seattle", acct.getAddress().getCity());
+
+        final Map<String, Account> found = dao.getAccounts(Arrays.asList(name(1), name(2), name(3)));
+        assertEquals(2, found.size());
+        assertEquals(BALANCE + 2, found.get(name(2)).getBalance());
+
+        dao.deleteAccount(name(1));
+        assertNull(dao.getAccount(name(1)));
+        assertNull(dao.getPasswordHash(name(1)));
+    }
+
+    /**
+     * Accounts, including writes not yet committed at the interval, survive
+     * closing and reopening the store.
+     *
+     * @throws AccountException if the DAO fails
+     */
+    @Test
+    public void reopenAfterClose() throws AccountException {
+        dao = new KeyValueAccountDao(file, NEVER_MILLIS, false);
+        dao.setAccount(profiledAccount(1, BALANCE));
+        dao.setAccount(profiledAccount(2, BALANCE));
+        dao.deleteAccount(name(2));
+        dao.close();
+
+        dao = new KeyValueAccountDao(file, 0L, false);
+        assertEquals(BALANCE, dao.getAccount(name(1)).getBalance());
+        assertEquals("Holder 1", dao.getAccount(name(1)).getFullName());
+        assertNull(dao.getAccount(name(2)));
+    }
+
+    /**
+     * Writes are committed by the background thread at the commit interval,
+     * until then a crash loses them.
+     *
+     * @throws Exception if the DAO fails or the wait is interrupted
+     */
+    @Test
+    public void commitInterval() throws Exception {
+        dao = new KeyValueAccountDao(file, NEVER_MILLIS, false);
+        dao.setAccount(account(1, BALANCE));
+        crash();
+        dao = new KeyValueAccountDao(file, 20L, false);
+        assertNull(dao.getAccount(name(1)));
+
+        dao.setAccount(account(1, BALANCE));
+        final long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (storeHasUnsavedChanges() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        crash();
+        dao = new KeyValueAccountDao(file, 0L, false);
+        assertEquals(BALANCE, dao.getAccount(name(1)).getBalance());
+    }
+
+    /**
+     * A batch is never split by a commit: after a crash following commits
+     * made while batches are written, every account of the batch has the
+     * balance of the same batch.  Only the last commit before the crash
+     * survives it, so the crash is repeated.
+     *
+     * @throws Exception if the DAO fails or a thread is interrupted
+     */
+    @Test
+    public void batchIsAtomicAcrossCommits() throws Exception {
+        for (int crash = 0; crash < CRASHES; crash++) {
+            dao = new KeyValueAccountDao(file, NEVER_MILLIS, false);
+            final AtomicBoolean stop = new AtomicBoolean();
+            final List<Throwable> failures = new ArrayList<>();
+            final int first = crash * 1000;
+            final Thread writer = new Thread(() -> {
+                try {
+                    for (int round = first; !stop.get(); round++) {
+                        final List<Account> batch = new ArrayList<>();
+                        for (int i = 0; i < BATCH_SIZE; i++) {
+                            batch.add(account(i, BALANCE + round));
+                        }
+                        dao.setAccounts(batch);
+                    }
+                } catch (final AccountException ex) {
+                    failures.add(ex);
+                }
+            });
+            writer.start();
+            try {
+                for (int i = 0; i < COMMITS; i++) {
+                    Thread.sleep(1);
+                    dao.commit();
+                }
+            } finally {
+                // the batches written after the last commit are lost by the crash
+                stop.set(true);
+                writer.join();
+            }
+            assertEquals(Arrays.asList(), failures);
+
+            crash();
+            dao = new KeyValueAccountDao(file, 0L, false);
+            final int balance = dao.getAccount(name(0)).getBalance();
+            for (int i = 1; i < BATCH_SIZE; i++) {
+                assertEquals(balance, dao.getAccount(name(i)).getBalance());
+            }
+            dao.close();
+            dao = null;
+        }
+    }
+
+    /**
+     * The password hash and balance are read without the rest of the
+     * account.
+     *
+     * @throws AccountException if the DAO fails
+     */
+    @Test
+    public void projections() throws AccountException {
+        dao = new KeyValueAccountDao(file, 0L, false);
+        dao.setAccount(profiledAccount(1, BALANCE + 7));
+
+        assertArrayEquals(TestAccounts.PASSWORD_HASH, dao.getPasswordHash(name(1)));
+        final AccountProjection balance = dao.getProjection(name(1), EnumSet.of(AccountField.BALANCE));
+        assertEquals(BALANCE + 7, balance.getBalance());
+        final AccountProjection both =
+            dao.getProjection(name(1), EnumSet.of(AccountField.BALANCE, AccountField.PASSWORD_HASH));
+        assertEquals(BALANCE + 7, both.getBalance());
+        assertArrayEquals(TestAccounts.PASSWORD_HASH, both.getPasswordHash());
+        assertNull(dao.getProjection(name(2), EnumSet.of(AccountField.BALANCE)));
+        assertNull(dao.getPasswordHash(name(2)));
+    }
+
+    /**
+     * Creates a numbered account with a full name and an address.
+     *
+     * @param n the account number
+     * @param balance the balance
+     *
+     * @return the account
+     *
+     * @throws AccountException if the account can't be created
+     */
+    private static Account profiledAccount(final int n, final int balance) throws AccountException {
+        final Account acct = account(n, balance);
+        acct.setFullName("Holder " + n);
+        final SimpleAddress addr = new SimpleAddress();
+        addr.setCity("Seattle");
+        acct.setAddress(addr);
+        return acct;
+    }
+
+    /**
+     * Gets the store of the DAO under test.
+     *
+     * @return the store
+     *
+     * @throws ReflectiveOperationException if the store can't be accessed
+     */
+    private MVStore store() throws ReflectiveOperationException {
+        final Field field = KeyValueAccountDao.class.getDeclaredField("store");
+        field.setAccessible(true);
+        return (MVStore) field.get(dao);
+    }
+
+    /**
+     * Determines if the store has uncommitted writes.
+     *
+     * @return true if writes are uncommitted
+     *
+     * @throws ReflectiveOperationException if the store can't be accessed
+     */
+    private boolean storeHasUnsavedChanges() throws ReflectiveOperationException {
+        return store().hasUnsavedChanges();
+    }
+
+    /**
+     * Simulates a crash of the DAO under test, closing the store without
+     * committing.
+     *
+     * @throws ReflectiveOperationException if the store can't be accessed
+     */
+    private void crash() throws ReflectiveOperationException {
+        store().closeImmediately();
+        dao.close();
+        dao = null;
+    }
+}
@@ -0,0 +1,165 @@
+package test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+import edu.uw.beardcl.metrics.LatencyHistogram;
+
+/**
+ * Tests of LatencyHistogram's percentiles, their stated error bound of 1/16
+ * and concurrent recording.
+ */
+public class LatencyHistogramTest {
+    /** Values below this are recorded exactly */
+    private static final int EXACT_LIMIT = 32;
+
+    /** Number of random values checked against the error bound */
+    private static final int RANDOM_VALUES = 100_000;
+
+    /** Number of values recorded in sequence */
+    private static final int SEQUENCE = 10_000;
+
+    /** Number of threads recording concurrently */
+    private static final int THREADS = 4;
+
+    /**
+     * Small values are reported exactly.
+     */
+    @Test
+    public void smallValuesExact() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        for (long v = 0; v < EXACT_LIMIT; v++) {
+            histogram.reset();
+            histogram.record(v);
+            histogram.record(Long.MAX_VALUE);
+            assertEquals(v, histogram.getValueAtPercentile(50.0));
+        }
+    }
+
+    /**
+     * A reported value is never less than the value recorded, nor more than
+     * 1/16 greater, at the edges of every power of two range and for random
+     * values of every magnitude.
+     */
+    @Test
+    public void errorWithinBound() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        for (int bit = 5; bit < 63; bit++) {
+            final long low = 1L << bit;
+            final long high = (low << 1) - 1;
+            for (final long v : new long[] {low, low + 1, low + (low >>> 4), high - 1, high}) {
+                assertWithinBound(histogram, v);
+            }
+        }
+
+        final Random random = new Random(42);
+        for (int i = 0; i < RANDOM_VALUES; i++) {
+            final long v = (random.nextLong() & Long.MAX_VALUE) >>> random.nextInt(63);
+            assertWithinBound(histogram, v);
+        }
+    }
+
+    /**
+     * Percentiles, the mean and the maximum of a sequence of values.
+     */
+    @Test
+    public void percentilesOfSequence() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        for (int v = 1; v <= SEQUENCE; v++) {
+            histogram.record(v);
+        }
+
+        assertEquals(SEQUENCE, histogram.getCount());
+        assertEquals(SEQUENCE, histogram.getMax());
+        assertEquals((SEQUENCE + 1) / 2.0, histogram.getMean(), 0.0);
+        assertEquals(1L, histogram.getValueAtPercentile(0.0));
+        assertNear(SEQUENCE / 2, histogram.getValueAtPercentile(50.0));
+        assertNear(SEQUENCE * 99 / 100, histogram.getValueAtPercentile(99.0));
+        assertEquals(SEQUENCE, histogram.getValueAtPercentile(100.0));
+        assertEquals(SEQUENCE / 1000.0, histogram.getMaxMicros(), 0.0);
+    }
+
+    /**
+     * Negative values are recorded as zero, and a reset clears everything.
+     */
+    @Test
+    public void negativeValuesAndReset() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(-5L);
+        assertEquals(1, histogram.getCount());
+        assertEquals(0L, histogram.getValueAtPercentile(100.0));
+
+        histogram.record(1000L);
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0L, histogram.getMax());
+        assertEquals(0.0, histogram.getMean(), 0.0);
+        assertEquals(0L, histogram.getValueAtPercentile(50.0));
+    }
+
+    /**
+     * No value recorded concurrently is lost.
+     *
+     * @throws Exception if a recording thread fails
+     */
+    @Test
+    public void concurrentRecording() throws Exception {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        final ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            final List<Future<?>> recorders = new ArrayList<>();
+            for (int t = 0; t < THREADS; t++) {
+                recorders.add(executor.submit(() -> {
+                    for (int v = 1; v <= SEQUENCE; v++) {
+                        histogram.record(v);
+                    }
+                }));
+            }
+            for (final Future<?> recorder : recorders) {
+                recorder.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        assertEquals(THREADS * SEQUENCE, histogram.getCount());
+        assertEquals(SEQUENCE, histogram.getMax());
+        assertEquals((SEQUENCE + 1) / 2.0, histogram.getMean(), 0.0);
+    }
+
+    /**
+     * Checks the value reported for a recorded value is within the stated
+     * error bound, a larger value is recorded so the report isn't limited
+     * to the maximum.
+     *
+     * @param histogram the histogram to record into
+     * @param v the value
+     */
+    private static void assertWithinBound(final LatencyHistogram histogram, final long v) {
+        histogram.reset();
+        histogram.record(v);
+        histogram.record(Long.MAX_VALUE);
+        assertNear(v, histogram.getValueAtPercentile(50.0));
+    }
+
+    /**
+     * Checks a reported value is at least the expected value and no more
+     * than 1/16 greater.
+     *
+     * @param expected the expected value
+     * @param actual the reported value
+     */
+    private static void assertNear(final long expected, final long actual) {
+        assertTrue(String.format("%d reported for %d", actual, expected),
+                   actual >= expected && actual - expected <= expected / 16);
+    }
+}
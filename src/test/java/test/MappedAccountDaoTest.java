@@ -0,0 +1,172 @@
+package test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static test.TestAccounts.account;
+import static test.TestAccounts.name;
+
+import java.io.File;
+import java.util.EnumSet;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import edu.uw.beardcl.account.SimpleAddress;
+import edu.uw.beardcl.dao.AccountField;
+import edu.uw.beardcl.dao.MappedAccountDao;
+import edu.uw.ext.framework.account.Account;
+import edu.uw.ext.framework.account.AccountException;
+
+/**
+ * Tests of MappedAccountDao's growth, deletes and reopening.
+ */
+public class MappedAccountDaoTest {
+    /** Number of slots of a new store, small so it grows */
+    private static final int SLOT_COUNT = 4;
+
+    /** Number of accounts written */
+    private static final int ACCOUNTS = 20;
+
+    /** Starting balance of the accounts written */
+    private static final int BALANCE = 100_000;
+
+    /** Holds the store */
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    /** The store directory */
+    private File dir;
+
+    /** The DAO under test */
+    private MappedAccountDao dao;
+
+    /**
+     * Creates the DAO under test.
+     *
+     * @throws Exception if the DAO can't be created
+     */
+    @Before
+    public void setUp() throws Exception {
+        dir = folder.newFolder("accounts");
+        dao = new MappedAccountDao(dir, SLOT_COUNT, false);
+    }
+
+    /**
+     * Closes the DAO under test.
+     */
+    @After
+    public void tearDown() {
+        dao.close();
+    }
+
+    /**
+     * Filling the slots rebuilds the store with more slots, keeping every
+     * account.
+     *
+     * @throws AccountException if the DAO fails
+     */
+    @Test
+    public void rebuildGrowsSlots() throws AccountException {
+        for (int i = 0; i < ACCOUNTS; i++) {
+            dao.setAccount(profiledAccount(i, BALANCE + i));
+        }
+
+        assertEquals(32, dao.getSlotCount());
+        for (int i = 0; i < ACCOUNTS; i++) {
+            assertAccount(i, BALANCE + i, dao.getAccount(name(i)));
+        }
+    }
+
+    /**
+     * Accounts, including in place balance updates and changed profiles,
+     * survive closing and reopening the store.
+     *
+     * @throws AccountException if the DAO fails
+     */
+    @Test
+    public void reopenKeepsAccounts() throws AccountException {
+        for (int i = 0; i < ACCOUNTS; i++) {
+            dao.setAccount(profiledAccount(i, BALANCE));
+        }
+        final Account updated = profiledAccount(1, BALANCE + 1);
+        dao.setAccount(updated);
+        updated.getAddress().setCity("Tacoma");
+        dao.setAccount(updated);
+        dao.close();
+
+        dao = new MappedAccountDao(dir, SLOT_COUNT, false);
+        assertEquals(32, dao.getSlotCount());
+        assertEquals("Tacoma", dao.getAccount(name(1)).getAddress().getCity());
+        assertEquals(BALANCE + 1, dao.getAccount(name(1)).getBalance());
+        for (int i = 2; i < ACCOUNTS; i++) {
+            assertAccount(i, BALANCE, dao.getAccount(name(i)));
+        }
+    }
+
+    /**
+     * Deleted accounts stay deleted across reopening and compaction, and may
+     * be added again.
+     *
+     * @throws AccountException if the DAO fails
+     */
+    @Test
+    public void deletesPersist() throws AccountException {
+        for (int i = 0; i < ACCOUNTS; i++) {
+            dao.setAccount(profiledAccount(i, BALANCE));
+        }
+        for (int i = 0; i < ACCOUNTS; i += 2) {
+            dao.deleteAccount(name(i));
+        }
+        dao.setAccount(profiledAccount(0, BALANCE + 5));
+        dao.close();
+
+        dao = new MappedAccountDao(dir, SLOT_COUNT, false);
+        dao.compact();
+        assertAccount(0, BALANCE + 5, dao.getAccount(name(0)));
+        for (int i = 2; i < ACCOUNTS; i += 2) {
+            assertNull(dao.getAccount(name(i)));
+            assertNull(dao.getProjection(name(i), EnumSet.of(AccountField.BALANCE)));
+        }
+        for (int i = 1; i < ACCOUNTS; i += 2) {
+            assertAccount(i, BALANCE, dao.getAccount(name(i)));
+        }
+    }
+
+    /**
+     * Creates a numbered account with a full name and an address.
+     *
+     * @param n the account number
+     * @param balance the balance
+     *
+     * @return the account
+     *
+     * @throws AccountException if the account can't be created
+     */
+    private static Account profiledAccount(final int n, final int balance) throws AccountException {
+        final Account acct = account(n, balance);
+        acct.setFullName("Holder " + n);
+        final SimpleAddress addr = new SimpleAddress();
+        addr.setCity("Seattle");
+        acct.setAddress(addr);
+        return acct;
+    }
+
+    /**
+     * Checks an account read matches the account written.
+     *
+     * @param n the account number
+     * @param balance the expected balance
+     * @param actual the account read
+     */
+    private static void assertAccount(final int n, final int balance, final Account actual) {
+        assertEquals(name(n), actual.getName());
+        assertEquals(balance, actual.getBalance());
+        assertArrayEquals(TestAccounts.PASSWORD_HASH, actual.getPasswordHash());
+        assertEquals("Holder " + n, actual.getFullName());
+        assertEquals("Seattle", actual.getAddress().getCity());
+    }
+}
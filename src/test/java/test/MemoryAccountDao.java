@@ -0,0 +1,135 @@
+package test;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import edu.uw.ext.framework.account.Account;
+import edu.uw.ext.framework.account.AccountException;
+import edu.uw.ext.framework.dao.AccountDao;
+
+/**
+ * An in-memory AccountDao for testing the DAO decorators, it counts the
+ * writes it receives and may be made to fail or slow them.
+ */
+public final class MemoryAccountDao implements AccountDao {
+    /** The stored accounts, by account name */
+    private final ConcurrentMap<String, Account> accounts = new ConcurrentHashMap<>();
+
+    /** Number of setAccount calls */
+    private final AtomicInteger writes = new AtomicInteger();
+
+    /** Number of getAccount calls */
+    private final AtomicInteger reads = new AtomicInteger();
+
+    /** If true writes fail */
+    private volatile boolean failWrites;
+
+    /** Time each write takes, in milliseconds */
+    private volatile long writeDelayMillis;
+
+    /** Set once closed */
+    private volatile boolean closed;
+
+    @Override
+    public Account getAccount(final String accountName) {
+        reads.incrementAndGet();
+        return accounts.get(accountName);
+    }
+
+    @Override
+    public void setAccount(final Account account) throws AccountException {
+        writes.incrementAndGet();
+        if (writeDelayMillis > 0) {
+            try {
+                Thread.sleep(writeDelayMillis);
+            } catch (final InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (failWrites) {
+            throw new AccountException("Write failed.");
+        }
+        accounts.put(account.getName(), account);
+    }
+
+    @Override
+    public void deleteAccount(final String accountName) {
+        accounts.remove(accountName);
+    }
+
+    @Override
+    public void reset() {
+        accounts.clear();
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+    }
+
+    /**
+     * Gets a stored account without counting the read.
+     *
+     * @param accountName the account name
+     *
+     * @return the stored account, null if none
+     */
+    public Account stored(final String accountName) {
+        return accounts.get(accountName);
+    }
+
+    /**
+     * Gets the number of accounts stored.
+     *
+     * @return the number of accounts
+     */
+    public int size() {
+        return accounts.size();
+    }
+
+    /**
+     * Gets the number of writes received.
+     *
+     * @return the number of setAccount calls
+     */
+    public int getWriteCount() {
+        return writes.get();
+    }
+
+    /**
+     * Gets the number of reads received.
+     *
+     * @return the number of getAccount calls
+     */
+    public int getReadCount() {
+        return reads.get();
+    }
+
+    /**
+     * Makes writes fail, or succeed.
+     *
+     * @param failWrites true if writes are to fail
+     */
+    public void setFailWrites(final boolean failWrites) {
+        this.failWrites = failWrites;
+    }
+
+    /**
+     * Sets the time each write takes.
+     *
+     * @param writeDelayMillis the delay in milliseconds
+     */
+    public void setWriteDelayMillis(final long writeDelayMillis) {
+        this.writeDelayMillis = writeDelayMillis;
+    }
+
+    /**
+     * Determines if the DAO has been closed.
+     *
+     * @return true if closed
+     */
+    public boolean isClosed() {
+        return closed;
+    }
+}
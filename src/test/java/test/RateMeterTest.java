@@ -0,0 +1,84 @@
+package test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import edu.uw.beardcl.metrics.RateMeter;
+
+/**
+ * Tests of RateMeter's counts and rates.
+ */
+public class RateMeterTest {
+    /** Number of events marked */
+    private static final int EVENTS = 100;
+
+    /** Number of complete seconds the recent rate is taken over */
+    private static final int RECENT_SECONDS = 10;
+
+    /** Number of nanoseconds per second */
+    private static final long NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    /**
+     * Events are counted, and contribute to the recent rate once their
+     * second is complete.
+     *
+     * @throws InterruptedException if the wait is interrupted
+     */
+    @Test
+    public void recentRateOfCompleteSeconds() throws InterruptedException {
+        final RateMeter meter = new RateMeter();
+        for (int i = 0; i < EVENTS; i++) {
+            meter.mark();
+        }
+        assertEquals(EVENTS, meter.getCount());
+
+        final long markSecond = System.nanoTime() / NANOS_PER_SECOND;
+        while (System.nanoTime() / NANOS_PER_SECOND <= markSecond) {
+            Thread.sleep(10);
+        }
+        assertEquals((double) EVENTS / RECENT_SECONDS, meter.getRecentRate(), 0.0);
+    }
+
+    /**
+     * The mean rate is the count over the time since creation, which is no
+     * longer than the time since before creation.
+     */
+    @Test
+    public void meanRateSinceCreation() {
+        final long before = System.nanoTime();
+        final RateMeter meter = new RateMeter();
+        for (int i = 0; i < EVENTS; i++) {
+            meter.mark();
+        }
+
+        final double rate = meter.getMeanRate();
+        final double lowest = (double) EVENTS * NANOS_PER_SECOND / (System.nanoTime() - before);
+        assertTrue(String.format("%f below %f", rate, lowest), rate >= lowest);
+    }
+
+    /**
+     * A reset clears the count and rates.
+     *
+     * @throws InterruptedException if the wait is interrupted
+     */
+    @Test
+    public void resetClears() throws InterruptedException {
+        final RateMeter meter = new RateMeter();
+        for (int i = 0; i < EVENTS; i++) {
+            meter.mark();
+        }
+        meter.reset();
+
+        assertEquals(0, meter.getCount());
+        assertEquals(0.0, meter.getMeanRate(), 0.0);
+        final long resetSecond = System.nanoTime() / NANOS_PER_SECOND;
+        while (System.nanoTime() / NANOS_PER_SECOND <= resetSecond) {
+            Thread.sleep(10);
+        }
+        assertEquals(0.0, meter.getRecentRate(), 0.0);
+    }
+}
@@ -0,0 +1,279 @@
+package test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static test.TestAccounts.account;
+import static test.TestAccounts.name;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import edu.uw.beardcl.dao.SegmentAccountDao;
+import edu.uw.ext.framework.account.Account;
+import edu.uw.ext.framework.account.AccountException;
+
+/**
+ * Tests of SegmentAccountDao's index rebuild, recovery and compaction.
+ */
+public class SegmentAccountDaoTest {
+    /** Segment size, small so tests span several segments */
+    private static final long MAX_SEGMENT_BYTES = 1024L;
+
+    /** Starting balance of the accounts written */
+    private static final int BALANCE = 100_000;
+
+    /** Holds the segments */
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    /** The segment directory */
+    private File dir;
+
+    /** The DAO under test */
+    private SegmentAccountDao dao;
+
+    /**
+     * Creates the DAO under test.
+     *
+     * @throws Exception if the DAO can't be created
+     */
+    @Before
+    public void setUp() throws Exception {
+        dir = folder.newFolder("segments");
+        dao = open();
+    }
+
+    /**
+     * Closes the DAO under test.
+     */
+    @After
+    public void tearDown() {
+        dao.close();
+    }
+
+    /**
+     * Reopening rebuilds the index from the segments, reflecting updates and
+     * deletes.
+     *
+     * @throws AccountException if the DAO fails
+     */
+    @Test
+    public void indexRebuiltOnReopen() throws AccountException {
+        for (int i = 0; i < 100; i++) {
+            dao.setAccount(account(name(i), BALANCE + i));
+        }
+        for (int i = 0; i < 100; i += 3) {
+            dao.setAccount(account(name(i), 2 * BALANCE + i));
+        }
+        for (int i = 1; i < 100; i += 5) {
+            dao.deleteAccount(name(i));
+        }
+        assertTrue(dao.getSegmentCount() > 1);
+
+        dao = reopen();
+        for (int i = 0; i < 100; i++) {
+            final Account acct = dao.getAccount(name(i));
+            if (i % 5 == 1) {
+                assertNull(acct);
+            } else {
+                assertEquals((i % 3 == 0) ? 2 * BALANCE + i : BALANCE + i, acct.getBalance());
+            }
+        }
+    }
+
+    /**
+     * A torn record at the end of the last segment is truncated on open, the
+     * records before it are intact and later writes are readable.
+     *
+     * @throws Exception if the DAO fails
+     */
+    @Test
+    public void tornTailIsTruncated() throws Exception {
+        dao.setAccount(account("account0001", BALANCE));
+        dao.setAccount(account("account0002", BALANCE));
+        dao.close();
+
+        final File segment = new File(dir, "segment-00000001.dat");
+        final long intact = segment.length();
+        try (FileOutputStream out = new FileOutputStream(segment, true)) {
+            // a header promising more body than follows
+            out.write(new byte[] {0, 0, 0, 40, 1, 2, 3, 4, 1, 0, 11, 'a', 'c'});
+        }
+
+        dao = open();
+        assertEquals(intact, segment.length());
+        assertEquals(BALANCE, dao.getAccount("account0002").getBalance());
+
+        dao.setAccount(account("account0003", BALANCE + 3));
+        dao = reopen();
+        assertEquals(BALANCE, dao.getAccount("account0001").getBalance());
+        assertEquals(BALANCE + 3, dao.getAccount("account0003").getBalance());
+    }
+
+    /**
+     * Compaction copies live records and a tombstone still shadowing a record
+     * in an older segment, so a deleted account stays deleted after the
+     * tombstone's segment is compacted and the DAO reopened.
+     *
+     * @throws Exception if the DAO fails
+     */
+    @Test
+    public void deleteSurvivesCompaction() throws Exception {
+        dao.setAccount(account("deleted0001", BALANCE));
+        final int kept = fillSegment("keep");
+        dao.deleteAccount("deleted0001");
+        fillWithDeadRecords();
+        assertEquals(3, dao.getSegmentCount());
+
+        dao.compact();
+        assertEquals(2, dao.getSegmentCount());
+        assertFalse(new File(dir, "segment-00000002.dat").exists());
+        assertNull(dao.getAccount("deleted0001"));
+
+        dao = reopen();
+        assertNull(dao.getAccount("deleted0001"));
+        for (int i = 0; i < kept; i++) {
+            assertEquals(BALANCE, dao.getAccount(String.format("keep%04d", i)).getBalance());
+        }
+    }
+
+    /**
+     * A tombstone no older segment has a record for isn't carried forward by
+     * compaction, only the live records are copied.
+     *
+     * @throws Exception if the DAO fails
+     */
+    @Test
+    public void unneededTombstoneIsDropped() throws Exception {
+        final int kept = fillSegment("keep");
+        final long recordBytes = new File(dir, "segment-00000001.dat").length() / (kept - 1);
+        dao.setAccount(account("deleted0001", BALANCE));
+        dao.deleteAccount("deleted0001");
+        fillWithDeadRecords();
+        final File active = new File(dir, "segment-00000003.dat");
+        final long activeBytes = active.length();
+
+        dao.compact();
+        assertEquals(2, dao.getSegmentCount());
+        // only the last keep record, written to segment 2, is copied
+        assertEquals(activeBytes + recordBytes, active.length());
+        assertNull(dao.getAccount("deleted0001"));
+        assertEquals(BALANCE, dao.getAccount(String.format("keep%04d", kept - 1)).getBalance());
+    }
+
+    /**
+     * Random updates and deletes interleaved with compactions leave the DAO
+     * agreeing with a model, before and after reopening.
+     *
+     * @throws Exception if the DAO fails
+     */
+    @Test
+    public void compactionPreservesContents() throws Exception {
+        final Random random = new Random(42);
+        final Map<String, Integer> model = new HashMap<>();
+        for (int op = 0; op < 2_000; op++) {
+            final String name = name(random.nextInt(40));
+            if (random.nextInt(4) == 0) {
+                dao.deleteAccount(name);
+                model.remove(name);
+            } else {
+                final int balance = BALANCE + random.nextInt(1_000);
+                dao.setAccount(account(name, balance));
+                model.put(name, balance);
+            }
+            if (op % 250 == 0) {
+                dao.compact();
+            }
+        }
+        dao.compact();
+        assertModel(model);
+        dao = reopen();
+        assertModel(model);
+    }
+
+    /**
+     * Writes accounts with the specified prefix until the active segment
+     * fills and a new segment is started, the last account is written to
+     * the new segment.
+     *
+     * @param prefix the account name prefix
+     *
+     * @return the number of accounts written
+     *
+     * @throws AccountException if the DAO fails
+     */
+    private int fillSegment(final String prefix) throws AccountException {
+        final int segments = dao.getSegmentCount();
+        int n = 0;
+        while (dao.getSegmentCount() == segments) {
+            dao.setAccount(account(String.format("%s%04d", prefix, n++), BALANCE));
+        }
+        return n;
+    }
+
+    /**
+     * Repeatedly updates a single account until a new segment is started, so
+     * the records written to the segment being filled are dead.
+     *
+     * @throws AccountException if the DAO fails
+     */
+    private void fillWithDeadRecords() throws AccountException {
+        final int segments = dao.getSegmentCount();
+        int n = 0;
+        while (dao.getSegmentCount() == segments) {
+            dao.setAccount(account("churn0001", BALANCE + n++));
+        }
+    }
+
+    /**
+     * Asserts the DAO holds exactly the accounts of a model.
+     *
+     * @param model the expected balances, by account name
+     */
+    private void assertModel(final Map<String, Integer> model) {
+        for (int i = 0; i < 40; i++) {
+            final Account acct = dao.getAccount(name(i));
+            final Integer expected = model.get(name(i));
+            if (expected == null) {
+                assertNull(acct);
+            } else {
+                assertEquals(expected.intValue(), acct.getBalance());
+            }
+        }
+    }
+
+    /**
+     * Opens a DAO over the segment directory.
+     *
+     * @return the DAO
+     *
+     * @throws AccountException if the DAO can't be opened
+     */
+    private SegmentAccountDao open() throws AccountException {
+        return new SegmentAccountDao(dir, MAX_SEGMENT_BYTES, 0L, false);
+    }
+
+    /**
+     * Closes and reopens the DAO under test.
+     *
+     * @return the reopened DAO
+     *
+     * @throws AccountException if the DAO can't be opened
+     */
+    private SegmentAccountDao reopen() throws AccountException {
+        dao.close();
+        return open();
+    }
+}
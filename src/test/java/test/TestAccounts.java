@@ -0,0 +1,58 @@
+package test;
+
+import edu.uw.beardcl.account.SimpleAccount;
+import edu.uw.ext.framework.account.Account;
+import edu.uw.ext.framework.account.AccountException;
+
+/**
+ * Creates the accounts used by the DAO tests.
+ */
+public final class TestAccounts {
+    /** Password hash of the accounts created */
+    public static final byte[] PASSWORD_HASH = {1, 2, 3};
+
+    /**
+     * Not instantiable.
+     */
+    private TestAccounts() {
+    }
+
+    /**
+     * Gets the name of a numbered account.
+     *
+     * @param n the account number
+     *
+     * @return the account name
+     */
+    public static String name(final int n) {
+        return String.format("account%04d", n);
+    }
+
+    /**
+     * Creates a numbered account.
+     *
+     * @param n the account number
+     * @param balance the balance
+     *
+     * @return the account
+     *
+     * @throws AccountException if the account can't be created
+     */
+    public static Account account(final int n, final int balance) throws AccountException {
+        return account(name(n), balance);
+    }
+
+    /**
+     * Creates an account.
+     *
+     * @param name the account name
+     * @param balance the balance
+     *
+     * @return the account
+     *
+     * @throws AccountException if the account can't be created
+     */
+    public static Account account(final String name, final int balance) throws AccountException {
+        return new SimpleAccount(name, PASSWORD_HASH.clone(), balance);
+    }
+}
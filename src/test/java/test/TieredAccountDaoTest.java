@@ -0,0 +1,239 @@
+package test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static test.TestAccounts.account;
+import static test.TestAccounts.name;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.beans.factory.xml.XmlBeanDefinitionReader;
+import org.springframework.core.io.ClassPathResource;
+
+import edu.uw.beardcl.account.TieredAccountDao;
+import edu.uw.beardcl.dao.JsonDaoFactory;
+import edu.uw.beardcl.dao.TieredDaoFactory;
+import edu.uw.ext.framework.account.Account;
+import edu.uw.ext.framework.account.AccountException;
+import edu.uw.ext.framework.dao.AccountDao;
+
+/**
+ * Tests of TieredAccountDao, created by the TieredDaoFactory wired in
+ * tiered-context.xml over a JSON cold tier: promotion, demotion and write
+ * back.
+ */
+public class TieredAccountDaoTest {
+    /** Interval long enough that periodic flushes and idle demotion don't occur */
+    private static final long NEVER_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+    /** Starting balance of the accounts written */
+    private static final int BALANCE = 100_000;
+
+    /** Time allowed for a background write back or demotion, in milliseconds */
+    private static final long TIMEOUT_MILLIS = 5000L;
+
+    /** Holds the cold tier */
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    /** The beans of tiered-context.xml */
+    private DefaultListableBeanFactory beans;
+
+    /** Reads the cold tier directly */
+    private AccountDao cold;
+
+    /** The DAO under test */
+    private TieredAccountDao dao;
+
+    /**
+     * Loads the tiered DAO wiring, placing the cold tier in a temporary
+     * directory.
+     *
+     * @throws Exception if the cold tier can't be created
+     */
+    @Before
+    public void setUp() throws Exception {
+        beans = new DefaultListableBeanFactory();
+        new XmlBeanDefinitionReader(beans).loadBeanDefinitions(new ClassPathResource("tiered-context.xml"));
+        final JsonDaoFactory coldFactory = beans.getBean("ColdDaoFactory", JsonDaoFactory.class);
+        coldFactory.setDirectory(folder.newFolder("accounts").getPath());
+        cold = coldFactory.getAccountDao();
+    }
+
+    /**
+     * Closes the DAOs.
+     *
+     * @throws AccountException if the DAO under test can't be closed
+     */
+    @After
+    public void tearDown() throws AccountException {
+        if (dao != null) {
+            dao.close();
+        }
+        cold.close();
+    }
+
+    /**
+     * Reading an account from the cold tier promotes it, later reads are
+     * served by the hot tier.
+     *
+     * @throws Exception if the DAO fails
+     */
+    @Test
+    public void readPromotes() throws Exception {
+        cold.setAccount(account(1, BALANCE));
+        dao = open(10, NEVER_MILLIS, NEVER_MILLIS);
+
+        final Account acct = dao.getAccount(name(1));
+        assertEquals(BALANCE, acct.getBalance());
+        assertEquals(1, dao.getPromotionCount());
+        assertEquals(1, dao.getHotCount());
+
+        assertSame(acct, dao.getAccount(name(1)));
+        assertEquals(1, dao.getPromotionCount());
+        assertNull(dao.getAccount(name(2)));
+        assertEquals(1, dao.getHotCount());
+    }
+
+    /**
+     * Once the hot tier is full the least recently used account is demoted,
+     * and written back as it's dirty.
+     *
+     * @throws Exception if the DAO fails or the wait is interrupted
+     */
+    @Test
+    public void leastRecentlyUsedDemoted() throws Exception {
+        dao = open(2, NEVER_MILLIS, NEVER_MILLIS);
+        dao.setAccount(account(1, BALANCE + 1));
+        dao.setAccount(account(2, BALANCE + 2));
+        dao.getAccount(name(1));
+        dao.setAccount(account(3, BALANCE + 3));
+
+        assertEquals(2, dao.getHotCount());
+        assertEquals(1, dao.getDemotionCount());
+        awaitCold(name(2));
+        assertEquals(BALANCE + 2, cold.getAccount(name(2)).getBalance());
+        assertNull(cold.getAccount(name(1)));
+        assertEquals(BALANCE + 2, dao.getAccount(name(2)).getBalance());
+    }
+
+    /**
+     * Accounts unused for the idle time are demoted by the periodic check,
+     * and written back.
+     *
+     * @throws Exception if the DAO fails or the wait is interrupted
+     */
+    @Test
+    public void idleAccountsDemoted() throws Exception {
+        dao = open(10, 50L, 20L);
+        dao.setAccount(account(1, BALANCE));
+
+        final long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (dao.getHotCount() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(0, dao.getHotCount());
+        assertEquals(1, dao.getDemotionCount());
+        awaitCold(name(1));
+        assertEquals(BALANCE, cold.getAccount(name(1)).getBalance());
+    }
+
+    /**
+     * Stored accounts reach the cold tier only once flushed, and stay hot.
+     *
+     * @throws Exception if the DAO fails
+     */
+    @Test
+    public void flushWritesBack() throws Exception {
+        dao = open(10, NEVER_MILLIS, NEVER_MILLIS);
+        dao.setAccount(account(1, BALANCE));
+        dao.setAccount(account(1, BALANCE + 1));
+        assertNull(cold.getAccount(name(1)));
+        assertEquals(1, dao.getDirtyCount());
+
+        dao.flush();
+        assertEquals(0, dao.getDirtyCount());
+        assertEquals(1, dao.getHotCount());
+        assertEquals(BALANCE + 1, cold.getAccount(name(1)).getBalance());
+    }
+
+    /**
+     * Closing writes back the dirty accounts.
+     *
+     * @throws Exception if the DAO fails
+     */
+    @Test
+    public void closeWritesBack() throws Exception {
+        dao = open(10, NEVER_MILLIS, NEVER_MILLIS);
+        dao.setAccount(account(1, BALANCE));
+        dao.close();
+        dao = null;
+
+        assertEquals(BALANCE, cold.getAccount(name(1)).getBalance());
+    }
+
+    /**
+     * Deleting an account discards its unwritten update, the cold tier's
+     * copy is removed and isn't restored by a later flush.
+     *
+     * @throws Exception if the DAO fails
+     */
+    @Test
+    public void deleteDiscardsPendingWrite() throws Exception {
+        cold.setAccount(account(1, BALANCE));
+        dao = open(10, NEVER_MILLIS, NEVER_MILLIS);
+        dao.setAccount(account(1, BALANCE + 1));
+        dao.setAccount(account(2, BALANCE + 2));
+        dao.deleteAccount(name(1));
+        dao.deleteAccount(name(2));
+        assertEquals(0, dao.getDirtyCount());
+
+        dao.close();
+        dao = null;
+        assertNull(cold.getAccount(name(1)));
+        assertNull(cold.getAccount(name(2)));
+    }
+
+    /**
+     * Creates the DAO under test with the wired TieredDaoFactory.
+     *
+     * @param maxHotAccounts the maximum number of hot accounts
+     * @param idleMillis the idle time in milliseconds
+     * @param flushIntervalMillis the flush interval in milliseconds
+     *
+     * @return the DAO
+     *
+     * @throws Exception if the DAO can't be created
+     */
+    private TieredAccountDao open(final int maxHotAccounts, final long idleMillis,
+                                  final long flushIntervalMillis) throws Exception {
+        final TieredDaoFactory factory = beans.getBean("DaoFactory", TieredDaoFactory.class);
+        factory.setMaxHotAccounts(maxHotAccounts);
+        factory.setIdleMillis(idleMillis);
+        factory.setFlushIntervalMillis(flushIntervalMillis);
+        return (TieredAccountDao) factory.getAccountDao();
+    }
+
+    /**
+     * Waits for an account to reach the cold tier.
+     *
+     * @param accountName the account name
+     *
+     * @throws InterruptedException if the wait is interrupted
+     */
+    private void awaitCold(final String accountName) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (cold.getAccount(accountName) == null && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertNotNull(cold.getAccount(accountName));
+    }
+}
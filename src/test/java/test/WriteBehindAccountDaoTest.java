@@ -0,0 +1,160 @@
+package test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static test.TestAccounts.account;
+
+import java.util.EnumSet;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import edu.uw.beardcl.account.WriteBehindAccountDao;
+import edu.uw.beardcl.dao.AccountField;
+import edu.uw.ext.framework.account.Account;
+import edu.uw.ext.framework.account.AccountException;
+
+/**
+ * Tests of WriteBehindAccountDao's buffering, flushing and closing.
+ */
+public class WriteBehindAccountDaoTest {
+    /** Flush interval long enough that periodic flushes don't occur */
+    private static final long NO_PERIODIC_FLUSH = TimeUnit.HOURS.toMillis(1);
+
+    /** Batch size */
+    private static final int BATCH_SIZE = 10;
+
+    /** Time allowed for a background flush, in milliseconds */
+    private static final long TIMEOUT_MILLIS = 5000L;
+
+    /** The underlying DAO */
+    private MemoryAccountDao memory;
+
+    /** The DAO under test */
+    private WriteBehindAccountDao dao;
+
+    /**
+     * Creates the DAO under test.
+     */
+    @Before
+    public void setUp() {
+        memory = new MemoryAccountDao();
+        dao = new WriteBehindAccountDao(memory, NO_PERIODIC_FLUSH, BATCH_SIZE);
+    }
+
+    /**
+     * Closes the DAO under test.
+     *
+     * @throws AccountException if the close fails
+     */
+    @After
+    public void tearDown() throws AccountException {
+        dao.close();
+    }
+
+    /**
+     * Writes are visible to reads before they're flushed.
+     *
+     * @throws AccountException if the DAO fails
+     */
+    @Test
+    public void readYourWrites() throws AccountException {
+        final Account acct = account(1, 100_000);
+        dao.setAccount(acct);
+
+        assertNull(memory.stored(acct.getName()));
+        assertSame(acct, dao.getAccount(acct.getName()));
+        assertEquals(acct.getBalance(),
+                     dao.getProjection(acct.getName(), EnumSet.of(AccountField.BALANCE)).getBalance());
+        assertEquals(1, dao.getDirtyCount());
+    }
+
+    /**
+     * A flush writes the dirty accounts, repeated updates are coalesced.
+     *
+     * @throws AccountException if the DAO fails
+     */
+    @Test
+    public void flushCoalescesUpdates() throws AccountException {
+        for (int balance = 100_000; balance < 100_005; balance++) {
+            dao.setAccount(account(1, balance));
+        }
+        dao.flush();
+
+        assertEquals(0, dao.getDirtyCount());
+        assertEquals(1, memory.getWriteCount());
+        assertEquals(100_004, memory.stored("account0001").getBalance());
+    }
+
+    /**
+     * A batch's worth of dirty accounts triggers a flush without waiting for
+     * the flush interval.
+     *
+     * @throws Exception if the DAO fails or the wait is interrupted
+     */
+    @Test
+    public void batchSizeTriggersFlush() throws Exception {
+        for (int i = 0; i < BATCH_SIZE - 1; i++) {
+            dao.setAccount(account(i, 100_000));
+        }
+        Thread.sleep(100);
+        assertEquals(0, memory.size());
+
+        dao.setAccount(account(BATCH_SIZE, 100_000));
+        final long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (memory.size() < BATCH_SIZE && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(BATCH_SIZE, memory.size());
+    }
+
+    /**
+     * Accounts whose write fails remain dirty and are written by a later
+     * flush.
+     *
+     * @throws AccountException if the DAO fails
+     */
+    @Test
+    public void failedWritesRemainDirty() throws AccountException {
+        dao.setAccount(account(1, 100_000));
+        memory.setFailWrites(true);
+        try {
+            dao.flush();
+            fail("Expected the flush to fail");
+        } catch (final AccountException ex) {
+            // expected
+        }
+        assertEquals(1, dao.getDirtyCount());
+
+        memory.setFailWrites(false);
+        dao.flush();
+        assertEquals(0, dao.getDirtyCount());
+        assertEquals(100_000, memory.stored("account0001").getBalance());
+    }
+
+    /**
+     * Closing flushes the dirty accounts and closes the underlying DAO,
+     * later writes are refused.
+     *
+     * @throws AccountException if the DAO fails
+     */
+    @Test
+    public void closeFlushes() throws AccountException {
+        dao.setAccount(account(1, 100_000));
+        dao.close();
+
+        assertEquals(100_000, memory.stored("account0001").getBalance());
+        assertTrue(memory.isClosed());
+        try {
+            dao.setAccount(account(2, 100_000));
+            fail("Expected the write to be refused");
+        } catch (final AccountException ex) {
+            // expected
+        }
+    }
+}